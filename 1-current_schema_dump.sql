@@ -175,6 +175,7 @@ CREATE TABLE Inventory_Master (
     Size_code VARCHAR(255)NOT NULL,
     Size_name VARCHAR(255),
     business_date VARCHAR(255),
+    business_dt DATE,
     Opening INT,
 	Purchase Int,
 	Debit Int, 
@@ -186,6 +187,8 @@ CREATE TABLE Inventory_Master (
     CONSTRAINT UK_inventory UNIQUE (Store_code, Item_code, Size_code)
 );
 
+CREATE INDEX IX_inventory_store_business_dt ON Inventory_Master (Store_code, business_dt);
+
 CREATE TABLE Price_Master (
     id INT IDENTITY(1,1) PRIMARY KEY,
     Item_Code VARCHAR(255)NOT NULL,
@@ -212,6 +215,7 @@ CREATE TABLE DSR_Detail (
     id INT IDENTITY(1,1) PRIMARY KEY,
     Store VARCHAR(255)NOT NULL,
     Business_date VARCHAR(255)NOT NULL,
+    business_dt DATE,
     Item_code VARCHAR(255)NOT NULL,
     Item_name VARCHAR(255),
     Size_Code VARCHAR(255)NOT NULL,
@@ -228,6 +232,8 @@ CREATE TABLE DSR_Detail (
     CONSTRAINT UK_dsr_detail UNIQUE (Store, Business_date, Item_code, Size_Code)
 );
 
+CREATE INDEX IX_dsr_detail_store_business_dt ON DSR_Detail (Store, business_dt);
+
 
 CREATE TABLE pur_head (
     id INT IDENTITY(1,1) PRIMARY KEY,
@@ -314,6 +320,7 @@ CREATE TABLE sto_head (
     from_store VARCHAR(255)NOT NULL,
     to_store VARCHAR(255)NOT NULL,
     date VARCHAR(255)NOT NULL,
+    sto_dt DATE,
     sto_number VARCHAR(255)NOT NULL,
     narration VARCHAR(MAX),
     received_status VARCHAR(255),
@@ -324,6 +331,8 @@ CREATE TABLE sto_head (
     CONSTRAINT UK_sto_number UNIQUE (from_store,date,sto_number)
 );
 
+CREATE INDEX IX_sto_head_to_store_sto_dt ON sto_head (to_store, sto_dt);
+
 CREATE TABLE sto_item (
     id INT IDENTITY(1,1) PRIMARY KEY,
     from_store VARCHAR(255)NOT NULL,
@@ -346,6 +355,7 @@ CREATE TABLE tran_head (
     id INT IDENTITY(1,1) PRIMARY KEY,
 	store_code VARCHAR(255)NOT NULL,
     invoice_date VARCHAR(255)NOT NULL,
+    invoice_dt DATE,
 	invoice_no VARCHAR(255) NOT NULL,
 	party_code VARCHAR(255)NOT NULL,
     sale_amount FLOAT,
@@ -357,13 +367,30 @@ CREATE TABLE tran_head (
     User_name VARCHAR(255),
     created_at DATETIME,
     updated_at DATETIME,
+    exported_at DATETIME,
+    export_guid VARCHAR(255),
     CONSTRAINT UK_tran_invoice UNIQUE (store_code,invoice_date,invoice_no)
 );
 
+-- Pending invoices for the incremental Tally feed (/api/sales/SalesData/feed)
+CREATE INDEX IX_tran_head_export_pending ON tran_head (id) WHERE exported_at IS NULL;
+
+-- One row once invoices submitted before the feed were marked as exported (SalesFeedService.cutover)
+CREATE TABLE sales_feed_cutover (
+    id INT NOT NULL PRIMARY KEY,
+    invoices INT NOT NULL,
+    cutover_at DATETIME NOT NULL
+);
+
+-- invoice_dt is the DATE form of invoice_date; all date-range filters use it
+CREATE INDEX IX_tran_head_store_invoice_dt ON tran_head (store_code, invoice_dt);
+CREATE INDEX IX_tran_head_invoice_dt ON tran_head (invoice_dt) INCLUDE (store_code, sale_amount, total_amount);
+
 CREATE TABLE tran_item (
     id INT IDENTITY(1,1) PRIMARY KEY,
     store_code VARCHAR(255)NOT NULL,
     invoice_date VARCHAR(255)NOT NULL,
+    invoice_dt DATE,
     invoice_no VARCHAR(255)NOT NULL,
     item_code VARCHAR(255)NOT NULL,
     size_code VARCHAR(255)NOT NULL,
@@ -375,12 +402,15 @@ CREATE TABLE tran_item (
     CONSTRAINT UK_tran_item UNIQUE (store_code,invoice_date,invoice_no, item_code, size_code)
 );
 
+CREATE INDEX IX_tran_item_store_invoice_dt ON tran_item (store_code, invoice_dt);
+
 CREATE TABLE tran_ledgers (
     id INT IDENTITY(1,1) PRIMARY KEY,
     tran_id INT,
     store_code VARCHAR(255)NOT NULL,
     invoice_no VARCHAR(255)NOT NULL,
     invoice_date VARCHAR(255)NOT NULL,
+    invoice_dt DATE,
     ledger_code VARCHAR(255)NOT NULL,
     amount FLOAT,
     type VARCHAR(255),
@@ -389,6 +419,96 @@ CREATE TABLE tran_ledgers (
     CONSTRAINT UK_tran_ledger UNIQUE (store_code,invoice_date,invoice_no, ledger_code)
 );
 
+CREATE INDEX IX_tran_ledgers_store_invoice_dt ON tran_ledgers (store_code, invoice_dt);
+CREATE INDEX IX_tran_ledgers_invoice_dt ON tran_ledgers (invoice_dt) INCLUDE (store_code, ledger_code, type, amount);
+
+-- Per store and day sales rollup read by the sales and collection reports (DailySalesSummaryService).
+-- line_type INVOICE: line_code/ledger_type ''; CATEGORY: line_code = category code; LEDGER: ledger code and tran_ledgers.type
+CREATE TABLE daily_sales_summary (
+    id INT IDENTITY(1,1) PRIMARY KEY,
+    store_code VARCHAR(255) NOT NULL,
+    business_dt DATE NOT NULL,
+    line_type VARCHAR(20) NOT NULL,
+    line_code VARCHAR(255) NOT NULL,
+    ledger_type VARCHAR(50) NOT NULL,
+    invoice_count INT NOT NULL,
+    quantity INT NOT NULL,
+    amount FLOAT NOT NULL,
+    sale_amount FLOAT NOT NULL,
+    updated_at DATETIME,
+    CONSTRAINT UK_daily_sales_summary UNIQUE (store_code, business_dt, line_type, line_code, ledger_type)
+);
+
+CREATE INDEX IX_daily_sales_summary_dt ON daily_sales_summary (business_dt, line_type) INCLUDE (store_code, line_code, ledger_type, amount, sale_amount);
+
+CREATE TABLE closing_stock_snapshot (
+    id INT IDENTITY(1,1) PRIMARY KEY,
+    store_code VARCHAR(255) NOT NULL,
+    category_code VARCHAR(255) NOT NULL,
+    valuation VARCHAR(20) NOT NULL,
+    quantity FLOAT NOT NULL,
+    amount FLOAT NOT NULL,
+    updated_at DATETIME,
+    CONSTRAINT UK_closing_stock_snapshot UNIQUE (store_code, category_code, valuation)
+);
+
+CREATE TABLE inventory_snapshot (
+    store_code VARCHAR(255) NOT NULL,
+    item_code VARCHAR(255) NOT NULL,
+    size_code VARCHAR(255) NOT NULL,
+    snapshot_dt DATE NOT NULL,
+    closing INT NOT NULL,
+    CONSTRAINT PK_inventory_snapshot PRIMARY KEY (store_code, item_code, size_code, snapshot_dt)
+);
+
+CREATE TABLE inventory_snapshot_run (
+    snapshot_dt DATE NOT NULL PRIMARY KEY,
+    rows_written INT NOT NULL,
+    taken_at DATETIME NOT NULL
+);
+
+CREATE TABLE stock_movement (
+    id BIGINT IDENTITY(1,1) PRIMARY KEY,
+    store_code VARCHAR(255) NOT NULL,
+    item_code VARCHAR(255) NOT NULL,
+    size_code VARCHAR(255) NOT NULL,
+    movement_type VARCHAR(20) NOT NULL,
+    quantity INT NOT NULL,
+    source_type VARCHAR(20) NOT NULL,
+    source_no VARCHAR(255),
+    business_dt DATE,
+    created_at DATETIME2 NOT NULL DEFAULT SYSDATETIME(),
+    effective_dt AS COALESCE(business_dt, CASE WHEN source_type = 'BASELINE' THEN CONVERT(DATE, '19000101', 112) ELSE CONVERT(DATE, created_at) END) PERSISTED
+);
+CREATE INDEX IX_stock_movement_sku ON stock_movement (store_code, item_code, size_code) INCLUDE (movement_type, quantity);
+CREATE INDEX IX_stock_movement_effective_dt ON stock_movement (effective_dt) INCLUDE (store_code, item_code, size_code, quantity);
+
+CREATE TABLE inventory_reconciliation_run (
+    run_id VARCHAR(40) NOT NULL PRIMARY KEY,
+    status VARCHAR(20) NOT NULL,
+    auto_correct BIT NOT NULL,
+    stores INT NOT NULL,
+    stores_done INT NOT NULL,
+    discrepancies INT NOT NULL,
+    started_at DATETIME NOT NULL,
+    finished_at DATETIME,
+    error VARCHAR(MAX)
+);
+
+CREATE TABLE inventory_discrepancy (
+    id BIGINT IDENTITY(1,1) PRIMARY KEY,
+    run_id VARCHAR(40) NOT NULL,
+    store_code VARCHAR(255) NOT NULL,
+    item_code VARCHAR(255) NOT NULL,
+    size_code VARCHAR(255) NOT NULL,
+    check_type VARCHAR(20) NOT NULL,
+    expected INT NOT NULL,
+    actual INT NOT NULL,
+    business_dt DATE,
+    corrected BIT NOT NULL
+);
+CREATE INDEX IX_inventory_discrepancy_run ON inventory_discrepancy (run_id, store_code);
+
 -- 3. System & Configuration Tables
 
 CREATE TABLE database_sequences (
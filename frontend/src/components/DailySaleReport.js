@@ -27,6 +27,7 @@ const DailySaleReport = () => {
     const [salesData, setSalesData] = useState({});
     const [dsrData, setDsrData] = useState({});
     const [dsrStatus, setDsrStatus] = useState('');
+    const [dsrFreshness, setDsrFreshness] = useState({ freshAsOf: null, pending: false });
     const [loading, setLoading] = useState(true);
     const [isPrinting, setIsPrinting] = useState(false);
     const [showAllItems, setShowAllItems] = useState(false);
@@ -174,9 +175,14 @@ const DailySaleReport = () => {
             }
             if (!storeInfo.code) return;
             const apiDate = formatDateForApi(isoDate);
-            const response = await axios.get(`/api/dsr/by-store-date?store=${encodeURIComponent(storeInfo.code)}&date=${apiDate}`, {
+            // Wait for queued STO/STI refreshes so the figures include the latest transfers
+            const response = await axios.get(`/api/dsr/by-store-date?store=${encodeURIComponent(storeInfo.code)}&date=${apiDate}&waitForFresh=true`, {
                 headers: { 'Authorization': `Bearer ${token}` }
             });
+            setDsrFreshness({
+                freshAsOf: response.headers['x-dsr-fresh-as-of'] || null,
+                pending: response.headers['x-dsr-refresh-pending'] === 'true'
+            });
             const map = {};
             (response.data || []).forEach(row => {
                 const ic = row.itemCode;
@@ -833,7 +839,7 @@ const DailySaleReport = () => {
 
             setLoading(true);
             const response = await axios.get('/api/dsr/export', {
-                params: { store: storeInfo.code, date: apiDate },
+                params: { store: storeInfo.code, date: apiDate, stream: true, waitForFresh: true },
                 headers: { 'Authorization': `Bearer ${token}` },
                 responseType: 'blob'
             });
@@ -871,7 +877,11 @@ const DailySaleReport = () => {
             link.parentNode.removeChild(link);
         } catch (error) {
             console.error('Error downloading DSR Excel', error);
-            showMessage('Failed to download report', 'error');
+            if (error.response?.status === 503) {
+                showMessage('DSR is still being refreshed, please try again shortly', 'error');
+            } else {
+                showMessage('Failed to download report', 'error');
+            }
         } finally {
             setLoading(false);
         }
@@ -914,6 +924,13 @@ const DailySaleReport = () => {
                         <ArrowLeft size={24} color="#333" />
                     </button>
                     <h2>DAILY SALE STATEMENT IMFL SHOP &nbsp;<span className="header-value">{storeInfo.code} {storeInfo.name}</span></h2>
+                    {(dsrFreshness.pending || dsrFreshness.freshAsOf) && (
+                        <span style={{ fontSize: '0.85rem', color: dsrFreshness.pending ? '#dc3545' : '#666', marginLeft: '10px' }}>
+                            {dsrFreshness.pending
+                                ? 'Refresh pending - figures may not include the latest transfers'
+                                : `Updated ${new Date(dsrFreshness.freshAsOf).toLocaleString('en-IN')}`}
+                        </span>
+                    )}
                 </div>
                 {isViewMode ? (
                     <div style={{ display: 'flex', alignItems: 'center', gap: '15px' }}>
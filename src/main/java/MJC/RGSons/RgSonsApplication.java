@@ -2,8 +2,10 @@ package MJC.RGSons;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class RgSonsApplication {
 
 	public static void main(String[] args) {
@@ -3,16 +3,22 @@ package MJC.RGSons.controller;
 import MJC.RGSons.dto.ClosingStockDetailedReportDTO;
 import MJC.RGSons.dto.ClosingStockReportDTO;
 import MJC.RGSons.service.ClosingStockReportService;
+import MJC.RGSons.service.ClosingStockSnapshotService;
+import MJC.RGSons.service.InventorySnapshotService;
+import MJC.RGSons.util.BusinessDates;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/reports/closing-stock")
@@ -22,6 +28,24 @@ public class ClosingStockReportController {
     @Autowired
     private ClosingStockReportService service;
 
+    @Autowired
+    private ClosingStockSnapshotService closingStockSnapshotService;
+
+    @Autowired
+    private InventorySnapshotService inventorySnapshotService;
+
+    // Recompute the closing stock snapshot from Inventory_Master (all stores when storeCode is omitted)
+    @PostMapping("/snapshot/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildSnapshot(@RequestParam(required = false) String storeCode) {
+        return ResponseEntity.ok(closingStockSnapshotService.rebuild(storeCode));
+    }
+
+    // Take today's inventory snapshot now (normally taken by the nightly job)
+    @PostMapping("/inventory-snapshot")
+    public ResponseEntity<Map<String, Object>> takeInventorySnapshot() {
+        return ResponseEntity.ok(inventorySnapshotService.takeSnapshot(LocalDate.now()));
+    }
+
     @GetMapping("/zones")
     public ResponseEntity<List<String>> getZones() {
         return ResponseEntity.ok(service.getZones());
@@ -36,22 +60,27 @@ public class ClosingStockReportController {
     public ResponseEntity<List<ClosingStockReportDTO>> getReport(
             @RequestParam(required = false) String zone,
             @RequestParam(required = false) String district,
-            @RequestParam(defaultValue = "MRP") String valuationMethod) {
-        return ResponseEntity.ok(service.getReportData(zone, district, valuationMethod));
+            @RequestParam(defaultValue = "MRP") String valuationMethod,
+            @RequestParam(defaultValue = "false") boolean realtime,
+            @RequestParam(required = false) String asOf) {
+        return ResponseEntity.ok(service.getReportData(zone, district, valuationMethod, realtime, asOfDate(asOf)));
     }
 
     @GetMapping("/detailed")
     public ResponseEntity<ClosingStockDetailedReportDTO> getDetailedReport(
             @RequestParam String storeCode,
-            @RequestParam(defaultValue = "MRP") String valuationMethod) {
-        return ResponseEntity.ok(service.getDetailedReportData(storeCode, valuationMethod));
+            @RequestParam(defaultValue = "MRP") String valuationMethod,
+            @RequestParam(required = false) String asOf) {
+        return ResponseEntity.ok(service.getDetailedReportData(storeCode, valuationMethod, asOfDate(asOf)));
     }
 
     @GetMapping("/columns")
     public ResponseEntity<List<String>> getColumns(
             @RequestParam(required = false) String zone,
-            @RequestParam(required = false) String district) {
-        return ResponseEntity.ok(service.getDynamicColumns(zone, district));
+            @RequestParam(required = false) String district,
+            @RequestParam(defaultValue = "false") boolean realtime,
+            @RequestParam(required = false) String asOf) {
+        return ResponseEntity.ok(service.getDynamicColumns(zone, district, realtime, asOfDate(asOf)));
     }
 
     @GetMapping("/export")
@@ -59,9 +88,11 @@ public class ClosingStockReportController {
             @RequestParam(required = false) String zone,
             @RequestParam(required = false) String district,
             @RequestParam(required = false) String storeCode,
-            @RequestParam(defaultValue = "MRP") String valuationMethod) throws IOException {
+            @RequestParam(defaultValue = "MRP") String valuationMethod,
+            @RequestParam(defaultValue = "false") boolean realtime,
+            @RequestParam(required = false) String asOf) throws IOException {
         
-        ByteArrayInputStream in = service.exportToExcel(zone, district, storeCode, valuationMethod);
+        ByteArrayInputStream in = service.exportToExcel(zone, district, storeCode, valuationMethod, realtime, asOfDate(asOf));
         
         HttpHeaders headers = new HttpHeaders();
         headers.add("Content-Disposition", "attachment; filename=ClosingStockReport.xlsx");
@@ -72,4 +103,43 @@ public class ClosingStockReportController {
                 .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
                 .body(new InputStreamResource(in));
     }
+
+    /**
+     * Item x size closing stock of every store in the zone/district, written to the response
+     * while the rows are read.
+     */
+    @GetMapping("/export/detailed")
+    public ResponseEntity<StreamingResponseBody> exportZoneDetailedReport(
+            @RequestParam(required = false) String zone,
+            @RequestParam(required = false) String district,
+            @RequestParam(defaultValue = "MRP") String valuationMethod,
+            @RequestParam(required = false) String asOf) {
+
+        LocalDate asOfDate = asOfDate(asOf);
+        // Fails here rather than inside the body, where the response would already be a 200
+        service.checkAsOf(asOfDate);
+        StreamingResponseBody body = out -> service.exportZoneDetailedToExcel(zone, district, valuationMethod, asOfDate, out);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Content-Disposition", "attachment; filename=ClosingStockDetailedReport.xlsx");
+
+        return ResponseEntity
+                .ok()
+                .headers(headers)
+                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                .body(body);
+    }
+
+    // Closing stock at the end of this business date; omitted for the current stock
+    private static LocalDate asOfDate(String asOf) {
+        return asOf == null || asOf.isEmpty() ? null : BusinessDates.require(asOf);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, Object>> handleBadRequest(IllegalArgumentException e) {
+        Map<String, Object> response = new java.util.HashMap<>();
+        response.put("success", false);
+        response.put("message", e.getMessage());
+        return ResponseEntity.badRequest().body(response);
+    }
 }
@@ -4,21 +4,25 @@ import MJC.RGSons.dto.DSRSaveRequest;
 import MJC.RGSons.model.DSR;
 import MJC.RGSons.model.DSRHead;
 import MJC.RGSons.repository.DSRRepository;
+import MJC.RGSons.service.DSRRefreshQueue;
 import MJC.RGSons.service.DSRService;
+import MJC.RGSons.util.BusinessDates;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/dsr")
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = {"X-DSR-Fresh-As-Of", "X-DSR-Refresh-Pending"})
 public class DSRController {
 
     @Autowired
@@ -30,12 +34,39 @@ public class DSRController {
     @Autowired
     private DSRService dsrService;
 
+    @Autowired
+    private DSRRefreshQueue dsrRefreshQueue;
+
+    // How long an export waits for a queued refresh before giving up
+    private static final long FRESHNESS_TIMEOUT_MS = 60000;
+
+    private static final String XLSX_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+    /**
+     * waitForFresh: wait for queued STO/STI refreshes of the store-day first. If they do not
+     * finish in time the current rows are returned with X-DSR-Refresh-Pending set.
+     */
     @GetMapping("/by-store-date")
     public ResponseEntity<List<DSR>> getDsrByStoreAndDate(
+            @RequestParam String store,
+            @RequestParam String date,
+            @RequestParam(defaultValue = "false") boolean waitForFresh) {
+        java.time.LocalDate day = BusinessDates.require(date);
+        boolean fresh = ensureFresh(store, date, waitForFresh, false);
+        List<DSR> dsrs = dsrRepository.findByStoreAndBusinessDay(store, day, BusinessDates.storedForms(day));
+        HttpHeaders headers = freshnessHeaders(store, date);
+        if (!fresh) {
+            headers.add("X-DSR-Refresh-Pending", "true");
+        }
+        return ResponseEntity.ok().headers(headers).body(dsrs);
+    }
+
+    // The DSR sheet pivoted server-side: brands, items with per-size figures, brand and grand totals
+    @GetMapping("/grid")
+    public ResponseEntity<Map<String, Object>> getDsrGrid(
             @RequestParam String store,
             @RequestParam String date) {
-        List<DSR> dsrs = dsrRepository.findByStoreAndBusinessDate(store, date);
-        return ResponseEntity.ok(dsrs);
+        return ResponseEntity.ok(dsrService.getDSRGrid(store, date));
     }
 
     @GetMapping("/head")
@@ -58,8 +89,8 @@ public class DSRController {
     @PostMapping("/save")
     public ResponseEntity<String> saveDSR(@RequestBody DSRSaveRequest request) {
         try {
-            dsrService.saveDSR(request);
-            return ResponseEntity.ok("DSR saved successfully");
+            Map<String, Integer> counts = dsrService.saveDSR(request);
+            return ResponseEntity.ok("DSR saved successfully (updated " + counts.get("updated") + ", inserted " + counts.get("inserted") + ")");
         } catch (Exception e) {
             e.printStackTrace(); // Log the full stack trace
             return ResponseEntity.badRequest().body("Error saving DSR: " + e.getMessage());
@@ -72,32 +103,93 @@ public class DSRController {
             @RequestParam String date, 
             @RequestParam String user) {
         try {
-            dsrService.populateDSR(store, date, user);
-            return ResponseEntity.ok("DSR refreshed successfully");
+            Map<String, Integer> counts = dsrService.populateDSR(store, date, user);
+            return ResponseEntity.ok("DSR refreshed successfully (inserted " + counts.get("inserted") + ", updated " + counts.get("updated") + ")");
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.badRequest().body("Error refreshing DSR: " + e.getMessage());
         }
     }
 
+    // When the store-day's DSR was last refreshed and whether a refresh is still queued or running
+    @GetMapping("/freshness")
+    public ResponseEntity<Map<String, Object>> getFreshness(
+            @RequestParam String store,
+            @RequestParam String date) {
+        return ResponseEntity.ok(dsrRefreshQueue.getStatus(store, date));
+    }
+
+    /**
+     * waitForFresh: wait for queued STO/STI refreshes of the store-day first.
+     * force: refresh now (skipping the queue delay) and wait for it.
+     */
     @GetMapping("/export")
     public ResponseEntity<InputStreamResource> exportDsr(
             @RequestParam String store,
-            @RequestParam String date) {
+            @RequestParam String date,
+            @RequestParam(defaultValue = "false") boolean waitForFresh,
+            @RequestParam(defaultValue = "false") boolean force) {
         try {
-            ByteArrayInputStream in = dsrService.exportDSRToExcel(store, date);
+            if (!ensureFresh(store, date, waitForFresh, force)) {
+                return ResponseEntity.status(503).build();
+            }
 
-            HttpHeaders headers = new HttpHeaders();
-            String filename = "DSR_" + store + "_" + date + ".xlsx";
-            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename);
+            ByteArrayInputStream in = dsrService.exportDSRToExcel(store, date);
 
             return ResponseEntity.ok()
-                    .headers(headers)
-                    .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                    .headers(exportHeaders(store, date))
+                    .contentType(MediaType.parseMediaType(XLSX_CONTENT_TYPE))
                     .body(new InputStreamResource(in));
         } catch (IOException e) {
             e.printStackTrace();
             return ResponseEntity.internalServerError().build();
         }
     }
+
+    /**
+     * Same workbook as /export, written to the response as it is built instead of being
+     * buffered in memory first.
+     */
+    @GetMapping(value = "/export", params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> exportDsrStream(
+            @RequestParam String store,
+            @RequestParam String date,
+            @RequestParam(defaultValue = "false") boolean waitForFresh,
+            @RequestParam(defaultValue = "false") boolean force) {
+        if (!ensureFresh(store, date, waitForFresh, force)) {
+            return ResponseEntity.status(503).build();
+        }
+
+        StreamingResponseBody body = out -> dsrService.exportDSRToExcel(store, date, out);
+
+        return ResponseEntity.ok()
+                .headers(exportHeaders(store, date))
+                .contentType(MediaType.parseMediaType(XLSX_CONTENT_TYPE))
+                .body(body);
+    }
+
+    private boolean ensureFresh(String store, String date, boolean waitForFresh, boolean force) {
+        if (force) {
+            return dsrRefreshQueue.refreshNow(store, date, null, FRESHNESS_TIMEOUT_MS);
+        } else if (waitForFresh) {
+            return dsrRefreshQueue.awaitFresh(store, date, FRESHNESS_TIMEOUT_MS);
+        }
+        return true;
+    }
+
+    private HttpHeaders exportHeaders(String store, String date) {
+        HttpHeaders headers = freshnessHeaders(store, date);
+        String filename = "DSR_" + store + "_" + date + ".xlsx";
+        headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename);
+        return headers;
+    }
+
+    private HttpHeaders freshnessHeaders(String store, String date) {
+        HttpHeaders headers = new HttpHeaders();
+        Object freshAsOf = dsrRefreshQueue.getStatus(store, date).get("freshAsOf");
+        if (freshAsOf != null) {
+            headers.add("X-DSR-Fresh-As-Of", freshAsOf.toString());
+        }
+        return headers;
+    }
 }
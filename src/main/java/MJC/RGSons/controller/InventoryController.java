@@ -1,7 +1,9 @@
 package MJC.RGSons.controller;
 
 import MJC.RGSons.model.InventoryMaster;
+import MJC.RGSons.service.InventoryReconciliationService;
 import MJC.RGSons.service.InventoryService;
+import MJC.RGSons.service.StockJournalService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -19,6 +21,12 @@ public class InventoryController {
     @Autowired
     private InventoryService inventoryService;
 
+    @Autowired
+    private StockJournalService stockJournalService;
+
+    @Autowired
+    private InventoryReconciliationService inventoryReconciliationService;
+
     @GetMapping
     public ResponseEntity<List<InventoryMaster>> getAllInventory() {
         return ResponseEntity.ok(inventoryService.getAllInventory());
@@ -39,6 +47,70 @@ public class InventoryController {
         }
     }
 
+    // Stock journal of one SKU (all sizes when sizeCode is omitted), newest first
+    @GetMapping("/movements")
+    public ResponseEntity<Map<String, Object>> getMovements(
+            @RequestParam String storeCode,
+            @RequestParam String itemCode,
+            @RequestParam(required = false) String sizeCode,
+            @RequestParam(defaultValue = "200") int limit) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("success", true);
+            response.put("movements", stockJournalService.getMovements(storeCode, itemCode, sizeCode, limit));
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "Error fetching stock movements: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    // Recompute Inventory_Master from the stock journal (all stores in parallel when storeCode is omitted)
+    @PostMapping("/rebuild-from-journal")
+    public ResponseEntity<Map<String, Object>> rebuildFromJournal(@RequestParam(required = false) String storeCode) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("success", true);
+            response.putAll(stockJournalService.rebuild(storeCode));
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "Error rebuilding inventory: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    // Start checking Inventory_Master against its counters, the stock documents and the latest DSR (all stores when storeCode is omitted)
+    @PostMapping("/reconcile")
+    public ResponseEntity<Map<String, Object>> startReconciliation(
+            @RequestParam(required = false) String storeCode,
+            @RequestParam(defaultValue = "false") boolean autoCorrect) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("success", true);
+            response.put("runId", inventoryReconciliationService.start(storeCode, autoCorrect));
+            return ResponseEntity.accepted().body(response);
+        } catch (IllegalStateException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        }
+    }
+
+    @GetMapping("/reconcile/{runId}")
+    public ResponseEntity<Map<String, Object>> getReconciliation(@PathVariable String runId) {
+        Map<String, Object> run = inventoryReconciliationService.getRun(runId);
+        return run != null ? ResponseEntity.ok(run) : ResponseEntity.notFound().build();
+    }
+
+    @GetMapping("/reconcile/{runId}/discrepancies")
+    public ResponseEntity<List<Map<String, Object>>> getDiscrepancies(
+            @PathVariable String runId,
+            @RequestParam(required = false) String storeCode) {
+        return ResponseEntity.ok(inventoryReconciliationService.getDiscrepancies(runId, storeCode));
+    }
+
     @GetMapping("/stock")
     public ResponseEntity<Map<String, Object>> getStock(
             @RequestParam String storeCode,
@@ -364,10 +364,11 @@ public class ItemController {
     }
 
     @GetMapping("/search")
-    public ResponseEntity<Map<String, Object>> searchItems(@RequestParam String query) {
+    public ResponseEntity<Map<String, Object>> searchItems(@RequestParam String query,
+                                                           @RequestParam(defaultValue = "0") int limit) {
         Map<String, Object> response = new HashMap<>();
         try {
-            List<Item> items = itemService.searchItems(query);
+            List<Item> items = itemService.searchItems(query, limit);
             response.put("success", true);
             response.put("message", "Items search completed");
             response.put("items", items);
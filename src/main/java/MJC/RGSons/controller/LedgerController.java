@@ -2,6 +2,8 @@ package MJC.RGSons.controller;
 
 import MJC.RGSons.model.Ledger;
 import MJC.RGSons.service.LedgerService;
+import MJC.RGSons.service.MasterListService;
+import MJC.RGSons.service.VersionedList;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -16,9 +18,18 @@ public class LedgerController {
     @Autowired
     private LedgerService ledgerService;
 
+    @Autowired
+    private MasterListService masterListService;
+
+    // ETag / Last-Modified let Spring answer a matching conditional GET with 304;
+    // since returns only the ledgers changed or removed after that version
     @GetMapping
-    public ResponseEntity<List<Ledger>> getAllLedgers() {
-        return ResponseEntity.ok(ledgerService.getAllLedgers());
+    public ResponseEntity<?> getAllLedgers(@RequestParam(required = false) Long since) {
+        if (since != null) {
+            return ResponseEntity.ok(masterListService.changesSince(MasterListService.ListType.LEDGERS, since));
+        }
+        VersionedList.View view = masterListService.view(MasterListService.ListType.LEDGERS);
+        return ResponseEntity.ok().eTag(view.etag(null)).lastModified(view.getLastModified()).body(view.getRows());
     }
 
     @GetMapping("/types")
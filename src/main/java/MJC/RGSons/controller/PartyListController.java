@@ -1,18 +1,17 @@
 package MJC.RGSons.controller;
 
-import MJC.RGSons.model.Party;
-import MJC.RGSons.service.SalesService;
+import MJC.RGSons.service.MasterListService;
+import MJC.RGSons.service.VersionedList;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api")
@@ -20,34 +19,18 @@ import java.util.stream.Collectors;
 public class PartyListController {
 
     @Autowired
-    private SalesService salesService;
+    private MasterListService masterListService;
 
+    // ETag / Last-Modified let Spring answer If-None-Match and If-Modified-Since with a 304
     @GetMapping("/PartyList")
-    public ResponseEntity<Map<String, Object>> getPartyList() {
+    public ResponseEntity<Map<String, Object>> getPartyList(@RequestParam(required = false) Long since) {
+        if (since != null) {
+            return ResponseEntity.ok(masterListService.changesSince(MasterListService.ListType.PARTIES, since));
+        }
+        VersionedList.View view = masterListService.view(MasterListService.ListType.PARTIES);
         Map<String, Object> response = new HashMap<>();
-        List<Party> parties = salesService.getAllParties();
-
-        List<Map<String, Object>> formattedParties = parties.stream().map(p -> {
-            Map<String, Object> map = new HashMap<>();
-            map.put("id", p.getId());
-            map.put("code", p.getCode());
-            map.put("name", p.getName());
-            map.put("address", p.getAddress());
-            map.put("city", p.getCity());
-            map.put("state", p.getState());
-            map.put("district", p.getDistrict());
-            map.put("pin", p.getPin());
-            map.put("phone", p.getPhone());
-            map.put("email", p.getEmail());
-            map.put("pan", p.getPan());
-            map.put("gstNumber", p.getGstNumber());
-            map.put("vatNo", p.getVatNo());
-            map.put("type", p.getType());
-            map.put("status", p.getStatus());
-            return map;
-        }).collect(Collectors.toList());
-
-        response.put("PartyList", formattedParties);
-        return ResponseEntity.ok(response);
+        response.put("PartyList", view.getRows());
+        response.put("version", view.getVersion());
+        return ResponseEntity.ok().eTag(view.etag(null)).lastModified(view.getLastModified()).body(response);
     }
 }
@@ -5,9 +5,12 @@ import MJC.RGSons.model.PurHead;
 import MJC.RGSons.model.PurItem;
 import MJC.RGSons.model.PurLedger;
 import MJC.RGSons.service.PurchaseService;
+import MJC.RGSons.service.TransactionExportService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.Map;
@@ -20,6 +23,24 @@ public class PurchaseController {
     @Autowired
     private PurchaseService purchaseService;
 
+    @Autowired
+    private TransactionExportService transactionExportService;
+
+    /**
+     * Same payload as /PurchaseData, written invoice by invoice so heap use stays flat however many invoices there are.
+     */
+    @GetMapping(value = "/PurchaseData", params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> getPurchaseDataStream() {
+        StreamingResponseBody body = out -> {
+            try {
+                transactionExportService.streamPurchaseData(out);
+            } catch (java.sql.SQLException e) {
+                throw new java.io.IOException("Error streaming PurchaseData: " + e.getMessage(), e);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
     @GetMapping("/PurchaseData")
     public ResponseEntity<Map<String, Object>> getPurchaseData() {
         List<PurchaseTransactionDTO> transactions = purchaseService.getPurchaseData();
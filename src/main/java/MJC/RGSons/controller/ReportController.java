@@ -2,6 +2,7 @@ package MJC.RGSons.controller;
 
 import MJC.RGSons.dto.CategorySalesDTO;
 import MJC.RGSons.dto.StoreSalesDTO;
+import MJC.RGSons.service.DailySalesSummaryService;
 import MJC.RGSons.service.ReportService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
@@ -10,6 +11,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/reports")
@@ -19,6 +21,9 @@ public class ReportController {
     @Autowired
     private ReportService reportService;
 
+    @Autowired
+    private DailySalesSummaryService dailySalesSummaryService;
+
     @GetMapping("/sales/store-wise")
     public ResponseEntity<List<StoreSalesDTO>> getStoreWiseSales(
             @RequestParam("startDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
@@ -36,4 +41,20 @@ public class ReportController {
         List<CategorySalesDTO> sales = reportService.getCategoryWiseSales(startDate, endDate);
         return ResponseEntity.ok(sales);
     }
+
+    // Recomputes daily_sales_summary from the raw sales tables for one store (or all) and a day range
+    @PostMapping("/sales-summary/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildSalesSummary(
+            @RequestParam(value = "storeCode", required = false) String storeCode,
+            @RequestParam("startDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(value = "endDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+
+        if (endDate == null) {
+            endDate = startDate;
+        }
+        if (endDate.isBefore(startDate)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "endDate is before startDate"));
+        }
+        return ResponseEntity.ok(dailySalesSummaryService.rebuild(storeCode, startDate, endDate));
+    }
 }
@@ -2,13 +2,18 @@ package MJC.RGSons.controller;
 
 import MJC.RGSons.dto.SalesTransactionDTO;
 import MJC.RGSons.model.Item;
-import MJC.RGSons.model.Party;
 import MJC.RGSons.model.TranItem;
 import MJC.RGSons.model.TranLedger;
+import MJC.RGSons.service.MasterListService;
+import MJC.RGSons.service.SalesFeedService;
 import MJC.RGSons.service.SalesService;
+import MJC.RGSons.service.TransactionExportService;
+import MJC.RGSons.service.VersionedList;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.Map;
@@ -23,20 +28,50 @@ public class SalesController {
     @Autowired
     private SalesService salesService;
 
+    @Autowired
+    private TransactionExportService transactionExportService;
+
+    @Autowired
+    private SalesFeedService salesFeedService;
+
+    @Autowired
+    private MasterListService masterListService;
+
     @GetMapping("/drafts")
-    public ResponseEntity<List<SalesTransactionDTO>> getDrafts(@RequestParam String storeCode) {
-        List<SalesTransactionDTO> drafts = salesService.getDrafts(storeCode);
+    public ResponseEntity<List<SalesTransactionDTO>> getDrafts(@RequestParam String storeCode,
+                                                               @RequestParam(defaultValue = "false") boolean summary) {
+        List<SalesTransactionDTO> drafts = salesService.getDrafts(storeCode, summary);
         return ResponseEntity.ok(drafts);
     }
 
+    @GetMapping("/drafts/{invoiceNo}")
+    public ResponseEntity<SalesTransactionDTO> getDraft(@PathVariable String invoiceNo,
+                                                        @RequestParam(required = false) String storeCode) {
+        SalesTransactionDTO draft = salesService.getDraft(invoiceNo, storeCode);
+        if (draft == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(draft);
+    }
+
     @GetMapping("/parties")
-    public List<Party> getAllParties() {
-        return salesService.getPartiesByType("Vendor");
+    public ResponseEntity<?> getAllParties(@RequestParam(required = false) Long since) {
+        return masterList(MasterListService.ListType.VENDORS, since);
     }
 
     @GetMapping("/items")
-    public List<Item> getAllItems() {
-        return salesService.getAllItems();
+    public ResponseEntity<?> getAllItems(@RequestParam(required = false) Long since) {
+        return masterList(MasterListService.ListType.ITEMS, since);
+    }
+
+    // Full list with ETag / Last-Modified (Spring answers a matching conditional GET with 304),
+    // or only the changes after version since
+    private ResponseEntity<?> masterList(MasterListService.ListType type, Long since) {
+        if (since != null) {
+            return ResponseEntity.ok(masterListService.changesSince(type, since));
+        }
+        VersionedList.View view = masterListService.view(type);
+        return ResponseEntity.ok().eTag(view.etag(null)).lastModified(view.getLastModified()).body(view.getRows());
     }
 
     @GetMapping("/items/{code}")
@@ -95,6 +130,21 @@ public class SalesController {
         return ResponseEntity.ok(salesService.generateInvoiceNumber(storeCode));
     }
 
+    /**
+     * Same payload as /SalesData, written invoice by invoice so heap use stays flat however many invoices there are.
+     */
+    @GetMapping(value = "/SalesData", params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> getSalesDataStream() {
+        StreamingResponseBody body = out -> {
+            try {
+                transactionExportService.streamSalesData(out);
+            } catch (java.sql.SQLException e) {
+                throw new java.io.IOException("Error streaming SalesData: " + e.getMessage(), e);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
     @GetMapping("/SalesData")
     public ResponseEntity<Map<String, Object>> getSalesData() {
         Map<String, Object> response = new HashMap<>();
@@ -102,4 +152,38 @@ public class SalesController {
         response.put("Invoices", transactions);
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * Incremental feed for the Tally import: pending SUBMITTED invoices after {@code since}.
+     * Reading a page changes nothing; a page is acknowledged with POST /SalesData/ack.
+     */
+    @GetMapping("/SalesData/feed")
+    public ResponseEntity<Map<String, Object>> getSalesDataFeed(
+            @RequestParam(defaultValue = "0") long since,
+            @RequestParam(defaultValue = "" + SalesFeedService.DEFAULT_PAGE_SIZE) int pageSize) {
+        return ResponseEntity.ok(salesFeedService.getPage(since, pageSize));
+    }
+
+    @PostMapping("/SalesData/ack")
+    public ResponseEntity<Map<String, Object>> acknowledgeSalesData(@RequestBody Map<String, Object> payload) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            int acknowledged = 0;
+            Object token = payload.get("continuationToken");
+            if (token != null) {
+                acknowledged += salesFeedService.acknowledge(token.toString());
+            }
+            Object invoiceNos = payload.get("invoiceNos");
+            if (invoiceNos instanceof List<?> list && !list.isEmpty()) {
+                acknowledged += salesFeedService.acknowledgeInvoices(list.stream().map(String::valueOf).toList());
+            }
+            response.put("success", true);
+            response.put("acknowledged", acknowledged);
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
 }
@@ -0,0 +1,22 @@
+package MJC.RGSons.controller;
+
+import MJC.RGSons.service.SequenceGeneratorService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/sequences")
+@CrossOrigin(origins = "*")
+public class SequenceController {
+
+    @Autowired
+    private SequenceGeneratorService sequenceGeneratorService;
+
+    @GetMapping("/metrics")
+    public ResponseEntity<Map<String, Object>> getMetrics() {
+        return ResponseEntity.ok(sequenceGeneratorService.getMetrics());
+    }
+}
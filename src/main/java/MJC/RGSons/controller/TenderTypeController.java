@@ -1,11 +1,10 @@
 package MJC.RGSons.controller;
 
-import MJC.RGSons.model.TenderType;
-import MJC.RGSons.service.TenderTypeService;
+import MJC.RGSons.service.MasterListService;
+import MJC.RGSons.service.VersionedList;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import java.util.List;
 
 @RestController
 @RequestMapping("/api/tender-types")
@@ -13,15 +12,24 @@ import java.util.List;
 public class TenderTypeController {
 
     @Autowired
-    private TenderTypeService tenderTypeService;
+    private MasterListService masterListService;
 
     @GetMapping
-    public ResponseEntity<List<TenderType>> getAllTenderTypes() {
-        return ResponseEntity.ok(tenderTypeService.getAllTenderTypes());
+    public ResponseEntity<?> getAllTenderTypes(@RequestParam(required = false) Long since) {
+        return tenderTypes(MasterListService.ListType.TENDER_TYPES, since);
     }
 
     @GetMapping("/active")
-    public ResponseEntity<List<TenderType>> getActiveTenderTypes() {
-        return ResponseEntity.ok(tenderTypeService.getActiveTenderTypes());
+    public ResponseEntity<?> getActiveTenderTypes(@RequestParam(required = false) Long since) {
+        return tenderTypes(MasterListService.ListType.ACTIVE_TENDER_TYPES, since);
+    }
+
+    // ETag / Last-Modified let Spring answer a matching conditional GET with 304
+    private ResponseEntity<?> tenderTypes(MasterListService.ListType type, Long since) {
+        if (since != null) {
+            return ResponseEntity.ok(masterListService.changesSince(type, since));
+        }
+        VersionedList.View view = masterListService.view(type);
+        return ResponseEntity.ok().eTag(view.etag(null)).lastModified(view.getLastModified()).body(view.getRows());
     }
 }
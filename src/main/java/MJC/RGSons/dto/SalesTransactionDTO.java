@@ -1,6 +1,7 @@
 package MJC.RGSons.dto;
 
 import java.util.List;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
@@ -8,7 +9,7 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
     "invoiceNo", "invoiceDate", "partyCode", "partyName", "saleAmount", "totalAmount", 
     "tenderType", "storeCode", "storeName", "Sale_Led", "userId", "userName", "status",
     "otherSale", "totalExpenses", "totalTender",
-    "otherSaleDetails", "expenseDetails", "tenderDetails", "items"
+    "otherSaleDetails", "expenseDetails", "tenderDetails", "items", "guid", "action"
 })
 public class SalesTransactionDTO {
     private String invoiceNo;
@@ -40,6 +41,12 @@ public class SalesTransactionDTO {
 
     private List<SalesItemDTO> items;
 
+    // Tally feed only: voucher remote id and whether Tally should create or alter it
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String guid;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String action;
+
     // Getters and Setters
     public String getInvoiceNo() { return invoiceNo; }
     public void setInvoiceNo(String invoiceNo) { this.invoiceNo = invoiceNo; }
@@ -68,6 +75,12 @@ public class SalesTransactionDTO {
     public String getSaleLed() { return saleLed; }
     public void setSaleLed(String saleLed) { this.saleLed = saleLed; }
 
+    public String getGuid() { return guid; }
+    public void setGuid(String guid) { this.guid = guid; }
+
+    public String getAction() { return action; }
+    public void setAction(String action) { this.action = action; }
+
     public String getUserId() { return userId; }
     public void setUserId(String userId) { this.userId = userId; }
 
@@ -6,6 +6,9 @@ import jakarta.persistence.Id;
 import jakarta.persistence.Column;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import MJC.RGSons.util.BusinessDates;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -23,6 +26,10 @@ public class DSR {
     @Column(name = "Business_date")
     private String businessDate;
 
+    // Business_date as a real DATE, derived on save
+    @Column(name = "business_dt")
+    private LocalDate businessDt;
+
     @Column(name = "Item_code")
     private String itemCode;
 
@@ -195,4 +202,18 @@ public class DSR {
     public void setUpdatedAt(LocalDateTime updatedAt) {
         this.updatedAt = updatedAt;
     }
+
+    @PrePersist
+    @PreUpdate
+    public void syncBusinessDt() {
+        businessDt = BusinessDates.parse(businessDate);
+    }
+
+    public LocalDate getBusinessDt() {
+        return businessDt;
+    }
+
+    public void setBusinessDt(LocalDate businessDt) {
+        this.businessDt = businessDt;
+    }
 }
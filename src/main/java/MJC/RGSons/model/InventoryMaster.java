@@ -6,6 +6,10 @@ import jakarta.persistence.Id;
 import jakarta.persistence.Column;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import MJC.RGSons.util.BusinessDates;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
@@ -34,6 +38,10 @@ public class InventoryMaster {
     @Column(name = "business_date")
     private String businessDate;
 
+    // business_date as a real DATE; also written by the stock movement MERGE
+    @Column(name = "business_dt")
+    private LocalDate businessDt;
+
     @Column(name = "Opening")
     private Integer opening;
 
@@ -171,4 +179,18 @@ public class InventoryMaster {
     public void setUpdatedAt(LocalDateTime updatedAt) {
         this.updatedAt = updatedAt;
     }
+
+    @PrePersist
+    @PreUpdate
+    public void syncBusinessDt() {
+        businessDt = BusinessDates.parse(businessDate);
+    }
+
+    public LocalDate getBusinessDt() {
+        return businessDt;
+    }
+
+    public void setBusinessDt(LocalDate businessDt) {
+        this.businessDt = businessDt;
+    }
 }
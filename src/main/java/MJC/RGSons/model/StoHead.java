@@ -6,10 +6,14 @@ import jakarta.persistence.Id;
 import jakarta.persistence.Column;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import MJC.RGSons.util.BusinessDates;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.FetchType;
 import jakarta.persistence.Transient;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -23,6 +27,10 @@ public class StoHead {
     @Column(name = "date")
     private String date;
 
+    // STO date as a real DATE, derived on save
+    @Column(name = "sto_dt")
+    private LocalDate stoDt;
+
     @Column(name = "sto_number")
     private String stoNumber;
 
@@ -114,4 +122,13 @@ public class StoHead {
 
     public String getToStoreName() { return toStoreName; }
     public void setToStoreName(String toStoreName) { this.toStoreName = toStoreName; }
+
+    @PrePersist
+    @PreUpdate
+    public void syncStoDt() {
+        stoDt = BusinessDates.parse(date);
+    }
+
+    public LocalDate getStoDt() { return stoDt; }
+    public void setStoDt(LocalDate stoDt) { this.stoDt = stoDt; }
 }
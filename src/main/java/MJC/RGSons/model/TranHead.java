@@ -6,6 +6,10 @@ import jakarta.persistence.Id;
 import jakarta.persistence.Column;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import MJC.RGSons.util.BusinessDates;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
@@ -21,6 +25,10 @@ public class TranHead {
     @Column(name = "invoice_date")
     private String invoiceDate;
 
+    // invoice_date as a real DATE, set from invoiceDate on save; used for date-range filters
+    @Column(name = "invoice_dt")
+    private LocalDate invoiceDt;
+
     @Column(name = "party_code")
     private String partyCode;
 
@@ -57,6 +65,15 @@ public class TranHead {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    // Set when the Tally feed consumer acknowledges the invoice; NULL means not yet exported
+    @Column(name = "exported_at")
+    private LocalDateTime exportedAt;
+
+    // Remote id of the voucher once Tally has acknowledged it; kept across re-saves so a
+    // corrected invoice is sent as an alteration. Written only by SalesFeedService.
+    @Column(name = "export_guid", insertable = false, updatable = false)
+    private String exportGuid;
+
     public TranHead() {
         this.createdAt = LocalDateTime.now();
         this.updatedAt = LocalDateTime.now();
@@ -108,4 +125,16 @@ public class TranHead {
 
     public LocalDateTime getUpdatedAt() { return updatedAt; }
     public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
-}
\ No newline at end of file
+    public LocalDateTime getExportedAt() { return exportedAt; }
+    public void setExportedAt(LocalDateTime exportedAt) { this.exportedAt = exportedAt; }
+    public String getExportGuid() { return exportGuid; }
+
+    @PrePersist
+    @PreUpdate
+    public void syncInvoiceDt() {
+        invoiceDt = BusinessDates.parse(invoiceDate);
+    }
+
+    public LocalDate getInvoiceDt() { return invoiceDt; }
+    public void setInvoiceDt(LocalDate invoiceDt) { this.invoiceDt = invoiceDt; }
+}
@@ -6,6 +6,10 @@ import jakarta.persistence.Id;
 import jakarta.persistence.Column;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import MJC.RGSons.util.BusinessDates;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
@@ -25,6 +29,10 @@ public class TranLedger {
     @Column(name = "invoice_date")
     private String invoiceDate;
 
+    // DATE form of invoice_date (derived on save)
+    @Column(name = "invoice_dt")
+    private LocalDate invoiceDt;
+
     @Column(name = "store_code")
     private String storeCode;
 
@@ -99,4 +107,13 @@ public class TranLedger {
 
     public LocalDateTime getUpdatedAt() { return updatedAt; }
     public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+
+    @PrePersist
+    @PreUpdate
+    public void syncInvoiceDt() {
+        invoiceDt = BusinessDates.parse(invoiceDate);
+    }
+
+    public LocalDate getInvoiceDt() { return invoiceDt; }
+    public void setInvoiceDt(LocalDate invoiceDt) { this.invoiceDt = invoiceDt; }
 }
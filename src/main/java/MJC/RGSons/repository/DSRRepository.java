@@ -2,13 +2,19 @@ package MJC.RGSons.repository;
 
 import MJC.RGSons.model.DSR;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import java.time.LocalDate;
 import java.util.List;
 
 @Repository
 public interface DSRRepository extends JpaRepository<DSR, Integer> {
-    List<DSR> findByStoreAndBusinessDate(String store, String businessDate);
+    // By business_dt, or by the string date while the backfill has not set it; dates are BusinessDates.storedForms(day)
+    @Query("SELECT d FROM DSR d WHERE d.store = :store "
+            + "AND (d.businessDt = :day OR (d.businessDt IS NULL AND d.businessDate IN :dates))")
+    List<DSR> findByStoreAndBusinessDay(@Param("store") String store, @Param("day") LocalDate day,
+                                        @Param("dates") List<String> dates);
     
-    java.util.Optional<DSR> findByStoreAndBusinessDateAndItemCodeAndSizeCode(String store, String businessDate, String itemCode, String sizeCode);
+    java.util.Optional<DSR> findByStoreAndBusinessDtAndItemCodeAndSizeCode(String store, LocalDate businessDt, String itemCode, String sizeCode);
 }
@@ -20,9 +20,6 @@ public interface ItemRepository extends JpaRepository<Item, Integer> {
     // Standard JpaRepository method
     List<Item> findByItemNameContainingIgnoreCase(String name);
 
-    @Query("SELECT i FROM Item i WHERE LOWER(i.itemName) LIKE LOWER(CONCAT('%', ?1, '%')) OR LOWER(i.itemCode) LIKE LOWER(CONCAT('%', ?1, '%'))")
-    List<Item> searchByCodeOrName(String query);
-
     @Query("SELECT i FROM Item i WHERE LOWER(i.itemName) LIKE LOWER(CONCAT('%', ?1, '%')) OR LOWER(i.itemCode) LIKE LOWER(CONCAT('%', ?1, '%'))")
     org.springframework.data.domain.Page<Item> searchByCodeOrName(String query, org.springframework.data.domain.Pageable pageable);
 
@@ -9,6 +9,7 @@ import java.util.List;
 @Repository
 public interface PartyRepository extends JpaRepository<Party, Integer> {
     Party findByCode(String code);
+    List<Party> findByCodeIn(java.util.Collection<String> codes);
     List<Party> findByStatus(Boolean status);
     List<Party> findByType(String type);
     
@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @Repository
@@ -15,8 +16,13 @@ public interface StoHeadRepository extends JpaRepository<StoHead, Integer> {
     List<StoHead> findByToStoreAndReceivedStatusAndStatus(String toStore, String receivedStatus, String status);
     boolean existsByFromStoreOrToStore(String fromStore, String toStore);
 
-    @Query(value = "SELECT * FROM STO_head WHERE to_store = :toStore AND received_status = :receivedStatus AND status = 'SUBMITTED' AND TRY_CAST(date AS DATE) <= TRY_CAST(:businessDate AS DATE)", nativeQuery = true)
-    List<StoHead> findPendingStosByDate(@Param("toStore") String toStore, @Param("receivedStatus") String receivedStatus, @Param("businessDate") String businessDate);
+    // sto_dt, or the string date read as the backfill does while sto_dt is still NULL; sto_dt is
+    // compared on its own so the predicate stays sargable
+    @Query(value = "SELECT * FROM STO_head WHERE to_store = :toStore AND received_status = :receivedStatus AND status = 'SUBMITTED' "
+            + "AND (sto_dt <= :businessDate OR (sto_dt IS NULL "
+            + "AND COALESCE(TRY_CONVERT(DATE, date, 105), TRY_CONVERT(DATE, date, 23), TRY_CONVERT(DATE, date, 103)) <= :businessDate))",
+            nativeQuery = true)
+    List<StoHead> findPendingStosByDate(@Param("toStore") String toStore, @Param("receivedStatus") String receivedStatus, @Param("businessDate") LocalDate businessDate);
 
     @Query(value = "SELECT MAX(CAST(sto_number AS BIGINT)) FROM STO_head WHERE ISNUMERIC(sto_number) = 1", nativeQuery = true)
     Long findMaxStoNumber();
@@ -8,7 +8,6 @@ import org.springframework.stereotype.Repository;
 public interface TranHeadRepository extends JpaRepository<TranHead, Integer> {
     @org.springframework.data.jpa.repository.Query("SELECT t FROM TranHead t WHERE t.invoiceNo = ?1")
     java.util.Optional<TranHead> findByInvoiceNo(String invoiceNo);
-    java.util.List<TranHead> findByInvoiceDateIn(java.util.List<String> invoiceDates);
     java.util.List<TranHead> findByPartyCode(String partyCode);
     boolean existsByPartyCode(String partyCode);
     boolean existsByStoreCode(String storeCode);
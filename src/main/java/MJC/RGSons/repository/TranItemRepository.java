@@ -4,6 +4,7 @@ import MJC.RGSons.model.TranItem;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
@@ -13,8 +14,20 @@ import java.util.List;
 public interface TranItemRepository extends JpaRepository<TranItem, Integer> {
     List<TranItem> findByInvoiceNo(String invoiceNo);
     List<TranItem> findByInvoiceNoIn(List<String> invoiceNos);
-    List<TranItem> findByInvoiceDate(String invoiceDate);
-    List<TranItem> findByStoreCodeAndInvoiceDate(String storeCode, String invoiceDate);
+
+    // Lines of several invoices with item and size names resolved in the same query: [TranItem, itemName, sizeName]
+    @Query("SELECT t, i.itemName, s.name FROM TranItem t LEFT JOIN Item i ON i.itemCode = t.itemCode LEFT JOIN Size s ON s.code = t.sizeCode WHERE t.invoiceNo IN ?1 ORDER BY t.invoiceNo, t.id")
+    List<Object[]> findWithNamesByInvoiceNoIn(List<String> invoiceNos);
+
+    // Rows of a day by invoice_dt, or by their string date while the backfill has not set it;
+    // dates are BusinessDates.storedForms(day)
+    @Query("SELECT t FROM TranItem t WHERE t.invoiceDt = :day OR (t.invoiceDt IS NULL AND t.invoiceDate IN :dates)")
+    List<TranItem> findByInvoiceDay(@Param("day") LocalDate day, @Param("dates") List<String> dates);
+
+    @Query("SELECT t FROM TranItem t WHERE t.storeCode = :storeCode "
+            + "AND (t.invoiceDt = :day OR (t.invoiceDt IS NULL AND t.invoiceDate IN :dates))")
+    List<TranItem> findByStoreCodeAndInvoiceDay(@Param("storeCode") String storeCode, @Param("day") LocalDate day,
+                                                @Param("dates") List<String> dates);
     
     @Modifying
     @org.springframework.transaction.annotation.Transactional
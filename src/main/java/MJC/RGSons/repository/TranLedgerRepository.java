@@ -2,14 +2,23 @@ package MJC.RGSons.repository;
 
 import MJC.RGSons.model.TranLedger;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @Repository
 public interface TranLedgerRepository extends JpaRepository<TranLedger, Integer> {
     List<TranLedger> findByTranId(Integer tranId);
-    List<TranLedger> findByStoreCodeAndInvoiceDate(String storeCode, String invoiceDate);
+
+    // By invoice_dt, or by the string date while the backfill has not set it; see TranItemRepository
+    @Query("SELECT t FROM TranLedger t WHERE t.storeCode = :storeCode "
+            + "AND (t.invoiceDt = :day OR (t.invoiceDt IS NULL AND t.invoiceDate IN :dates))")
+    List<TranLedger> findByStoreCodeAndInvoiceDay(@Param("storeCode") String storeCode, @Param("day") LocalDate day,
+                                                  @Param("dates") List<String> dates);
+
     List<TranLedger> findByInvoiceNo(String invoiceNo);
     boolean existsByLedgerCode(String ledgerCode);
 }
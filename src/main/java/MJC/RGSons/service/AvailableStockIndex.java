@@ -0,0 +1,180 @@
+package MJC.RGSons.service;
+
+import MJC.RGSons.model.Item;
+import MJC.RGSons.util.StoreCodes;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per store, the items with positive closing stock, for "what can I sell here" searches
+ * without a database read.
+ *
+ * A store is loaded from Inventory_Master on first use, its head office alias rows included,
+ * and then kept current by {@link StockMovementService}: every posting is announced before
+ * its MERGE runs and its deltas are applied once the transaction commits. A load while a
+ * posting is in flight may or may not see it, so such a load is served but not kept.
+ */
+@Service
+public class AvailableStockIndex {
+
+    // One store's closing stock; guarded by its StoreState
+    private static final class StoreStock {
+        // "stored store code|item|size" -> closing, so alias rows stay separate as in the table
+        private final Map<String, Integer> closing = new HashMap<>();
+        // item -> rows of it with positive closing
+        private final Map<String, Integer> positiveRows = new HashMap<>();
+        private final Map<String, String> names = new HashMap<>();
+
+        void add(String storedAs, String itemCode, String sizeCode, int quantity) {
+            String key = storedAs + "|" + itemCode + "|" + sizeCode;
+            int before = closing.getOrDefault(key, 0);
+            int after = before + quantity;
+            closing.put(key, after);
+            if (before <= 0 && after > 0) {
+                positiveRows.merge(itemCode, 1, Integer::sum);
+            } else if (before > 0 && after <= 0) {
+                positiveRows.computeIfPresent(itemCode, (k, n) -> n > 1 ? n - 1 : null);
+            }
+        }
+
+        boolean inStock(String itemCode) {
+            return positiveRows.containsKey(itemCode);
+        }
+    }
+
+    private static final class StoreState {
+        private StoreStock stock;
+        private int pending;
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MasterDataRegistry masterDataRegistry;
+
+    private final Map<String, StoreState> stores = new ConcurrentHashMap<>();
+
+    /**
+     * Items of {@code candidates} with positive stock at the store, in the given order, as
+     * itemCode / itemName maps (the name as held in Inventory_Master).
+     */
+    public List<Map<String, String>> inStock(String storeCode, List<Item> candidates) {
+        StoreState state = state(storeCode);
+        synchronized (state) {
+            StoreStock stock = state.stock;
+            if (stock == null) {
+                stock = load(StoreCodes.normalize(storeCode));
+                if (state.pending == 0) {
+                    state.stock = stock;
+                }
+            }
+            List<Map<String, String>> items = new ArrayList<>();
+            for (Item candidate : candidates) {
+                if (stock.inStock(candidate.getItemCode())) {
+                    Map<String, String> item = new HashMap<>();
+                    item.put("itemCode", candidate.getItemCode());
+                    item.put("itemName", stock.names.get(candidate.getItemCode()));
+                    items.add(item);
+                }
+            }
+            return items;
+        }
+    }
+
+    /**
+     * Announces a posting to {@code storeCode}; call before its Inventory_Master write, in the
+     * same transaction. The closing deltas are applied if and when it commits.
+     */
+    public void posting(String storeCode, int closingSign, List<StockMovementService.Delta> rows) {
+        StoreState state = state(storeCode);
+        // Resolved now, while the transaction is still open
+        Map<String, String> names = new HashMap<>();
+        for (StockMovementService.Delta row : rows) {
+            names.putIfAbsent(row.getItemCode(), nameOf(row));
+        }
+        announce(state, committed -> {
+            if (committed && state.stock != null) {
+                for (StockMovementService.Delta row : rows) {
+                    state.stock.add(storeCode, row.getItemCode(), row.getSizeCode(), closingSign * row.getQuantity());
+                    state.stock.names.putIfAbsent(row.getItemCode(), names.get(row.getItemCode()));
+                }
+            }
+        });
+    }
+
+    /** Announces a wholesale rewrite of the store's rows; the store is reloaded after it ends. */
+    public void rewriting(String storeCode) {
+        StoreState state = state(storeCode);
+        announce(state, committed -> state.stock = null);
+    }
+
+    private interface Completion {
+        void run(boolean committed);
+    }
+
+    private void announce(StoreState state, Completion completion) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            // No transaction to wait for: the write is not done yet, so just forget the store
+            synchronized (state) {
+                state.stock = null;
+            }
+            return;
+        }
+        synchronized (state) {
+            state.pending++;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (state) {
+                    state.pending--;
+                    completion.run(status == STATUS_COMMITTED);
+                }
+            }
+        });
+    }
+
+    private StoreState state(String storeCode) {
+        return stores.computeIfAbsent(StoreCodes.normalize(storeCode), k -> new StoreState());
+    }
+
+    private StoreStock load(String storeCode) {
+        List<String> storedAs = StoreCodes.storedAs(storeCode);
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT Store_code, Item_code, Item_Name, Size_code, Closing FROM Inventory_Master WHERE Store_code IN (");
+        for (int i = 0; i < storedAs.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+
+        StoreStock stock = new StoreStock();
+        jdbcTemplate.query(sql.toString(), rs -> {
+            String itemCode = rs.getString("Item_code");
+            stock.add(rs.getString("Store_code"), itemCode, rs.getString("Size_code"), rs.getInt("Closing"));
+            String name = rs.getString("Item_Name");
+            if (name != null && (rs.getInt("Closing") > 0 || !stock.names.containsKey(itemCode))) {
+                stock.names.put(itemCode, name);
+            }
+        }, storedAs.toArray());
+        return stock;
+    }
+
+    // Name a new Inventory_Master row gets: the posted one, else the item master's
+    private String nameOf(StockMovementService.Delta row) {
+        if (row.getItemName() != null) {
+            return row.getItemName();
+        }
+        Item item = masterDataRegistry.item(row.getItemCode());
+        return item != null && item.getItemName() != null ? item.getItemName() : "";
+    }
+}
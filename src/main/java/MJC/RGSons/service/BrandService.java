@@ -16,6 +16,9 @@ public class BrandService {
     @Autowired
     private BrandRepository brandRepository;
 
+    @Autowired
+    private MasterDataRegistry masterDataRegistry;
+
     @Autowired
     private ItemRepository itemRepository;
 
@@ -48,7 +51,9 @@ public class BrandService {
         brand.setCreatedAt(LocalDateTime.now());
         brand.setUpdateAt(LocalDateTime.now());
         
-        return brandRepository.save(brand);
+        Brand saved = brandRepository.save(brand);
+        masterDataRegistry.changed(MasterDataRegistry.MasterType.BRAND);
+        return saved;
     }
     
     // Get all brands
@@ -113,7 +118,9 @@ public class BrandService {
             existingBrand.setStatus(brandDetails.getStatus());
             existingBrand.setUpdateAt(LocalDateTime.now());
             
-            return brandRepository.save(existingBrand);
+            Brand saved = brandRepository.save(existingBrand);
+            masterDataRegistry.changed(MasterDataRegistry.MasterType.BRAND);
+            return saved;
         } else {
             throw new RuntimeException("Brand not found with id: " + id);
         }
@@ -131,15 +138,18 @@ public class BrandService {
                 brand.setStatus(false);
                 brand.setUpdateAt(LocalDateTime.now());
                 brandRepository.save(brand);
+                masterDataRegistry.changed(MasterDataRegistry.MasterType.BRAND);
             } else {
                 // Not used in Items -> Hard Delete
                 try {
                     brandRepository.deleteById(id);
+                    masterDataRegistry.changed(MasterDataRegistry.MasterType.BRAND);
                 } catch (Exception e) {
                     // Fallback to soft delete
                     brand.setStatus(false);
                     brand.setUpdateAt(LocalDateTime.now());
                     brandRepository.save(brand);
+                    masterDataRegistry.changed(MasterDataRegistry.MasterType.BRAND);
                 }
             }
         } else {
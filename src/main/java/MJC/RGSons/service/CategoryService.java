@@ -16,6 +16,9 @@ public class CategoryService {
     @Autowired
     private CategoryRepository categoryRepository;
 
+    @Autowired
+    private MasterDataRegistry masterDataRegistry;
+
     @Autowired
     private ItemRepository itemRepository;
 
@@ -48,7 +51,9 @@ public class CategoryService {
         category.setCreatedAt(LocalDateTime.now());
         category.setUpdateAt(LocalDateTime.now());
         
-        return categoryRepository.save(category);
+        Category saved = categoryRepository.save(category);
+        masterDataRegistry.changed(MasterDataRegistry.MasterType.CATEGORY);
+        return saved;
     }
     
     // Get all categories
@@ -113,7 +118,9 @@ public class CategoryService {
             existingCategory.setStatus(categoryDetails.getStatus());
             existingCategory.setUpdateAt(LocalDateTime.now());
             
-            return categoryRepository.save(existingCategory);
+            Category saved = categoryRepository.save(existingCategory);
+            masterDataRegistry.changed(MasterDataRegistry.MasterType.CATEGORY);
+            return saved;
         } else {
             throw new RuntimeException("Category not found with id: " + id);
         }
@@ -131,15 +138,18 @@ public class CategoryService {
                 category.setStatus(false);
                 category.setUpdateAt(LocalDateTime.now());
                 categoryRepository.save(category);
+                masterDataRegistry.changed(MasterDataRegistry.MasterType.CATEGORY);
             } else {
                 // Not used in Items -> Hard Delete
                 try {
                     categoryRepository.deleteById(id);
+                    masterDataRegistry.changed(MasterDataRegistry.MasterType.CATEGORY);
                 } catch (Exception e) {
                     // Fallback to soft delete
                     category.setStatus(false);
                     category.setUpdateAt(LocalDateTime.now());
                     categoryRepository.save(category);
+                    masterDataRegistry.changed(MasterDataRegistry.MasterType.CATEGORY);
                 }
             }
         } else {
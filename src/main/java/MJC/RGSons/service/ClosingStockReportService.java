@@ -2,24 +2,47 @@ package MJC.RGSons.service;
 
 import MJC.RGSons.dto.ClosingStockDetailedReportDTO;
 import MJC.RGSons.dto.ClosingStockReportDTO;
+import MJC.RGSons.util.PivotMatrix;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
 import java.util.*;
 
 @Service
 public class ClosingStockReportService {
 
+    // Metric slots of the detailed sheet's pivot
+    private static final int QTY = 0;
+    private static final int AMT = 1;
+
+    // Rows fetched per round trip by the streamed report queries
+    private static final int FETCH_SIZE = 1000;
+
+    // Rows of the zone-wide workbook kept in memory before older ones are flushed to a temp file
+    private static final int EXPORT_ROW_WINDOW = 100;
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private ClosingStockSnapshotService closingStockSnapshotService;
+
+    @Autowired
+    private InventorySnapshotService inventorySnapshotService;
+
     public List<String> getZones() {
         String sql = "SELECT DISTINCT zone FROM store WHERE zone IS NOT NULL AND zone <> '' ORDER BY zone";
         return jdbcTemplate.queryForList(sql, String.class);
@@ -36,16 +59,37 @@ public class ClosingStockReportService {
         return jdbcTemplate.queryForList(sql, String.class, params.toArray());
     }
 
-    public List<String> getDynamicColumns(String zone, String district) {
+    /**
+     * Categories with closing stock in the zone/district. Read from closing_stock_snapshot
+     * unless {@code realtime} is set, the snapshot is not built yet or a past {@code asOf}
+     * date (null for now) is asked for.
+     */
+    public List<String> getDynamicColumns(String zone, String district, boolean realtime, LocalDate asOf) {
+        if (!isPast(asOf) && !realtime && closingStockSnapshotService.isReady()) {
+            StringBuilder sql = new StringBuilder();
+            sql.append("SELECT DISTINCT c.name ");
+            sql.append("FROM closing_stock_snapshot ss ");
+            sql.append("JOIN category c ON ss.category_code = c.code ");
+            sql.append("JOIN store s ON ss.store_code = s.store_code ");
+            sql.append("WHERE ss.valuation = ? AND ss.quantity <> 0 ");
+
+            List<Object> params = new ArrayList<>();
+            params.add(ClosingStockSnapshotService.VALUATION_MRP);
+            appendStoreFilter(sql, params, zone, district);
+            sql.append("ORDER BY c.name");
+
+            return jdbcTemplate.queryForList(sql.toString(), String.class, params.toArray());
+        }
+
+        List<Object> params = new ArrayList<>();
         StringBuilder sql = new StringBuilder();
         sql.append("SELECT DISTINCT c.name ");
-        sql.append("FROM Inventory_Master im ");
+        sql.append("FROM ").append(inventorySource(asOf, params)).append(" im ");
         sql.append("JOIN items i ON im.Item_code = i.item_code ");
         sql.append("JOIN category c ON i.category_code = c.code ");
         sql.append("JOIN store s ON im.Store_code = s.store_code ");
         sql.append("WHERE im.Closing <> 0 ");
 
-        List<Object> params = new ArrayList<>();
         if (zone != null && !zone.isEmpty()) {
             sql.append("AND s.zone = ? ");
             params.add(zone);
@@ -60,7 +104,17 @@ public class ClosingStockReportService {
         return jdbcTemplate.queryForList(sql.toString(), String.class, params.toArray());
     }
 
-    public List<ClosingStockReportDTO> getReportData(String zone, String district, String valuationMethod) {
+    /**
+     * Closing quantity and value per store and category at the end of {@code asOf} (null for
+     * now). Read from closing_stock_snapshot unless {@code realtime} is set, the snapshot is
+     * not built yet or a past date is asked for.
+     */
+    public List<ClosingStockReportDTO> getReportData(String zone, String district, String valuationMethod, boolean realtime, LocalDate asOf) {
+        if (!isPast(asOf) && !realtime && closingStockSnapshotService.isReady()) {
+            return getSnapshotReportData(zone, district, valuationMethod);
+        }
+
+        List<Object> params = new ArrayList<>();
         StringBuilder sql = new StringBuilder();
         sql.append("SELECT ");
         sql.append("  s.district, ");
@@ -68,19 +122,12 @@ public class ClosingStockReportService {
         sql.append("  c.name as category_name, ");
         
         // Dynamic price selection based on valuation method
-        String priceColumn = "pm.MRP"; // Default
-        if ("Purchase".equalsIgnoreCase(valuationMethod)) {
-            priceColumn = "pm.Purchase_Price";
-        } else if ("Sale".equalsIgnoreCase(valuationMethod)) {
-            priceColumn = "pm.Sale_Price";
-        } else if ("MRP".equalsIgnoreCase(valuationMethod)) {
-            priceColumn = "pm.MRP";
-        }
+        String priceColumn = priceColumn(valuationMethod);
 
         sql.append("  SUM(CAST(im.Closing AS DOUBLE PRECISION)) as total_qty, ");
         sql.append("  SUM(CAST(im.Closing AS DOUBLE PRECISION) * COALESCE(" + priceColumn + ", 0)) as total_amount ");
         
-        sql.append("FROM Inventory_Master im ");
+        sql.append("FROM ").append(inventorySource(asOf, params)).append(" im ");
         sql.append("JOIN store s ON im.Store_code = s.store_code ");
         sql.append("JOIN items i ON im.Item_code = i.item_code ");
         sql.append("JOIN category c ON i.category_code = c.code ");
@@ -88,7 +135,6 @@ public class ClosingStockReportService {
         
         sql.append("WHERE im.Closing <> 0 ");
 
-        List<Object> params = new ArrayList<>();
         if (zone != null && !zone.isEmpty()) {
             sql.append("AND s.zone = ? ");
             params.add(zone);
@@ -101,88 +147,115 @@ public class ClosingStockReportService {
         sql.append("GROUP BY s.district, s.store_name, c.name ");
         sql.append("ORDER BY s.district, s.store_name, c.name");
 
-        List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql.toString(), params.toArray());
+        // Pivot Data as the rows arrive; they are ordered by store, so only the current store is looked up
+        List<ClosingStockReportDTO> stores = new ArrayList<>();
+        streamRows(sql.toString(), params, rs -> {
+            String dist = rs.getString("district");
+            String store = rs.getString("store_name");
+            ClosingStockReportDTO dto = stores.isEmpty() ? null : stores.get(stores.size() - 1);
+            if (dto == null || !Objects.equals(dto.getDistrict(), dist) || !Objects.equals(dto.getStoreName(), store)) {
+                dto = new ClosingStockReportDTO(dist, store);
+                stores.add(dto);
+            }
+            dto.addCategoryData(rs.getString("category_name"), rs.getDouble("total_qty"), rs.getDouble("total_amount"));
+        });
 
-        // Pivot Data
-        Map<String, ClosingStockReportDTO> storeMap = new LinkedHashMap<>();
+        return stores;
+    }
 
-        for (Map<String, Object> row : rows) {
-            String dist = (String) row.get("district");
-            String store = (String) row.get("store_name");
-            String category = (String) row.get("category_name");
-            Double qty = ((Number) row.get("total_qty")).doubleValue();
-            Double amount = ((Number) row.get("total_amount")).doubleValue();
+    private List<ClosingStockReportDTO> getSnapshotReportData(String zone, String district, String valuationMethod) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT s.district, s.store_name, c.name as category_name, ");
+        sql.append("  SUM(ss.quantity) as total_qty, SUM(ss.amount) as total_amount ");
+        sql.append("FROM closing_stock_snapshot ss ");
+        sql.append("JOIN store s ON ss.store_code = s.store_code ");
+        sql.append("JOIN category c ON ss.category_code = c.code ");
+        sql.append("WHERE ss.valuation = ? ");
 
-            String key = dist + "|" + store;
-            ClosingStockReportDTO dto = storeMap.computeIfAbsent(key, k -> new ClosingStockReportDTO(dist, store));
-            dto.addCategoryData(category, qty, amount);
-        }
+        List<Object> params = new ArrayList<>();
+        params.add(ClosingStockSnapshotService.valuationKey(valuationMethod));
+        appendStoreFilter(sql, params, zone, district);
 
-        return new ArrayList<>(storeMap.values());
+        sql.append("GROUP BY s.district, s.store_name, c.name ");
+        sql.append("HAVING SUM(ss.quantity) <> 0 OR SUM(ss.amount) <> 0 ");
+        sql.append("ORDER BY s.district, s.store_name, c.name");
+
+        List<ClosingStockReportDTO> stores = new ArrayList<>();
+        jdbcTemplate.query(sql.toString(), rs -> {
+            String dist = rs.getString("district");
+            String store = rs.getString("store_name");
+            ClosingStockReportDTO dto = stores.isEmpty() ? null : stores.get(stores.size() - 1);
+            if (dto == null || !Objects.equals(dto.getDistrict(), dist) || !Objects.equals(dto.getStoreName(), store)) {
+                dto = new ClosingStockReportDTO(dist, store);
+                stores.add(dto);
+            }
+            dto.addCategoryData(rs.getString("category_name"), rs.getDouble("total_qty"), rs.getDouble("total_amount"));
+        }, params.toArray());
+        return stores;
     }
 
-// Updated for Excel Export
-    public ClosingStockDetailedReportDTO getDetailedReportData(String storeCode, String valuationMethod) {
-        StringBuilder sql = new StringBuilder();
-        sql.append("SELECT ");
-        sql.append("  s.district, ");
-        sql.append("  s.store_name, ");
-        sql.append("  c.name as category_name, ");
-        sql.append("  im.Item_Name, ");
-        sql.append("  im.Size_name, ");
-        sql.append("  CAST(im.Closing AS DOUBLE PRECISION) as qty, ");
+    private static boolean isPast(LocalDate asOf) {
+        return asOf != null && asOf.isBefore(LocalDate.now());
+    }
 
-        String priceColumn = "pm.MRP";
-        if ("Purchase".equalsIgnoreCase(valuationMethod)) {
-            priceColumn = "pm.Purchase_Price";
-        } else if ("Sale".equalsIgnoreCase(valuationMethod)) {
-            priceColumn = "pm.Sale_Price";
-        }
+    /**
+     * Throws IllegalArgumentException if the report cannot be built as of {@code asOf}, so a
+     * streamed export can be rejected before its response is committed.
+     */
+    public void checkAsOf(LocalDate asOf) {
+        inventorySource(asOf, new ArrayList<>());
+    }
 
-        sql.append("  COALESCE(" + priceColumn + ", 0) as rate ");
-        
-        sql.append("FROM Inventory_Master im ");
-        sql.append("JOIN store s ON im.Store_code = s.store_code ");
-        sql.append("JOIN items i ON im.Item_code = i.item_code ");
-        sql.append("JOIN category c ON i.category_code = c.code ");
-        sql.append("LEFT JOIN size sz ON im.Size_code = sz.code ");
-        sql.append("LEFT JOIN Price_Master pm ON im.Item_code = pm.Item_Code AND im.Size_code = pm.Size_Code ");
-        
-        sql.append("WHERE im.Closing <> 0 ");
-        
-        List<Object> params = new ArrayList<>();
-        if (storeCode != null && !storeCode.isEmpty()) {
-            sql.append("AND im.Store_code = ? ");
-            params.add(storeCode);
+    /**
+     * Inventory_Master, or for a past {@code asOf} a derived table of the same shape rebuilt
+     * from the daily inventory snapshots. Appends its parameters, so call it at the FROM.
+     */
+    private String inventorySource(LocalDate asOf, List<Object> params) {
+        if (!isPast(asOf)) {
+            return "Inventory_Master";
         }
+        return inventorySnapshotService.closingAsOfSource(asOf, params);
+    }
 
-        sql.append("ORDER BY c.name, im.Item_Name, sz.short_order");
+    private static void appendStoreFilter(StringBuilder sql, List<Object> params, String zone, String district) {
+        if (zone != null && !zone.isEmpty()) {
+            sql.append("AND s.zone = ? ");
+            params.add(zone);
+        }
+        if (district != null && !district.isEmpty()) {
+            sql.append("AND s.district = ? ");
+            params.add(district);
+        }
+    }
 
-        List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql.toString(), params.toArray());
+// Updated for Excel Export
+    public ClosingStockDetailedReportDTO getDetailedReportData(String storeCode, String valuationMethod, LocalDate asOf) {
+        List<Object> params = new ArrayList<>();
+        String sql = detailedQuery(storeCode, null, null, valuationMethod, asOf, params);
 
         ClosingStockDetailedReportDTO report = new ClosingStockDetailedReportDTO();
-        report.setReportDate(java.time.LocalDate.now().toString());
-
-        if (!rows.isEmpty()) {
-            report.setStoreName((String) rows.get(0).get("store_name"));
-            report.setDistrict((String) rows.get(0).get("district"));
-        }
+        report.setReportDate((isPast(asOf) ? asOf : LocalDate.now()).toString());
 
         Map<String, ClosingStockDetailedReportDTO.CategoryGroup> categoryMap = new LinkedHashMap<>();
         Set<String> sizesSet = new LinkedHashSet<>();
 
-        for (Map<String, Object> row : rows) {
-            String categoryName = (String) row.get("category_name");
-            String itemName = (String) row.get("Item_Name");
-            String sizeName = (String) row.get("Size_name");
+        streamRows(sql, params, rs -> {
+            if (report.getStoreName() == null) {
+                report.setStoreName(rs.getString("store_name"));
+                report.setDistrict(rs.getString("district"));
+            }
+
+            String categoryName = rs.getString("category_name");
+            String itemName = rs.getString("Item_Name");
+            String sizeName = rs.getString("Size_name");
             
             if (sizeName != null) {
                 sizesSet.add(sizeName);
             }
 
-            Double qty = ((Number) row.get("qty")).doubleValue();
-            Double rate = ((Number) row.get("rate")).doubleValue();
-            Double amount = qty * rate;
+            double qty = rs.getDouble("qty");
+            double rate = rs.getDouble("rate");
+            double amount = qty * rate;
 
             ClosingStockDetailedReportDTO.CategoryGroup categoryGroup = categoryMap.computeIfAbsent(categoryName, k -> {
                 ClosingStockDetailedReportDTO.CategoryGroup cg = new ClosingStockDetailedReportDTO.CategoryGroup();
@@ -203,30 +276,101 @@ public class ClosingStockReportService {
 
             report.setGrandTotalQty(report.getGrandTotalQty() + qty);
             report.setGrandTotalAmount(report.getGrandTotalAmount() + amount);
-        }
+        });
 
         report.setCategories(new ArrayList<>(categoryMap.values()));
 
         // Sort sizes based on Size table order
-        List<String> sortedSizes = new ArrayList<>(sizesSet);
+        report.setSortedSizes(sortSizes(sizesSet));
+
+        return report;
+    }
+
+    /**
+     * Item/size closing stock rows, for one store ({@code storeCode}) or for every store of a
+     * zone/district (ordered by store first), at the end of {@code asOf} (null for now).
+     */
+    private String detailedQuery(String storeCode, String zone, String district, String valuationMethod, LocalDate asOf, List<Object> params) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT ");
+        sql.append("  s.district, ");
+        sql.append("  s.store_name, ");
+        sql.append("  im.Store_code, ");
+        sql.append("  c.name as category_name, ");
+        sql.append("  im.Item_Name, ");
+        sql.append("  im.Size_name, ");
+        sql.append("  CAST(im.Closing AS DOUBLE PRECISION) as qty, ");
+        sql.append("  COALESCE(" + priceColumn(valuationMethod) + ", 0) as rate ");
+        
+        sql.append("FROM ").append(inventorySource(asOf, params)).append(" im ");
+        sql.append("JOIN store s ON im.Store_code = s.store_code ");
+        sql.append("JOIN items i ON im.Item_code = i.item_code ");
+        sql.append("JOIN category c ON i.category_code = c.code ");
+        sql.append("LEFT JOIN size sz ON im.Size_code = sz.code ");
+        sql.append("LEFT JOIN Price_Master pm ON im.Item_code = pm.Item_Code AND im.Size_code = pm.Size_Code ");
+        
+        sql.append("WHERE im.Closing <> 0 ");
+        
+        if (storeCode != null && !storeCode.isEmpty()) {
+            sql.append("AND im.Store_code = ? ");
+            params.add(storeCode);
+            sql.append("ORDER BY c.name, im.Item_Name, sz.short_order");
+            return sql.toString();
+        }
+        if (zone != null && !zone.isEmpty()) {
+            sql.append("AND s.zone = ? ");
+            params.add(zone);
+        }
+        if (district != null && !district.isEmpty()) {
+            sql.append("AND s.district = ? ");
+            params.add(district);
+        }
+        sql.append("ORDER BY s.district, s.store_name, im.Store_code, c.name, im.Item_Name, sz.short_order");
+        return sql.toString();
+    }
+
+    private static String priceColumn(String valuationMethod) {
+        if ("Purchase".equalsIgnoreCase(valuationMethod)) {
+            return "pm.Purchase_Price";
+        } else if ("Sale".equalsIgnoreCase(valuationMethod)) {
+            return "pm.Sale_Price";
+        }
+        return "pm.MRP";
+    }
+
+    private List<String> sortSizes(Collection<String> sizes) {
+        List<String> sortedSizes = new ArrayList<>(sizes);
         try {
             Map<String, Integer> sizeOrderMap = getSizeOrderMap();
             sortedSizes.sort(Comparator.comparingInt(s -> sizeOrderMap.getOrDefault(s, Integer.MAX_VALUE)));
         } catch (Exception e) {
             System.err.println("Error sorting sizes in DTO: " + e.getMessage());
         }
-        report.setSortedSizes(sortedSizes);
+        return sortedSizes;
+    }
 
-        return report;
+    /**
+     * Runs the query forward-only with {@link #FETCH_SIZE} rows per round trip and hands each
+     * row to {@code handler}, so no list of row maps is ever built.
+     */
+    private void streamRows(String sql, List<Object> params, RowCallbackHandler handler) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(FETCH_SIZE);
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            return ps;
+        }, handler);
     }
 
-    public ByteArrayInputStream exportToExcel(String zone, String district, String storeCode, String valuationMethod) throws IOException {
+    public ByteArrayInputStream exportToExcel(String zone, String district, String storeCode, String valuationMethod, boolean realtime, LocalDate asOf) throws IOException {
         if (storeCode != null && !storeCode.isEmpty()) {
-            return exportDetailedToExcel(storeCode, valuationMethod);
+            return exportDetailedToExcel(storeCode, valuationMethod, asOf);
         }
 
-        List<String> columns = getDynamicColumns(zone, district);
-        List<ClosingStockReportDTO> data = getReportData(zone, district, valuationMethod);
+        List<String> columns = getDynamicColumns(zone, district, realtime, asOf);
+        List<ClosingStockReportDTO> data = getReportData(zone, district, valuationMethod, realtime, asOf);
 
         try (Workbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
             Sheet sheet = workbook.createSheet("Closing Stock");
@@ -265,7 +409,7 @@ public class ClosingStockReportService {
             titleRow.setHeightInPoints(30);
             Cell titleCell = titleRow.createCell(0);
 
-            String dateStr = java.time.LocalDate.now().format(java.time.format.DateTimeFormatter.ofPattern("dd-MMM-yyyy"));
+            String dateStr = (isPast(asOf) ? asOf : LocalDate.now()).format(java.time.format.DateTimeFormatter.ofPattern("dd-MMM-yyyy"));
             String titleText = "Closing Stock Report";
             if (zone != null && !zone.isEmpty()) titleText += " - Zone: " + zone;
             if (district != null && !district.isEmpty()) titleText += " - District: " + district;
@@ -387,8 +531,8 @@ public class ClosingStockReportService {
         }
     }
 
-    private ByteArrayInputStream exportDetailedToExcel(String storeCode, String valuationMethod) throws IOException {
-        ClosingStockDetailedReportDTO data = getDetailedReportData(storeCode, valuationMethod);
+    private ByteArrayInputStream exportDetailedToExcel(String storeCode, String valuationMethod, LocalDate asOf) throws IOException {
+        ClosingStockDetailedReportDTO data = getDetailedReportData(storeCode, valuationMethod, asOf);
 
         try (Workbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
             Sheet sheet = workbook.createSheet("Detailed Closing Stock");
@@ -530,120 +674,87 @@ public class ClosingStockReportService {
             int totalCols = colIdx + 2;
             int rowIdx = 3;
 
-            // Grand Total Accumulators
-            Map<String, Double> grandSizeQty = new HashMap<>();
-            Map<String, Double> grandSizeAmt = new HashMap<>();
-            double grandTotalQty = 0;
-            double grandTotalAmt = 0;
-
-            // 3. Iterate Categories
+            // Pivot item x size once; category subtotals and grand totals come out of the same pass
+            PivotMatrix matrix = new PivotMatrix(sizes, 0, 2);
+            List<String> itemNames = new ArrayList<>();
             if (data.getCategories() != null) {
                 for (ClosingStockDetailedReportDTO.CategoryGroup cat : data.getCategories()) {
-                    // Category Header
-                    Row catRow = sheet.createRow(rowIdx++);
-                    Cell catCell = catRow.createCell(0);
-                    catCell.setCellValue(cat.getCategoryName());
-                    catCell.setCellStyle(categoryStyle);
-                    for (int i = 1; i < totalCols; i++) {
-                        catRow.createCell(i).setCellStyle(categoryStyle);
-                    }
-                    sheet.addMergedRegion(new CellRangeAddress(rowIdx - 1, rowIdx - 1, 0, totalCols - 1));
-
-                    // Group Items by Name
-                    Map<String, Map<String, ClosingStockDetailedReportDTO.ItemDetail>> itemMap = new LinkedHashMap<>();
+                    String categoryName = cat.getCategoryName() != null ? cat.getCategoryName() : "";
                     for (ClosingStockDetailedReportDTO.ItemDetail item : cat.getItems()) {
-                        itemMap.computeIfAbsent(item.getItemName(), k -> new HashMap<>()).put(item.getSizeName(), item);
-                    }
-
-                    // Category Subtotal Accumulators
-                    Map<String, Double> catSizeQty = new HashMap<>();
-                    Map<String, Double> catSizeAmt = new HashMap<>();
-                    double catTotalQty = 0;
-                    double catTotalAmt = 0;
-
-                    // Write Item Rows
-                    for (Map.Entry<String, Map<String, ClosingStockDetailedReportDTO.ItemDetail>> entry : itemMap.entrySet()) {
-                        String itemName = entry.getKey();
-                        Map<String, ClosingStockDetailedReportDTO.ItemDetail> sizeMap = entry.getValue();
-
-                        Row row = sheet.createRow(rowIdx++);
-                        colIdx = 0;
-                        Cell itemCell = row.createCell(colIdx++);
-                        itemCell.setCellValue(itemName);
-                        itemCell.setCellStyle(borderStyle);
-
-                        double rowTotalQty = 0;
-                        double rowTotalAmt = 0;
-
-                        for (String size : sizes) {
-                            ClosingStockDetailedReportDTO.ItemDetail item = sizeMap.get(size);
-                            double qty = item != null ? item.getQty() : 0;
-                            double amt = item != null ? item.getAmount() : 0;
-
-                            Cell qtyCell = row.createCell(colIdx++);
-                            qtyCell.setCellValue(qty);
-                            qtyCell.setCellStyle(borderStyle);
-
-                            Cell amtCell = row.createCell(colIdx++);
-                            amtCell.setCellValue(amt);
-                            amtCell.setCellStyle(currencyStyle);
-
-                            rowTotalQty += qty;
-                            rowTotalAmt += amt;
-
-                            catSizeQty.put(size, catSizeQty.getOrDefault(size, 0.0) + qty);
-                            catSizeAmt.put(size, catSizeAmt.getOrDefault(size, 0.0) + amt);
+                        int r = matrix.row(categoryName + "|" + item.getItemName(), categoryName);
+                        if (r == itemNames.size()) {
+                            itemNames.add(item.getItemName());
                         }
-
-                        Cell rowQtyCell = row.createCell(colIdx++);
-                        rowQtyCell.setCellValue(rowTotalQty);
-                        rowQtyCell.setCellStyle(borderStyle);
-
-                        Cell rowAmtCell = row.createCell(colIdx++);
-                        rowAmtCell.setCellValue(rowTotalAmt);
-                        rowAmtCell.setCellStyle(currencyStyle);
-
-                        catTotalQty += rowTotalQty;
-                        catTotalAmt += rowTotalAmt;
+                        int c = matrix.column(item.getSizeName());
+                        if (c < 0) {
+                            continue;
+                        }
+                        matrix.addDouble(r, c, QTY, item.getQty() != null ? item.getQty() : 0);
+                        matrix.addDouble(r, c, AMT, item.getAmount() != null ? item.getAmount() : 0);
                     }
+                }
+            }
+            matrix.computeTotals();
+            int sizeCount = matrix.columnCount();
+
+            // 3. Iterate Categories (rows of a category are contiguous)
+            int r = 0;
+            while (r < matrix.rowCount()) {
+                int group = matrix.groupOf(r);
+                String categoryName = matrix.groupKey(group);
+
+                // Category Header
+                Row catRow = sheet.createRow(rowIdx++);
+                Cell catCell = catRow.createCell(0);
+                catCell.setCellValue(categoryName);
+                catCell.setCellStyle(categoryStyle);
+                for (int i = 1; i < totalCols; i++) {
+                    catRow.createCell(i).setCellStyle(categoryStyle);
+                }
+                sheet.addMergedRegion(new CellRangeAddress(rowIdx - 1, rowIdx - 1, 0, totalCols - 1));
 
-                    // Category Subtotal Row
-                    Row subRow = sheet.createRow(rowIdx++);
+                // Write Item Rows
+                for (; r < matrix.rowCount() && matrix.groupOf(r) == group; r++) {
+                    Row row = sheet.createRow(rowIdx++);
                     colIdx = 0;
-                    Cell subLabel = subRow.createCell(colIdx++);
-                    subLabel.setCellValue(cat.getCategoryName() + " Total");
-                    subLabel.setCellStyle(subTotalStyle);
-
-                    for (String size : sizes) {
-                        Cell qtyCell = subRow.createCell(colIdx++);
-                        qtyCell.setCellValue(catSizeQty.getOrDefault(size, 0.0));
-                        qtyCell.setCellStyle(subTotalStyle);
-
-                        Cell amtCell = subRow.createCell(colIdx++);
-                        amtCell.setCellValue(catSizeAmt.getOrDefault(size, 0.0));
-                        amtCell.setCellStyle(subTotalStyle);
-                        // Apply currency format to subtotal amount if needed, but style overrides format. 
-                        // Let's create a combined style or just use subTotalStyle (which is colored)
-                        // Ideally we need currency format + color.
-                        // For simplicity, keeping subTotalStyle (no currency format displayed but value is correct)
-                        // Or I can clone style and add format.
-                        // Let's manually set format for this cell
-                        // amtCell.getCellStyle().setDataFormat(format.getFormat("#,##0.00")); // This modifies the shared style! Don't do this.
-                        
-                        grandSizeQty.put(size, grandSizeQty.getOrDefault(size, 0.0) + catSizeQty.getOrDefault(size, 0.0));
-                        grandSizeAmt.put(size, grandSizeAmt.getOrDefault(size, 0.0) + catSizeAmt.getOrDefault(size, 0.0));
+                    Cell itemCell = row.createCell(colIdx++);
+                    itemCell.setCellValue(itemNames.get(r));
+                    itemCell.setCellStyle(borderStyle);
+
+                    for (int c = 0; c < sizeCount; c++) {
+                        Cell qtyCell = row.createCell(colIdx++);
+                        qtyCell.setCellValue(matrix.getDouble(r, c, QTY));
+                        qtyCell.setCellStyle(borderStyle);
+
+                        Cell amtCell = row.createCell(colIdx++);
+                        amtCell.setCellValue(matrix.getDouble(r, c, AMT));
+                        amtCell.setCellStyle(currencyStyle);
                     }
 
-                    Cell catQtyCell = subRow.createCell(colIdx++);
-                    catQtyCell.setCellValue(catTotalQty);
-                    catQtyCell.setCellStyle(subTotalStyle);
+                    Cell rowQtyCell = row.createCell(colIdx++);
+                    rowQtyCell.setCellValue(matrix.rowDoubleTotal(r, QTY));
+                    rowQtyCell.setCellStyle(borderStyle);
 
-                    Cell catAmtCell = subRow.createCell(colIdx++);
-                    catAmtCell.setCellValue(catTotalAmt);
-                    catAmtCell.setCellStyle(subTotalStyle);
+                    Cell rowAmtCell = row.createCell(colIdx++);
+                    rowAmtCell.setCellValue(matrix.rowDoubleTotal(r, AMT));
+                    rowAmtCell.setCellStyle(currencyStyle);
+                }
 
-                    grandTotalQty += catTotalQty;
-                    grandTotalAmt += catTotalAmt;
+                // Category Subtotal Row (the last column index is the category total)
+                Row subRow = sheet.createRow(rowIdx++);
+                colIdx = 0;
+                Cell subLabel = subRow.createCell(colIdx++);
+                subLabel.setCellValue(categoryName + " Total");
+                subLabel.setCellStyle(subTotalStyle);
+
+                for (int c = 0; c <= sizeCount; c++) {
+                    Cell qtyCell = subRow.createCell(colIdx++);
+                    qtyCell.setCellValue(matrix.groupDoubleTotal(group, c, QTY));
+                    qtyCell.setCellStyle(subTotalStyle);
+
+                    Cell amtCell = subRow.createCell(colIdx++);
+                    amtCell.setCellValue(matrix.groupDoubleTotal(group, c, AMT));
+                    amtCell.setCellStyle(subTotalStyle);
                 }
             }
 
@@ -654,23 +765,15 @@ public class ClosingStockReportService {
             grandLabel.setCellValue("GRAND TOTAL");
             grandLabel.setCellStyle(grandTotalStyle);
 
-            for (String size : sizes) {
+            for (int c = 0; c <= sizeCount; c++) {
                 Cell qtyCell = grandRow.createCell(colIdx++);
-                qtyCell.setCellValue(grandSizeQty.getOrDefault(size, 0.0));
+                qtyCell.setCellValue(matrix.grandDoubleTotal(c, QTY));
                 qtyCell.setCellStyle(grandTotalStyle);
 
                 Cell amtCell = grandRow.createCell(colIdx++);
-                amtCell.setCellValue(grandSizeAmt.getOrDefault(size, 0.0));
+                amtCell.setCellValue(matrix.grandDoubleTotal(c, AMT));
                 amtCell.setCellStyle(grandTotalStyle);
             }
-
-            Cell grandQtyCell = grandRow.createCell(colIdx++);
-            grandQtyCell.setCellValue(grandTotalQty);
-            grandQtyCell.setCellStyle(grandTotalStyle);
-
-            Cell grandAmtCell = grandRow.createCell(colIdx++);
-            grandAmtCell.setCellValue(grandTotalAmt);
-            grandAmtCell.setCellStyle(grandTotalStyle);
             
             // Auto-size columns (be careful with performance, but for this report it's fine)
             for (int i = 0; i < totalCols; i++) {
@@ -682,6 +785,292 @@ public class ClosingStockReportService {
         }
     }
 
+    /**
+     * Item x size closing stock of every store in the zone/district as one sheet: a block per
+     * store with category subtotals, then a grand total. Rows are written while the query is
+     * still being read, through a streaming (SXSSF) workbook, so neither the result set nor the
+     * sheet is ever held in memory as a whole.
+     */
+    public void exportZoneDetailedToExcel(String zone, String district, String valuationMethod, LocalDate asOf, OutputStream out) throws IOException {
+        List<Object> sizeParams = new ArrayList<>();
+        StringBuilder sizeSql = new StringBuilder();
+        sizeSql.append("SELECT DISTINCT im.Size_name FROM ").append(inventorySource(asOf, sizeParams)).append(" im ");
+        sizeSql.append("JOIN store s ON im.Store_code = s.store_code ");
+        sizeSql.append("WHERE im.Closing <> 0 AND im.Size_name IS NOT NULL ");
+        if (zone != null && !zone.isEmpty()) {
+            sizeSql.append("AND s.zone = ? ");
+            sizeParams.add(zone);
+        }
+        if (district != null && !district.isEmpty()) {
+            sizeSql.append("AND s.district = ? ");
+            sizeParams.add(district);
+        }
+        List<String> sizes = sortSizes(jdbcTemplate.queryForList(sizeSql.toString(), String.class, sizeParams.toArray()));
+
+        List<Object> params = new ArrayList<>();
+        String sql = detailedQuery(null, zone, district, valuationMethod, asOf, params);
+
+        SXSSFWorkbook workbook = new SXSSFWorkbook(EXPORT_ROW_WINDOW);
+        try {
+            String dateStr = (isPast(asOf) ? asOf : LocalDate.now()).format(java.time.format.DateTimeFormatter.ofPattern("dd-MMM-yyyy"));
+            String titleText = "Detailed Closing Stock";
+            if (zone != null && !zone.isEmpty()) titleText += " - Zone: " + zone;
+            if (district != null && !district.isEmpty()) titleText += " - District: " + district;
+            titleText += " As on : " + dateStr;
+
+            DetailedSheetWriter writer = new DetailedSheetWriter(workbook, sizes, titleText);
+            streamRows(sql, params, rs -> writer.add(
+                    rs.getString("Store_code"),
+                    rs.getString("store_name"),
+                    rs.getString("category_name"),
+                    rs.getString("Item_Name"),
+                    rs.getString("Size_name"),
+                    rs.getDouble("qty"),
+                    rs.getDouble("rate")));
+            writer.finish();
+
+            workbook.write(out);
+        } finally {
+            // Deletes the temp files holding the flushed rows
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    /**
+     * Writes the zone-wide detailed sheet row by row from a result set ordered by store,
+     * category, item and size. Only the current item, category and store totals are kept.
+     */
+    private static final class DetailedSheetWriter {
+        private final Sheet sheet;
+        private final Map<String, Integer> sizeIndex = new HashMap<>();
+        private final int sizeCount;
+        private final int totalCols;
+        private final CellStyle storeStyle;
+        private final CellStyle categoryStyle;
+        private final CellStyle subTotalStyle;
+        private final CellStyle grandTotalStyle;
+        private final CellStyle borderStyle;
+        private final CellStyle currencyStyle;
+
+        // [size 0..n-1, total] x (qty, amount)
+        private final double[] item;
+        private final double[] category;
+        private final double[] store;
+        private final double[] grand;
+
+        private int rowIdx;
+        private String storeCode;
+        private String storeName;
+        private String categoryName;
+        private String itemName;
+
+        DetailedSheetWriter(SXSSFWorkbook workbook, List<String> sizes, String title) {
+            this.sheet = workbook.createSheet("Detailed Closing Stock");
+            for (int i = 0; i < sizes.size(); i++) {
+                sizeIndex.put(sizes.get(i), i);
+            }
+            this.sizeCount = sizes.size();
+            this.totalCols = 1 + (sizeCount + 1) * 2;
+            this.item = new double[(sizeCount + 1) * 2];
+            this.category = new double[item.length];
+            this.store = new double[item.length];
+            this.grand = new double[item.length];
+
+            Font font = workbook.createFont();
+            font.setBold(true);
+
+            CellStyle headerStyle = workbook.createCellStyle();
+            headerStyle.setFont(font);
+            headerStyle.setAlignment(HorizontalAlignment.CENTER);
+            headerStyle.setVerticalAlignment(VerticalAlignment.CENTER);
+            setThinBorders(headerStyle);
+            headerStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
+            headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+
+            CellStyle titleStyle = workbook.createCellStyle();
+            Font titleFont = workbook.createFont();
+            titleFont.setBold(true);
+            titleFont.setFontHeightInPoints((short) 14);
+            titleStyle.setFont(titleFont);
+            titleStyle.setAlignment(HorizontalAlignment.CENTER);
+            titleStyle.setVerticalAlignment(VerticalAlignment.CENTER);
+
+            storeStyle = workbook.createCellStyle();
+            storeStyle.setFont(font);
+            storeStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
+            storeStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+            setThinBorders(storeStyle);
+
+            categoryStyle = workbook.createCellStyle();
+            categoryStyle.setFont(font);
+            categoryStyle.setFillForegroundColor(IndexedColors.LIGHT_CORNFLOWER_BLUE.getIndex());
+            categoryStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+            setThinBorders(categoryStyle);
+
+            subTotalStyle = workbook.createCellStyle();
+            subTotalStyle.setFont(font);
+            subTotalStyle.setFillForegroundColor(IndexedColors.LEMON_CHIFFON.getIndex());
+            subTotalStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+            setThinBorders(subTotalStyle);
+
+            grandTotalStyle = workbook.createCellStyle();
+            Font grandFont = workbook.createFont();
+            grandFont.setBold(true);
+            grandFont.setColor(IndexedColors.WHITE.getIndex());
+            grandTotalStyle.setFont(grandFont);
+            grandTotalStyle.setFillForegroundColor(IndexedColors.BLACK.getIndex());
+            grandTotalStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+            grandTotalStyle.setAlignment(HorizontalAlignment.CENTER);
+
+            borderStyle = workbook.createCellStyle();
+            setThinBorders(borderStyle);
+
+            currencyStyle = workbook.createCellStyle();
+            currencyStyle.setDataFormat(workbook.createDataFormat().getFormat("#,##0.00"));
+            setThinBorders(currencyStyle);
+
+            // Fixed widths: autoSizeColumn cannot measure rows already flushed to disk
+            sheet.setColumnWidth(0, 40 * 256);
+            for (int i = 1; i < totalCols; i++) {
+                sheet.setColumnWidth(i, 14 * 256);
+            }
+
+            Row titleRow = sheet.createRow(rowIdx++);
+            titleRow.setHeightInPoints(30);
+            Cell titleCell = titleRow.createCell(0);
+            titleCell.setCellValue(title);
+            titleCell.setCellStyle(titleStyle);
+            sheet.addMergedRegion(new CellRangeAddress(0, 0, 0, totalCols - 1));
+
+            Row row1 = sheet.createRow(rowIdx++);
+            Row row2 = sheet.createRow(rowIdx++);
+            Cell cell = row1.createCell(0);
+            cell.setCellValue("Item Name & Size");
+            cell.setCellStyle(headerStyle);
+            row2.createCell(0).setCellStyle(headerStyle);
+            sheet.addMergedRegion(new CellRangeAddress(1, 2, 0, 0));
+            for (int i = 0; i <= sizeCount; i++) {
+                int col = 1 + i * 2;
+                cell = row1.createCell(col);
+                cell.setCellValue(i < sizeCount ? sizes.get(i) : "Total");
+                cell.setCellStyle(headerStyle);
+                row1.createCell(col + 1).setCellStyle(headerStyle);
+                sheet.addMergedRegion(new CellRangeAddress(1, 1, col, col + 1));
+
+                Cell qtyCell = row2.createCell(col);
+                qtyCell.setCellValue("Qty");
+                qtyCell.setCellStyle(headerStyle);
+                Cell amtCell = row2.createCell(col + 1);
+                amtCell.setCellValue("Amt");
+                amtCell.setCellStyle(headerStyle);
+            }
+        }
+
+        void add(String rowStore, String rowStoreName, String rowCategory, String rowItem, String size, double qty, double rate) {
+            rowCategory = rowCategory != null ? rowCategory : "";
+            rowItem = rowItem != null ? rowItem : "";
+            if (storeCode == null || !storeCode.equals(rowStore)) {
+                closeStore();
+                storeCode = rowStore;
+                storeName = rowStoreName;
+                bandRow(storeName != null ? storeName : storeCode, storeStyle);
+            }
+            if (categoryName == null || !categoryName.equals(rowCategory)) {
+                closeCategory();
+                categoryName = rowCategory;
+                bandRow(categoryName, categoryStyle);
+            }
+            if (itemName == null || !itemName.equals(rowItem)) {
+                closeItem();
+                itemName = rowItem;
+            }
+
+            Integer idx = sizeIndex.get(size);
+            if (idx == null) {
+                return;
+            }
+            double amount = qty * rate;
+            item[idx * 2] += qty;
+            item[idx * 2 + 1] += amount;
+            item[sizeCount * 2] += qty;
+            item[sizeCount * 2 + 1] += amount;
+        }
+
+        void finish() {
+            closeStore();
+            totalsRow("GRAND TOTAL", grand, grandTotalStyle, grandTotalStyle);
+        }
+
+        private void closeItem() {
+            if (itemName == null) {
+                return;
+            }
+            totalsRow(itemName, item, borderStyle, currencyStyle);
+            addInto(category, item);
+            itemName = null;
+        }
+
+        private void closeCategory() {
+            closeItem();
+            if (categoryName == null) {
+                return;
+            }
+            totalsRow(categoryName + " Total", category, subTotalStyle, subTotalStyle);
+            addInto(store, category);
+            categoryName = null;
+        }
+
+        private void closeStore() {
+            closeCategory();
+            if (storeCode == null) {
+                return;
+            }
+            totalsRow((storeName != null ? storeName : storeCode) + " Total", store, subTotalStyle, subTotalStyle);
+            addInto(grand, store);
+            storeCode = null;
+        }
+
+        private void bandRow(String label, CellStyle style) {
+            Row row = sheet.createRow(rowIdx);
+            Cell cell = row.createCell(0);
+            cell.setCellValue(label);
+            cell.setCellStyle(style);
+            for (int i = 1; i < totalCols; i++) {
+                row.createCell(i).setCellStyle(style);
+            }
+            sheet.addMergedRegion(new CellRangeAddress(rowIdx, rowIdx, 0, totalCols - 1));
+            rowIdx++;
+        }
+
+        private void totalsRow(String label, double[] values, CellStyle qtyStyle, CellStyle amtStyle) {
+            Row row = sheet.createRow(rowIdx++);
+            Cell cell = row.createCell(0);
+            cell.setCellValue(label);
+            cell.setCellStyle(qtyStyle);
+            for (int i = 0; i < values.length; i++) {
+                Cell valueCell = row.createCell(1 + i);
+                valueCell.setCellValue(values[i]);
+                valueCell.setCellStyle(i % 2 == 0 ? qtyStyle : amtStyle);
+            }
+        }
+
+        /** Adds {@code from} into {@code into} and clears {@code from}. */
+        private static void addInto(double[] into, double[] from) {
+            for (int i = 0; i < from.length; i++) {
+                into[i] += from[i];
+                from[i] = 0;
+            }
+        }
+    }
+
+    private static void setThinBorders(CellStyle style) {
+        style.setBorderBottom(BorderStyle.THIN);
+        style.setBorderTop(BorderStyle.THIN);
+        style.setBorderLeft(BorderStyle.THIN);
+        style.setBorderRight(BorderStyle.THIN);
+    }
+
     private Map<String, Integer> getSizeOrderMap() {
         try {
             String sql = "SELECT name, short_order FROM size";
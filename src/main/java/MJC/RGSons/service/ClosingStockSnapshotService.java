@@ -0,0 +1,301 @@
+package MJC.RGSons.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains closing_stock_snapshot: closing quantity and value per (store, category, valuation
+ * method), which the closing stock dashboard reads instead of joining Inventory_Master, items
+ * and Price_Master on every filter change.
+ *
+ * Every stock movement appends its SKU lines to closing_stock_delta in the same transaction
+ * as the Inventory_Master update ({@link #applyDeltas}). Those are plain inserts, so tills
+ * posting to the same store and category never wait on each other; a background fold
+ * ({@link #foldDeltas}) moves committed deltas into the snapshot every few seconds, which is
+ * how far the snapshot may trail the live stock. A nightly {@link #rebuild} recomputes it
+ * from Inventory_Master, store by store, to pick up anything changed outside those paths
+ * (price changes, manual fixes).
+ *
+ * Postings hold a shared lock on their store's snapshot ({@link #lockStore}) and a store's
+ * rebuild an exclusive one, so a rebuild reads Inventory_Master with no posting of the store
+ * half done and can drop the store's pending deltas as already counted.
+ */
+@Service
+public class ClosingStockSnapshotService {
+
+    private static final Logger log = LoggerFactory.getLogger(ClosingStockSnapshotService.class);
+
+    public static final String VALUATION_MRP = "MRP";
+    public static final String VALUATION_PURCHASE = "Purchase";
+    public static final String VALUATION_SALE = "Sale";
+
+    // Value of one unit under each valuation method (alias pm = Price_Master)
+    private static final String VALUATIONS = "CROSS APPLY (VALUES ('" + VALUATION_MRP + "', pm.MRP), "
+            + "('" + VALUATION_PURCHASE + "', pm.Purchase_Price), ('" + VALUATION_SALE + "', pm.Sale_Price)) AS v (valuation, price) ";
+
+    // Deltas moved into the snapshot per fold transaction
+    private static final int FOLD_BATCH = 5000;
+
+    private static final int LOCK_TIMEOUT_MS = 30000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${closing-stock.snapshot.enabled:true}")
+    private boolean enabled;
+
+    // Fold and per-store rebuild transactions, each short
+    private final TransactionTemplate shortTransaction;
+
+    private volatile boolean ready;
+
+    public ClosingStockSnapshotService(PlatformTransactionManager transactionManager) {
+        this.shortTransaction = new TransactionTemplate(transactionManager);
+        this.shortTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            StringBuilder ddl = new StringBuilder();
+            ddl.append("IF OBJECT_ID('closing_stock_snapshot', 'U') IS NULL ");
+            ddl.append("CREATE TABLE closing_stock_snapshot (");
+            ddl.append("  id INT IDENTITY(1,1) PRIMARY KEY, ");
+            ddl.append("  store_code VARCHAR(255) NOT NULL, ");
+            ddl.append("  category_code VARCHAR(255) NOT NULL, ");
+            ddl.append("  valuation VARCHAR(20) NOT NULL, ");
+            ddl.append("  quantity FLOAT NOT NULL, ");
+            ddl.append("  amount FLOAT NOT NULL, ");
+            ddl.append("  updated_at DATETIME, ");
+            ddl.append("  CONSTRAINT UK_closing_stock_snapshot UNIQUE (store_code, category_code, valuation))");
+            jdbcTemplate.execute(ddl.toString());
+
+            ddl = new StringBuilder();
+            ddl.append("IF OBJECT_ID('closing_stock_delta', 'U') IS NULL ");
+            ddl.append("BEGIN ");
+            ddl.append("CREATE TABLE closing_stock_delta (");
+            ddl.append("  id BIGINT IDENTITY(1,1) PRIMARY KEY, ");
+            ddl.append("  store_code VARCHAR(255) NOT NULL, ");
+            ddl.append("  item_code VARCHAR(255) NOT NULL, ");
+            ddl.append("  size_code VARCHAR(255) NOT NULL, ");
+            ddl.append("  quantity INT NOT NULL); ");
+            ddl.append("CREATE INDEX IX_closing_stock_delta_store ON closing_stock_delta (store_code); ");
+            ddl.append("END");
+            jdbcTemplate.execute(ddl.toString());
+
+            Integer rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM closing_stock_snapshot", Integer.class);
+            if (rows != null && rows > 0) {
+                ready = true;
+                return;
+            }
+        } catch (Exception e) {
+            log.error("closing_stock_snapshot setup failed: {}", e.getMessage());
+            return;
+        }
+
+        // Empty table: fill it in the background, reports stay on live data until then
+        Thread build = new Thread(() -> {
+            try {
+                log.info("Built closing_stock_snapshot: {}", rebuild(null));
+            } catch (Exception e) {
+                log.error("Initial closing_stock_snapshot build failed: {}", e.getMessage());
+            }
+        }, "closing-stock-snapshot-build");
+        build.setDaemon(true);
+        build.start();
+    }
+
+    /** False until the table exists and has been filled; readers then compute live. */
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    /** The valuation column key for a report's valuationMethod parameter (MRP when unknown). */
+    public static String valuationKey(String valuationMethod) {
+        if (VALUATION_PURCHASE.equalsIgnoreCase(valuationMethod)) {
+            return VALUATION_PURCHASE;
+        } else if (VALUATION_SALE.equalsIgnoreCase(valuationMethod)) {
+            return VALUATION_SALE;
+        }
+        return VALUATION_MRP;
+    }
+
+    /**
+     * Takes the posting's shared lock on the store's snapshot. Call in the movement's
+     * transaction before its Inventory_Master write; it is held until the transaction ends.
+     */
+    public void lockStore(String storeCode) {
+        if (enabled) {
+            applock(storeCode, "Shared");
+        }
+    }
+
+    /**
+     * Records the closing-stock effect of movement lines for the next fold. Must run in the
+     * movement's transaction, after {@link #lockStore}.
+     *
+     * @param closingSign +1 when the movement raises Closing, -1 when it lowers it
+     */
+    public void applyDeltas(String storeCode, List<StockMovementService.Delta> rows, int closingSign) {
+        if (!enabled || rows.isEmpty()) {
+            return;
+        }
+
+        StringBuilder sql = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+
+        sql.append("INSERT INTO closing_stock_delta (store_code, item_code, size_code, quantity) ");
+        sql.append("SELECT ?, d.item_code, d.size_code, d.qty FROM (VALUES ");
+        params.add(storeCode);
+        for (int i = 0; i < rows.size(); i++) {
+            StockMovementService.Delta row = rows.get(i);
+            sql.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+            params.add(row.getItemCode());
+            params.add(row.getSizeCode());
+            params.add(row.getQuantity() * closingSign);
+        }
+        sql.append(") AS d (item_code, size_code, qty)");
+
+        jdbcTemplate.update(sql.toString(), params.toArray());
+    }
+
+    /** Moves committed deltas into the snapshot, a batch per transaction, until none are left. */
+    @Scheduled(fixedDelayString = "${closing-stock.snapshot.fold-delay-ms:5000}")
+    public void foldDeltas() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Integer folded;
+            do {
+                folded = shortTransaction.execute(status -> foldBatch());
+            } while (folded != null && folded >= FOLD_BATCH);
+        } catch (Exception e) {
+            log.error("closing_stock_delta fold failed: {}", e.getMessage());
+        }
+    }
+
+    // Deltas still being written are skipped (READPAST) and taken by a later fold
+    private Integer foldBatch() {
+        StringBuilder sql = new StringBuilder();
+        sql.append("SET NOCOUNT ON; ");
+        sql.append("DECLARE @d TABLE (store_code VARCHAR(255), item_code VARCHAR(255), size_code VARCHAR(255), quantity INT); ");
+        sql.append("DELETE TOP (?) FROM closing_stock_delta WITH (READPAST) ");
+        sql.append("  OUTPUT deleted.store_code, deleted.item_code, deleted.size_code, deleted.quantity INTO @d; ");
+        sql.append("MERGE closing_stock_snapshot WITH (HOLDLOCK) AS ss ");
+        sql.append("USING (SELECT d.store_code, i.category_code, v.valuation, ");
+        sql.append("    SUM(CAST(d.quantity AS FLOAT)) AS quantity, SUM(CAST(d.quantity AS FLOAT) * COALESCE(v.price, 0)) AS amount ");
+        sql.append("  FROM @d d ");
+        sql.append("  JOIN items i ON i.item_code = d.item_code ");
+        sql.append("  LEFT JOIN Price_Master pm ON pm.Item_Code = d.item_code AND pm.Size_Code = d.size_code ");
+        sql.append("  ").append(VALUATIONS);
+        sql.append("  WHERE i.category_code IS NOT NULL ");
+        sql.append("  GROUP BY d.store_code, i.category_code, v.valuation) AS src ");
+        sql.append("ON ss.store_code = src.store_code AND ss.category_code = src.category_code AND ss.valuation = src.valuation ");
+        sql.append("WHEN MATCHED THEN UPDATE SET ");
+        sql.append("  quantity = ss.quantity + src.quantity, amount = ss.amount + src.amount, updated_at = GETDATE() ");
+        sql.append("WHEN NOT MATCHED THEN INSERT (store_code, category_code, valuation, quantity, amount, updated_at) ");
+        sql.append("  VALUES (src.store_code, src.category_code, src.valuation, src.quantity, src.amount, GETDATE()); ");
+        sql.append("SELECT COUNT(*) FROM @d;");
+        return jdbcTemplate.queryForObject(sql.toString(), Integer.class, FOLD_BATCH);
+    }
+
+    @Scheduled(cron = "${closing-stock.snapshot.rebuild-cron:0 30 2 * * *}")
+    public void nightlyRebuild() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            log.info("Nightly closing_stock_snapshot rebuild: {}", rebuild(null));
+        } catch (Exception e) {
+            log.error("Nightly closing_stock_snapshot rebuild failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Recomputes the snapshot from Inventory_Master, one short transaction per store; only the
+     * store being rebuilt waits for it.
+     *
+     * @param storeCode null for all stores
+     */
+    public Map<String, Object> rebuild(String storeCode) {
+        if (!enabled) {
+            return new LinkedHashMap<>();
+        }
+        List<String> stores;
+        if (storeCode != null && !storeCode.isEmpty()) {
+            stores = List.of(storeCode);
+        } else {
+            stores = jdbcTemplate.queryForList("SELECT Store_code FROM Inventory_Master WHERE Store_code IS NOT NULL GROUP BY Store_code "
+                    + "UNION SELECT store_code FROM closing_stock_snapshot GROUP BY store_code", String.class);
+        }
+
+        int deleted = 0;
+        int inserted = 0;
+        for (String store : stores) {
+            int[] counts = shortTransaction.execute(status -> rebuildStore(store));
+            deleted += counts[0];
+            inserted += counts[1];
+        }
+        if (storeCode == null || storeCode.isEmpty()) {
+            ready = true;
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("stores", stores.size());
+        result.put("deleted", deleted);
+        result.put("inserted", inserted);
+        return result;
+    }
+
+    // One store; runs in shortTransaction. Returns {deleted, inserted}.
+    private int[] rebuildStore(String storeCode) {
+        applock(storeCode, "Exclusive");
+
+        // Every posting of the store has committed and none can start: its deltas are in Inventory_Master
+        jdbcTemplate.update("DELETE FROM closing_stock_delta WHERE store_code = ?", storeCode);
+        int deleted = jdbcTemplate.update("DELETE FROM closing_stock_snapshot WHERE store_code = ?", storeCode);
+
+        StringBuilder insert = new StringBuilder();
+        insert.append("INSERT INTO closing_stock_snapshot (store_code, category_code, valuation, quantity, amount, updated_at) ");
+        insert.append("SELECT im.Store_code, i.category_code, v.valuation, ");
+        insert.append("  SUM(CAST(im.Closing AS FLOAT)), SUM(CAST(im.Closing AS FLOAT) * COALESCE(v.price, 0)), GETDATE() ");
+        insert.append("FROM Inventory_Master im ");
+        insert.append("JOIN items i ON im.Item_code = i.item_code ");
+        insert.append("LEFT JOIN Price_Master pm ON im.Item_code = pm.Item_Code AND im.Size_code = pm.Size_Code ");
+        insert.append(VALUATIONS);
+        insert.append("WHERE im.Closing <> 0 AND i.category_code IS NOT NULL AND im.Store_code = ? ");
+        insert.append("GROUP BY im.Store_code, i.category_code, v.valuation");
+        int inserted = jdbcTemplate.update(insert.toString(), storeCode);
+        return new int[] { deleted, inserted };
+    }
+
+    private void applock(String storeCode, String mode) {
+        Integer result = jdbcTemplate.queryForObject(
+                "SET NOCOUNT ON; DECLARE @r INT; "
+                        + "EXEC @r = sp_getapplock @Resource = ?, @LockMode = ?, @LockOwner = 'Transaction', @LockTimeout = ?; "
+                        + "SELECT @r;",
+                Integer.class, "closing_stock_snapshot:" + storeCode, mode, LOCK_TIMEOUT_MS);
+        if (result == null || result < 0) {
+            throw new IllegalStateException("Could not lock the closing stock snapshot of store " + storeCode + " (" + result + ")");
+        }
+    }
+}
@@ -3,6 +3,7 @@ package MJC.RGSons.service;
 import MJC.RGSons.dto.CollectionExpenseDTO;
 import MJC.RGSons.model.Ledger;
 import MJC.RGSons.repository.LedgerRepository;
+import MJC.RGSons.util.BusinessDates;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
@@ -37,18 +38,20 @@ public class CollectionExpenseReportService {
         sql.append("  s.district, ");
         sql.append("  s.store_name, ");
         sql.append("  l.name as ledger_name, ");
-        sql.append("  tl.type as tran_type, "); // Use transaction type (Tender/Expense)
-        sql.append("  SUM(tl.amount) as amount ");
+        sql.append("  ds.ledger_type as tran_type, "); // Use transaction type (Tender/Expense)
+        sql.append("  SUM(ds.amount) as amount ");
         
-        sql.append("FROM tran_ledgers tl ");
-        sql.append("JOIN store s ON tl.store_code = s.store_code ");
-        sql.append("JOIN ledgers l ON tl.ledger_code = l.code ");
-        // Correct date filtering using TRY_CONVERT
-        sql.append("WHERE TRY_CONVERT(DATE, tl.invoice_date, 105) BETWEEN ? AND ? ");
-
+        // Read from the daily rollup (one row per store, day and ledger) instead of tran_ledgers
+        sql.append("FROM daily_sales_summary ds ");
+        sql.append("JOIN store s ON ds.store_code = s.store_code ");
+        sql.append("JOIN ledgers l ON ds.line_code = l.code ");
+        sql.append("WHERE ds.line_type = 'LEDGER' AND ds.business_dt BETWEEN ? AND ? ");
+
+        java.sql.Date from = java.sql.Date.valueOf(BusinessDates.require(startDate));
+        java.sql.Date to = java.sql.Date.valueOf(BusinessDates.require(endDate));
         List<Object> params = new ArrayList<>();
-        params.add(startDate);
-        params.add(endDate);
+        params.add(from);
+        params.add(to);
 
         if (zone != null && !zone.isEmpty()) {
             sql.append("AND s.zone = ? ");
@@ -61,7 +64,7 @@ public class CollectionExpenseReportService {
         }
 
         // Group by District, Store, Ledger Name, and Type
-        sql.append("GROUP BY s.district, s.store_name, l.name, tl.type ");
+        sql.append("GROUP BY s.district, s.store_name, l.name, ds.ledger_type ");
         sql.append("ORDER BY s.district, s.store_name");
 
         // Execute query
@@ -90,19 +93,20 @@ public class CollectionExpenseReportService {
             }
         }
 
-        // Fetch Goods Sale from tran_head
+        // Fetch Goods Sale from the invoice lines of the rollup; drafts are not in it, so unlike
+        // the former tran_head query their sale amounts no longer count as Goods Sale
         StringBuilder sqlGoods = new StringBuilder();
         sqlGoods.append("SELECT ");
         sqlGoods.append("  s.district, ");
         sqlGoods.append("  s.store_name, ");
-        sqlGoods.append("  SUM(th.sale_amount) as amount ");
-        sqlGoods.append("FROM tran_head th ");
-        sqlGoods.append("JOIN store s ON th.store_code = s.store_code ");
-        sqlGoods.append("WHERE TRY_CONVERT(DATE, th.invoice_date, 105) BETWEEN ? AND ? ");
+        sqlGoods.append("  SUM(ds.sale_amount) as amount ");
+        sqlGoods.append("FROM daily_sales_summary ds ");
+        sqlGoods.append("JOIN store s ON ds.store_code = s.store_code ");
+        sqlGoods.append("WHERE ds.line_type = 'INVOICE' AND ds.business_dt BETWEEN ? AND ? ");
 
         List<Object> paramsGoods = new ArrayList<>();
-        paramsGoods.add(startDate);
-        paramsGoods.add(endDate);
+        paramsGoods.add(from);
+        paramsGoods.add(to);
 
         if (zone != null && !zone.isEmpty()) {
             sqlGoods.append("AND s.zone = ? ");
@@ -0,0 +1,275 @@
+package MJC.RGSons.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background DSR refresh, one queue entry per (store, business date).
+ *
+ * STO/STI saves only call {@link #request}; the refresh itself runs after the save has
+ * committed, on a small fixed pool, once no new request for the same key has come in for the
+ * debounce delay, but never later than the max wait after the first request it covers. A
+ * burst of transfers for one store-day therefore costs a single refresh, a steady stream
+ * still gets one every max wait, and a request arriving while a refresh is running
+ * schedules exactly one more. An entry is dropped once its refresh finishes with nothing
+ * left to do.
+ * The last refresh start of recent keys is kept ("fresh as of"): every change committed
+ * before that moment is in DSR_Detail.
+ */
+@Service
+public class DSRRefreshQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(DSRRefreshQueue.class);
+
+    private static final class Entry {
+        private final String storeCode;
+        private final String businessDate;
+        private String userName;
+        private long requested;
+        private long started;
+        // When the oldest request not yet covered by a started refresh came in; 0 if none
+        private long firstPendingAt;
+        private boolean running;
+        private boolean retired;
+        private ScheduledFuture<?> scheduled;
+        private CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Entry(String storeCode, String businessDate) {
+            this.storeCode = storeCode;
+            this.businessDate = businessDate;
+        }
+    }
+
+    @Autowired
+    private DSRService dsrService;
+
+    private static final class Freshness {
+        private final LocalDateTime freshAsOf;
+        private final String lastError;
+
+        Freshness(LocalDateTime freshAsOf, String lastError) {
+            this.freshAsOf = freshAsOf;
+            this.lastError = lastError;
+        }
+    }
+
+    // Store-days whose last refresh outcome is kept for getStatus
+    private static final int MAX_FRESHNESS_KEYS = 2000;
+
+    @Value("${dsr.refresh.debounce-ms:2000}")
+    private long debounceMillis;
+
+    @Value("${dsr.refresh.max-wait-ms:10000}")
+    private long maxWaitMillis;
+
+    private final ScheduledExecutorService executor;
+
+    // Keys with a refresh pending or running
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // Most recently refreshed keys first out; guarded by itself
+    private final Map<String, Freshness> freshness = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Freshness> eldest) {
+            return size() > MAX_FRESHNESS_KEYS;
+        }
+    };
+
+    public DSRRefreshQueue(@Value("${dsr.refresh.threads:2}") int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newScheduledThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "dsr-refresh-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Asks for a refresh of the store-day. Inside a transaction the request is only queued
+     * once that transaction commits, so the refresh sees the saved transfer.
+     */
+    public void request(String storeCode, String businessDate, String userName) {
+        if (storeCode == null || businessDate == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(storeCode, businessDate, userName, debounceMillis);
+                }
+            });
+        } else {
+            enqueue(storeCode, businessDate, userName, debounceMillis);
+        }
+    }
+
+    /**
+     * Waits until everything requested so far for the store-day has been refreshed.
+     *
+     * @return false if that did not happen within the timeout
+     */
+    public boolean awaitFresh(String storeCode, String businessDate, long timeoutMillis) {
+        Entry entry = entries.get(key(storeCode, businessDate));
+        if (entry == null) {
+            return true;
+        }
+        CompletableFuture<Void> done;
+        synchronized (entry) {
+            if (entry.scheduled == null && !entry.running) {
+                return true;
+            }
+            done = entry.done;
+        }
+        try {
+            done.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (java.util.concurrent.TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (java.util.concurrent.ExecutionException e) {
+            return true;
+        }
+    }
+
+    /** Runs a refresh for the store-day now (skipping the debounce) and waits for it. */
+    public boolean refreshNow(String storeCode, String businessDate, String userName, long timeoutMillis) {
+        enqueue(storeCode, businessDate, userName, 0);
+        return awaitFresh(storeCode, businessDate, timeoutMillis);
+    }
+
+    public Map<String, Object> getStatus(String storeCode, String businessDate) {
+        String key = key(storeCode, businessDate);
+        Freshness last;
+        synchronized (freshness) {
+            last = freshness.get(key);
+        }
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("storeCode", storeCode);
+        status.put("businessDate", businessDate);
+        status.put("freshAsOf", last != null ? last.freshAsOf : null);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            status.put("pending", false);
+            status.put("running", false);
+        } else {
+            synchronized (entry) {
+                status.put("pending", entry.scheduled != null);
+                status.put("running", entry.running);
+            }
+        }
+        if (last != null && last.lastError != null) {
+            status.put("lastError", last.lastError);
+        }
+        return status;
+    }
+
+    private void enqueue(String storeCode, String businessDate, String userName, long delayMillis) {
+        String key = key(storeCode, businessDate);
+        while (true) {
+            Entry entry = entries.computeIfAbsent(key, k -> new Entry(storeCode, businessDate));
+            synchronized (entry) {
+                if (entry.retired) {
+                    // Finished and removed between the lookup and the lock; take a new one
+                    continue;
+                }
+                long now = System.currentTimeMillis();
+                entry.requested++;
+                if (entry.firstPendingAt == 0) {
+                    entry.firstPendingAt = now;
+                }
+                if (userName != null && !userName.isEmpty()) {
+                    entry.userName = userName;
+                }
+                if (entry.running) {
+                    // run() reschedules when it sees requests that came in after it started
+                    return;
+                }
+                if (entry.scheduled != null) {
+                    // Debounce: push the pending refresh back, unless it is already due
+                    if (!entry.scheduled.cancel(false)) {
+                        return;
+                    }
+                }
+                entry.scheduled = executor.schedule(() -> run(entry), delay(entry, delayMillis, now), TimeUnit.MILLISECONDS);
+                return;
+            }
+        }
+    }
+
+    // The requested delay, but no later than max wait after the oldest uncovered request
+    private long delay(Entry entry, long delayMillis, long now) {
+        long deadline = entry.firstPendingAt + Math.max(0, maxWaitMillis);
+        return Math.max(0, Math.min(now + delayMillis, deadline) - now);
+    }
+
+    private void run(Entry entry) {
+        String userName;
+        synchronized (entry) {
+            entry.scheduled = null;
+            entry.running = true;
+            entry.started = entry.requested;
+            entry.firstPendingAt = 0;
+            userName = entry.userName;
+        }
+
+        LocalDateTime startedAt = LocalDateTime.now();
+        String error = null;
+        try {
+            dsrService.populateDSR(entry.storeCode, entry.businessDate, userName);
+        } catch (Exception e) {
+            error = e.getMessage();
+            log.error("DSR refresh failed for {} / {}: {}", entry.storeCode, entry.businessDate, e.getMessage());
+        }
+
+        String key = key(entry.storeCode, entry.businessDate);
+        synchronized (freshness) {
+            Freshness previous = freshness.get(key);
+            freshness.put(key, new Freshness(error == null ? startedAt : previous != null ? previous.freshAsOf : null, error));
+        }
+
+        CompletableFuture<Void> finished = null;
+        synchronized (entry) {
+            entry.running = false;
+            if (entry.requested != entry.started) {
+                long now = System.currentTimeMillis();
+                entry.scheduled = executor.schedule(() -> run(entry), delay(entry, debounceMillis, now), TimeUnit.MILLISECONDS);
+            } else {
+                finished = entry.done;
+                entry.retired = true;
+                entries.remove(key, entry);
+            }
+        }
+        if (finished != null) {
+            finished.complete(null);
+        }
+    }
+
+    private static String key(String storeCode, String businessDate) {
+        return storeCode + "|" + businessDate;
+    }
+}
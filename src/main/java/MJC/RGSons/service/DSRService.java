@@ -3,11 +3,6 @@ package MJC.RGSons.service;
 import MJC.RGSons.dto.DSRSaveRequest;
 import MJC.RGSons.model.DSR;
 import MJC.RGSons.model.DSRHead;
-import MJC.RGSons.model.InventoryMaster;
-import MJC.RGSons.model.PriceMaster;
-import MJC.RGSons.model.StiItem;
-import MJC.RGSons.model.StoItem;
-import MJC.RGSons.model.TranItem;
 import MJC.RGSons.model.TranLedger;
 import MJC.RGSons.model.Category;
 import MJC.RGSons.model.Item;
@@ -16,35 +11,39 @@ import MJC.RGSons.model.Size;
 import MJC.RGSons.model.Ledger;
 import MJC.RGSons.repository.DSRHeadRepository;
 import MJC.RGSons.repository.DSRRepository;
-import MJC.RGSons.repository.InventoryMasterRepository;
-import MJC.RGSons.repository.PriceMasterRepository;
-import MJC.RGSons.repository.StiItemRepository;
-import MJC.RGSons.repository.StoItemRepository;
-import MJC.RGSons.repository.TranItemRepository;
 import MJC.RGSons.repository.TranLedgerRepository;
 import MJC.RGSons.repository.CategoryRepository;
 import MJC.RGSons.repository.ItemRepository;
 import MJC.RGSons.repository.BrandRepository;
 import MJC.RGSons.repository.SizeRepository;
 import MJC.RGSons.repository.LedgerRepository;
+import MJC.RGSons.util.BusinessDates;
+import MJC.RGSons.util.PivotMatrix;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.HorizontalAlignment;
 import org.apache.poi.ss.usermodel.BorderStyle;
 import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -55,26 +54,33 @@ import java.util.stream.Collectors;
 @Service
 public class DSRService {
 
-    @Autowired
-    private DSRRepository dsrRepository;
+    private static final Logger log = LoggerFactory.getLogger(DSRService.class);
 
-    @Autowired
-    private DSRHeadRepository dsrHeadRepository;
+    // Rows of the export kept in memory before older ones are flushed to a temp file
+    private static final int EXPORT_ROW_WINDOW = 100;
 
-    @Autowired
-    private InventoryMasterRepository inventoryMasterRepository;
+    // Metric slots of the DSR pivot (see buildDSRGrid)
+    private static final int OPENING = 0;
+    private static final int INWARD = 1;
+    private static final int OUTWARD = 2;
+    private static final int CLOSING = 3;
+    private static final int SALE = 4;
+    private static final int INT_METRICS = 5;
+    private static final String[] INT_METRIC_NAMES = { "opening", "inward", "outward", "closing", "sale" };
 
-    @Autowired
-    private PriceMasterRepository priceMasterRepository;
+    private static final int RATE = 0;
+    private static final int AMOUNT = 1;
+    private static final int DOUBLE_METRICS = 2;
+    private static final String[] DOUBLE_METRIC_NAMES = { "rate", "amount" };
 
     @Autowired
-    private StiItemRepository stiItemRepository;
+    private DSRRepository dsrRepository;
 
     @Autowired
-    private StoItemRepository stoItemRepository;
+    private DSRHeadRepository dsrHeadRepository;
 
     @Autowired
-    private TranItemRepository tranItemRepository;
+    private JdbcTemplate jdbcTemplate;
 
     @Autowired
     private TranLedgerRepository tranLedgerRepository;
@@ -102,8 +108,13 @@ public class DSRService {
         return "PENDING";
     }
 
+    /**
+     * Saves the DSR grid of one store-day.
+     *
+     * @return counts of detail rows updated and inserted
+     */
     @Transactional
-    public void saveDSR(DSRSaveRequest request) {
+    public Map<String, Integer> saveDSR(DSRSaveRequest request) {
         System.out.println("Saving DSR with request: " + request);
         if (request != null) {
             System.out.println("StoreCode: " + request.getStoreCode());
@@ -140,151 +151,219 @@ public class DSRService {
         head.setDsrStatus("SUBMITTED");
         dsrHeadRepository.save(head);
 
-        // 2. Update DSR Details
-        if (request.getDetails() != null) {
-            for (DSRSaveRequest.DSRDetailRequest detailReq : request.getDetails()) {
-                Optional<DSR> dsrOpt = Optional.empty();
-                
-                if (detailReq.getId() != null) {
-                    dsrOpt = dsrRepository.findById(detailReq.getId());
-                } else if (detailReq.getItemCode() != null && detailReq.getSizeCode() != null) {
-                    dsrOpt = dsrRepository.findByStoreAndBusinessDateAndItemCodeAndSizeCode(
-                            request.getStoreCode(), request.getDsrDate(), detailReq.getItemCode(), detailReq.getSizeCode());
-                }
+        // 2. Update DSR Details: all existing rows of the day are loaded once, changes are written in two batches
+        LocalDate dsrDate = BusinessDates.parse(request.getDsrDate());
+        // Loaded with plain JDBC (not managed by JPA) so changing them does not trigger per-row UPDATEs
+        List<DSR> existing = loadDetails("Store = ? AND (business_dt = ? OR Business_date = ?)",
+                request.getStoreCode(), dsrDate != null ? java.sql.Date.valueOf(dsrDate) : null, request.getDsrDate());
+        Map<Integer, DSR> byId = new HashMap<>();
+        Map<String, DSR> byKey = new HashMap<>();
+        for (DSR dsr : existing) {
+            byId.put(dsr.getId(), dsr);
+            byKey.put(dsr.getItemCode() + "|" + dsr.getSizeCode(), dsr);
+        }
 
-                if (dsrOpt.isPresent()) {
-                    DSR dsr = dsrOpt.get();
-                    
-                    // Update fields
-                    if (detailReq.getInward() != null) dsr.setInward(detailReq.getInward());
-                    if (detailReq.getOutward() != null) dsr.setOutward(detailReq.getOutward());
-                    if (detailReq.getSale() != null) dsr.setSale(detailReq.getSale());
-                    
-                    // Recalculate Closing
-                    // Closing = Opening + Inward - Outward - Sale
-                    int opening = dsr.getOpening() != null ? dsr.getOpening() : 0;
-                    int inward = dsr.getInward() != null ? dsr.getInward() : 0;
-                    int outward = dsr.getOutward() != null ? dsr.getOutward() : 0;
-                    int sale = dsr.getSale() != null ? dsr.getSale() : 0;
-                    
-                    dsr.setClosing(opening + inward - outward - sale);
-                    dsr.setUpdatedAt(LocalDateTime.now());
-                    
-                    dsrRepository.save(dsr);
-                } else if (detailReq.getItemCode() != null && detailReq.getSizeCode() != null) {
-                    // Record not found, insert new record
-                    Optional<InventoryMaster> invOpt = inventoryMasterRepository.findByStoreCodeAndItemCodeAndSizeCode(
-                            request.getStoreCode(), detailReq.getItemCode(), detailReq.getSizeCode());
-                    
-                    if (invOpt.isPresent()) {
-                        InventoryMaster inventory = invOpt.get();
-                        DSR dsr = new DSR();
-                        dsr.setStore(request.getStoreCode());
-                        dsr.setBusinessDate(request.getDsrDate());
-                        dsr.setItemCode(inventory.getItemCode());
-                        dsr.setItemName(inventory.getItemName());
-                        dsr.setSizeCode(inventory.getSizeCode());
-                        dsr.setSizeName(inventory.getSizeName());
-                        
-                        // Closing from Inventory becomes Opening in DSR
-                        dsr.setOpening(inventory.getClosing()); 
-                        
-                        // Initialize with request values or 0
-                        dsr.setInward(detailReq.getInward() != null ? detailReq.getInward() : 0);
-                        dsr.setOutward(detailReq.getOutward() != null ? detailReq.getOutward() : 0);
-                        dsr.setSale(detailReq.getSale() != null ? detailReq.getSale() : 0);
-                        
-                        // Calculate Closing
-                        dsr.setClosing(dsr.getOpening() + dsr.getInward() - dsr.getOutward() - dsr.getSale());
-
-                        // Fetch Price details
-                        Optional<PriceMaster> priceOpt = priceMasterRepository.findByItemCodeAndSizeCode(inventory.getItemCode(), inventory.getSizeCode());
-                        if (priceOpt.isPresent()) {
-                            PriceMaster price = priceOpt.get();
-                            dsr.setPurchasePrice(price.getPurchasePrice());
-                            dsr.setMrp(price.getMrp());
-                        } else {
-                            dsr.setPurchasePrice(0.0);
-                            dsr.setMrp(0.0);
-                        }
+        List<DSRSaveRequest.DSRDetailRequest> details = request.getDetails() != null ? request.getDetails() : new ArrayList<>();
+
+        // Rows referenced by id that belong to another day (rare) are fetched in one go as well
+        List<Integer> otherIds = new ArrayList<>();
+        for (DSRSaveRequest.DSRDetailRequest detailReq : details) {
+            if (detailReq.getId() != null && !byId.containsKey(detailReq.getId())) {
+                otherIds.add(detailReq.getId());
+            }
+        }
+        for (int from = 0; from < otherIds.size(); from += 1000) {
+            List<Integer> chunk = otherIds.subList(from, Math.min(from + 1000, otherIds.size()));
+            String placeholders = String.join(", ", java.util.Collections.nCopies(chunk.size(), "?"));
+            loadDetails("id IN (" + placeholders + ")", chunk.toArray()).forEach(dsr -> byId.put(dsr.getId(), dsr));
+        }
 
-                        dsr.setCreatedAt(LocalDateTime.now());
-                        dsr.setUpdatedAt(LocalDateTime.now());
+        LocalDateTime now = LocalDateTime.now();
+        Map<Integer, DSR> changed = new LinkedHashMap<>();
+        Map<String, DSR> created = new LinkedHashMap<>();
+        Map<String, Object[]> inventory = null;
+
+        for (DSRSaveRequest.DSRDetailRequest detailReq : details) {
+            DSR dsr = null;
+            if (detailReq.getId() != null) {
+                dsr = byId.get(detailReq.getId());
+            } else if (detailReq.getItemCode() != null && detailReq.getSizeCode() != null) {
+                dsr = byKey.get(detailReq.getItemCode() + "|" + detailReq.getSizeCode());
+            }
 
-                        dsrRepository.save(dsr);
+            if (dsr != null) {
+                int inward = detailReq.getInward() != null ? detailReq.getInward() : nz(dsr.getInward());
+                int outward = detailReq.getOutward() != null ? detailReq.getOutward() : nz(dsr.getOutward());
+                int sale = detailReq.getSale() != null ? detailReq.getSale() : nz(dsr.getSale());
+                // Closing = Opening + Inward - Outward - Sale
+                int closing = nz(dsr.getOpening()) + inward - outward - sale;
+
+                boolean differs = dsr.getInward() == null || dsr.getInward() != inward
+                        || dsr.getOutward() == null || dsr.getOutward() != outward
+                        || dsr.getSale() == null || dsr.getSale() != sale
+                        || dsr.getClosing() == null || dsr.getClosing() != closing;
+                if (differs) {
+                    dsr.setInward(inward);
+                    dsr.setOutward(outward);
+                    dsr.setSale(sale);
+                    dsr.setClosing(closing);
+                    dsr.setUpdatedAt(now);
+                    if (dsr.getId() != null) {
+                        changed.put(dsr.getId(), dsr);
                     }
                 }
+            } else if (detailReq.getItemCode() != null && detailReq.getSizeCode() != null) {
+                // Record not found, insert new record from the store's inventory
+                if (inventory == null) {
+                    inventory = loadInventoryWithPrices(request.getStoreCode());
+                }
+                String key = detailReq.getItemCode() + "|" + detailReq.getSizeCode();
+                Object[] inv = inventory.get(key);
+                if (inv == null) {
+                    continue;
+                }
+
+                DSR newDsr = new DSR();
+                newDsr.setStore(request.getStoreCode());
+                newDsr.setBusinessDate(request.getDsrDate());
+                newDsr.setBusinessDt(dsrDate);
+                newDsr.setItemCode(detailReq.getItemCode());
+                newDsr.setItemName((String) inv[0]);
+                newDsr.setSizeCode(detailReq.getSizeCode());
+                newDsr.setSizeName((String) inv[1]);
+
+                // Closing from Inventory becomes Opening in DSR
+                newDsr.setOpening((Integer) inv[2]);
+                newDsr.setInward(detailReq.getInward() != null ? detailReq.getInward() : 0);
+                newDsr.setOutward(detailReq.getOutward() != null ? detailReq.getOutward() : 0);
+                newDsr.setSale(detailReq.getSale() != null ? detailReq.getSale() : 0);
+                newDsr.setClosing(newDsr.getOpening() + newDsr.getInward() - newDsr.getOutward() - newDsr.getSale());
+                newDsr.setPurchasePrice((Double) inv[3]);
+                newDsr.setMrp((Double) inv[4]);
+                newDsr.setCreatedAt(now);
+                newDsr.setUpdatedAt(now);
+
+                created.put(key, newDsr);
+                byKey.put(key, newDsr);
             }
         }
-    }
 
-    public ByteArrayInputStream exportDSRToExcel(String storeCode, String businessDate) throws IOException {
-        List<DSR> dsrList = dsrRepository.findByStoreAndBusinessDate(storeCode, businessDate);
-        List<TranItem> tranItems = tranItemRepository.findByStoreCodeAndInvoiceDate(storeCode, businessDate);
-        List<TranLedger> tranLedgers = tranLedgerRepository.findByStoreCodeAndInvoiceDate(storeCode, businessDate);
+        batchUpdateDetails(new ArrayList<>(changed.values()));
+        batchInsertDetails(new ArrayList<>(created.values()));
 
-        List<Size> activeSizes = sizeRepository.findByStatusOrderByNameAsc(true);
-        List<Brand> activeBrands = brandRepository.findActiveBrands();
-        List<Item> allItems = itemRepository.findAll().stream()
-                .filter(i -> Boolean.TRUE.equals(i.getStatus()))
-                .collect(Collectors.toList());
+        Map<String, Integer> result = new LinkedHashMap<>();
+        result.put("updated", changed.size());
+        result.put("inserted", created.size());
+        return result;
+    }
 
-        Map<String, Category> categoryMap = categoryRepository.findActiveCategories().stream()
-                .collect(Collectors.toMap(Category::getCode, c -> c));
+    private List<DSR> loadDetails(String where, Object... params) {
+        String sql = "SELECT id, Item_code, Size_Code, Opening, Inward, Outward, Sale, Closing FROM DSR_Detail WHERE " + where;
+        return jdbcTemplate.query(sql, (rs, rowNum) -> {
+            DSR dsr = new DSR();
+            dsr.setId(rs.getInt("id"));
+            dsr.setItemCode(rs.getString("Item_code"));
+            dsr.setSizeCode(rs.getString("Size_Code"));
+            dsr.setOpening(getInteger(rs, "Opening"));
+            dsr.setInward(getInteger(rs, "Inward"));
+            dsr.setOutward(getInteger(rs, "Outward"));
+            dsr.setSale(getInteger(rs, "Sale"));
+            dsr.setClosing(getInteger(rs, "Closing"));
+            return dsr;
+        }, params);
+    }
 
-        Map<String, Item> itemByCode = allItems.stream()
-                .collect(Collectors.toMap(Item::getItemCode, i -> i, (a, b) -> a));
+    private static Integer getInteger(java.sql.ResultSet rs, String column) throws java.sql.SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
 
-        Map<String, List<Item>> itemsByBrand = new HashMap<>();
-        for (Item item : allItems) {
-            String brandCode = item.getBrandCode();
-            if (brandCode == null) continue;
-            itemsByBrand.computeIfAbsent(brandCode, k -> new java.util.ArrayList<>()).add(item);
-        }
+    /** item|size -> [itemName, sizeName, closing, purchasePrice, mrp] for every inventory row of the store. */
+    private Map<String, Object[]> loadInventoryWithPrices(String storeCode) {
+        Map<String, Object[]> inventory = new HashMap<>();
+        String sql = "SELECT im.Item_code, im.Item_Name, im.Size_code, im.Size_name, im.Closing, pm.Purchase_Price, pm.MRP "
+                + "FROM Inventory_Master im "
+                + "LEFT JOIN Price_Master pm ON pm.Item_Code = im.Item_code AND pm.Size_Code = im.Size_code "
+                + "WHERE im.Store_code = ?";
+        jdbcTemplate.query(sql, rs -> {
+            inventory.put(rs.getString("Item_code") + "|" + rs.getString("Size_code"), new Object[] {
+                    rs.getString("Item_Name"),
+                    rs.getString("Size_name"),
+                    rs.getInt("Closing"),
+                    rs.getDouble("Purchase_Price"),
+                    rs.getDouble("MRP")
+            });
+        }, storeCode);
+        return inventory;
+    }
 
-        activeBrands.sort((a, b) -> {
-            String n1 = a.getName() != null ? a.getName() : "";
-            String n2 = b.getName() != null ? b.getName() : "";
-            return n1.compareToIgnoreCase(n2);
+    private void batchUpdateDetails(List<DSR> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        String sql = "UPDATE DSR_Detail SET Inward = ?, Outward = ?, Sale = ?, Closing = ?, Updated_at = ? WHERE id = ?";
+        List<Object[]> batchArgs = new ArrayList<>(rows.size());
+        for (DSR dsr : rows) {
+            batchArgs.add(new Object[] {
+                    dsr.getInward(), dsr.getOutward(), dsr.getSale(), dsr.getClosing(),
+                    Timestamp.valueOf(dsr.getUpdatedAt()), dsr.getId()
+            });
+        }
+        jdbcTemplate.batchUpdate(sql, batchArgs, new int[] {
+                Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.TIMESTAMP, Types.INTEGER
         });
+    }
 
-        activeSizes.sort((a, b) -> {
-            Integer o1 = a.getShortOrder();
-            Integer o2 = b.getShortOrder();
-            int orderA = (o1 != null && o1 > 0) ? o1 : Integer.MAX_VALUE;
-            int orderB = (o2 != null && o2 > 0) ? o2 : Integer.MAX_VALUE;
-            if (orderA != orderB) {
-                return Integer.compare(orderA, orderB);
-            }
-            String n1 = a.getName() != null ? a.getName() : "";
-            String n2 = b.getName() != null ? b.getName() : "";
-            return n1.compareToIgnoreCase(n2);
+    private void batchInsertDetails(List<DSR> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        String sql = "INSERT INTO DSR_Detail (Store, Business_date, business_dt, Item_code, Item_name, Size_Code, Size_Name, "
+                + "Purchase_Price, MRP, Opening, Inward, Outward, Sale, Closing, Created_at, Updated_at) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        List<Object[]> batchArgs = new ArrayList<>(rows.size());
+        for (DSR dsr : rows) {
+            batchArgs.add(new Object[] {
+                    dsr.getStore(), dsr.getBusinessDate(),
+                    dsr.getBusinessDt() != null ? java.sql.Date.valueOf(dsr.getBusinessDt()) : null,
+                    dsr.getItemCode(), dsr.getItemName(), dsr.getSizeCode(), dsr.getSizeName(),
+                    dsr.getPurchasePrice(), dsr.getMrp(),
+                    dsr.getOpening(), dsr.getInward(), dsr.getOutward(), dsr.getSale(), dsr.getClosing(),
+                    Timestamp.valueOf(dsr.getCreatedAt()), Timestamp.valueOf(dsr.getUpdatedAt())
+            });
+        }
+        jdbcTemplate.batchUpdate(sql, batchArgs, new int[] {
+                Types.VARCHAR, Types.VARCHAR, Types.DATE, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR,
+                Types.DOUBLE, Types.DOUBLE, Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER,
+                Types.TIMESTAMP, Types.TIMESTAMP
         });
+    }
 
-        Map<String, Map<String, DSR>> dsrMap = new HashMap<>();
-        for (DSR dsr : dsrList) {
-            if (dsr.getItemCode() == null || dsr.getSizeCode() == null) continue;
-            dsrMap.computeIfAbsent(dsr.getItemCode(), k -> new HashMap<>())
-                    .put(dsr.getSizeCode(), dsr);
-        }
+    private static int nz(Integer value) {
+        return value != null ? value : 0;
+    }
 
-        class SaleAgg {
-            int qty;
-            double amount;
-        }
+    public ByteArrayInputStream exportDSRToExcel(String storeCode, String businessDate) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportDSRToExcel(storeCode, businessDate, out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
 
-        Map<String, Map<String, SaleAgg>> salesMap = new HashMap<>();
-        for (TranItem ti : tranItems) {
-            if (ti.getItemCode() == null || ti.getSizeCode() == null) continue;
-            Map<String, SaleAgg> bySize = salesMap.computeIfAbsent(ti.getItemCode(), k -> new HashMap<>());
-            SaleAgg agg = bySize.computeIfAbsent(ti.getSizeCode(), k -> new SaleAgg());
-            if (ti.getQuantity() != null) {
-                agg.qty += ti.getQuantity();
-            }
-            if (ti.getAmount() != null) {
-                agg.amount += ti.getAmount();
-            }
-        }
+    /**
+     * Writes the DSR workbook straight to {@code out}. Rows go through a streaming (SXSSF)
+     * workbook that keeps only the last {@link #EXPORT_ROW_WINDOW} rows in memory, so heap use
+     * does not grow with the number of items.
+     */
+    public void exportDSRToExcel(String storeCode, String businessDate, OutputStream out) throws IOException {
+        LocalDate date = BusinessDates.require(businessDate);
+        List<TranLedger> tranLedgers = tranLedgerRepository.findByStoreCodeAndInvoiceDay(storeCode, date, BusinessDates.storedForms(date));
+
+        DSRGrid grid = buildDSRGrid(storeCode, date);
+        PivotMatrix matrix = grid.matrix;
+        List<Size> activeSizes = grid.sizes;
+        List<Brand> activeBrands = grid.brands;
+        List<Item> allItems = grid.items;
+        Map<String, List<Item>> itemsByBrand = grid.itemsByBrand;
 
         Map<String, Category> categoryByCode = categoryRepository.findActiveCategories().stream()
                 .collect(Collectors.toMap(Category::getCode, c -> c));
@@ -293,14 +372,7 @@ public class DSRService {
         double totalSaleAmount = 0.0;
 
         for (Item item : allItems) {
-            String itemCode = item.getItemCode();
-            Map<String, SaleAgg> itemSales = salesMap.get(itemCode);
-            if (itemSales == null || itemSales.isEmpty()) continue;
-
-            double itemAmt = 0.0;
-            for (SaleAgg agg : itemSales.values()) {
-                itemAmt += agg.amount;
-            }
+            double itemAmt = matrix.rowDoubleTotal(matrix.rowOf(item.getItemCode()), AMOUNT);
             if (itemAmt != 0.0) {
                 String catCode = item.getCategoryCode();
                 String catName = "Unknown Category";
@@ -377,30 +449,33 @@ public class DSRService {
             }
         }
 
-        Map<String, Map<String, Integer>> grandTotals = new LinkedHashMap<>();
+        List<Map.Entry<String, Double>> catList = new ArrayList<>(categoryTotals.entrySet());
+
+        // Column widths are known up front: autoSizeColumn cannot see rows already flushed
+        // to disk, and measuring every cell was most of the export's CPU time anyway.
+        int nameChars = "BRAND NAME".length();
+        for (Brand brand : activeBrands) {
+            nameChars = Math.max(nameChars, length(brand.getName()));
+        }
+        for (Item item : allItems) {
+            nameChars = Math.max(nameChars, length(item.getItemName()));
+        }
+        int sizeChars = 8;
         for (Size s : activeSizes) {
-            Map<String, Integer> m = new HashMap<>();
-            m.put("opening", 0);
-            m.put("inward", 0);
-            m.put("outward", 0);
-            m.put("closing", 0);
-            m.put("sale", 0);
-            m.put("amount", 0);
-            grandTotals.put(s.getCode(), m);
+            sizeChars = Math.max(sizeChars, length(s.getName()));
         }
 
-        try (Workbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(EXPORT_ROW_WINDOW);
+        try {
             Sheet sheet = workbook.createSheet("DSR");
 
+            // The only styles the sheet uses, created once and shared by every cell
             CellStyle headerStyle = workbook.createCellStyle();
             Font headerFont = workbook.createFont();
             headerFont.setBold(true);
             headerStyle.setFont(headerFont);
             headerStyle.setAlignment(HorizontalAlignment.CENTER);
-            headerStyle.setBorderTop(BorderStyle.THIN);
-            headerStyle.setBorderBottom(BorderStyle.THIN);
-            headerStyle.setBorderLeft(BorderStyle.THIN);
-            headerStyle.setBorderRight(BorderStyle.THIN);
+            setThinBorders(headerStyle);
 
             CellStyle titleStyle = workbook.createCellStyle();
             Font titleFont = workbook.createFont();
@@ -408,38 +483,41 @@ public class DSRService {
             titleFont.setFontHeightInPoints((short) 14);
             titleStyle.setFont(titleFont);
             titleStyle.setAlignment(HorizontalAlignment.CENTER);
-            titleStyle.setBorderTop(BorderStyle.THIN);
-            titleStyle.setBorderBottom(BorderStyle.THIN);
-            titleStyle.setBorderLeft(BorderStyle.THIN);
-            titleStyle.setBorderRight(BorderStyle.THIN);
+            setThinBorders(titleStyle);
+
+            CellStyle cellStyle = workbook.createCellStyle();
+            setThinBorders(cellStyle);
 
-            CellStyle footerHeaderStyle = workbook.createCellStyle();
-            footerHeaderStyle.cloneStyleFrom(headerStyle);
+            int sizeCount = activeSizes.size();
+            int groupCount = 7;
+            int lastColumnIndex = 1 + groupCount * sizeCount;
 
-            CellStyle footerCellStyle = workbook.createCellStyle();
-            footerCellStyle.setBorderTop(BorderStyle.THIN);
-            footerCellStyle.setBorderBottom(BorderStyle.THIN);
-            footerCellStyle.setBorderLeft(BorderStyle.THIN);
-            footerCellStyle.setBorderRight(BorderStyle.THIN);
+            sheet.setColumnWidth(0, columnWidth(nameChars));
+            for (int col = 1; col < lastColumnIndex; col++) {
+                sheet.setColumnWidth(col, columnWidth(sizeChars));
+            }
+            sheet.setColumnWidth(lastColumnIndex, columnWidth("REMARKS".length()));
 
             int rowIdx = 0;
 
-            Row row0 = sheet.createRow(rowIdx++);
+            Row titleRow = sheet.createRow(rowIdx++);
+            String titleText = "DAILY SALE STATEMENT IMFL SHOP - " + storeCode + " - " + businessDate;
+            styledCell(titleRow, 0, titleStyle).setCellValue(titleText);
+            fillRegion(new Row[] { titleRow }, 1, lastColumnIndex, titleStyle);
+            sheet.addMergedRegion(new CellRangeAddress(0, 0, 0, lastColumnIndex));
+
             Row row1 = sheet.createRow(rowIdx++);
             Row row2 = sheet.createRow(rowIdx++);
+            Row row3 = sheet.createRow(rowIdx++);
+            Row[] headerRows = new Row[] { row1, row2, row3 };
 
             int colIdx = 0;
 
-            Cell c = row0.createCell(colIdx);
-            c.setCellValue("BRAND NAME");
-            c.setCellStyle(headerStyle);
-            CellRangeAddress brandRegion = new CellRangeAddress(0, 2, colIdx, colIdx);
-            sheet.addMergedRegion(brandRegion);
-            applyRegionStyle(sheet, brandRegion, headerStyle);
+            styledCell(row1, colIdx, headerStyle).setCellValue("BRAND NAME");
+            fillRegion(headerRows, colIdx, colIdx, headerStyle);
+            sheet.addMergedRegion(new CellRangeAddress(1, 3, colIdx, colIdx));
             colIdx++;
 
-            int groupCount = 7;
-
             String[] groupTitles = new String[] {
                     "OPENING BALANCE",
                     "RECEIVED",
@@ -453,241 +531,86 @@ public class DSRService {
             String[] groupNumbers = new String[] { "1","2","3","4","5","6","7" };
 
             for (int g = 0; g < groupCount; g++) {
-                Cell gc = row0.createCell(colIdx);
-                gc.setCellValue(groupTitles[g]);
-                gc.setCellStyle(headerStyle);
-                CellRangeAddress groupTitleRegion = new CellRangeAddress(0, 0, colIdx, colIdx + activeSizes.size() - 1);
-                sheet.addMergedRegion(groupTitleRegion);
-                applyRegionStyle(sheet, groupTitleRegion, headerStyle);
-
-                Cell nc = row1.createCell(colIdx);
-                nc.setCellValue(groupNumbers[g]);
-                nc.setCellStyle(headerStyle);
-                CellRangeAddress groupNumberRegion = new CellRangeAddress(1, 1, colIdx, colIdx + activeSizes.size() - 1);
-                sheet.addMergedRegion(groupNumberRegion);
-                applyRegionStyle(sheet, groupNumberRegion, headerStyle);
+                int lastGroupCol = colIdx + sizeCount - 1;
+                fillRegion(new Row[] { row1, row2 }, colIdx, lastGroupCol, headerStyle);
+                row1.getCell(colIdx).setCellValue(groupTitles[g]);
+                row2.getCell(colIdx).setCellValue(groupNumbers[g]);
+                if (sizeCount > 1) {
+                    sheet.addMergedRegion(new CellRangeAddress(1, 1, colIdx, lastGroupCol));
+                    sheet.addMergedRegion(new CellRangeAddress(2, 2, colIdx, lastGroupCol));
+                }
 
                 int startCol = colIdx;
                 for (Size s : activeSizes) {
-                    Cell sc = row2.createCell(startCol++);
-                    sc.setCellValue(s.getName());
-                    sc.setCellStyle(headerStyle);
+                    styledCell(row3, startCol++, headerStyle).setCellValue(s.getName());
                 }
 
-                colIdx += activeSizes.size();
-            }
-
-            Cell remarksHeader = row0.createCell(colIdx);
-            remarksHeader.setCellValue("REMARKS");
-            remarksHeader.setCellStyle(headerStyle);
-            CellRangeAddress remarksRegion = new CellRangeAddress(0, 2, colIdx, colIdx);
-            sheet.addMergedRegion(remarksRegion);
-            applyRegionStyle(sheet, remarksRegion, headerStyle);
-
-            for (int i = 0; i <= colIdx; i++) {
-                sheet.autoSizeColumn(i);
+                colIdx += sizeCount;
             }
 
-            int lastColumnIndex = colIdx;
-            sheet.shiftRows(0, sheet.getLastRowNum(), 1);
-            Row titleRow = sheet.createRow(0);
-            Cell titleCell = titleRow.createCell(0);
-            String titleText = "DAILY SALE STATEMENT IMFL SHOP - " + storeCode + " - " + businessDate;
-            titleCell.setCellValue(titleText);
-            titleCell.setCellStyle(titleStyle);
-            CellRangeAddress titleRegion = new CellRangeAddress(0, 0, 0, lastColumnIndex);
-            sheet.addMergedRegion(titleRegion);
-            applyRegionStyle(sheet, titleRegion, titleStyle);
-
-            rowIdx++;
+            styledCell(row1, colIdx, headerStyle).setCellValue("REMARKS");
+            fillRegion(headerRows, colIdx, colIdx, headerStyle);
+            sheet.addMergedRegion(new CellRangeAddress(1, 3, colIdx, colIdx));
 
             for (Brand brand : activeBrands) {
-                List<Item> brandItems = itemsByBrand.getOrDefault(brand.getCode(), java.util.Collections.emptyList());
-                List<Item> visibleItems = brandItems.stream().filter(item -> {
-                    String itemCode = item.getItemCode();
-                    boolean hasData = activeSizes.stream().anyMatch(size -> {
-                        String sizeCode = size.getCode();
-                        DSR d = Optional.ofNullable(dsrMap.get(itemCode))
-                                .map(m -> m.get(sizeCode))
-                                .orElse(null);
-                        SaleAgg sAgg = Optional.ofNullable(salesMap.get(itemCode))
-                                .map(m -> m.get(sizeCode))
-                                .orElse(null);
-
-                        int opening = d != null && d.getOpening() != null ? d.getOpening() : 0;
-                        int inward = d != null && d.getInward() != null ? d.getInward() : 0;
-                        int outward = d != null && d.getOutward() != null ? d.getOutward() : 0;
-                        int saleQty = sAgg != null ? sAgg.qty : 0;
-                        double amount = sAgg != null ? sAgg.amount : 0.0;
-                        double mrp = d != null && d.getMrp() != null ? d.getMrp() : 0.0;
-
-                        int closing = (opening + inward) - (outward + saleQty);
-
-                        return opening != 0 || inward != 0 || outward != 0 || closing != 0 ||
-                                saleQty != 0 || amount != 0.0 || mrp != 0.0;
-                    });
-                    return hasData;
-                }).collect(Collectors.toList());
+                List<Item> visibleItems = new ArrayList<>();
+                for (Item item : itemsByBrand.getOrDefault(brand.getCode(), java.util.Collections.emptyList())) {
+                    if (matrix.hasData(matrix.rowOf(item.getItemCode()))) {
+                        visibleItems.add(item);
+                    }
+                }
 
                 if (visibleItems.isEmpty()) {
                     continue;
                 }
 
                 Row brandRow = sheet.createRow(rowIdx++);
-                Cell brandCell = brandRow.createCell(0);
-                brandCell.setCellValue(brand.getName());
-                brandCell.setCellStyle(headerStyle);
-
-                for (int col = 1; col <= colIdx; col++) {
-                    Cell bc = brandRow.createCell(col);
-                    bc.setCellStyle(footerCellStyle);
-                }
+                styledCell(brandRow, 0, headerStyle).setCellValue(brand.getName());
+                fillRegion(new Row[] { brandRow }, 1, colIdx, cellStyle);
 
                 for (Item item : visibleItems) {
+                    int r = matrix.rowOf(item.getItemCode());
                     Row itemRow = sheet.createRow(rowIdx++);
                     int col = 0;
-                    Cell itemNameCell = itemRow.createCell(col++);
-                    itemNameCell.setCellValue(item.getItemName());
-                    itemNameCell.setCellStyle(footerCellStyle);
-
-                    Map<String, DSR> itemDsr = dsrMap.getOrDefault(item.getItemCode(), java.util.Collections.emptyMap());
-                    Map<String, SaleAgg> itemSales = salesMap.getOrDefault(item.getItemCode(), java.util.Collections.emptyMap());
-
-                    for (Size size : activeSizes) {
-                        DSR d = itemDsr.get(size.getCode());
-                        int opening = d != null && d.getOpening() != null ? d.getOpening() : 0;
-                        Cell openingCell = itemRow.createCell(col++);
-                        openingCell.setCellValue(opening > 0 ? opening : 0);
-                        openingCell.setCellStyle(footerCellStyle);
-                    }
-
-                    for (Size size : activeSizes) {
-                        DSR d = itemDsr.get(size.getCode());
-                        int inward = d != null && d.getInward() != null ? d.getInward() : 0;
-                        Cell inwardCell = itemRow.createCell(col++);
-                        inwardCell.setCellValue(inward > 0 ? inward : 0);
-                        inwardCell.setCellStyle(footerCellStyle);
-                    }
-
-                    for (Size size : activeSizes) {
-                        DSR d = itemDsr.get(size.getCode());
-                        int outward = d != null && d.getOutward() != null ? d.getOutward() : 0;
-                        Cell outwardCell = itemRow.createCell(col++);
-                        outwardCell.setCellValue(outward > 0 ? outward : 0);
-                        outwardCell.setCellStyle(footerCellStyle);
-                    }
+                    styledCell(itemRow, col++, cellStyle).setCellValue(item.getItemName());
 
-                    for (Size size : activeSizes) {
-                        DSR d = itemDsr.get(size.getCode());
-                        SaleAgg sAgg = itemSales.get(size.getCode());
-                        int opening = d != null && d.getOpening() != null ? d.getOpening() : 0;
-                        int inward = d != null && d.getInward() != null ? d.getInward() : 0;
-                        int outward = d != null && d.getOutward() != null ? d.getOutward() : 0;
-                        int saleQty = sAgg != null ? sAgg.qty : 0;
-                        int closing = (opening + inward) - (outward + saleQty);
-                        Cell closingCell = itemRow.createCell(col++);
-                        closingCell.setCellValue(closing != 0 ? closing : 0);
-                        closingCell.setCellStyle(footerCellStyle);
+                    for (int metric : new int[] { OPENING, INWARD, OUTWARD }) {
+                        for (int c = 0; c < sizeCount; c++) {
+                            styledCell(itemRow, col++, cellStyle).setCellValue(Math.max(matrix.getInt(r, c, metric), 0));
+                        }
                     }
-
-                    for (Size size : activeSizes) {
-                        SaleAgg sAgg = itemSales.get(size.getCode());
-                        int qty = sAgg != null ? sAgg.qty : 0;
-                        Cell saleQtyCell = itemRow.createCell(col++);
-                        saleQtyCell.setCellValue(qty > 0 ? qty : 0);
-                        saleQtyCell.setCellStyle(footerCellStyle);
+                    for (int c = 0; c < sizeCount; c++) {
+                        styledCell(itemRow, col++, cellStyle).setCellValue(matrix.getInt(r, c, CLOSING));
                     }
-
-                    for (Size size : activeSizes) {
-                        DSR d = itemDsr.get(size.getCode());
-                        double mrp = d != null && d.getMrp() != null ? d.getMrp() : 0.0;
-                        Cell rateCell = itemRow.createCell(col++);
-                        rateCell.setCellValue(mrp > 0.0 ? mrp : 0.0);
-                        rateCell.setCellStyle(footerCellStyle);
+                    for (int c = 0; c < sizeCount; c++) {
+                        styledCell(itemRow, col++, cellStyle).setCellValue(Math.max(matrix.getInt(r, c, SALE), 0));
                     }
-
-                    for (Size size : activeSizes) {
-                        SaleAgg sAgg = itemSales.get(size.getCode());
-                        double amount = sAgg != null ? sAgg.amount : 0.0;
-                        Cell amountCell = itemRow.createCell(col++);
-                        amountCell.setCellValue(amount > 0.0 ? amount : 0.0);
-                        amountCell.setCellStyle(footerCellStyle);
+                    for (int metric : new int[] { RATE, AMOUNT }) {
+                        for (int c = 0; c < sizeCount; c++) {
+                            styledCell(itemRow, col++, cellStyle).setCellValue(Math.max(matrix.getDouble(r, c, metric), 0.0));
+                        }
                     }
 
-                    Cell remarksCell = itemRow.createCell(col);
-                    remarksCell.setCellStyle(footerCellStyle);
-
-                    for (Size size : activeSizes) {
-                        DSR d = itemDsr.get(size.getCode());
-                        SaleAgg sAgg = itemSales.get(size.getCode());
-                        int opening = d != null && d.getOpening() != null ? d.getOpening() : 0;
-                        int inward = d != null && d.getInward() != null ? d.getInward() : 0;
-                        int outward = d != null && d.getOutward() != null ? d.getOutward() : 0;
-                        int saleQty = sAgg != null ? sAgg.qty : 0;
-                        double amount = sAgg != null ? sAgg.amount : 0.0;
-
-                        int closing = (opening + inward) - (outward + saleQty);
-
-                        Map<String, Integer> gt = grandTotals.get(size.getCode());
-                        gt.put("opening", gt.get("opening") + opening);
-                        gt.put("inward", gt.get("inward") + inward);
-                        gt.put("outward", gt.get("outward") + outward);
-                        gt.put("closing", gt.get("closing") + closing);
-                        gt.put("sale", gt.get("sale") + saleQty);
-                        gt.put("amount", gt.get("amount") + (int) Math.round(amount));
-                    }
+                    styledCell(itemRow, col, cellStyle);
                 }
             }
 
             Row totalRow = sheet.createRow(rowIdx++);
-            Cell totalLabel = totalRow.createCell(0);
-            totalLabel.setCellValue("GRAND TOTAL");
-            totalLabel.setCellStyle(headerStyle);
+            styledCell(totalRow, 0, headerStyle).setCellValue("GRAND TOTAL");
 
             int col = 1;
-            for (Size size : activeSizes) {
-                int v = grandTotals.get(size.getCode()).get("opening");
-                Cell openingTotalCell = totalRow.createCell(col++);
-                openingTotalCell.setCellValue(v != 0 ? v : 0);
-                openingTotalCell.setCellStyle(footerCellStyle);
-            }
-            for (Size size : activeSizes) {
-                int v = grandTotals.get(size.getCode()).get("inward");
-                Cell inwardTotalCell = totalRow.createCell(col++);
-                inwardTotalCell.setCellValue(v != 0 ? v : 0);
-                inwardTotalCell.setCellStyle(footerCellStyle);
-            }
-            for (Size size : activeSizes) {
-                int v = grandTotals.get(size.getCode()).get("outward");
-                Cell outwardTotalCell = totalRow.createCell(col++);
-                outwardTotalCell.setCellValue(v != 0 ? v : 0);
-                outwardTotalCell.setCellStyle(footerCellStyle);
-            }
-            for (Size size : activeSizes) {
-                int v = grandTotals.get(size.getCode()).get("closing");
-                Cell closingTotalCell = totalRow.createCell(col++);
-                closingTotalCell.setCellValue(v != 0 ? v : 0);
-                closingTotalCell.setCellStyle(footerCellStyle);
-            }
-            for (Size size : activeSizes) {
-                int v = grandTotals.get(size.getCode()).get("sale");
-                Cell saleTotalCell = totalRow.createCell(col++);
-                saleTotalCell.setCellValue(v != 0 ? v : 0);
-                saleTotalCell.setCellStyle(footerCellStyle);
+            for (int metric : new int[] { OPENING, INWARD, OUTWARD, CLOSING, SALE }) {
+                for (int c = 0; c < sizeCount; c++) {
+                    styledCell(totalRow, col++, cellStyle).setCellValue(grid.grandInt(c, metric));
+                }
             }
-            for (Size ignored : activeSizes) {
-                Cell emptyRateCell = totalRow.createCell(col++);
-                emptyRateCell.setCellValue("");
-                emptyRateCell.setCellStyle(footerCellStyle);
+            for (int c = 0; c < sizeCount; c++) {
+                styledCell(totalRow, col++, cellStyle).setCellValue("");
             }
-            for (Size size : activeSizes) {
-                int v = grandTotals.get(size.getCode()).get("amount");
-                Cell amountTotalCell = totalRow.createCell(col++);
-                amountTotalCell.setCellValue(v != 0 ? v : 0);
-                amountTotalCell.setCellStyle(footerCellStyle);
+            for (int c = 0; c < sizeCount; c++) {
+                styledCell(totalRow, col++, cellStyle).setCellValue(Math.round(grid.grandDouble(c, AMOUNT)));
             }
-            Cell remarksTotalCell = totalRow.createCell(col);
-            remarksTotalCell.setCellStyle(footerCellStyle);
+            styledCell(totalRow, col, cellStyle);
 
             rowIdx++;
 
@@ -698,36 +621,14 @@ public class DSRService {
             int collCol = 12;
 
             Row footerHeaderRow = sheet.createRow(baseRow);
+            String[] footerTitles = new String[] { "CATEGORY WISE SALE", "OTHER SALE", "SHOP EXPENSES", "COLLECTION DETAIL" };
+            int[] footerCols = new int[] { catCol, otherCol, expCol, collCol };
+            for (int i = 0; i < footerCols.length; i++) {
+                styledCell(footerHeaderRow, footerCols[i], headerStyle).setCellValue(footerTitles[i]);
+                styledCell(footerHeaderRow, footerCols[i] + 1, headerStyle);
+                sheet.addMergedRegion(new CellRangeAddress(baseRow, baseRow, footerCols[i], footerCols[i] + 1));
+            }
 
-            Cell catHeaderCell = footerHeaderRow.createCell(catCol);
-            catHeaderCell.setCellValue("CATEGORY WISE SALE");
-            catHeaderCell.setCellStyle(footerHeaderStyle);
-            CellRangeAddress catHeaderRegion = new CellRangeAddress(baseRow, baseRow, catCol, catCol + 1);
-            sheet.addMergedRegion(catHeaderRegion);
-            applyRegionStyle(sheet, catHeaderRegion, footerHeaderStyle);
-
-            Cell otherHeaderCell = footerHeaderRow.createCell(otherCol);
-            otherHeaderCell.setCellValue("OTHER SALE");
-            otherHeaderCell.setCellStyle(footerHeaderStyle);
-            CellRangeAddress otherHeaderRegion = new CellRangeAddress(baseRow, baseRow, otherCol, otherCol + 1);
-            sheet.addMergedRegion(otherHeaderRegion);
-            applyRegionStyle(sheet, otherHeaderRegion, footerHeaderStyle);
-
-            Cell expHeaderCell = footerHeaderRow.createCell(expCol);
-            expHeaderCell.setCellValue("SHOP EXPENSES");
-            expHeaderCell.setCellStyle(footerHeaderStyle);
-            CellRangeAddress expHeaderRegion = new CellRangeAddress(baseRow, baseRow, expCol, expCol + 1);
-            sheet.addMergedRegion(expHeaderRegion);
-            applyRegionStyle(sheet, expHeaderRegion, footerHeaderStyle);
-
-            Cell collHeaderCell = footerHeaderRow.createCell(collCol);
-            collHeaderCell.setCellValue("COLLECTION DETAIL");
-            collHeaderCell.setCellStyle(footerHeaderStyle);
-            CellRangeAddress collHeaderRegion = new CellRangeAddress(baseRow, baseRow, collCol, collCol + 1);
-            sheet.addMergedRegion(collHeaderRegion);
-            applyRegionStyle(sheet, collHeaderRegion, footerHeaderStyle);
-
-            java.util.List<Map.Entry<String, Double>> catList = new java.util.ArrayList<>(categoryTotals.entrySet());
             int catRows = catList.size();
             int otherRows = saleLedgers.size();
             int expRows = expenseLedgers.size();
@@ -736,126 +637,302 @@ public class DSRService {
             int maxRows = Math.max(Math.max(catRows, otherRows), Math.max(expRows, collRows));
 
             for (int i = 0; i < maxRows; i++) {
-                Row r = sheet.getRow(baseRow + 1 + i);
-                if (r == null) {
-                    r = sheet.createRow(baseRow + 1 + i);
-                }
+                Row r = sheet.createRow(baseRow + 1 + i);
 
                 if (i < catRows) {
                     Map.Entry<String, Double> entry = catList.get(i);
-                    Cell c1 = r.createCell(catCol);
-                    c1.setCellValue(entry.getKey());
-                    c1.setCellStyle(footerCellStyle);
-                    Cell c2 = r.createCell(catCol + 1);
-                    c2.setCellValue(entry.getValue());
-                    c2.setCellStyle(footerCellStyle);
+                    styledCell(r, catCol, cellStyle).setCellValue(entry.getKey());
+                    styledCell(r, catCol + 1, cellStyle).setCellValue(entry.getValue());
                 }
 
                 if (i < otherRows) {
                     Ledger ledger = saleLedgers.get(i);
-                    Cell c1 = r.createCell(otherCol);
-                    c1.setCellValue(ledger.getName());
-                    c1.setCellStyle(footerCellStyle);
-                    double v = saleTotals.getOrDefault(ledger.getCode(), 0.0);
-                    Cell c2 = r.createCell(otherCol + 1);
-                    c2.setCellValue(v);
-                    c2.setCellStyle(footerCellStyle);
+                    styledCell(r, otherCol, cellStyle).setCellValue(ledger.getName());
+                    styledCell(r, otherCol + 1, cellStyle).setCellValue(saleTotals.getOrDefault(ledger.getCode(), 0.0));
                 }
 
                 if (i < expRows) {
                     Ledger ledger = expenseLedgers.get(i);
-                    Cell c1 = r.createCell(expCol);
-                    c1.setCellValue(ledger.getName());
-                    c1.setCellStyle(footerCellStyle);
-                    double v = expenseTotals.getOrDefault(ledger.getCode(), 0.0);
-                    Cell c2 = r.createCell(expCol + 1);
-                    c2.setCellValue(v);
-                    c2.setCellStyle(footerCellStyle);
+                    styledCell(r, expCol, cellStyle).setCellValue(ledger.getName());
+                    styledCell(r, expCol + 1, cellStyle).setCellValue(expenseTotals.getOrDefault(ledger.getCode(), 0.0));
                 }
 
                 if (i < collRows) {
                     Ledger ledger = tenderLedgers.get(i);
-                    Cell c1 = r.createCell(collCol);
-                    c1.setCellValue(ledger.getName());
-                    c1.setCellStyle(footerCellStyle);
-                    double v = tenderTotals.getOrDefault(ledger.getCode(), 0.0);
-                    Cell c2 = r.createCell(collCol + 1);
-                    c2.setCellValue(v);
-                    c2.setCellStyle(footerCellStyle);
+                    styledCell(r, collCol, cellStyle).setCellValue(ledger.getName());
+                    styledCell(r, collCol + 1, cellStyle).setCellValue(tenderTotals.getOrDefault(ledger.getCode(), 0.0));
                 }
             }
 
-            Row catTotalRow = sheet.getRow(baseRow + 1 + maxRows);
-            if (catTotalRow == null) {
-                catTotalRow = sheet.createRow(baseRow + 1 + maxRows);
-            }
-            Cell ctLabel = catTotalRow.createCell(catCol);
-            ctLabel.setCellValue("TOTAL");
-            ctLabel.setCellStyle(footerHeaderStyle);
-            Cell ctVal = catTotalRow.createCell(catCol + 1);
-            ctVal.setCellValue(totalSaleAmount);
-            ctVal.setCellStyle(footerCellStyle);
-
-            Row osTotalRow = sheet.getRow(baseRow + 1 + maxRows);
-            if (osTotalRow == null) {
-                osTotalRow = sheet.createRow(baseRow + 1 + maxRows);
-            }
-            Cell osLabel = osTotalRow.createCell(otherCol);
-            osLabel.setCellValue("TOTAL");
-            osLabel.setCellStyle(footerHeaderStyle);
-            Cell osVal = osTotalRow.createCell(otherCol + 1);
-            osVal.setCellValue(totalOtherSale);
-            osVal.setCellStyle(footerCellStyle);
-
-            Row expTotalRow = sheet.getRow(baseRow + 1 + maxRows);
-            if (expTotalRow == null) {
-                expTotalRow = sheet.createRow(baseRow + 1 + maxRows);
+            Row footerTotalRow = sheet.createRow(baseRow + 1 + maxRows);
+            double[] footerTotals = new double[] { totalSaleAmount, totalOtherSale, totalExpense, totalTender };
+            for (int i = 0; i < footerCols.length; i++) {
+                styledCell(footerTotalRow, footerCols[i], headerStyle).setCellValue("TOTAL");
+                styledCell(footerTotalRow, footerCols[i] + 1, cellStyle).setCellValue(footerTotals[i]);
             }
-            Cell expLabel = expTotalRow.createCell(expCol);
-            expLabel.setCellValue("TOTAL");
-            expLabel.setCellStyle(footerHeaderStyle);
-            Cell expVal = expTotalRow.createCell(expCol + 1);
-            expVal.setCellValue(totalExpense);
-            expVal.setCellStyle(footerCellStyle);
-
-            Row collTotalRow = sheet.getRow(baseRow + 1 + maxRows);
-            if (collTotalRow == null) {
-                collTotalRow = sheet.createRow(baseRow + 1 + maxRows);
-            }
-            Cell collLabel = collTotalRow.createCell(collCol);
-            collLabel.setCellValue("TOTAL");
-            collLabel.setCellStyle(footerHeaderStyle);
-            Cell collVal = collTotalRow.createCell(collCol + 1);
-            collVal.setCellValue(totalTender);
-            collVal.setCellStyle(footerCellStyle);
 
             workbook.write(out);
-            return new ByteArrayInputStream(out.toByteArray());
+        } finally {
+            // Deletes the temp files holding the flushed rows
+            workbook.dispose();
+            workbook.close();
         }
     }
 
-    private void applyRegionStyle(Sheet sheet, CellRangeAddress region, CellStyle style) {
-        for (int row = region.getFirstRow(); row <= region.getLastRow(); row++) {
-            Row r = sheet.getRow(row);
-            if (r == null) {
-                r = sheet.createRow(row);
-            }
-            for (int col = region.getFirstColumn(); col <= region.getLastColumn(); col++) {
-                Cell cell = r.getCell(col);
+    private static void setThinBorders(CellStyle style) {
+        style.setBorderTop(BorderStyle.THIN);
+        style.setBorderBottom(BorderStyle.THIN);
+        style.setBorderLeft(BorderStyle.THIN);
+        style.setBorderRight(BorderStyle.THIN);
+    }
+
+    private static Cell styledCell(Row row, int col, CellStyle style) {
+        Cell cell = row.createCell(col);
+        cell.setCellStyle(style);
+        return cell;
+    }
+
+    /** Gives every cell of a merged region its style (and border) as the rows are written. */
+    private static void fillRegion(Row[] rows, int firstCol, int lastCol, CellStyle style) {
+        for (Row row : rows) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                Cell cell = row.getCell(col);
                 if (cell == null) {
-                    cell = r.createCell(col);
+                    cell = row.createCell(col);
                 }
                 cell.setCellStyle(style);
             }
         }
     }
 
-    public void populateDSR(String storeCode, String businessDate, String userName) {
-        System.out.println("populateDSR called for Store: " + storeCode + ", Date: " + businessDate + ", User: " + userName);
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    /** Width in 1/256ths of a character, with a little padding and Excel's 255-character cap. */
+    private static int columnWidth(int chars) {
+        return Math.min(chars + 2, 255) * 256;
+    }
+
+    /** Items, sizes and brands of the DSR sheet with the store-day's figures pivoted item x size. */
+    private static final class DSRGrid {
+        private List<Size> sizes;
+        private List<Brand> brands;
+        private List<Item> items;
+        private Map<String, List<Item>> itemsByBrand;
+        private PivotMatrix matrix;
+
+        // Grand totals of the sheet: the active brands' totals, so items without an active
+        // brand (which the sheet does not show) are left out as the rows above are
+        int grandInt(int col, int metric) {
+            int total = 0;
+            for (Brand brand : brands) {
+                int group = matrix.groupOf(brand.getCode());
+                if (group >= 0) {
+                    total += matrix.groupIntTotal(group, col, metric);
+                }
+            }
+            return total;
+        }
+
+        double grandDouble(int col, int metric) {
+            double total = 0.0;
+            for (Brand brand : brands) {
+                int group = matrix.groupOf(brand.getCode());
+                if (group >= 0) {
+                    total += matrix.groupDoubleTotal(group, col, metric);
+                }
+            }
+            return total;
+        }
+    }
+
+    private DSRGrid buildDSRGrid(String storeCode, LocalDate date) {
+        DSRGrid grid = new DSRGrid();
+
+        grid.sizes = sizeRepository.findByStatusOrderByNameAsc(true);
+        grid.sizes.sort((a, b) -> {
+            Integer o1 = a.getShortOrder();
+            Integer o2 = b.getShortOrder();
+            int orderA = (o1 != null && o1 > 0) ? o1 : Integer.MAX_VALUE;
+            int orderB = (o2 != null && o2 > 0) ? o2 : Integer.MAX_VALUE;
+            if (orderA != orderB) {
+                return Integer.compare(orderA, orderB);
+            }
+            String n1 = a.getName() != null ? a.getName() : "";
+            String n2 = b.getName() != null ? b.getName() : "";
+            return n1.compareToIgnoreCase(n2);
+        });
+
+        grid.brands = brandRepository.findActiveBrands();
+        grid.brands.sort((a, b) -> {
+            String n1 = a.getName() != null ? a.getName() : "";
+            String n2 = b.getName() != null ? b.getName() : "";
+            return n1.compareToIgnoreCase(n2);
+        });
+
+        grid.items = itemRepository.findAll().stream()
+                .filter(i -> Boolean.TRUE.equals(i.getStatus()))
+                .collect(Collectors.toList());
+
+        grid.itemsByBrand = new HashMap<>();
+        for (Item item : grid.items) {
+            String brandCode = item.getBrandCode();
+            if (brandCode == null) continue;
+            grid.itemsByBrand.computeIfAbsent(brandCode, k -> new ArrayList<>()).add(item);
+        }
+
+        List<String> sizeCodes = grid.sizes.stream().map(Size::getCode).collect(Collectors.toList());
+        PivotMatrix matrix = new PivotMatrix(sizeCodes, INT_METRICS, DOUBLE_METRICS);
+        for (Item item : grid.items) {
+            matrix.row(item.getItemCode(), item.getBrandCode());
+        }
+
+        java.sql.Date sqlDate = java.sql.Date.valueOf(date);
+        // Rows the date backfill has not reached yet are matched by their string date
+        List<String> dates = BusinessDates.storedForms(date);
+
+        // Rows and sizes that are not on the sheet (inactive items or sizes) are skipped
+        jdbcTemplate.query("SELECT Item_code, Size_Code, Opening, Inward, Outward, MRP FROM DSR_Detail "
+                + "WHERE Store = ? AND (business_dt = ? OR (business_dt IS NULL AND Business_date IN (?, ?)))", rs -> {
+            int r = matrix.rowOf(rs.getString("Item_code"));
+            int c = matrix.column(rs.getString("Size_Code"));
+            if (r < 0 || c < 0) {
+                return;
+            }
+            matrix.setInt(r, c, OPENING, rs.getInt("Opening"));
+            matrix.setInt(r, c, INWARD, rs.getInt("Inward"));
+            matrix.setInt(r, c, OUTWARD, rs.getInt("Outward"));
+            matrix.setDouble(r, c, RATE, rs.getDouble("MRP"));
+        }, storeCode, sqlDate, dates.get(0), dates.get(1));
+
+        jdbcTemplate.query("SELECT item_code, size_code, SUM(ISNULL(quantity, 0)) AS qty, SUM(ISNULL(amount, 0)) AS amount "
+                + "FROM tran_item WHERE store_code = ? AND (invoice_dt = ? OR (invoice_dt IS NULL AND invoice_date IN (?, ?))) "
+                + "GROUP BY item_code, size_code", rs -> {
+            int r = matrix.rowOf(rs.getString("item_code"));
+            int c = matrix.column(rs.getString("size_code"));
+            if (r < 0 || c < 0) {
+                return;
+            }
+            matrix.addInt(r, c, SALE, rs.getInt("qty"));
+            matrix.addDouble(r, c, AMOUNT, rs.getDouble("amount"));
+        }, storeCode, sqlDate, dates.get(0), dates.get(1));
+
+        for (int r = 0; r < matrix.rowCount(); r++) {
+            for (int c = 0; c < matrix.columnCount(); c++) {
+                int closing = matrix.getInt(r, c, OPENING) + matrix.getInt(r, c, INWARD)
+                        - matrix.getInt(r, c, OUTWARD) - matrix.getInt(r, c, SALE);
+                matrix.setInt(r, c, CLOSING, closing);
+            }
+        }
+        matrix.computeTotals();
+
+        grid.matrix = matrix;
+        return grid;
+    }
+
+    /**
+     * The DSR sheet as JSON: per brand, the items with any figures (one value per size for
+     * each metric, plus the item's totals), the brand totals and the grand totals.
+     */
+    public Map<String, Object> getDSRGrid(String storeCode, String businessDate) {
+        DSRGrid grid = buildDSRGrid(storeCode, BusinessDates.require(businessDate));
+        PivotMatrix matrix = grid.matrix;
+        int sizeCount = matrix.columnCount();
+
+        List<Map<String, Object>> sizes = new ArrayList<>(sizeCount);
+        for (Size size : grid.sizes) {
+            Map<String, Object> s = new LinkedHashMap<>();
+            s.put("code", size.getCode());
+            s.put("name", size.getName());
+            sizes.add(s);
+        }
+
+        List<Map<String, Object>> brands = new ArrayList<>();
+        for (Brand brand : grid.brands) {
+            List<Map<String, Object>> items = new ArrayList<>();
+            for (Item item : grid.itemsByBrand.getOrDefault(brand.getCode(), java.util.Collections.emptyList())) {
+                int r = matrix.rowOf(item.getItemCode());
+                if (!matrix.hasData(r)) {
+                    continue;
+                }
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("itemCode", item.getItemCode());
+                row.put("itemName", item.getItemName());
+                for (int m = 0; m < INT_METRICS; m++) {
+                    int[] values = new int[sizeCount];
+                    for (int c = 0; c < sizeCount; c++) {
+                        values[c] = matrix.getInt(r, c, m);
+                    }
+                    row.put(INT_METRIC_NAMES[m], values);
+                }
+                for (int m = 0; m < DOUBLE_METRICS; m++) {
+                    double[] values = new double[sizeCount];
+                    for (int c = 0; c < sizeCount; c++) {
+                        values[c] = matrix.getDouble(r, c, m);
+                    }
+                    row.put(DOUBLE_METRIC_NAMES[m], values);
+                }
+                Map<String, Object> totals = new LinkedHashMap<>();
+                for (int m = 0; m < INT_METRICS; m++) {
+                    totals.put(INT_METRIC_NAMES[m], matrix.rowIntTotal(r, m));
+                }
+                totals.put(DOUBLE_METRIC_NAMES[AMOUNT], matrix.rowDoubleTotal(r, AMOUNT));
+                row.put("totals", totals);
+                items.add(row);
+            }
+            if (items.isEmpty()) {
+                continue;
+            }
+
+            Map<String, Object> b = new LinkedHashMap<>();
+            b.put("brandCode", brand.getCode());
+            b.put("brandName", brand.getName());
+            b.put("items", items);
+            b.put("totals", gridTotals(grid, matrix.groupOf(brand.getCode())));
+            brands.add(b);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("storeCode", storeCode);
+        result.put("businessDate", businessDate);
+        result.put("sizes", sizes);
+        result.put("brands", brands);
+        result.put("grandTotals", gridTotals(grid, -1));
+        return result;
+    }
+
+    /** Per-size and overall totals of a brand (group), or the grand totals for group -1. */
+    private static Map<String, Object> gridTotals(DSRGrid grid, int group) {
+        PivotMatrix matrix = grid.matrix;
+        int sizeCount = matrix.columnCount();
+        Map<String, Object> totals = new LinkedHashMap<>();
+        for (int m = 0; m < INT_METRICS; m++) {
+            int[] values = new int[sizeCount + 1];
+            for (int c = 0; c <= sizeCount; c++) {
+                values[c] = group >= 0 ? matrix.groupIntTotal(group, c, m) : grid.grandInt(c, m);
+            }
+            totals.put(INT_METRIC_NAMES[m], values);
+        }
+        double[] amounts = new double[sizeCount + 1];
+        for (int c = 0; c <= sizeCount; c++) {
+            amounts[c] = group >= 0 ? matrix.groupDoubleTotal(group, c, AMOUNT) : grid.grandDouble(c, AMOUNT);
+        }
+        totals.put(DOUBLE_METRIC_NAMES[AMOUNT], amounts);
+        return totals;
+    }
+
+    /**
+     * Creates the DSR head if needed and refreshes the day's DSR details from inventory.
+     *
+     * @return counts of detail rows inserted and updated
+     */
+    @Transactional
+    public Map<String, Integer> populateDSR(String storeCode, String businessDate, String userName) {
+        log.debug("populateDSR for store {}, date {}, user {}", storeCode, businessDate, userName);
         // 0. Create DSR Head if not exists
         Optional<DSRHead> headOpt = dsrHeadRepository.findByStoreCodeAndDsrDate(storeCode, businessDate);
         if (headOpt.isEmpty()) {
-            System.out.println("Creating new DSR Head...");
             DSRHead head = new DSRHead();
             head.setStoreCode(storeCode);
             head.setDsrDate(businessDate);
@@ -864,9 +941,8 @@ public class DSRService {
             head.setCreatedAt(LocalDateTime.now());
             head.setUpdatedAt(LocalDateTime.now());
             dsrHeadRepository.save(head);
-            System.out.println("DSR Head created with ID: " + head.getId());
+            log.debug("DSR head {} created", head.getId());
         } else {
-            System.out.println("DSR Head already exists: " + headOpt.get().getId());
             DSRHead head = headOpt.get();
             // Update username if it was null or different (and new username is provided)
             if (userName != null && !userName.isEmpty() && 
@@ -874,123 +950,78 @@ public class DSRService {
                 head.setUserName(userName);
                 head.setUpdatedAt(LocalDateTime.now());
                 dsrHeadRepository.save(head);
-                System.out.println("Updated DSR Head username to: " + userName);
+                log.debug("DSR head {} user set to {}", head.getId(), userName);
             }
         }
 
-        // Fetch all inventory items for the store
-        // Note: InventoryMasterRepository needs a method to find by storeCode
-        // Assuming findByStoreCode exists or we'll add it. 
-        // Based on previous read, it only has findByStoreCodeAndItemCodeAndSizeCode.
-        // I will need to update InventoryMasterRepository to include findByStoreCode.
-        List<InventoryMaster> inventoryItems = inventoryMasterRepository.findByStoreCode(storeCode);
-        System.out.println("Found " + inventoryItems.size() + " inventory items for store: " + storeCode);
-
-        // Fetch STI Items for this store and date to populate Inward
-        List<StiItem> stiItems = stiItemRepository.findByToStoreAndStiDate(storeCode, businessDate);
-        System.out.println("Querying STI Items with Store: '" + storeCode + "' and Date: '" + businessDate + "'");
-        System.out.println("Found " + stiItems.size() + " STI items for Inward population");
-        
-        Map<String, Integer> stiMap = new HashMap<>();
-        for (StiItem sti : stiItems) {
-            String key = sti.getItemCode() + "_" + sti.getSizeCode();
-            stiMap.put(key, stiMap.getOrDefault(key, 0) + sti.getQuantity());
-        }
-
-        // Fetch STO Items for this store (FromStore) and date to populate Outward (Transfer)
-        List<StoItem> stoItems = stoItemRepository.findByFromStoreAndStoDate(storeCode, businessDate);
-        System.out.println("Querying STO Items with FromStore: '" + storeCode + "' and Date: '" + businessDate + "'");
-        System.out.println("Found " + stoItems.size() + " STO items for Outward population");
-
-        Map<String, Integer> stoMap = new HashMap<>();
-        for (StoItem sto : stoItems) {
-            String key = sto.getItemCode() + "_" + sto.getSizeCode();
-            stoMap.put(key, stoMap.getOrDefault(key, 0) + sto.getQuantity());
-        }
-
-        for (InventoryMaster inventory : inventoryItems) {
-            Optional<DSR> existingDsr = dsrRepository.findByStoreAndBusinessDateAndItemCodeAndSizeCode(
-                storeCode, businessDate, inventory.getItemCode(), inventory.getSizeCode()
-            );
-
-            if (existingDsr.isPresent()) {
-                System.out.println("DSR Detail already exists for Item: " + inventory.getItemCode() + ", Size: " + inventory.getSizeCode());
-                // Update Inward and Outward if they differ
-                DSR dsr = existingDsr.get();
-                String key = inventory.getItemCode() + "_" + inventory.getSizeCode();
-                
-                int inwardQty = stiMap.getOrDefault(key, 0);
-                int outwardQty = stoMap.getOrDefault(key, 0);
-                
-                boolean updated = false;
-                if (dsr.getInward() == null || dsr.getInward() != inwardQty) {
-                    System.out.println("Updating Inward for DSR Item: " + inventory.getItemCode() + " from " + dsr.getInward() + " to " + inwardQty);
-                    dsr.setInward(inwardQty);
-                    updated = true;
-                }
-                
-                if (dsr.getOutward() == null || dsr.getOutward() != outwardQty) {
-                    System.out.println("Updating Outward for DSR Item: " + inventory.getItemCode() + " from " + dsr.getOutward() + " to " + outwardQty);
-                    dsr.setOutward(outwardQty);
-                    updated = true;
-                }
-                
-                if (updated) {
-                    // Recalculate Closing
-                    int opening = dsr.getOpening() != null ? dsr.getOpening() : 0;
-                    int inward = dsr.getInward() != null ? dsr.getInward() : 0;
-                    int outward = dsr.getOutward() != null ? dsr.getOutward() : 0;
-                    int sale = dsr.getSale() != null ? dsr.getSale() : 0;
-                    dsr.setClosing(opening + inward - outward - sale);
-                    
-                    dsr.setUpdatedAt(LocalDateTime.now());
-                    dsrRepository.save(dsr);
-                }
-                continue;
-            }
+        return refreshDetails(storeCode, businessDate);
+    }
 
-            DSR dsr = new DSR();
-            dsr.setStore(storeCode);
-            dsr.setBusinessDate(businessDate);
-            dsr.setItemCode(inventory.getItemCode());
-            dsr.setItemName(inventory.getItemName());
-            dsr.setSizeCode(inventory.getSizeCode());
-            dsr.setSizeName(inventory.getSizeName());
-            
-            // Closing from Inventory becomes Opening in DSR
-            dsr.setOpening(inventory.getClosing() != null ? inventory.getClosing() : 0); 
-            
-            // Initialize other stock fields
-            // Populate Inward from STI
-            String key = inventory.getItemCode() + "_" + inventory.getSizeCode();
-            int inwardQty = stiMap.getOrDefault(key, 0);
-            dsr.setInward(inwardQty);
-            
-            // Populate Outward from STO
-            int outwardQty = stoMap.getOrDefault(key, 0);
-            dsr.setOutward(outwardQty);
-            
-            dsr.setSale(0);
-            // Closing = Opening + Inward - Outward - Sale
-            dsr.setClosing(dsr.getOpening() + dsr.getInward() - dsr.getOutward()); 
- 
-
-            // Fetch Price details
-            Optional<PriceMaster> priceOpt = priceMasterRepository.findByItemCodeAndSizeCode(inventory.getItemCode(), inventory.getSizeCode());
-            if (priceOpt.isPresent()) {
-                PriceMaster price = priceOpt.get();
-                dsr.setPurchasePrice(price.getPurchasePrice());
-                dsr.setMrp(price.getMrp());
-            } else {
-                dsr.setPurchasePrice(0.0);
-                dsr.setMrp(0.0);
+    /**
+     * Brings DSR_Detail for one store-day in line with Inventory_Master in a single MERGE:
+     * existing rows get Inward/Outward from the day's STI/STO lines (and a recalculated Closing)
+     * when those changed, SKUs without a row are inserted with the inventory closing as Opening
+     * and prices from Price_Master.
+     */
+    private Map<String, Integer> refreshDetails(String storeCode, String businessDate) {
+        StringBuilder sql = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+
+        sql.append("MERGE DSR_Detail WITH (HOLDLOCK) AS d ");
+        sql.append("USING (");
+        sql.append("  SELECT im.Item_code, im.Item_Name, im.Size_code, im.Size_name, ISNULL(im.Closing, 0) AS opening, ");
+        sql.append("    ISNULL(sti.qty, 0) AS inward, ISNULL(sto.qty, 0) AS outward, ");
+        sql.append("    ISNULL(pm.Purchase_Price, 0) AS purchase_price, ISNULL(pm.MRP, 0) AS mrp ");
+        sql.append("  FROM Inventory_Master im ");
+        sql.append("  LEFT JOIN (SELECT item_code, size_code, SUM(ISNULL(quantity, 0)) AS qty FROM sti_item ");
+        sql.append("    WHERE to_store = ? AND sti_date = ? GROUP BY item_code, size_code) sti ");
+        sql.append("    ON sti.item_code = im.Item_code AND sti.size_code = im.Size_code ");
+        params.add(storeCode);
+        params.add(businessDate);
+        sql.append("  LEFT JOIN (SELECT item_code, size_code, SUM(ISNULL(quantity, 0)) AS qty FROM sto_item ");
+        sql.append("    WHERE from_store = ? AND sto_date = ? GROUP BY item_code, size_code) sto ");
+        sql.append("    ON sto.item_code = im.Item_code AND sto.size_code = im.Size_code ");
+        params.add(storeCode);
+        params.add(businessDate);
+        sql.append("  LEFT JOIN Price_Master pm ON pm.Item_Code = im.Item_code AND pm.Size_Code = im.Size_code ");
+        sql.append("  WHERE im.Store_code = ?");
+        params.add(storeCode);
+        sql.append(") AS src ");
+        sql.append("ON d.Store = ? AND d.Business_date = ? AND d.Item_code = src.Item_code AND d.Size_Code = src.Size_code ");
+        params.add(storeCode);
+        params.add(businessDate);
+
+        sql.append("WHEN MATCHED AND (d.Inward IS NULL OR d.Inward <> src.inward OR d.Outward IS NULL OR d.Outward <> src.outward) THEN UPDATE SET ");
+        sql.append("  Inward = src.inward, ");
+        sql.append("  Outward = src.outward, ");
+        sql.append("  Closing = ISNULL(d.Opening, 0) + src.inward - src.outward - ISNULL(d.Sale, 0), ");
+        sql.append("  Updated_at = GETDATE() ");
+
+        sql.append("WHEN NOT MATCHED THEN INSERT ");
+        sql.append("  (Store, Business_date, business_dt, Item_code, Item_name, Size_Code, Size_Name, Purchase_Price, MRP, ");
+        sql.append("   Opening, Inward, Outward, Sale, Closing, Created_at, Updated_at) ");
+        sql.append("  VALUES (?, ?, ?, src.Item_code, src.Item_Name, src.Size_code, src.Size_name, src.purchase_price, src.mrp, ");
+        sql.append("   src.opening, src.inward, src.outward, 0, src.opening + src.inward - src.outward, GETDATE(), GETDATE()) ");
+        params.add(storeCode);
+        params.add(businessDate);
+        params.add(BusinessDates.toSqlDate(businessDate));
+        sql.append("OUTPUT $action;");
+
+        List<String> actions = jdbcTemplate.queryForList(sql.toString(), String.class, params.toArray());
+        int inserted = 0;
+        int updated = 0;
+        for (String action : actions) {
+            if ("INSERT".equals(action)) {
+                inserted++;
+            } else if ("UPDATE".equals(action)) {
+                updated++;
             }
-
-            dsr.setCreatedAt(LocalDateTime.now());
-            dsr.setUpdatedAt(LocalDateTime.now());
-
-            dsrRepository.save(dsr);
-            System.out.println("Created DSR Detail for Item: " + inventory.getItemCode());
         }
+        log.debug("DSR refresh for store {}, date {}: inserted {}, updated {}", storeCode, businessDate, inserted, updated);
+
+        Map<String, Integer> result = new LinkedHashMap<>();
+        result.put("inserted", inserted);
+        result.put("updated", updated);
+        return result;
     }
 }
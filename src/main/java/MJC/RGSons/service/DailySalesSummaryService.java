@@ -0,0 +1,277 @@
+package MJC.RGSons.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains daily_sales_summary, the per (store, day) rollup the sales and collection reports read.
+ *
+ * Each store-day has one INVOICE line (invoice count, quantity, total and sale amount), one
+ * CATEGORY line per item category and one LEDGER line per (ledger, type) of the tran_ledgers
+ * rows. An invoice's contribution is computed SQL-side from its own tran_* rows and merged in
+ * with a sign: +1 when it is submitted, -1 for the previous version before it is re-saved.
+ * Drafts are never in the rollup, so the reports reading it (ReportService, the Goods Sale of
+ * CollectionExpenseReportService) no longer count DRAFT invoices as the raw-table queries did;
+ * drafts post no ledgers and move no stock, so this brings those reports in line with the DSR.
+ * {@link #rebuild} recomputes a range from the raw tables.
+ *
+ * A store's sales and its rebuilds are kept apart by an application lock per store: sales
+ * take it shared (they do not wait for each other), a rebuild chunk exclusively.
+ */
+@Service
+public class DailySalesSummaryService {
+
+    private static final Logger log = LoggerFactory.getLogger(DailySalesSummaryService.class);
+
+    public static final String LINE_INVOICE = "INVOICE";
+    public static final String LINE_CATEGORY = "CATEGORY";
+    public static final String LINE_LEDGER = "LEDGER";
+
+    private static final int LOCK_TIMEOUT_MS = 30000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate chunkTransaction;
+
+    private volatile boolean initialBuildPending;
+
+    public DailySalesSummaryService(PlatformTransactionManager transactionManager) {
+        this.chunkTransaction = new TransactionTemplate(transactionManager);
+        this.chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.chunkTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+    }
+
+    /** Creates the table if missing and notes whether it still has to be filled. Called at startup. */
+    public void ensureTable() {
+        try {
+            StringBuilder ddl = new StringBuilder();
+            ddl.append("IF OBJECT_ID('daily_sales_summary', 'U') IS NULL ");
+            ddl.append("CREATE TABLE daily_sales_summary (");
+            ddl.append("  id INT IDENTITY(1,1) PRIMARY KEY, ");
+            ddl.append("  store_code VARCHAR(255) NOT NULL, ");
+            ddl.append("  business_dt DATE NOT NULL, ");
+            ddl.append("  line_type VARCHAR(20) NOT NULL, ");
+            ddl.append("  line_code VARCHAR(255) NOT NULL, ");
+            ddl.append("  ledger_type VARCHAR(50) NOT NULL, ");
+            ddl.append("  invoice_count INT NOT NULL, ");
+            ddl.append("  quantity INT NOT NULL, ");
+            ddl.append("  amount FLOAT NOT NULL, ");
+            ddl.append("  sale_amount FLOAT NOT NULL, ");
+            ddl.append("  updated_at DATETIME, ");
+            ddl.append("  CONSTRAINT UK_daily_sales_summary UNIQUE (store_code, business_dt, line_type, line_code, ledger_type))");
+            jdbcTemplate.execute(ddl.toString());
+            jdbcTemplate.execute("IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'IX_daily_sales_summary_dt' "
+                    + "AND object_id = OBJECT_ID('daily_sales_summary')) "
+                    + "CREATE INDEX IX_daily_sales_summary_dt ON daily_sales_summary (business_dt, line_type) "
+                    + "INCLUDE (store_code, line_code, ledger_type, amount, sale_amount)");
+
+            Integer rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM daily_sales_summary", Integer.class);
+            initialBuildPending = rows != null && rows == 0;
+        } catch (Exception e) {
+            log.error("daily_sales_summary setup failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * True once, if the table was empty at startup and has to be filled from the whole sales
+     * history with {@link #rebuild}. The caller does that after the invoice_dt backfill,
+     * since the rollup is keyed by that column.
+     */
+    public synchronized boolean takeInitialBuild() {
+        boolean pending = initialBuildPending;
+        initialBuildPending = false;
+        return pending;
+    }
+
+    /**
+     * Adds (sign = 1) or removes (sign = -1) one invoice's contribution. Must run in the
+     * caller's transaction, after {@link #lockStore}, while the invoice's tran_item and
+     * tran_ledgers rows are in place and its tran_head row is flushed.
+     */
+    @Transactional
+    public void applyInvoice(Integer tranId, int sign) {
+        if (tranId == null) {
+            return;
+        }
+
+        StringBuilder sql = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+
+        sql.append("MERGE daily_sales_summary WITH (HOLDLOCK) AS d ");
+        sql.append("USING (SELECT u.store_code, u.business_dt, u.line_type, u.line_code, u.ledger_type, ");
+        sql.append("    u.invoice_count * sg.sign AS invoice_count, u.quantity * sg.sign AS quantity, ");
+        sql.append("    u.amount * sg.sign AS amount, u.sale_amount * sg.sign AS sale_amount ");
+        sql.append("  FROM (SELECT CAST(? AS INT) AS sign) sg CROSS JOIN (");
+        params.add(sign);
+        appendContributions(sql, params, "th.id = ?", tranId);
+        sql.append("  ) u) AS src ");
+        sql.append("ON d.store_code = src.store_code AND d.business_dt = src.business_dt AND d.line_type = src.line_type ");
+        sql.append("  AND d.line_code = src.line_code AND d.ledger_type = src.ledger_type ");
+        sql.append("WHEN MATCHED THEN UPDATE SET ");
+        sql.append("  invoice_count = d.invoice_count + src.invoice_count, ");
+        sql.append("  quantity = d.quantity + src.quantity, ");
+        sql.append("  amount = d.amount + src.amount, ");
+        sql.append("  sale_amount = d.sale_amount + src.sale_amount, ");
+        sql.append("  updated_at = GETDATE() ");
+        sql.append("WHEN NOT MATCHED THEN INSERT ");
+        sql.append("  (store_code, business_dt, line_type, line_code, ledger_type, invoice_count, quantity, amount, sale_amount, updated_at) ");
+        sql.append("  VALUES (src.store_code, src.business_dt, src.line_type, src.line_code, src.ledger_type, ");
+        sql.append("    src.invoice_count, src.quantity, src.amount, src.sale_amount, GETDATE());");
+
+        jdbcTemplate.update(sql.toString(), params.toArray());
+    }
+
+    /**
+     * Takes the store's rollup lock in shared mode for the caller's transaction. A sale that
+     * will change the rollup takes it before it writes any tran_* row, so it never waits on a
+     * rebuild of its store while holding rows that rebuild has to read.
+     */
+    public void lockStore(String storeCode) {
+        if (storeCode != null) {
+            applock(storeCode, "Shared");
+        }
+    }
+
+    /**
+     * Recomputes the rollup from tran_head/tran_item/tran_ledgers, one store and one calendar
+     * month per READ COMMITTED transaction. Each chunk holds its store's rollup lock
+     * exclusively, so it waits for that store's sales in flight and holds up new ones only
+     * for as long as one month of one store takes.
+     *
+     * @param storeCode null for all stores
+     * @param from      null for no lower bound
+     * @param to        null for no upper bound
+     */
+    public Map<String, Object> rebuild(String storeCode, LocalDate from, LocalDate to) {
+        List<String> stores = new ArrayList<>();
+        if (storeCode != null && !storeCode.isEmpty()) {
+            stores.add(storeCode);
+        } else {
+            stores.addAll(jdbcTemplate.queryForList("SELECT store_code FROM tran_head WHERE store_code IS NOT NULL "
+                    + "UNION SELECT store_code FROM daily_sales_summary", String.class));
+        }
+
+        int deleted = 0;
+        int inserted = 0;
+        int chunks = 0;
+        for (String store : stores) {
+            LocalDate first = from;
+            LocalDate last = to;
+            if (first == null || last == null) {
+                // Days this store has sales or rollup lines on
+                Map<String, Object> bounds = jdbcTemplate.queryForMap("SELECT MIN(dt) AS first_dt, MAX(dt) AS last_dt FROM ("
+                        + "SELECT invoice_dt AS dt FROM tran_head WHERE store_code = ? AND invoice_dt IS NOT NULL "
+                        + "UNION ALL SELECT business_dt FROM daily_sales_summary WHERE store_code = ?) d", store, store);
+                if (bounds.get("first_dt") == null) {
+                    continue;
+                }
+                first = first != null ? first : ((Date) bounds.get("first_dt")).toLocalDate();
+                last = last != null ? last : ((Date) bounds.get("last_dt")).toLocalDate();
+            }
+            for (LocalDate chunkFrom = first; !chunkFrom.isAfter(last); ) {
+                LocalDate monthEnd = chunkFrom.withDayOfMonth(chunkFrom.lengthOfMonth());
+                LocalDate chunkTo = monthEnd.isBefore(last) ? monthEnd : last;
+                LocalDate chunkStart = chunkFrom;
+                int[] counts = chunkTransaction.execute(status -> rebuildChunk(store, chunkStart, chunkTo));
+                deleted += counts[0];
+                inserted += counts[1];
+                chunks++;
+                chunkFrom = chunkTo.plusDays(1);
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("deleted", deleted);
+        result.put("inserted", inserted);
+        result.put("chunks", chunks);
+        return result;
+    }
+
+    // One store and day range; runs in chunkTransaction. Returns {deleted, inserted}.
+    private int[] rebuildChunk(String storeCode, LocalDate from, LocalDate to) {
+        applock(storeCode, "Exclusive");
+
+        int deleted = jdbcTemplate.update("DELETE FROM daily_sales_summary WHERE store_code = ? AND business_dt >= ? AND business_dt <= ?",
+                storeCode, Date.valueOf(from), Date.valueOf(to));
+
+        StringBuilder insert = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        insert.append("INSERT INTO daily_sales_summary ");
+        insert.append("  (store_code, business_dt, line_type, line_code, ledger_type, invoice_count, quantity, amount, sale_amount, updated_at) ");
+        insert.append("SELECT u.store_code, u.business_dt, u.line_type, u.line_code, u.ledger_type, ");
+        insert.append("  SUM(u.invoice_count), SUM(u.quantity), SUM(u.amount), SUM(u.sale_amount), GETDATE() ");
+        insert.append("FROM (");
+        appendContributions(insert, params, "th.store_code = ? AND th.invoice_dt >= ? AND th.invoice_dt <= ?",
+                storeCode, Date.valueOf(from), Date.valueOf(to));
+        insert.append(") u ");
+        insert.append("GROUP BY u.store_code, u.business_dt, u.line_type, u.line_code, u.ledger_type");
+        int inserted = jdbcTemplate.update(insert.toString(), params.toArray());
+        return new int[] { deleted, inserted };
+    }
+
+    private void applock(String storeCode, String mode) {
+        Integer result = jdbcTemplate.queryForObject(
+                "SET NOCOUNT ON; DECLARE @r INT; "
+                        + "EXEC @r = sp_getapplock @Resource = ?, @LockMode = ?, @LockOwner = 'Transaction', @LockTimeout = ?; "
+                        + "SELECT @r;",
+                Integer.class, "daily_sales_summary:" + storeCode, mode, LOCK_TIMEOUT_MS);
+        if (result == null || result < 0) {
+            throw new IllegalStateException("Could not lock the sales rollup of store " + storeCode + " (" + result + ")");
+        }
+    }
+
+    /**
+     * The rollup lines of the submitted invoices matching {@code headFilter} (on alias th),
+     * one SELECT per line type. The filter's parameters are added once per branch.
+     */
+    private void appendContributions(StringBuilder sql, List<Object> params, String headFilter, Object... filterParams) {
+        String submitted = "th.invoice_dt IS NOT NULL AND (th.status IS NULL OR th.status <> 'DRAFT') AND " + headFilter;
+
+        sql.append("SELECT th.store_code, th.invoice_dt AS business_dt, '").append(LINE_INVOICE).append("' AS line_type, ");
+        sql.append("  '' AS line_code, '' AS ledger_type, 1 AS invoice_count, ");
+        sql.append("  ISNULL((SELECT SUM(ti.quantity) FROM tran_item ti WHERE ti.invoice_no = th.invoice_no AND ti.store_code = th.store_code), 0) AS quantity, ");
+        sql.append("  ISNULL(th.total_amount, 0) AS amount, ISNULL(th.sale_amount, 0) AS sale_amount ");
+        sql.append("FROM tran_head th WHERE ").append(submitted).append(" ");
+        addAll(params, filterParams);
+
+        sql.append("UNION ALL ");
+        sql.append("SELECT th.store_code, th.invoice_dt, '").append(LINE_CATEGORY).append("', ISNULL(i.category_code, ''), '', 0, ");
+        sql.append("  SUM(ISNULL(ti.quantity, 0)), SUM(ISNULL(ti.amount, 0)), SUM(ISNULL(ti.amount, 0)) ");
+        sql.append("FROM tran_head th ");
+        sql.append("JOIN tran_item ti ON ti.invoice_no = th.invoice_no AND ti.store_code = th.store_code ");
+        sql.append("LEFT JOIN items i ON i.item_code = ti.item_code ");
+        sql.append("WHERE ").append(submitted).append(" ");
+        sql.append("GROUP BY th.store_code, th.invoice_dt, ISNULL(i.category_code, '') ");
+        addAll(params, filterParams);
+
+        sql.append("UNION ALL ");
+        sql.append("SELECT th.store_code, th.invoice_dt, '").append(LINE_LEDGER).append("', tl.ledger_code, ISNULL(tl.type, ''), 0, 0, ");
+        sql.append("  SUM(ISNULL(tl.amount, 0)), 0 ");
+        sql.append("FROM tran_head th ");
+        sql.append("JOIN tran_ledgers tl ON tl.tran_id = th.id ");
+        sql.append("WHERE ").append(submitted).append(" ");
+        sql.append("GROUP BY th.store_code, th.invoice_dt, tl.ledger_code, ISNULL(tl.type, '') ");
+        addAll(params, filterParams);
+    }
+
+    private static void addAll(List<Object> params, Object[] values) {
+        for (Object value : values) {
+            params.add(value);
+        }
+    }
+}
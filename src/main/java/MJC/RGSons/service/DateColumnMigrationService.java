@@ -0,0 +1,221 @@
+package MJC.RGSons.service;
+
+import MJC.RGSons.util.BusinessDates;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adds and backfills the real DATE columns that shadow the string business dates
+ * (tran_head/tran_item/tran_ledgers.invoice_dt, DSR_Detail/Inventory_Master.business_dt,
+ * STO_head.sto_dt), and creates their (store, date) indexes.
+ *
+ * New rows get the DATE value on write (entity callbacks and the JDBC insert paths);
+ * this job only fills in rows written before the column existed. It runs once at startup,
+ * in small batches on a background thread, and is a no-op once everything is filled.
+ * Values SQL Server cannot convert are parsed with {@link BusinessDates}; rows whose date is
+ * in no known format stay NULL and are counted and logged. The equality filters on the DATE
+ * columns also match rows whose DATE is still NULL by their string date, so rows not yet
+ * (or never) converted do not drop out of them.
+ */
+@Service
+public class DateColumnMigrationService {
+
+    private static final Logger log = LoggerFactory.getLogger(DateColumnMigrationService.class);
+
+    private static final class Target {
+        private final String table;
+        private final String source;
+        private final String column;
+        private final String[] indexes;
+
+        Target(String table, String source, String column, String... indexes) {
+            this.table = table;
+            this.source = source;
+            this.column = column;
+            this.indexes = indexes;
+        }
+    }
+
+    // Index entries are "name|key columns[|included columns]"
+    private static final List<Target> TARGETS = List.of(
+            new Target("tran_head", "invoice_date", "invoice_dt",
+                    "IX_tran_head_store_invoice_dt|store_code, invoice_dt",
+                    "IX_tran_head_invoice_dt|invoice_dt|store_code, sale_amount, total_amount"),
+            new Target("tran_item", "invoice_date", "invoice_dt",
+                    "IX_tran_item_store_invoice_dt|store_code, invoice_dt"),
+            new Target("tran_ledgers", "invoice_date", "invoice_dt",
+                    "IX_tran_ledgers_store_invoice_dt|store_code, invoice_dt",
+                    "IX_tran_ledgers_invoice_dt|invoice_dt|store_code, ledger_code, type, amount"),
+            new Target("DSR_Detail", "Business_date", "business_dt",
+                    "IX_dsr_detail_store_business_dt|Store, business_dt"),
+            new Target("Inventory_Master", "business_date", "business_dt",
+                    "IX_inventory_store_business_dt|Store_code, business_dt"),
+            new Target("STO_head", "date", "sto_dt",
+                    "IX_sto_head_to_store_sto_dt|to_store, sto_dt"));
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DailySalesSummaryService dailySalesSummaryService;
+
+    @Value("${migration.date-columns.enabled:true}")
+    private boolean enabled;
+
+    @Value("${migration.date-columns.batch-size:5000}")
+    private int batchSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            dailySalesSummaryService.ensureTable();
+            return;
+        }
+        for (Target target : TARGETS) {
+            try {
+                ensureColumn(target);
+                ensureIndexes(target);
+            } catch (Exception e) {
+                log.error("Date column setup failed for {}: {}", target.table, e.getMessage());
+            }
+        }
+
+        // The sales rollup is keyed by invoice_dt, so an empty one is filled after the backfill
+        dailySalesSummaryService.ensureTable();
+
+        Thread backfill = new Thread(() -> {
+            backfillAll();
+            buildSalesSummaryIfEmpty();
+        }, "date-column-backfill");
+        backfill.setDaemon(true);
+        backfill.start();
+    }
+
+    private void ensureColumn(Target target) {
+        jdbcTemplate.execute("IF COL_LENGTH('" + target.table + "', '" + target.column + "') IS NULL "
+                + "ALTER TABLE " + target.table + " ADD " + target.column + " DATE NULL");
+    }
+
+    private void ensureIndexes(Target target) {
+        for (String index : target.indexes) {
+            String[] parts = index.split("\\|");
+            StringBuilder sql = new StringBuilder();
+            sql.append("IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = '").append(parts[0]);
+            sql.append("' AND object_id = OBJECT_ID('").append(target.table).append("')) ");
+            sql.append("CREATE INDEX ").append(parts[0]).append(" ON ").append(target.table);
+            sql.append(" (").append(parts[1]).append(")");
+            if (parts.length > 2) {
+                sql.append(" INCLUDE (").append(parts[2]).append(")");
+            }
+            jdbcTemplate.execute(sql.toString());
+        }
+    }
+
+    private void backfillAll() {
+        boolean complete = true;
+        for (Target target : TARGETS) {
+            try {
+                long total = backfill(target) + backfillOtherFormats(target);
+                if (total > 0) {
+                    log.info("Backfilled {} rows of {}.{}", total, target.table, target.column);
+                }
+                complete &= reportUnparseable(target);
+            } catch (Exception e) {
+                complete = false;
+                log.error("Date backfill failed for {}: {}", target.table, e.getMessage());
+            }
+        }
+        if (complete) {
+            log.info("Date backfill complete");
+        } else {
+            log.warn("Date backfill incomplete; string-date fallbacks still cover the remaining rows");
+        }
+    }
+
+    private void buildSalesSummaryIfEmpty() {
+        if (!dailySalesSummaryService.takeInitialBuild()) {
+            return;
+        }
+        try {
+            log.info("Built daily_sales_summary: {}", dailySalesSummaryService.rebuild(null, null, null));
+        } catch (Exception e) {
+            log.error("Initial daily_sales_summary build failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Fills the DATE column batch by batch (each UPDATE is its own short transaction) so the
+     * tables are never locked for long. Values in none of the known formats stay NULL.
+     */
+    private long backfill(Target target) {
+        // dd-MM-yyyy (105) is what the app writes; yyyy-MM-dd (23) and dd/MM/yyyy (103) also occur
+        String parsed = BusinessDates.sqlParse(target.source);
+
+        StringBuilder sql = new StringBuilder();
+        sql.append("UPDATE TOP (?) ").append(target.table);
+        sql.append(" SET ").append(target.column).append(" = ").append(parsed);
+        sql.append(" WHERE ").append(target.column).append(" IS NULL");
+        sql.append(" AND ").append(parsed).append(" IS NOT NULL");
+
+        long total = 0;
+        int updated;
+        do {
+            updated = jdbcTemplate.update(sql.toString(), Math.max(1, batchSize));
+            total += updated;
+        } while (updated > 0);
+        return total;
+    }
+
+    // Dates SQL Server could not convert but BusinessDates reads (d-M-yyyy, d-MMM-yy, ...),
+    // one UPDATE per distinct string
+    private long backfillOtherFormats(Target target) {
+        long total = 0;
+        for (String value : pendingValues(target, 0)) {
+            LocalDate date = BusinessDates.parse(value);
+            if (date != null) {
+                total += jdbcTemplate.update("UPDATE " + target.table + " SET " + target.column + " = ? "
+                        + "WHERE " + target.column + " IS NULL AND " + target.source + " = ?",
+                        java.sql.Date.valueOf(date), value);
+            }
+        }
+        return total;
+    }
+
+    /** Logs the rows left without a date; @return true when there are none. */
+    private boolean reportUnparseable(Target target) {
+        Long rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + target.table
+                + " WHERE " + target.column + " IS NULL AND " + pendingSource(target), Long.class);
+        if (rows == null || rows == 0) {
+            return true;
+        }
+        log.warn("{} rows of {} have a {} in no known date format and no {}, e.g. {}",
+                rows, target.table, target.source, target.column, pendingValues(target, 5));
+        return false;
+    }
+
+    // Distinct non-empty string dates of rows still without a DATE; all of them when limit is 0
+    private List<String> pendingValues(Target target, int limit) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT DISTINCT ");
+        if (limit > 0) {
+            sql.append("TOP (").append(limit).append(") ");
+        }
+        sql.append(target.source).append(" FROM ").append(target.table);
+        sql.append(" WHERE ").append(target.column).append(" IS NULL AND ").append(pendingSource(target));
+        return new ArrayList<>(jdbcTemplate.queryForList(sql.toString(), String.class));
+    }
+
+    private static String pendingSource(Target target) {
+        return target.source + " IS NOT NULL AND LTRIM(RTRIM(" + target.source + ")) <> ''";
+    }
+}
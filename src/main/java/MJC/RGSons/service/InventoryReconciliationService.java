@@ -0,0 +1,507 @@
+package MJC.RGSons.service;
+
+import MJC.RGSons.util.BusinessDates;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks every store's Inventory_Master against its own counters, the stock documents behind
+ * them and the latest DSR, and records what does not agree in inventory_discrepancy.
+ *
+ * Per (item, size) of a store:
+ * <ul>
+ *   <li>CLOSING: Closing against Opening + Purchase + Inward - Outward</li>
+ *   <li>PURCHASE / INWARD / OUTWARD: the counter against submitted purchases, STIs, and sales plus submitted STOs</li>
+ *   <li>DSR_CLOSING: the latest DSR day's Closing against Closing less the movements dated after that day</li>
+ * </ul>
+ * Stores are checked in parallel, at most {@code reconciliation.max-concurrency} at a time, since
+ * each check holds a database connection. A store is read at READ COMMITTED, without a
+ * transaction, so tills keep posting meanwhile. With auto-correct the counter and closing
+ * differences are checked again with only their Inventory_Master rows locked, and those that
+ * still hold are posted back as RECONCILIATION movements, so the stock journal records the fix.
+ * A DSR_CLOSING difference is only reported: the DSR Closing follows from its Opening, which
+ * is what needs looking at.
+ */
+@Service
+public class InventoryReconciliationService {
+
+    private static final Logger log = LoggerFactory.getLogger(InventoryReconciliationService.class);
+
+    public static final String CHECK_CLOSING = "CLOSING";
+    public static final String CHECK_PURCHASE = "PURCHASE";
+    public static final String CHECK_INWARD = "INWARD";
+    public static final String CHECK_OUTWARD = "OUTWARD";
+    public static final String CHECK_DSR_CLOSING = "DSR_CLOSING";
+
+    // Rows fetched per round trip while reading a store's aggregates
+    private static final int FETCH_SIZE = 1000;
+
+    // Items re-checked per statement: 6 parameters each, below SQL Server's 2100
+    private static final int RECHECK_CHUNK = 300;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private StockMovementService stockMovementService;
+
+    @Value("${reconciliation.max-concurrency:4}")
+    private int maxConcurrency;
+
+    // Re-checks and fixes the differences found in a store, holding locks on their rows only
+    private final TransactionTemplate correcting;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // Runs one reconciliation at a time; the stores of a run go to their own capped pool
+    private final ExecutorService launcher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "reconciliation");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public InventoryReconciliationService(PlatformTransactionManager transactionManager) {
+        this.correcting = new TransactionTemplate(transactionManager);
+        this.correcting.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        launcher.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureTables() {
+        try {
+            StringBuilder ddl = new StringBuilder();
+            ddl.append("IF OBJECT_ID('inventory_reconciliation_run', 'U') IS NULL ");
+            ddl.append("CREATE TABLE inventory_reconciliation_run (");
+            ddl.append("  run_id VARCHAR(40) NOT NULL PRIMARY KEY, ");
+            ddl.append("  status VARCHAR(20) NOT NULL, ");
+            ddl.append("  auto_correct BIT NOT NULL, ");
+            ddl.append("  stores INT NOT NULL, ");
+            ddl.append("  stores_done INT NOT NULL, ");
+            ddl.append("  discrepancies INT NOT NULL, ");
+            ddl.append("  started_at DATETIME NOT NULL, ");
+            ddl.append("  finished_at DATETIME, ");
+            ddl.append("  error VARCHAR(MAX))");
+            jdbcTemplate.execute(ddl.toString());
+
+            ddl = new StringBuilder();
+            ddl.append("IF OBJECT_ID('inventory_discrepancy', 'U') IS NULL ");
+            ddl.append("BEGIN ");
+            ddl.append("CREATE TABLE inventory_discrepancy (");
+            ddl.append("  id BIGINT IDENTITY(1,1) PRIMARY KEY, ");
+            ddl.append("  run_id VARCHAR(40) NOT NULL, ");
+            ddl.append("  store_code VARCHAR(255) NOT NULL, ");
+            ddl.append("  item_code VARCHAR(255) NOT NULL, ");
+            ddl.append("  size_code VARCHAR(255) NOT NULL, ");
+            ddl.append("  check_type VARCHAR(20) NOT NULL, ");
+            ddl.append("  expected INT NOT NULL, ");
+            ddl.append("  actual INT NOT NULL, ");
+            ddl.append("  business_dt DATE, ");
+            ddl.append("  corrected BIT NOT NULL); ");
+            ddl.append("CREATE INDEX IX_inventory_discrepancy_run ON inventory_discrepancy (run_id, store_code); ");
+            ddl.append("END");
+            jdbcTemplate.execute(ddl.toString());
+
+            // A run cut short by a restart is not running any more
+            jdbcTemplate.update("UPDATE inventory_reconciliation_run SET status = 'ABORTED', finished_at = GETDATE() WHERE status = 'RUNNING'");
+        } catch (Exception e) {
+            log.error("inventory_reconciliation setup failed: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(cron = "${reconciliation.cron:-}")
+    public void scheduledRun() {
+        try {
+            start(null, false);
+        } catch (Exception e) {
+            log.warn("Scheduled reconciliation not started: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Starts a reconciliation in the background.
+     *
+     * @param storeCode null for all stores
+     * @return the run id to poll with {@link #getRun}
+     * @throws IllegalStateException when a run is already in progress
+     */
+    public String start(String storeCode, boolean autoCorrect) {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A reconciliation is already running");
+        }
+        try {
+            List<String> stores;
+            if (storeCode != null && !storeCode.isEmpty()) {
+                stores = List.of(storeCode);
+            } else {
+                stores = jdbcTemplate.queryForList("SELECT store_code FROM store WHERE store_code IS NOT NULL "
+                        + "UNION SELECT Store_code FROM Inventory_Master WHERE Store_code IS NOT NULL GROUP BY Store_code", String.class);
+            }
+
+            String runId = UUID.randomUUID().toString();
+            jdbcTemplate.update("INSERT INTO inventory_reconciliation_run "
+                    + "(run_id, status, auto_correct, stores, stores_done, discrepancies, started_at) VALUES (?, 'RUNNING', ?, ?, 0, 0, GETDATE())",
+                    runId, autoCorrect, stores.size());
+
+            launcher.submit(() -> run(runId, stores, autoCorrect));
+            return runId;
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    public Map<String, Object> getRun(String runId) {
+        List<Map<String, Object>> runs = jdbcTemplate.queryForList(
+                "SELECT * FROM inventory_reconciliation_run WHERE run_id = ?", runId);
+        return runs.isEmpty() ? null : runs.get(0);
+    }
+
+    public List<Map<String, Object>> getDiscrepancies(String runId, String storeCode) {
+        StringBuilder sql = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        sql.append("SELECT store_code, item_code, size_code, check_type, expected, actual, expected - actual AS difference, ");
+        sql.append("  business_dt, corrected ");
+        sql.append("FROM inventory_discrepancy WHERE run_id = ? ");
+        params.add(runId);
+        if (storeCode != null && !storeCode.isEmpty()) {
+            sql.append("AND store_code = ? ");
+            params.add(storeCode);
+        }
+        sql.append("ORDER BY store_code, item_code, size_code, check_type");
+        return jdbcTemplate.queryForList(sql.toString(), params.toArray());
+    }
+
+    private void run(String runId, List<String> stores, boolean autoCorrect) {
+        int threads = Math.max(1, Math.min(maxConcurrency, stores.size()));
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "reconciliation-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        String error = null;
+        try {
+            List<Future<?>> tasks = new ArrayList<>(stores.size());
+            for (String store : stores) {
+                tasks.add(pool.submit(() -> {
+                    int found = reconcileStore(runId, store, autoCorrect);
+                    jdbcTemplate.update("UPDATE inventory_reconciliation_run "
+                            + "SET stores_done = stores_done + 1, discrepancies = discrepancies + ? WHERE run_id = ?", found, runId);
+                    return null;
+                }));
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                try {
+                    tasks.get(i).get();
+                } catch (java.util.concurrent.ExecutionException e) {
+                    String message = stores.get(i) + ": " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                    log.error("Reconciliation failed for store {}", message);
+                    error = error == null ? message : error + "; " + message;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = "interrupted";
+        } finally {
+            pool.shutdownNow();
+            try {
+                jdbcTemplate.update("UPDATE inventory_reconciliation_run SET status = ?, finished_at = GETDATE(), error = ? WHERE run_id = ?",
+                        error == null ? "DONE" : "FAILED", error, runId);
+            } finally {
+                running.set(false);
+            }
+        }
+    }
+
+    /** @return the number of discrepancies found in the store */
+    private int reconcileStore(String runId, String storeCode, boolean autoCorrect) {
+        // Latest DSR day of the store, if any
+        List<Date> dsrDays = jdbcTemplate.queryForList(
+                "SELECT TOP 1 business_dt FROM DSR_Detail WHERE Store = ? AND business_dt IS NOT NULL ORDER BY business_dt DESC",
+                Date.class, storeCode);
+        Date dsrDt = dsrDays.isEmpty() ? null : dsrDays.get(0);
+
+        List<Object[]> found = inspectStore(storeCode, dsrDt, null);
+
+        Set<String> fixed = Collections.emptySet();
+        if (autoCorrect && !found.isEmpty()) {
+            fixed = correct(runId, storeCode, dsrDt, found);
+        }
+
+        if (!found.isEmpty()) {
+            List<Object[]> rows = new ArrayList<>(found.size());
+            for (Object[] f : found) {
+                rows.add(new Object[]{runId, f[0], f[1], f[2], f[3], f[4], f[5], f[6], fixed.contains(key(f))});
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO inventory_discrepancy "
+                    + "(run_id, store_code, item_code, size_code, check_type, expected, actual, business_dt, corrected) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)", rows);
+        }
+        return found.size();
+    }
+
+    /**
+     * The differences of a store, as {store, item, size, check, expected, actual, business_dt}.
+     *
+     * @param itemCodes null for every item of the store
+     */
+    private List<Object[]> inspectStore(String storeCode, Date dsrDt, Collection<String> itemCodes) {
+        List<Object> params = new ArrayList<>();
+        String sql = storeAggregates(storeCode, dsrDt, itemCodes, params);
+
+        List<Object[]> found = new ArrayList<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(FETCH_SIZE);
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            return ps;
+        }, rs -> {
+            String itemCode = rs.getString("item_code");
+            String sizeCode = rs.getString("size_code");
+            if (itemCode == null || sizeCode == null) {
+                return;
+            }
+            int opening = rs.getInt("opening");
+            int purchase = rs.getInt("purchase");
+            int inward = rs.getInt("inward");
+            int outward = rs.getInt("outward");
+            int closing = rs.getInt("closing");
+
+            check(found, storeCode, itemCode, sizeCode, CHECK_PURCHASE, rs.getInt("tx_purchase"), purchase);
+            check(found, storeCode, itemCode, sizeCode, CHECK_INWARD, rs.getInt("tx_inward"), inward);
+            check(found, storeCode, itemCode, sizeCode, CHECK_OUTWARD, rs.getInt("tx_outward"), outward);
+            check(found, storeCode, itemCode, sizeCode, CHECK_CLOSING, opening + purchase + inward - outward, closing);
+
+            int dsrClosing = rs.getInt("dsr_closing");
+            if (!rs.wasNull()) {
+                int expected = closing - rs.getInt("after_dsr");
+                if (expected != dsrClosing) {
+                    found.add(new Object[]{storeCode, itemCode, sizeCode, CHECK_DSR_CLOSING, expected, dsrClosing, dsrDt});
+                }
+            }
+        });
+        return found;
+    }
+
+    private static void check(List<Object[]> found, String storeCode, String itemCode, String sizeCode, String checkType,
+                              int expected, int actual) {
+        if (expected != actual) {
+            found.add(new Object[]{storeCode, itemCode, sizeCode, checkType, expected, actual, null});
+        }
+    }
+
+    /**
+     * Locks the Inventory_Master rows of the correctable differences, checks their items again
+     * and posts the differences that are still there. The transaction gives way in a deadlock,
+     * so a till posting the same SKUs wins and the store is left for the next run.
+     *
+     * @return keys of the differences corrected
+     */
+    private Set<String> correct(String runId, String storeCode, Date dsrDt, List<Object[]> found) {
+        Set<String> flagged = new HashSet<>();
+        Set<String> skus = new LinkedHashSet<>();
+        Set<String> items = new LinkedHashSet<>();
+        for (Object[] f : found) {
+            if (!CHECK_DSR_CLOSING.equals(f[3])) {
+                flagged.add(key(f));
+                skus.add(f[1] + "|" + f[2]);
+                items.add((String) f[1]);
+            }
+        }
+        if (flagged.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        try {
+            Set<String> fixed = correcting.execute(status -> {
+                jdbcTemplate.execute("SET DEADLOCK_PRIORITY LOW");
+                try {
+                    lockRows(storeCode, new ArrayList<>(skus));
+
+                    List<String> itemList = new ArrayList<>(items);
+                    Set<String> corrected = new HashSet<>();
+                    // A counter fix also moves Closing by the same amount, so the CLOSING
+                    // adjustment computed from the old counters still holds
+                    Map<StockMovementService.MovementType, List<StockMovementService.Delta>> corrections =
+                            new EnumMap<>(StockMovementService.MovementType.class);
+                    for (int from = 0; from < itemList.size(); from += RECHECK_CHUNK) {
+                        List<String> chunk = itemList.subList(from, Math.min(from + RECHECK_CHUNK, itemList.size()));
+                        for (Object[] f : inspectStore(storeCode, dsrDt, chunk)) {
+                            if (!flagged.contains(key(f))) {
+                                continue;
+                            }
+                            corrections.computeIfAbsent(movementType((String) f[3]), k -> new ArrayList<>())
+                                    .add(new StockMovementService.Delta((String) f[1], (String) f[2], (int) f[4] - (int) f[5]));
+                            corrected.add(key(f));
+                        }
+                    }
+
+                    for (Map.Entry<StockMovementService.MovementType, List<StockMovementService.Delta>> entry : corrections.entrySet()) {
+                        stockMovementService.apply(storeCode, entry.getKey(), entry.getValue(),
+                                new StockMovementService.Source(StockMovementService.SourceType.RECONCILIATION, runId, null));
+                    }
+                    return corrected;
+                } finally {
+                    jdbcTemplate.execute("SET DEADLOCK_PRIORITY NORMAL");
+                }
+            });
+            return fixed != null ? fixed : Collections.emptySet();
+        } catch (RuntimeException e) {
+            log.error("Reconciliation could not correct store {}: {}", storeCode, e.getMessage());
+            return Collections.emptySet();
+        }
+    }
+
+    // Update locks on the store's rows of the given "item|size" keys, held to the end of the transaction
+    private void lockRows(String storeCode, List<String> skus) {
+        for (int from = 0; from < skus.size(); from += RECHECK_CHUNK) {
+            List<String> chunk = skus.subList(from, Math.min(from + RECHECK_CHUNK, skus.size()));
+            StringBuilder sql = new StringBuilder();
+            List<Object> params = new ArrayList<>();
+            sql.append("SELECT COUNT(*) FROM Inventory_Master im WITH (UPDLOCK, HOLDLOCK) ");
+            sql.append("JOIN (VALUES ");
+            for (int i = 0; i < chunk.size(); i++) {
+                String[] sku = chunk.get(i).split("\\|", 2);
+                sql.append(i == 0 ? "(?, ?)" : ", (?, ?)");
+                params.add(sku[0]);
+                params.add(sku[1]);
+            }
+            sql.append(") AS k (item_code, size_code) ON im.Item_code = k.item_code AND im.Size_code = k.size_code ");
+            sql.append("WHERE im.Store_code = ?");
+            params.add(storeCode);
+            jdbcTemplate.queryForObject(sql.toString(), Integer.class, params.toArray());
+        }
+    }
+
+    private static StockMovementService.MovementType movementType(String checkType) {
+        switch (checkType) {
+            case CHECK_PURCHASE:
+                return StockMovementService.MovementType.PURCHASE;
+            case CHECK_INWARD:
+                return StockMovementService.MovementType.INWARD;
+            case CHECK_OUTWARD:
+                return StockMovementService.MovementType.OUTWARD;
+            default:
+                return StockMovementService.MovementType.ADJUSTMENT;
+        }
+    }
+
+    private static String key(Object[] f) {
+        return f[1] + "|" + f[2] + "|" + f[3];
+    }
+
+    /**
+     * Per (item, size) of the store: the Inventory_Master counters, the same counters summed from
+     * the stock documents, the latest DSR closing and the net movement dated after that DSR day.
+     */
+    private static String storeAggregates(String storeCode, Date dsrDt, Collection<String> itemCodes, List<Object> params) {
+        String stiDate = BusinessDates.sqlParse("si.sti_date");
+        String purDate = BusinessDates.sqlParse("pi.invoice_date");
+        // Placeholders of the optional item filter; the codes are added once per use
+        String items = itemCodes == null ? null : String.join(", ", Collections.nCopies(itemCodes.size(), "?"));
+
+        StringBuilder sql = new StringBuilder();
+        sql.append("WITH mv AS (");
+        sql.append("  SELECT ti.item_code, ti.size_code, 'OUTWARD' AS kind, ISNULL(ti.quantity, 0) AS qty, ");
+        sql.append("    ISNULL(ti.invoice_dt, ").append(BusinessDates.sqlParse("ti.invoice_date")).append(") AS dt ");
+        sql.append("  FROM tran_item ti JOIN tran_head th ON th.invoice_no = ti.invoice_no AND th.store_code = ti.store_code ");
+        sql.append("  WHERE ti.store_code = ? AND (th.status IS NULL OR th.status <> 'DRAFT') ");
+        params.add(storeCode);
+        itemFilter(sql, params, "ti.item_code", items, itemCodes);
+        sql.append("  UNION ALL SELECT si.item_code, si.size_code, 'OUTWARD', ISNULL(si.quantity, 0), ");
+        sql.append("    ISNULL(sh.sto_dt, ").append(BusinessDates.sqlParse("sh.date")).append(") ");
+        sql.append("  FROM sto_item si JOIN sto_head sh ON sh.sto_number = si.sto_number AND sh.from_store = si.from_store ");
+        sql.append("  WHERE si.from_store = ? AND sh.status = 'SUBMITTED' ");
+        params.add(storeCode);
+        itemFilter(sql, params, "si.item_code", items, itemCodes);
+        sql.append("  UNION ALL SELECT si.item_code, si.size_code, 'INWARD', ISNULL(si.quantity, 0), ").append(stiDate).append(" ");
+        sql.append("  FROM sti_item si WHERE si.to_store = ? ");
+        params.add(storeCode);
+        itemFilter(sql, params, "si.item_code", items, itemCodes);
+        sql.append("  UNION ALL SELECT pi.item_code, pi.size_code, 'PURCHASE', ISNULL(pi.quantity, 0), ").append(purDate).append(" ");
+        sql.append("  FROM pur_item pi WHERE pi.store_code = ? ");
+        sql.append("    AND EXISTS (SELECT 1 FROM pur_head ph WHERE ph.store_code = pi.store_code AND ph.invoice_no = pi.invoice_no ");
+        sql.append("      AND ph.invoice_date = pi.invoice_date AND ph.status <> 'DRAFT') ");
+        params.add(storeCode);
+        itemFilter(sql, params, "pi.item_code", items, itemCodes);
+        sql.append("), ");
+
+        sql.append("tx AS (SELECT item_code, size_code, ");
+        sql.append("    SUM(CASE WHEN kind = 'PURCHASE' THEN qty ELSE 0 END) AS purchase, ");
+        sql.append("    SUM(CASE WHEN kind = 'INWARD' THEN qty ELSE 0 END) AS inward, ");
+        sql.append("    SUM(CASE WHEN kind = 'OUTWARD' THEN qty ELSE 0 END) AS outward, ");
+        sql.append("    SUM(CASE WHEN dt > ? THEN (CASE WHEN kind = 'OUTWARD' THEN -qty ELSE qty END) ELSE 0 END) AS after_dsr ");
+        sql.append("  FROM mv GROUP BY item_code, size_code), ");
+        params.add(dsrDt);
+
+        sql.append("im AS (SELECT Item_code AS item_code, Size_code AS size_code, ");
+        sql.append("    SUM(ISNULL(Opening, 0)) AS opening, SUM(ISNULL(Purchase, 0)) AS purchase, SUM(ISNULL(Inward, 0)) AS inward, ");
+        sql.append("    SUM(ISNULL(Outward, 0)) AS outward, SUM(ISNULL(Closing, 0)) AS closing ");
+        sql.append("  FROM Inventory_Master WHERE Store_code = ? ");
+        params.add(storeCode);
+        itemFilter(sql, params, "Item_code", items, itemCodes);
+        sql.append("  GROUP BY Item_code, Size_code), ");
+
+        sql.append("dsr AS (SELECT Item_code AS item_code, Size_Code AS size_code, SUM(ISNULL(Closing, 0)) AS closing ");
+        sql.append("  FROM DSR_Detail WHERE Store = ? AND business_dt = ? ");
+        params.add(storeCode);
+        params.add(dsrDt);
+        itemFilter(sql, params, "Item_code", items, itemCodes);
+        sql.append("  GROUP BY Item_code, Size_Code) ");
+
+        sql.append("SELECT k.item_code, k.size_code, ");
+        sql.append("  ISNULL(im.opening, 0) AS opening, ISNULL(im.purchase, 0) AS purchase, ISNULL(im.inward, 0) AS inward, ");
+        sql.append("  ISNULL(im.outward, 0) AS outward, ISNULL(im.closing, 0) AS closing, ");
+        sql.append("  ISNULL(tx.purchase, 0) AS tx_purchase, ISNULL(tx.inward, 0) AS tx_inward, ISNULL(tx.outward, 0) AS tx_outward, ");
+        sql.append("  ISNULL(tx.after_dsr, 0) AS after_dsr, dsr.closing AS dsr_closing ");
+        sql.append("FROM (SELECT item_code, size_code FROM im UNION SELECT item_code, size_code FROM tx) k ");
+        sql.append("LEFT JOIN im ON im.item_code = k.item_code AND im.size_code = k.size_code ");
+        sql.append("LEFT JOIN tx ON tx.item_code = k.item_code AND tx.size_code = k.size_code ");
+        sql.append("LEFT JOIN dsr ON dsr.item_code = k.item_code AND dsr.size_code = k.size_code");
+        return sql.toString();
+    }
+
+    private static void itemFilter(StringBuilder sql, List<Object> params, String column, String placeholders, Collection<String> itemCodes) {
+        if (itemCodes != null) {
+            sql.append("    AND ").append(column).append(" IN (").append(placeholders).append(") ");
+            params.addAll(itemCodes);
+        }
+    }
+}
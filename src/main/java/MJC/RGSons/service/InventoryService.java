@@ -8,6 +8,7 @@ import MJC.RGSons.repository.InventoryMasterRepository;
 import MJC.RGSons.repository.ItemRepository;
 import MJC.RGSons.repository.SizeRepository;
 import MJC.RGSons.repository.StoreRepository;
+import MJC.RGSons.util.StoreCodes;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -38,6 +39,15 @@ public class InventoryService {
     @Autowired
     private SizeRepository sizeRepository;
 
+    @Autowired
+    private StockMovementService stockMovementService;
+
+    @Autowired
+    private ItemSearchIndex itemSearchIndex;
+
+    @Autowired
+    private AvailableStockIndex availableStockIndex;
+
     public List<InventoryMaster> getAllInventory() {
         return inventoryMasterRepository.findAll();
     }
@@ -48,8 +58,8 @@ public class InventoryService {
 
     public Integer getClosingStock(String storeCode, String itemCode, String sizeCode) {
         Optional<InventoryMaster> inv = inventoryMasterRepository.findByStoreCodeAndItemCodeAndSizeCode(storeCode, itemCode, sizeCode);
-        if (inv.isEmpty() && "HO".equals(storeCode)) {
-            inv = inventoryMasterRepository.findByStoreCodeAndItemCodeAndSizeCode("Head Office", itemCode, sizeCode);
+        if (inv.isEmpty() && StoreCodes.HEAD_OFFICE.equals(storeCode)) {
+            inv = inventoryMasterRepository.findByStoreCodeAndItemCodeAndSizeCode(StoreCodes.HEAD_OFFICE_LEGACY, itemCode, sizeCode);
         }
         return inv.map(InventoryMaster::getClosing).orElse(0);
     }
@@ -57,8 +67,8 @@ public class InventoryService {
     public Map<String, Integer> getClosingStockByItem(String storeCode, String itemCode) {
         List<InventoryMaster> inventoryList = inventoryMasterRepository.findByStoreCodeAndItemCode(storeCode, itemCode);
         
-        if (inventoryList.isEmpty() && "HO".equals(storeCode)) {
-            inventoryList = inventoryMasterRepository.findByStoreCodeAndItemCode("Head Office", itemCode);
+        if (inventoryList.isEmpty() && StoreCodes.HEAD_OFFICE.equals(storeCode)) {
+            inventoryList = inventoryMasterRepository.findByStoreCodeAndItemCode(StoreCodes.HEAD_OFFICE_LEGACY, itemCode);
         }
 
         Map<String, Integer> stockMap = new HashMap<>();
@@ -68,84 +78,53 @@ public class InventoryService {
         return stockMap;
     }
 
+    /**
+     * Items in stock at the store whose code or name contains the query, best match first,
+     * answered from the in-memory item and available-stock indexes.
+     */
     public List<Map<String, String>> searchAvailableItems(String storeCode, String query) {
-        List<Object[]> results = inventoryMasterRepository.searchAvailableItems(storeCode, query);
-        List<Map<String, String>> items = new ArrayList<>();
-        for (Object[] row : results) {
-            Map<String, String> item = new HashMap<>();
-            item.put("itemCode", (String) row[0]);
-            item.put("itemName", (String) row[1]);
-            items.add(item);
+        List<Item> matches = itemSearchIndex.search(query, 0);
+        if (matches.isEmpty()) {
+            return new ArrayList<>();
         }
-        return items;
+        return availableStockIndex.inStock(storeCode, matches);
     }
 
     @Transactional
     public void updateInventoryFromPurchase(List<MJC.RGSons.model.PurItem> purItems) {
+        // Group by store and invoice; items without a store code are skipped as before
+        Map<String, List<MJC.RGSons.model.PurItem>> byInvoice = new LinkedHashMap<>();
         for (MJC.RGSons.model.PurItem item : purItems) {
             String storeCode = item.getStoreCode();
             if (storeCode == null || storeCode.isEmpty()) {
-                // If item doesn't have store code, try to find it or skip? 
-                // Usually store code is on the item in our implementation
-                continue; 
+                continue;
             }
+            byInvoice.computeIfAbsent(storeCode + "|" + item.getInvoiceNo(), k -> new ArrayList<>()).add(item);
+        }
 
-            Optional<InventoryMaster> existingInv = inventoryMasterRepository.findByStoreCodeAndItemCodeAndSizeCode(
-                    storeCode, item.getItemCode(), item.getSizeCode());
-
-            if (existingInv.isPresent()) {
-                InventoryMaster inv = existingInv.get();
-                // Update Purchase and Closing
-                int currentPurchase = inv.getPurchase() != null ? inv.getPurchase() : 0;
-                int currentClosing = inv.getClosing() != null ? inv.getClosing() : 0;
-                int qty = item.getQuantity() != null ? item.getQuantity() : 0;
-
-                inv.setPurchase(currentPurchase + qty);
-                // Recalculate Closing: Closing = Opening + Purchase + Inward - Outward
-                int opening = inv.getOpening() != null ? inv.getOpening() : 0;
-                int inward = inv.getInward() != null ? inv.getInward() : 0;
-                int outward = inv.getOutward() != null ? inv.getOutward() : 0;
-                inv.setClosing(opening + inv.getPurchase() + inward - outward);
-                inv.setBusinessDate(item.getInvoiceDate()); // Update date to latest transaction
-                
-                inventoryMasterRepository.save(inv);
-            } else {
-                // Create new Inventory Record
-                InventoryMaster newInv = new InventoryMaster();
-                newInv.setStoreCode(storeCode);
-                newInv.setItemCode(item.getItemCode());
-                newInv.setSizeCode(item.getSizeCode());
-                newInv.setBusinessDate(item.getInvoiceDate());
-                
-                // Fetch Names
-                Optional<Item> itemOpt = itemRepository.findByItemCode(item.getItemCode());
-                if (itemOpt.isPresent()) {
-                    newInv.setItemName(itemOpt.get().getItemName());
-                } else {
-                    newInv.setItemName(""); 
-                }
-
-                Optional<Size> sizeOpt = sizeRepository.findByCode(item.getSizeCode());
-                if (sizeOpt.isPresent()) {
-                    newInv.setSizeName(sizeOpt.get().getName());
-                } else {
-                    newInv.setSizeName("");
+        for (List<MJC.RGSons.model.PurItem> items : byInvoice.values()) {
+            List<StockMovementService.Delta> deltas = new ArrayList<>(items.size());
+            String latestDate = null;
+            for (MJC.RGSons.model.PurItem item : items) {
+                deltas.add(new StockMovementService.Delta(item.getItemCode(), item.getSizeCode(), item.getQuantity()));
+                if (item.getInvoiceDate() != null) {
+                    latestDate = item.getInvoiceDate(); // Update date to latest transaction
                 }
-
-                newInv.setOpening(0);
-                int qty = item.getQuantity() != null ? item.getQuantity() : 0;
-                newInv.setPurchase(qty);
-                newInv.setInward(0);
-                newInv.setOutward(0);
-                newInv.setClosing(qty);
-
-                inventoryMasterRepository.save(newInv);
             }
+            MJC.RGSons.model.PurItem first = items.get(0);
+            stockMovementService.apply(first.getStoreCode(), StockMovementService.MovementType.PURCHASE, deltas, latestDate,
+                    new StockMovementService.Source(StockMovementService.SourceType.PURCHASE, first.getInvoiceNo(), latestDate));
         }
     }
 
+    /**
+     * Sets the opening stock of the given SKUs. The change against the current Opening is
+     * posted as an OPENING movement, so Closing and the stock journal follow it.
+     */
     @Transactional
     public List<InventoryMaster> saveInventory(List<InventoryMaster> inventoryList) {
+        // The last entry wins when the same store/item/size comes more than once
+        Map<String, InventoryMaster> entries = new LinkedHashMap<>();
         for (InventoryMaster inv : inventoryList) {
             // Default store code if not present (assuming single store or default store for now)
             // In a multi-store environment, storeCode should be passed from frontend or context
@@ -155,43 +134,56 @@ public class InventoryService {
                 storeCode = "STORE001"; // Default or handle appropriately
                 inv.setStoreCode(storeCode);
             }
+            entries.put(storeCode + "|" + inv.getItemCode() + "|" + inv.getSizeCode(), inv);
+        }
 
+        // Opening deltas per store and business date; other counters of new rows come in per type
+        Map<String, List<StockMovementService.Delta>> openings = new LinkedHashMap<>();
+        Map<StockMovementService.MovementType, Map<String, List<StockMovementService.Delta>>> others = new EnumMap<>(StockMovementService.MovementType.class);
+        for (InventoryMaster inv : entries.values()) {
             Optional<InventoryMaster> existingInv = inventoryMasterRepository.findByStoreCodeAndItemCodeAndSizeCode(
-                    storeCode, inv.getItemCode(), inv.getSizeCode());
+                    inv.getStoreCode(), inv.getItemCode(), inv.getSizeCode());
 
+            int opening = inv.getOpening() != null ? inv.getOpening() : 0;
             if (existingInv.isPresent()) {
-                InventoryMaster update = existingInv.get();
-                // Update Opening stock
-                if (inv.getBusinessDate() != null) {
-                    update.setBusinessDate(inv.getBusinessDate());
-                }
-
-                if (inv.getOpening() != null) {
-                    int oldOpening = update.getOpening() != null ? update.getOpening() : 0;
-                    int oldClosing = update.getClosing() != null ? update.getClosing() : 0;
-                    int newOpening = inv.getOpening();
-                    
-                    update.setOpening(newOpening);
-                    // Recalculate Closing based on delta: Closing - Previous Opening + new Opening
-                    update.setClosing(oldClosing - oldOpening + newOpening);
-                }
-                
-                inventoryMasterRepository.save(update);
+                Integer oldOpening = existingInv.get().getOpening();
+                // No opening given: only the business date is updated
+                opening = inv.getOpening() != null ? opening - (oldOpening != null ? oldOpening : 0) : 0;
             } else {
-                // New record
-                if (inv.getPurchase() == null) inv.setPurchase(0);
-                if (inv.getInward() == null) inv.setInward(0);
-                if (inv.getOutward() == null) inv.setOutward(0);
-                
-                int opening = inv.getOpening() != null ? inv.getOpening() : 0;
-                inv.setClosing(opening + inv.getPurchase() + inv.getInward() - inv.getOutward());
-                
-                inventoryMasterRepository.save(inv);
+                addDelta(others, StockMovementService.MovementType.PURCHASE, inv, inv.getPurchase());
+                addDelta(others, StockMovementService.MovementType.INWARD, inv, inv.getInward());
+                addDelta(others, StockMovementService.MovementType.OUTWARD, inv, inv.getOutward());
+            }
+            openings.computeIfAbsent(inv.getStoreCode() + "|" + (inv.getBusinessDate() != null ? inv.getBusinessDate() : ""), k -> new ArrayList<>())
+                    .add(new StockMovementService.Delta(inv.getItemCode(), inv.getSizeCode(), opening, inv.getItemName(), inv.getSizeName()));
+        }
+
+        for (Map.Entry<String, List<StockMovementService.Delta>> entry : openings.entrySet()) {
+            String storeCode = entry.getKey().substring(0, entry.getKey().indexOf('|'));
+            String businessDate = entry.getKey().substring(entry.getKey().indexOf('|') + 1);
+            stockMovementService.apply(storeCode, StockMovementService.MovementType.OPENING, entry.getValue(),
+                    businessDate.isEmpty() ? null : businessDate,
+                    new StockMovementService.Source(StockMovementService.SourceType.OPENING_IMPORT, null, null));
+        }
+        for (Map.Entry<StockMovementService.MovementType, Map<String, List<StockMovementService.Delta>>> type : others.entrySet()) {
+            for (Map.Entry<String, List<StockMovementService.Delta>> entry : type.getValue().entrySet()) {
+                stockMovementService.apply(entry.getKey(), type.getKey(), entry.getValue(),
+                        new StockMovementService.Source(StockMovementService.SourceType.OPENING_IMPORT, null, null));
             }
         }
         return inventoryList;
     }
 
+    private static void addDelta(Map<StockMovementService.MovementType, Map<String, List<StockMovementService.Delta>>> deltas,
+                                 StockMovementService.MovementType type, InventoryMaster inv, Integer quantity) {
+        if (quantity == null || quantity == 0) {
+            return;
+        }
+        deltas.computeIfAbsent(type, k -> new LinkedHashMap<>())
+                .computeIfAbsent(inv.getStoreCode(), k -> new ArrayList<>())
+                .add(new StockMovementService.Delta(inv.getItemCode(), inv.getSizeCode(), quantity, inv.getItemName(), inv.getSizeName()));
+    }
+
     public ByteArrayInputStream exportInventoryToExcel(String storeCode) throws IOException {
         try (Workbook workbook = new XSSFWorkbook()) {
             Sheet sheet = workbook.createSheet("Opening Inventory");
@@ -212,7 +204,7 @@ public class InventoryService {
             // Data
             List<InventoryMaster> inventoryList;
             if (storeCode != null && !storeCode.isEmpty() && !storeCode.equalsIgnoreCase("null")) {
-                inventoryList = inventoryMasterRepository.findByStoreCodeWithLegacyFallback(storeCode);
+                inventoryList = inventoryMasterRepository.findByStoreCodeIn(StoreCodes.storedAs(storeCode));
             } else {
                 inventoryList = inventoryMasterRepository.findAll();
             }
@@ -323,9 +315,9 @@ public class InventoryService {
 
                     if (storeCodeToUse == null) {
                         // Legacy fallback for Head Office if not in DB, but prefer DB
-                        if (locationName.equalsIgnoreCase("Head Office") || locationName.equalsIgnoreCase("HO")) {
+                        if (StoreCodes.isHeadOffice(locationName.toUpperCase())) {
                             // Use "HO" as the standard code for Head Office if not found in DB
-                            storeCodeToUse = "HO"; 
+                            storeCodeToUse = StoreCodes.HEAD_OFFICE; 
                         } else {
                             throw new Exception("Location '" + locationName + "' not found in Store table");
                         }
@@ -0,0 +1,196 @@
+package MJC.RGSons.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * End-of-day closing stock per (store, item, size), for "stock as of" questions.
+ *
+ * inventory_snapshot only gets a row when a key's closing differs from its previous snapshot
+ * row, so a day costs as many rows as SKUs that moved. The closing of a key on day D is its
+ * latest row on or before D. inventory_snapshot_run records the days a snapshot was taken;
+ * for a day after the last run, that run's values are rolled forward.
+ *
+ * Snapshot and roll-forward both sum the stock_movement journal by business date, so a
+ * document counts towards the day it is dated whenever it was posted. The daily run retakes
+ * the last few days as well, to take in documents posted after their day's run.
+ */
+@Service
+public class InventorySnapshotService {
+
+    private static final Logger log = LoggerFactory.getLogger(InventorySnapshotService.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${inventory.snapshot.enabled:true}")
+    private boolean enabled;
+
+    @Value("${inventory.snapshot.retake-days:2}")
+    private int retakeDays;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public InventorySnapshotService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureTables() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            StringBuilder ddl = new StringBuilder();
+            ddl.append("IF OBJECT_ID('inventory_snapshot', 'U') IS NULL ");
+            ddl.append("CREATE TABLE inventory_snapshot (");
+            ddl.append("  store_code VARCHAR(255) NOT NULL, ");
+            ddl.append("  item_code VARCHAR(255) NOT NULL, ");
+            ddl.append("  size_code VARCHAR(255) NOT NULL, ");
+            ddl.append("  snapshot_dt DATE NOT NULL, ");
+            ddl.append("  closing INT NOT NULL, ");
+            ddl.append("  CONSTRAINT PK_inventory_snapshot PRIMARY KEY (store_code, item_code, size_code, snapshot_dt))");
+            jdbcTemplate.execute(ddl.toString());
+
+            ddl = new StringBuilder();
+            ddl.append("IF OBJECT_ID('inventory_snapshot_run', 'U') IS NULL ");
+            ddl.append("CREATE TABLE inventory_snapshot_run (");
+            ddl.append("  snapshot_dt DATE NOT NULL PRIMARY KEY, ");
+            ddl.append("  rows_written INT NOT NULL, ");
+            ddl.append("  taken_at DATETIME NOT NULL)");
+            jdbcTemplate.execute(ddl.toString());
+        } catch (Exception e) {
+            log.error("inventory_snapshot setup failed: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(cron = "${inventory.snapshot.cron:0 55 23 * * *}")
+    public void takeDailySnapshot() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            LocalDate today = LocalDate.now();
+            log.info("Inventory snapshot: {}", takeSnapshot(today.minusDays(Math.max(0, retakeDays)), today));
+        } catch (Exception e) {
+            log.error("Inventory snapshot failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Records the journal closing as of the end of {@code day} as its snapshot, writing only
+     * keys whose closing changed since their previous row. Later runs only hold changes
+     * relative to it, so they are retaken too.
+     */
+    public Map<String, Object> takeSnapshot(LocalDate day) {
+        return takeSnapshot(day, day);
+    }
+
+    // Takes every day from..to that has a run, plus to itself and every later run, oldest first
+    private Map<String, Object> takeSnapshot(LocalDate from, LocalDate to) {
+        return transactionTemplate.execute(status -> {
+            TreeSet<LocalDate> days = new TreeSet<>();
+            days.add(to);
+            for (Date run : jdbcTemplate.queryForList(
+                    "SELECT snapshot_dt FROM inventory_snapshot_run WHERE snapshot_dt >= ?", Date.class, Date.valueOf(from))) {
+                days.add(run.toLocalDate());
+            }
+
+            Map<String, Object> rowsWritten = new LinkedHashMap<>();
+            for (LocalDate day : days) {
+                rowsWritten.put(day.toString(), writeDay(day));
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("snapshotDate", to.toString());
+            result.put("rowsWritten", rowsWritten);
+            return result;
+        });
+    }
+
+    private int writeDay(LocalDate day) {
+        Date snapshotDt = Date.valueOf(day);
+        jdbcTemplate.update("DELETE FROM inventory_snapshot WHERE snapshot_dt = ?", snapshotDt);
+
+        StringBuilder sql = new StringBuilder();
+        sql.append("INSERT INTO inventory_snapshot (store_code, item_code, size_code, snapshot_dt, closing) ");
+        sql.append("SELECT COALESCE(cur.store_code, prev.store_code), COALESCE(cur.item_code, prev.item_code), ");
+        sql.append("  COALESCE(cur.size_code, prev.size_code), ?, ISNULL(cur.closing, 0) ");
+        sql.append("FROM (SELECT store_code, item_code, size_code, SUM(quantity) AS closing ");
+        sql.append("  FROM stock_movement ");
+        sql.append("  WHERE effective_dt <= ? ");
+        sql.append("  GROUP BY store_code, item_code, size_code) cur ");
+        sql.append("FULL OUTER JOIN (").append(latestRows("<")).append(") prev ");
+        sql.append("  ON prev.store_code = cur.store_code AND prev.item_code = cur.item_code AND prev.size_code = cur.size_code ");
+        sql.append("WHERE ISNULL(cur.closing, 0) <> ISNULL(prev.closing, 0)");
+        int written = jdbcTemplate.update(sql.toString(), snapshotDt, snapshotDt, snapshotDt);
+
+        jdbcTemplate.update("MERGE inventory_snapshot_run AS r USING (SELECT ? AS snapshot_dt) AS src "
+                    + "ON r.snapshot_dt = src.snapshot_dt "
+                    + "WHEN MATCHED THEN UPDATE SET rows_written = ?, taken_at = GETDATE() "
+                    + "WHEN NOT MATCHED THEN INSERT (snapshot_dt, rows_written, taken_at) VALUES (src.snapshot_dt, ?, GETDATE());",
+                snapshotDt, written, written);
+        return written;
+    }
+
+    /**
+     * A derived table shaped like Inventory_Master (Store_code, Item_code, Item_Name, Size_code,
+     * Size_name, Closing) holding the closing stock at the end of {@code asOf}. Its parameters
+     * are appended to {@code params}, so it must be placed where it appears in the statement.
+     *
+     * @throws IllegalArgumentException when no snapshot was taken on or before {@code asOf}
+     */
+    public String closingAsOfSource(LocalDate asOf, List<Object> params) {
+        Date asOfDt = Date.valueOf(asOf);
+        Date base = jdbcTemplate.queryForObject(
+                "SELECT MAX(snapshot_dt) FROM inventory_snapshot_run WHERE snapshot_dt <= ?", Date.class, asOfDt);
+        if (base == null) {
+            throw new IllegalArgumentException("No inventory snapshot on or before " + asOf);
+        }
+
+        StringBuilder sql = new StringBuilder();
+        sql.append("(SELECT g.store_code AS Store_code, g.item_code AS Item_code, ");
+        sql.append("  (SELECT TOP 1 it.item_name FROM items it WHERE it.item_code = g.item_code) AS Item_Name, ");
+        sql.append("  g.size_code AS Size_code, ");
+        sql.append("  (SELECT TOP 1 szn.name FROM size szn WHERE szn.code = g.size_code) AS Size_name, ");
+        sql.append("  g.closing AS Closing ");
+        sql.append(" FROM (SELECT k.store_code, k.item_code, k.size_code, SUM(k.qty) AS closing FROM (");
+        sql.append("SELECT store_code, item_code, size_code, closing AS qty FROM (").append(latestRows("<=")).append(") s ");
+        params.add(base);
+
+        if (base.toLocalDate().isBefore(asOf)) {
+            // Journal rows dated after the run, on the same business-date clock as the run itself
+            sql.append("UNION ALL SELECT store_code, item_code, size_code, quantity FROM stock_movement ");
+            sql.append("WHERE effective_dt > ? AND effective_dt <= ? ");
+            params.add(base);
+            params.add(asOfDt);
+        }
+
+        sql.append(") k GROUP BY k.store_code, k.item_code, k.size_code) g)");
+        return sql.toString();
+    }
+
+    /** Each key's latest snapshot row whose snapshot_dt compares with {@code op} to the parameter. */
+    private static String latestRows(String op) {
+        return "SELECT store_code, item_code, size_code, closing FROM ("
+                + "SELECT store_code, item_code, size_code, closing, "
+                + "ROW_NUMBER() OVER (PARTITION BY store_code, item_code, size_code ORDER BY snapshot_dt DESC) AS rn "
+                + "FROM inventory_snapshot WHERE snapshot_dt " + op + " ?) x WHERE rn = 1";
+    }
+}
@@ -0,0 +1,302 @@
+package MJC.RGSons.service;
+
+import MJC.RGSons.model.Brand;
+import MJC.RGSons.model.Category;
+import MJC.RGSons.model.Item;
+import MJC.RGSons.model.PriceMaster;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The POS item list: one row per item and priced size, with each store's opening stock.
+ *
+ * The list is built once and kept until items, brands, categories or prices change in the
+ * {@link MasterDataRegistry}, or a stock movement changes the openings or adds an
+ * Inventory_Master row. Builds are published through a {@link VersionedList}, which gives
+ * the version, and the rows changed since an older version for {@link #getChanges}.
+ */
+@Service
+public class ItemListService {
+
+    private static final Logger log = LoggerFactory.getLogger(ItemListService.class);
+
+    /** One build of the list. Rows are shared between requests and must not be modified. */
+    public static final class Snapshot {
+        private final VersionedList.View view;
+        private final Set<String> inventoryKeys;
+        private final Map<String, List<Map<String, Object>>> rowsByStore = new ConcurrentHashMap<>();
+
+        private Snapshot(VersionedList.View view, Set<String> inventoryKeys) {
+            this.view = view;
+            this.inventoryKeys = inventoryKeys;
+        }
+
+        public long getVersion() { return view.getVersion(); }
+        public long getLastModified() { return view.getLastModified(); }
+        public String etag(String storeCode) { return view.etag(storeCode); }
+
+        /** All rows, or with InventoryDetails narrowed to one store when {@code storeCode} is given. */
+        public List<Map<String, Object>> rows(String storeCode) {
+            if (storeCode == null || storeCode.isEmpty()) {
+                return view.getRows();
+            }
+            return rowsByStore.computeIfAbsent(storeCode, code -> forStore(view.getRows(), code));
+        }
+    }
+
+    // The master versions and inventory generation a snapshot was built from
+    private static final class Sources {
+        private final long items, brands, categories, prices, inventory;
+
+        Sources(MasterDataRegistry registry, long inventory) {
+            this.items = registry.getVersion(MasterDataRegistry.MasterType.ITEM);
+            this.brands = registry.getVersion(MasterDataRegistry.MasterType.BRAND);
+            this.categories = registry.getVersion(MasterDataRegistry.MasterType.CATEGORY);
+            this.prices = registry.getVersion(MasterDataRegistry.MasterType.PRICE);
+            this.inventory = inventory;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Sources)) return false;
+            Sources s = (Sources) o;
+            return items == s.items && brands == s.brands && categories == s.categories
+                    && prices == s.prices && inventory == s.inventory;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(items, brands, categories, prices, inventory);
+        }
+    }
+
+    @Autowired
+    private MasterDataRegistry masterDataRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final AtomicLong inventoryGeneration = new AtomicLong();
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+
+    private volatile Sources currentSources;
+
+    private final VersionedList list = new VersionedList(
+            row -> rowKey((String) row.get("itemCode"), (String) row.get("sizeCode")),
+            key -> {
+                Map<String, Object> removed = new LinkedHashMap<>();
+                removed.put("itemCode", key.substring(0, key.indexOf('|')));
+                removed.put("sizeCode", key.substring(key.indexOf('|') + 1));
+                return removed;
+            });
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            getSnapshot();
+        } catch (Exception e) {
+            log.error("ItemList warm-up failed: {}", e.getMessage());
+        }
+    }
+
+    /** The current list, rebuilt first if its sources changed since the last build. */
+    public Snapshot getSnapshot() {
+        Snapshot snapshot = current.get();
+        if (snapshot != null && new Sources(masterDataRegistry, inventoryGeneration.get()).equals(currentSources)) {
+            return snapshot;
+        }
+        synchronized (this) {
+            Sources sources = new Sources(masterDataRegistry, inventoryGeneration.get());
+            snapshot = current.get();
+            if (snapshot != null && sources.equals(currentSources)) {
+                return snapshot;
+            }
+            snapshot = build(snapshot);
+            current.set(snapshot);
+            currentSources = sources;
+            return snapshot;
+        }
+    }
+
+    /**
+     * Rows added or changed after version {@code since}, and the (itemCode, sizeCode) keys
+     * removed. When {@code since} is older than this run's history the whole list is sent
+     * with {@code full = true}.
+     */
+    public Map<String, Object> getChanges(long since, String storeCode) {
+        getSnapshot();
+        if (storeCode == null || storeCode.isEmpty()) {
+            return list.changesSince(since, "ItemList", rows -> rows);
+        }
+        return list.changesSince(since, "ItemList", rows -> forStore(rows, storeCode));
+    }
+
+    /**
+     * Called by {@link StockMovementService} for every posted movement. The list only carries
+     * openings, so other movements matter only when they create a row the list has not seen.
+     */
+    public void stockMoved(String storeCode, StockMovementService.MovementType type, List<StockMovementService.Delta> rows) {
+        Runnable check = () -> {
+            Snapshot snapshot = current.get();
+            boolean affected = snapshot == null || type == StockMovementService.MovementType.OPENING;
+            for (int i = 0; !affected && i < rows.size(); i++) {
+                StockMovementService.Delta row = rows.get(i);
+                affected = !snapshot.inventoryKeys.contains(inventoryKey(storeCode, row.getItemCode(), row.getSizeCode()));
+            }
+            if (affected) {
+                inventoryGeneration.incrementAndGet();
+            }
+        };
+        afterCommit(check);
+    }
+
+    /** Called when Inventory_Master was rewritten wholesale, e.g. rebuilt from the journal. */
+    public void inventoryChanged() {
+        afterCommit(inventoryGeneration::incrementAndGet);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    // Runs under the lock of getSnapshot
+    private Snapshot build(Snapshot previous) {
+        long start = System.currentTimeMillis();
+
+        MasterDataRegistry.Snapshot<Item> items = masterDataRegistry.items();
+        MasterDataRegistry.Snapshot<PriceMaster> prices = masterDataRegistry.prices();
+        MasterDataRegistry.Snapshot<Brand> brands = masterDataRegistry.brands();
+        MasterDataRegistry.Snapshot<Category> categories = masterDataRegistry.categories();
+
+        // Group prices by itemCode
+        Map<String, List<PriceMaster>> pricesByItem = new HashMap<>();
+        for (PriceMaster pm : prices.all()) {
+            pricesByItem.computeIfAbsent(pm.getItemCode(), k -> new ArrayList<>()).add(pm);
+        }
+
+        // Openings by itemCode + sizeCode, in the shape the POS reads
+        Map<String, List<Map<String, Object>>> inventoryByItemAndSize = new HashMap<>();
+        Set<String> inventoryKeys = new HashSet<>();
+        jdbcTemplate.query("SELECT Store_code, Item_code, Size_code, Opening FROM Inventory_Master", rs -> {
+            String storeCode = rs.getString("Store_code");
+            String itemCode = rs.getString("Item_code");
+            String sizeCode = rs.getString("Size_code");
+            Map<String, Object> invMap = new LinkedHashMap<>();
+            invMap.put("store_code", storeCode);
+            invMap.put("Opening", rs.getObject("Opening") != null ? rs.getInt("Opening") : null);
+            inventoryByItemAndSize.computeIfAbsent(rowKey(itemCode, sizeCode), k -> new ArrayList<>())
+                    .add(Collections.unmodifiableMap(invMap));
+            inventoryKeys.add(inventoryKey(storeCode, itemCode, sizeCode));
+        });
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Item item : items.all()) {
+            List<PriceMaster> itemPrices = pricesByItem.get(item.getItemCode());
+            if (itemPrices != null && !itemPrices.isEmpty()) {
+                for (PriceMaster pm : itemPrices) {
+                    Map<String, Object> map = itemFields(item, brands, categories);
+                    map.put("sizeCode", pm.getSizeCode());
+                    map.put("sizeName", pm.getSizeName());
+                    map.put("purchasePrice", pm.getPurchasePrice());
+                    map.put("salePrice", pm.getSalePrice());
+                    map.put("mrp", pm.getMrp());
+                    addRow(rows, rowKey(item.getItemCode(), pm.getSizeCode()), map, inventoryByItemAndSize);
+                }
+            } else {
+                // Fallback for items without PriceMaster entries
+                Map<String, Object> map = itemFields(item, brands, categories);
+                map.put("sizeCode", "");
+                map.put("sizeName", item.getSize());
+                map.put("purchasePrice", item.getPurchasePrice());
+                map.put("mrp", item.getMrp());
+                addRow(rows, rowKey(item.getItemCode(), ""), map, inventoryByItemAndSize);
+            }
+        }
+
+        VersionedList.View view = list.publish(rows);
+        if (previous != null && previous.view == view) {
+            // Same rows as before: keep the snapshot and its per-store views
+            return previous;
+        }
+        log.debug("ItemList snapshot {}: {} rows in {} ms", view.getVersion(), rows.size(), System.currentTimeMillis() - start);
+        return new Snapshot(view, inventoryKeys);
+    }
+
+    private static Map<String, Object> itemFields(Item item, MasterDataRegistry.Snapshot<Brand> brands,
+                                                  MasterDataRegistry.Snapshot<Category> categories) {
+        Brand brand = brands.get(item.getBrandCode());
+        Category category = categories.get(item.getCategoryCode());
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("itemCode", item.getItemCode());
+        map.put("itemName", item.getItemName());
+        map.put("brandCode", item.getBrandCode());
+        map.put("brandName", brand != null && brand.getName() != null ? brand.getName() : "");
+        map.put("categoryCode", item.getCategoryCode());
+        map.put("categoryName", category != null && category.getName() != null ? category.getName() : "");
+        map.put("status", item.getStatus());
+        return map;
+    }
+
+    private static void addRow(List<Map<String, Object>> rows, String key, Map<String, Object> map,
+                               Map<String, List<Map<String, Object>>> inventoryByItemAndSize) {
+        List<Map<String, Object>> inventoryDetails = inventoryByItemAndSize.get(key);
+        map.put("InventoryDetails", inventoryDetails != null
+                ? Collections.unmodifiableList(inventoryDetails) : Collections.emptyList());
+        rows.add(Collections.unmodifiableMap(map));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> forStore(List<Map<String, Object>> rows, String storeCode) {
+        List<Map<String, Object>> filtered = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            List<Map<String, Object>> storeInventory = new ArrayList<>(1);
+            for (Map<String, Object> inv : (List<Map<String, Object>>) row.get("InventoryDetails")) {
+                if (storeCode.equals(inv.get("store_code"))) {
+                    storeInventory.add(inv);
+                }
+            }
+            Map<String, Object> copy = new LinkedHashMap<>(row);
+            copy.put("InventoryDetails", Collections.unmodifiableList(storeInventory));
+            filtered.add(Collections.unmodifiableMap(copy));
+        }
+        return Collections.unmodifiableList(filtered);
+    }
+
+    private static String rowKey(String itemCode, String sizeCode) {
+        return itemCode + "|" + (sizeCode != null ? sizeCode : "");
+    }
+
+    private static String inventoryKey(String storeCode, String itemCode, String sizeCode) {
+        return storeCode + "|" + itemCode + "|" + (sizeCode != null ? sizeCode : "");
+    }
+}
@@ -0,0 +1,298 @@
+package MJC.RGSons.service;
+
+import MJC.RGSons.model.Item;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Case-folded n-gram index over item code and name for the typeahead searches.
+ *
+ * Every bigram and trigram of an item's folded code and name maps to the sorted ids of the
+ * items containing it. A query of three or more characters intersects the postings of its
+ * trigrams, a two-character query reads its bigram, and every candidate is then checked with
+ * a plain contains, so the matches are exactly those of the old {@code LIKE '%q%'}.
+ *
+ * The index follows the item table of the {@link MasterDataRegistry}: when its version moves,
+ * only items whose code or name changed are re-indexed.
+ */
+@Service
+public class ItemSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(ItemSearchIndex.class);
+
+    private static final class Doc {
+        private final Item item;
+        private final String code;
+        private final String name;
+
+        Doc(Item item) {
+            this.item = item;
+            this.code = fold(item.getItemCode());
+            this.name = fold(item.getItemName());
+        }
+
+        boolean sameText(Item other) {
+            return code.equals(fold(other.getItemCode())) && name.equals(fold(other.getItemName()));
+        }
+    }
+
+    private static final class Match {
+        private final Doc doc;
+        private final int rank;
+
+        Match(Doc doc, int rank) {
+            this.doc = doc;
+            this.rank = rank;
+        }
+    }
+
+    /** A growable sorted list of item ids. */
+    private static final class Postings {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at >= 0) {
+                return;
+            }
+            at = -at - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+        }
+
+        void remove(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at >= 0) {
+                System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+                size--;
+            }
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+
+    @Autowired
+    private MasterDataRegistry masterDataRegistry;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Ids are positions in docs; a removed item leaves a null behind
+    private final List<Doc> docs = new ArrayList<>();
+    private final Map<String, Integer> idByCode = new HashMap<>();
+    private final Map<String, Postings> postings = new HashMap<>();
+
+    private volatile long indexedVersion = -1;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            sync();
+        } catch (Exception e) {
+            log.error("Item search index warm-up failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Items whose code or name contains {@code query}, ignoring case, best match first:
+     * exact code, code prefix, name prefix, a word of the name starting with the query, then
+     * anywhere in code or name; ties go to the shorter name.
+     *
+     * @param limit at most this many results; 0 or less for all
+     */
+    public List<Item> search(String query, int limit) {
+        String q = fold(query);
+        sync();
+
+        List<Match> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int id : candidates(q)) {
+                Doc doc = docs.get(id);
+                if (doc != null && (doc.code.contains(q) || doc.name.contains(q))) {
+                    matches.add(new Match(doc, rank(doc, q)));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        matches.sort(Comparator.<Match>comparingInt(m -> m.rank)
+                .thenComparingInt(m -> m.doc.name.length())
+                .thenComparing(m -> m.doc.name));
+        int count = limit > 0 ? Math.min(limit, matches.size()) : matches.size();
+        List<Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(matches.get(i).doc.item);
+        }
+        return items;
+    }
+
+    // Ids that may contain q; caller holds the read lock
+    private int[] candidates(String q) {
+        if (q.length() < 2) {
+            int[] all = new int[docs.size()];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        if (q.length() == 2) {
+            Postings list = postings.get(q);
+            return list != null ? Arrays.copyOf(list.ids, list.size) : new int[0];
+        }
+
+        // Start from the rarest trigram and keep the ids found in all the others
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + 3 <= q.length(); i++) {
+            grams.add(q.substring(i, i + 3));
+        }
+        List<Postings> lists = new ArrayList<>(grams.size());
+        for (String gram : grams) {
+            Postings list = postings.get(gram);
+            if (list == null) {
+                return new int[0];
+            }
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(list -> list.size));
+
+        Postings rarest = lists.get(0);
+        int[] result = new int[rarest.size];
+        int n = 0;
+        for (int i = 0; i < rarest.size; i++) {
+            int id = rarest.ids[i];
+            boolean inAll = true;
+            for (int j = 1; j < lists.size() && inAll; j++) {
+                inAll = lists.get(j).contains(id);
+            }
+            if (inAll) {
+                result[n++] = id;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static int rank(Doc doc, String q) {
+        if (doc.code.equals(q)) return 0;
+        if (doc.code.startsWith(q)) return 1;
+        if (doc.name.startsWith(q)) return 2;
+        if (doc.name.contains(" " + q)) return 3;
+        return 4;
+    }
+
+    /** Brings the index up to the registry's item table, re-indexing only what changed. */
+    private void sync() {
+        long version = masterDataRegistry.getVersion(MasterDataRegistry.MasterType.ITEM);
+        if (version == indexedVersion) {
+            return;
+        }
+        MasterDataRegistry.Snapshot<Item> items = masterDataRegistry.items();
+
+        lock.writeLock().lock();
+        try {
+            if (indexedVersion == items.getVersion()) {
+                return;
+            }
+            Set<String> seen = new HashSet<>();
+            int reindexed = 0;
+            for (Item item : items.all()) {
+                String code = item.getItemCode();
+                if (code == null || !seen.add(code)) {
+                    continue;
+                }
+                Integer id = idByCode.get(code);
+                if (id == null) {
+                    id = docs.size();
+                    docs.add(null);
+                    idByCode.put(code, id);
+                }
+                Doc old = docs.get(id);
+                if (old != null && old.sameText(item)) {
+                    // Text unchanged: keep the postings, serve the current entity
+                    docs.set(id, new Doc(item));
+                    continue;
+                }
+                if (old != null) {
+                    unindex(id, old);
+                }
+                Doc doc = new Doc(item);
+                docs.set(id, doc);
+                index(id, doc);
+                reindexed++;
+            }
+            for (Map.Entry<String, Integer> entry : new ArrayList<>(idByCode.entrySet())) {
+                if (!seen.contains(entry.getKey())) {
+                    Doc old = docs.get(entry.getValue());
+                    if (old != null) {
+                        unindex(entry.getValue(), old);
+                        docs.set(entry.getValue(), null);
+                        reindexed++;
+                    }
+                }
+            }
+            indexedVersion = items.getVersion();
+            if (reindexed > 0) {
+                log.debug("Item search index: {} items re-indexed, {} codes, {} grams",
+                        reindexed, idByCode.size(), postings.size());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void index(int id, Doc doc) {
+        for (String gram : grams(doc)) {
+            postings.computeIfAbsent(gram, k -> new Postings()).add(id);
+        }
+    }
+
+    private void unindex(int id, Doc doc) {
+        for (String gram : grams(doc)) {
+            Postings list = postings.get(gram);
+            if (list != null) {
+                list.remove(id);
+                if (list.size == 0) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    private static Set<String> grams(Doc doc) {
+        Set<String> grams = new HashSet<>();
+        for (String text : new String[] { doc.code, doc.name }) {
+            for (int n = 2; n <= 3; n++) {
+                for (int i = 0; i + n <= text.length(); i++) {
+                    grams.add(text.substring(i, i + n));
+                }
+            }
+        }
+        return grams;
+    }
+
+    private static String fold(String text) {
+        return text != null ? text.toLowerCase(Locale.ROOT) : "";
+    }
+}
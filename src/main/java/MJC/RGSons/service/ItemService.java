@@ -22,6 +22,12 @@ public class ItemService {
     @Autowired
     private ItemRepository itemRepository;
 
+    @Autowired
+    private MasterDataRegistry masterDataRegistry;
+
+    @Autowired
+    private ItemSearchIndex itemSearchIndex;
+
     @Autowired
     private PriceMasterRepository priceMasterRepository;
 
@@ -61,8 +67,9 @@ public class ItemService {
         return itemRepository.findByItemNameContainingIgnoreCase(name);
     }
 
-    public List<Item> searchItems(String query) {
-        return itemRepository.searchByCodeOrName(query);
+    /** Best matches first, from the in-memory index; {@code limit} 0 or less for all. */
+    public List<Item> searchItems(String query, int limit) {
+        return itemSearchIndex.search(query, limit);
     }
 
     public Page<Item> searchItems(String query, int page, int size) {
@@ -104,7 +111,9 @@ public class ItemService {
             item.setStatus(true);
         }
         item.setCreatedAt(LocalDateTime.now());
-        return itemRepository.save(item);
+        Item saved = itemRepository.save(item);
+        masterDataRegistry.changed(MasterDataRegistry.MasterType.ITEM);
+        return saved;
     }
 
     public Item updateItem(Integer id, Item itemDetails) {
@@ -137,7 +146,9 @@ public class ItemService {
                 existingItem.setStatus(itemDetails.getStatus());
             }
             existingItem.setUpdateAt(LocalDateTime.now());
-            return itemRepository.save(existingItem);
+            Item saved = itemRepository.save(existingItem);
+            masterDataRegistry.changed(MasterDataRegistry.MasterType.ITEM);
+            return saved;
         } else {
             throw new RuntimeException("Item not found with id: " + id);
         }
@@ -175,6 +186,7 @@ public class ItemService {
             
             existingItem.setUpdateAt(LocalDateTime.now());
             itemRepository.save(existingItem);
+            masterDataRegistry.changed(MasterDataRegistry.MasterType.ITEM);
             return "Updated: " + existingItem.getItemCode();
         } else {
             // Create new
@@ -195,6 +207,7 @@ public class ItemService {
             
             try {
                 itemRepository.save(item);
+                masterDataRegistry.changed(MasterDataRegistry.MasterType.ITEM);
                 return "Created: " + item.getItemCode();
             } catch (Exception e) {
                 return "Error: " + e.getMessage();
@@ -278,6 +291,7 @@ public class ItemService {
                 item.setStatus(false);
                 item.setUpdateAt(LocalDateTime.now());
                 itemRepository.save(item);
+                masterDataRegistry.changed(MasterDataRegistry.MasterType.ITEM);
             } else {
                 // Not used in Price Master -> Hard Delete (Remove from DB)
                 // Note: If item is used in other tables (like Inventory, Sales), this might fail due to FK constraints.
@@ -286,11 +300,13 @@ public class ItemService {
                 // Let's try hard delete first as per likely intent.
                 try {
                     itemRepository.delete(item);
+                    masterDataRegistry.changed(MasterDataRegistry.MasterType.ITEM);
                 } catch (Exception e) {
                     // Fallback to soft delete if FK constraint exists
                     item.setStatus(false);
                     item.setUpdateAt(LocalDateTime.now());
                     itemRepository.save(item);
+                    masterDataRegistry.changed(MasterDataRegistry.MasterType.ITEM);
                 }
             }
         } else {
@@ -17,6 +17,9 @@ public class LedgerService {
     @Autowired
     private LedgerRepository ledgerRepository;
 
+    @Autowired
+    private MasterDataRegistry masterDataRegistry;
+
     @Autowired
     private SequenceGeneratorService sequenceGeneratorService;
 
@@ -66,7 +69,9 @@ public class LedgerService {
         if (ledger.getStatus() == null) {
             ledger.setStatus(1);
         }
-        return ledgerRepository.save(ledger);
+        Ledger saved = ledgerRepository.save(ledger);
+        masterDataRegistry.changed(MasterDataRegistry.MasterType.LEDGER);
+        return saved;
     }
 
     public Ledger updateLedger(Integer id, Ledger ledgerDetails) {
@@ -87,7 +92,9 @@ public class LedgerService {
         existingLedger.setScreen(ledgerDetails.getScreen());
         existingLedger.setStatus(ledgerDetails.getStatus());
 
-        return ledgerRepository.save(existingLedger);
+        Ledger saved = ledgerRepository.save(existingLedger);
+        masterDataRegistry.changed(MasterDataRegistry.MasterType.LEDGER);
+        return saved;
     }
 
     public void deleteLedger(Integer id) {
@@ -115,14 +122,17 @@ public class LedgerService {
             // Mark as inactive (soft delete)
             ledger.setStatus(0);
             ledgerRepository.save(ledger);
+            masterDataRegistry.changed(MasterDataRegistry.MasterType.LEDGER);
         } else {
             // Hard delete
             try {
                 ledgerRepository.deleteById(id);
+                masterDataRegistry.changed(MasterDataRegistry.MasterType.LEDGER);
             } catch (Exception e) {
                 // Fallback to soft delete
                 ledger.setStatus(0);
                 ledgerRepository.save(ledger);
+                masterDataRegistry.changed(MasterDataRegistry.MasterType.LEDGER);
             }
         }
     }
@@ -137,5 +147,6 @@ public class LedgerService {
                 ledgerRepository.save(ledger);
             }
         }
+        masterDataRegistry.changed(MasterDataRegistry.MasterType.LEDGER);
     }
 }
@@ -0,0 +1,250 @@
+package MJC.RGSons.service;
+
+import MJC.RGSons.model.Brand;
+import MJC.RGSons.model.Category;
+import MJC.RGSons.model.Item;
+import MJC.RGSons.model.Ledger;
+import MJC.RGSons.model.Party;
+import MJC.RGSons.model.PriceMaster;
+import MJC.RGSons.model.Size;
+import MJC.RGSons.model.Store;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.criteria.CriteriaQuery;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * In-memory copies of the master tables, looked up by code in O(1) instead of one query per
+ * document line.
+ *
+ * Each table is held as an immutable {@link Snapshot}. The master services call
+ * {@link #changed} after a write; once that write commits the table's snapshot is dropped and
+ * the next lookup loads a new one and swaps it in, so a bulk import costs one reload, not one
+ * per row. Readers always see one whole generation, never a half-updated table.
+ *
+ * A reload runs on the caller's own connection (its transaction's, if it has one) and holds no
+ * lock, so a caller never needs a second pooled connection and never waits on another
+ * caller's reload. A transaction that changed a table and reads it before committing gets a
+ * copy with its own writes that is not kept.
+ *
+ * Every change bumps {@link #getVersion()}, which caches built on top of master data use as
+ * their key. The entities handed out are shared between threads and must not be modified.
+ */
+@Service
+public class MasterDataRegistry {
+
+    public enum MasterType {
+        ITEM, SIZE, BRAND, CATEGORY, LEDGER, STORE, PARTY, PRICE
+    }
+
+    /** One generation of a master table: all rows, and the rows by code (first one wins). */
+    public static final class Snapshot<T> {
+        private final long version;
+        private final List<T> all;
+        private final Map<String, T> byCode;
+
+        private Snapshot(long version, List<T> rows, Function<T, String> key) {
+            Map<String, T> index = new HashMap<>(rows.size() * 2);
+            for (T row : rows) {
+                String code = key.apply(row);
+                if (code != null) {
+                    index.putIfAbsent(code, row);
+                }
+            }
+            this.version = version;
+            this.all = Collections.unmodifiableList(new ArrayList<>(rows));
+            this.byCode = Collections.unmodifiableMap(index);
+        }
+
+        public long getVersion() { return version; }
+        public List<T> all() { return all; }
+        public T get(String code) { return code != null ? byCode.get(code) : null; }
+        public int size() { return all.size(); }
+    }
+
+    private static final class Table<T> {
+        private final Class<T> entity;
+        private final Function<T, String> key;
+        // The latest snapshot loaded; served only while its version is the table's generation
+        private final AtomicReference<Snapshot<T>> current = new AtomicReference<>();
+        private final AtomicLong generation = new AtomicLong();
+
+        Table(Class<T> entity, Function<T, String> key) {
+            this.entity = entity;
+            this.key = key;
+        }
+    }
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private final Map<MasterType, Table<?>> tables = new EnumMap<>(MasterType.class);
+
+    private final AtomicLong version = new AtomicLong();
+
+    // Transaction resource key of the tables the current transaction has changed
+    private final Object pendingKey = new Object();
+
+    public MasterDataRegistry() {
+        tables.put(MasterType.ITEM, new Table<>(Item.class, Item::getItemCode));
+        tables.put(MasterType.SIZE, new Table<>(Size.class, Size::getCode));
+        tables.put(MasterType.BRAND, new Table<>(Brand.class, Brand::getCode));
+        tables.put(MasterType.CATEGORY, new Table<>(Category.class, Category::getCode));
+        tables.put(MasterType.LEDGER, new Table<>(Ledger.class, Ledger::getCode));
+        tables.put(MasterType.STORE, new Table<>(Store.class, Store::getStoreCode));
+        tables.put(MasterType.PARTY, new Table<>(Party.class, Party::getCode));
+        tables.put(MasterType.PRICE, new Table<>(PriceMaster.class, p -> priceKey(p.getItemCode(), p.getSizeCode())));
+    }
+
+    /** Increases with every master data change, of any table. */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /** Increases with every change of the given table. */
+    public long getVersion(MasterType type) {
+        return tables.get(type).generation.get();
+    }
+
+    /**
+     * Marks a table as changed. Inside a transaction this takes effect once it commits, so the
+     * reload sees the write; a rolled back write leaves the snapshot alone.
+     */
+    public void changed(MasterType type) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            pendingChanges(true).add(type);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate(type);
+                }
+            });
+        } else {
+            invalidate(type);
+        }
+    }
+
+    // Tables changed by the current transaction and not committed yet; null if none
+    @SuppressWarnings("unchecked")
+    private Set<MasterType> pendingChanges(boolean create) {
+        Set<MasterType> pending = (Set<MasterType>) TransactionSynchronizationManager.getResource(pendingKey);
+        if (pending == null && create) {
+            Set<MasterType> changed = EnumSet.noneOf(MasterType.class);
+            TransactionSynchronizationManager.bindResource(pendingKey, changed);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void suspend() {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(pendingKey);
+                }
+
+                @Override
+                public void resume() {
+                    TransactionSynchronizationManager.bindResource(pendingKey, changed);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(pendingKey);
+                }
+            });
+            pending = changed;
+        }
+        return pending;
+    }
+
+    private void invalidate(MasterType type) {
+        Table<?> table = tables.get(type);
+        table.generation.incrementAndGet();
+        version.incrementAndGet();
+        table.current.set(null);
+    }
+
+    public Snapshot<Item> items() { return snapshot(MasterType.ITEM); }
+    public Snapshot<Size> sizes() { return snapshot(MasterType.SIZE); }
+    public Snapshot<Brand> brands() { return snapshot(MasterType.BRAND); }
+    public Snapshot<Category> categories() { return snapshot(MasterType.CATEGORY); }
+    public Snapshot<Ledger> ledgers() { return snapshot(MasterType.LEDGER); }
+    public Snapshot<Store> stores() { return snapshot(MasterType.STORE); }
+    public Snapshot<Party> parties() { return snapshot(MasterType.PARTY); }
+    public Snapshot<PriceMaster> prices() { return snapshot(MasterType.PRICE); }
+
+    public Item item(String itemCode) { return items().get(itemCode); }
+    public Size size(String code) { return sizes().get(code); }
+    public Brand brand(String code) { return brands().get(code); }
+    public Category category(String code) { return categories().get(code); }
+    public Ledger ledger(String code) { return ledgers().get(code); }
+    public Store store(String storeCode) { return stores().get(storeCode); }
+    public Party party(String code) { return parties().get(code); }
+    public PriceMaster price(String itemCode, String sizeCode) { return prices().get(priceKey(itemCode, sizeCode)); }
+
+    public static String priceKey(String itemCode, String sizeCode) {
+        return itemCode + "|" + sizeCode;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Snapshot<T> snapshot(MasterType type) {
+        Table<T> table = (Table<T>) tables.get(type);
+        Set<MasterType> pending = TransactionSynchronizationManager.isSynchronizationActive() ? pendingChanges(false) : null;
+        boolean ownWrites = pending != null && pending.contains(type);
+
+        long generation = table.generation.get();
+        Snapshot<T> snapshot = table.current.get();
+        if (snapshot != null && snapshot.version == generation && !ownWrites) {
+            return snapshot;
+        }
+
+        snapshot = new Snapshot<>(generation, load(table.entity), table.key);
+        if (ownWrites) {
+            return snapshot;
+        }
+        // Keep the newest load; one from before a change never replaces a later one, and is
+        // not served once the generation has moved on
+        Snapshot<T> latest;
+        do {
+            latest = table.current.get();
+            if (latest != null && latest.version >= snapshot.version) {
+                break;
+            }
+        } while (!table.current.compareAndSet(latest, snapshot));
+        return snapshot;
+    }
+
+    /**
+     * All rows of an entity, read on the connection of the caller's transaction (or one of its
+     * own outside a transaction) through a short-lived session, so they come out detached and
+     * the caller's persistence context is left alone.
+     */
+    private <T> List<T> load(Class<T> entity) {
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try (Session session = entityManagerFactory.unwrap(SessionFactory.class).withOptions().connection(connection).openSession()) {
+            session.setDefaultReadOnly(true);
+            CriteriaQuery<T> query = session.getCriteriaBuilder().createQuery(entity);
+            query.select(query.from(entity));
+            return new ArrayList<>(session.createQuery(query).getResultList());
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+}
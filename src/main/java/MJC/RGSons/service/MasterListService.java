@@ -0,0 +1,165 @@
+package MJC.RGSons.service;
+
+import MJC.RGSons.model.Party;
+import MJC.RGSons.repository.TenderTypeRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Versioned copies of the master lists the POS screens load on open, for conditional GET
+ * (ETag / Last-Modified, 304) and {@code ?since=} deltas.
+ *
+ * Lists built from the {@link MasterDataRegistry} are rebuilt only when the registry version
+ * of their table moves. Tender types are only maintained in the database, so that small
+ * table is read on every request; publishing an unchanged read keeps the version.
+ */
+@Service
+public class MasterListService {
+
+    public enum ListType {
+        PARTIES("PartyList", "code", MasterDataRegistry.MasterType.PARTY),
+        VENDORS("parties", "code", MasterDataRegistry.MasterType.PARTY),
+        ITEMS("items", "itemCode", MasterDataRegistry.MasterType.ITEM),
+        LEDGERS("ledgers", "code", MasterDataRegistry.MasterType.LEDGER),
+        TENDER_TYPES("tenderTypes", "tenderCode", null),
+        ACTIVE_TENDER_TYPES("tenderTypes", "tenderCode", null);
+
+        private final String listName;
+        private final String keyField;
+        private final MasterDataRegistry.MasterType source;
+
+        ListType(String listName, String keyField, MasterDataRegistry.MasterType source) {
+            this.listName = listName;
+            this.keyField = keyField;
+            this.source = source;
+        }
+
+        /** Name the full list goes under in a delta response. */
+        public String getListName() { return listName; }
+    }
+
+    @Autowired
+    private MasterDataRegistry masterDataRegistry;
+
+    @Autowired
+    private TenderTypeRepository tenderTypeRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final Map<ListType, VersionedList> lists = new EnumMap<>(ListType.class);
+
+    // Registry version each list was last built from
+    private final Map<ListType, Long> builtFrom = new ConcurrentHashMap<>();
+
+    public MasterListService() {
+        for (ListType type : ListType.values()) {
+            lists.put(type, new VersionedList(row -> String.valueOf(row.get(type.keyField)), key -> {
+                Map<String, Object> removed = new LinkedHashMap<>();
+                removed.put(type.keyField, key);
+                return removed;
+            }));
+        }
+    }
+
+    /** The current version of a list, rebuilt first if its source changed. */
+    public VersionedList.View view(ListType type) {
+        VersionedList list = lists.get(type);
+        if (type.source == null) {
+            return list.publish(load(type));
+        }
+
+        VersionedList.View view = list.current();
+        Long built = builtFrom.get(type);
+        if (view != null && built != null && built == masterDataRegistry.getVersion(type.source)) {
+            return view;
+        }
+        synchronized (list) {
+            long version = masterDataRegistry.getVersion(type.source);
+            view = list.current();
+            built = builtFrom.get(type);
+            if (view != null && built != null && built == version) {
+                return view;
+            }
+            view = list.publish(load(type));
+            builtFrom.put(type, version);
+            return view;
+        }
+    }
+
+    /** Rows changed and keys removed after version {@code since}; see {@link VersionedList#changesSince}. */
+    public Map<String, Object> changesSince(ListType type, long since) {
+        view(type);
+        return lists.get(type).changesSince(since, type.getListName(), rows -> rows);
+    }
+
+    private List<Map<String, Object>> load(ListType type) {
+        switch (type) {
+            case PARTIES:
+                return partyList(masterDataRegistry.parties().all());
+            case VENDORS: {
+                // findByType compared under the database's case-insensitive collation
+                List<Object> vendors = new ArrayList<>();
+                for (Party party : masterDataRegistry.parties().all()) {
+                    if ("Vendor".equalsIgnoreCase(party.getType())) {
+                        vendors.add(party);
+                    }
+                }
+                return asRows(vendors);
+            }
+            case ITEMS:
+                return asRows(masterDataRegistry.items().all());
+            case LEDGERS:
+                return asRows(masterDataRegistry.ledgers().all());
+            case TENDER_TYPES:
+                return asRows(tenderTypeRepository.findAll());
+            case ACTIVE_TENDER_TYPES:
+                return asRows(tenderTypeRepository.findByStatus(true));
+            default:
+                throw new IllegalArgumentException("Unknown list " + type);
+        }
+    }
+
+    // The same JSON the entities serialize to, as maps that can be compared between builds
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> asRows(List<?> entities) {
+        List<Map<String, Object>> rows = new ArrayList<>(entities.size());
+        for (Object entity : entities) {
+            rows.add(Collections.unmodifiableMap(objectMapper.convertValue(entity, LinkedHashMap.class)));
+        }
+        return rows;
+    }
+
+    private static List<Map<String, Object>> partyList(List<Party> parties) {
+        List<Map<String, Object>> rows = new ArrayList<>(parties.size());
+        for (Party p : parties) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("id", p.getId());
+            map.put("code", p.getCode());
+            map.put("name", p.getName());
+            map.put("address", p.getAddress());
+            map.put("city", p.getCity());
+            map.put("state", p.getState());
+            map.put("district", p.getDistrict());
+            map.put("pin", p.getPin());
+            map.put("phone", p.getPhone());
+            map.put("email", p.getEmail());
+            map.put("pan", p.getPan());
+            map.put("gstNumber", p.getGstNumber());
+            map.put("vatNo", p.getVatNo());
+            map.put("type", p.getType());
+            map.put("status", p.getStatus());
+            rows.add(Collections.unmodifiableMap(map));
+        }
+        return rows;
+    }
+}
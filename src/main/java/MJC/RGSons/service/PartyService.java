@@ -17,6 +17,9 @@ public class PartyService {
     @Autowired
     private PartyRepository partyRepository;
 
+    @Autowired
+    private MasterDataRegistry masterDataRegistry;
+
     @Autowired
     private SequenceGeneratorService sequenceGeneratorService;
 
@@ -53,7 +56,9 @@ public class PartyService {
             party.setStatus(true);
         }
         
-        return partyRepository.save(party);
+        Party saved = partyRepository.save(party);
+        masterDataRegistry.changed(MasterDataRegistry.MasterType.PARTY);
+        return saved;
     }
 
     // Get all parties
@@ -120,7 +125,9 @@ public class PartyService {
             existingParty.setStatus(partyDetails.getStatus());
             existingParty.setUpdateAt(LocalDateTime.now());
 
-            return partyRepository.save(existingParty);
+            Party saved = partyRepository.save(existingParty);
+            masterDataRegistry.changed(MasterDataRegistry.MasterType.PARTY);
+            return saved;
         } else {
             throw new RuntimeException("Party not found with id: " + id);
         }
@@ -146,15 +153,18 @@ public class PartyService {
                 party.setStatus(false);
                 party.setUpdateAt(LocalDateTime.now());
                 partyRepository.save(party);
+                masterDataRegistry.changed(MasterDataRegistry.MasterType.PARTY);
             } else {
                 // Hard delete
                 try {
                     partyRepository.deleteById(id);
+                    masterDataRegistry.changed(MasterDataRegistry.MasterType.PARTY);
                 } catch (Exception e) {
                     // Fallback to soft delete if constraints fail
                     party.setStatus(false);
                     party.setUpdateAt(LocalDateTime.now());
                     partyRepository.save(party);
+                    masterDataRegistry.changed(MasterDataRegistry.MasterType.PARTY);
                 }
             }
         } else {
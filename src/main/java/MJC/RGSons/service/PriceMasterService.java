@@ -29,6 +29,9 @@ public class PriceMasterService {
     @Autowired
     private PriceMasterRepository priceMasterRepository;
 
+    @Autowired
+    private MasterDataRegistry masterDataRegistry;
+
     @Autowired
     private ItemRepository itemRepository;
 
@@ -62,8 +65,10 @@ public class PriceMasterService {
             if (price.getSizeName() != null && !price.getSizeName().isEmpty()) update.setSizeName(price.getSizeName());
             
             priceMasterRepository.save(update);
+            masterDataRegistry.changed(MasterDataRegistry.MasterType.PRICE);
         } else {
             priceMasterRepository.save(price);
+            masterDataRegistry.changed(MasterDataRegistry.MasterType.PRICE);
         }
     }
 
@@ -24,22 +24,10 @@ public class PurchaseService {
     private PurLedgerRepository purLedgerRepository;
 
     @Autowired
-    private LedgerRepository ledgerRepository;
-
-    @Autowired
-    private PartyRepository partyRepository;
-
-    @Autowired
-    private ItemRepository itemRepository;
-
-    @Autowired
-    private SizeRepository sizeRepository;
-
-    @Autowired
-    private StoreRepository storeRepository;
+    private InventoryService inventoryService;
 
     @Autowired
-    private InventoryService inventoryService;
+    private MasterDataRegistry masterDataRegistry;
 
     public List<PurHead> getDraftVouchers() {
         return purHeadRepository.findByStatus("DRAFT");
@@ -57,7 +45,7 @@ public class PurchaseService {
         dto.setInvoiceNo(head.getInvoiceNo());
         dto.setInvoiceDate(head.getInvoiceDate());
         dto.setPartyCode(head.getPartyCode());
-        Party party = partyRepository.findByCode(head.getPartyCode());
+        Party party = masterDataRegistry.party(head.getPartyCode());
         if (party != null) {
             dto.setPartyName(party.getName());
         }
@@ -65,20 +53,32 @@ public class PurchaseService {
         dto.setPurchaseAmount(head.getPurchaseAmount());
         dto.setTotalAmount(head.getTotalAmount());
         dto.setStoreCode(head.getStoreCode());
-        storeRepository.findByStoreCode(head.getStoreCode()).ifPresent(s -> dto.setStoreName(s.getStoreName()));
+        Store store = masterDataRegistry.store(head.getStoreCode());
+        if (store != null) {
+            dto.setStoreName(store.getStoreName());
+        }
         
         dto.setNarration(head.getNarration());
         dto.setUserName(head.getUserName());
         dto.setPurLed(head.getPurLed());
-        ledgerRepository.findByCode(head.getPurLed()).ifPresent(l -> dto.setPurLedName(l.getName()));
+        Ledger purLed = masterDataRegistry.ledger(head.getPurLed());
+        if (purLed != null) {
+            dto.setPurLedName(purLed.getName());
+        }
 
         dto.setItems(items.stream().map(item -> {
             PurchaseTransactionDTO.PurchaseItemDTO itemDto = new PurchaseTransactionDTO.PurchaseItemDTO();
             itemDto.setItemCode(item.getItemCode());
-            itemRepository.findByItemCode(item.getItemCode()).ifPresent(i -> itemDto.setItemName(i.getItemName()));
+            Item masterItem = masterDataRegistry.item(item.getItemCode());
+            if (masterItem != null) {
+                itemDto.setItemName(masterItem.getItemName());
+            }
             
             itemDto.setSizeCode(item.getSizeCode());
-            sizeRepository.findByCode(item.getSizeCode()).ifPresent(s -> itemDto.setSizeName(s.getName()));
+            Size size = masterDataRegistry.size(item.getSizeCode());
+            if (size != null) {
+                itemDto.setSizeName(size.getName());
+            }
             
             itemDto.setPrice(item.getPrice());
             itemDto.setQuantity(item.getQuantity());
@@ -89,7 +89,10 @@ public class PurchaseService {
         dto.setLedgerDetails(ledgers.stream().map(ledger -> {
             PurchaseTransactionDTO.PurchaseLedgerDTO ledgerDto = new PurchaseTransactionDTO.PurchaseLedgerDTO();
             ledgerDto.setLedgerCode(ledger.getLedgerCode());
-            ledgerRepository.findByCode(ledger.getLedgerCode()).ifPresent(l -> ledgerDto.setLedgerName(l.getName()));
+            Ledger masterLedger = masterDataRegistry.ledger(ledger.getLedgerCode());
+            if (masterLedger != null) {
+                ledgerDto.setLedgerName(masterLedger.getName());
+            }
             ledgerDto.setAmount(ledger.getAmount());
             ledgerDto.setType(ledger.getType());
             return ledgerDto;
@@ -154,7 +157,7 @@ public class PurchaseService {
             for (PurLedger ledger : purLedgers) {
                 ledger.setInvoiceNo(savedHead.getInvoiceNo());
                 ledger.setPurId(savedHead.getId());
-                Ledger masterLedger = ledgerRepository.findByCode(ledger.getLedgerCode()).orElse(null);
+                Ledger masterLedger = masterDataRegistry.ledger(ledger.getLedgerCode());
                 if (masterLedger != null) {
                     ledger.setType(masterLedger.getType());
                 } else {
@@ -188,22 +191,12 @@ public class PurchaseService {
         List<PurItem> items = purItemRepository.findAll();
         List<PurLedger> ledgers = purLedgerRepository.findAll();
 
-        // Fetch all lookup data
-        Map<String, String> partyNames = partyRepository.findAll().stream()
-                .collect(Collectors.toMap(Party::getCode, Party::getName, (a, b) -> a));
-
-        Map<String, String> itemNames = itemRepository.findAll().stream()
-                .collect(Collectors.toMap(Item::getItemCode, Item::getItemName, (a, b) -> a));
-
-        Map<String, String> sizeNames = sizeRepository.findAll().stream()
-                .filter(s -> s.getCode() != null && s.getName() != null)
-                .collect(Collectors.toMap(Size::getCode, Size::getName, (a, b) -> a));
-
-        Map<String, Store> storeMap = storeRepository.findAll().stream()
-                .collect(Collectors.toMap(Store::getStoreCode, store -> store, (a, b) -> a));
-
-        Map<String, String> ledgerNames = ledgerRepository.findAll().stream()
-                .collect(Collectors.toMap(Ledger::getCode, Ledger::getName, (a, b) -> a));
+        // Lookup data comes from the master data registry, one snapshot per table for the whole listing
+        MasterDataRegistry.Snapshot<Party> parties = masterDataRegistry.parties();
+        MasterDataRegistry.Snapshot<Item> itemMaster = masterDataRegistry.items();
+        MasterDataRegistry.Snapshot<Size> sizes = masterDataRegistry.sizes();
+        MasterDataRegistry.Snapshot<Store> stores = masterDataRegistry.stores();
+        MasterDataRegistry.Snapshot<Ledger> ledgerMaster = masterDataRegistry.ledgers();
 
         // Group items by invoice number
         Map<String, List<PurItem>> itemsMap = items.stream()
@@ -220,11 +213,12 @@ public class PurchaseService {
             dto.setInvoiceNo(head.getInvoiceNo());
             dto.setInvoiceDate(head.getInvoiceDate());
             dto.setPartyCode(head.getPartyCode());
-            dto.setPartyName(partyNames.getOrDefault(head.getPartyCode(), ""));
+            Party party = parties.get(head.getPartyCode());
+            dto.setPartyName(party != null ? party.getName() : "");
             dto.setPurchaseAmount(head.getPurchaseAmount());
             dto.setTotalAmount(head.getTotalAmount());
             dto.setStoreCode(head.getStoreCode());
-            Store store = storeMap.get(head.getStoreCode());
+            Store store = stores.get(head.getStoreCode());
             if (store != null) {
                 dto.setStoreName(store.getStoreName());
             }
@@ -232,7 +226,8 @@ public class PurchaseService {
             dto.setUserName(head.getUserName());
             
             dto.setPurLed(head.getPurLed());
-            dto.setPurLedName(ledgerNames.getOrDefault(head.getPurLed(), ""));
+            Ledger purLed = ledgerMaster.get(head.getPurLed());
+            dto.setPurLedName(purLed != null ? purLed.getName() : "");
 
             // Map Items
             List<PurItem> headItems = itemsMap.getOrDefault(head.getInvoiceNo(), java.util.Collections.emptyList());
@@ -244,9 +239,11 @@ public class PurchaseService {
             List<PurchaseTransactionDTO.PurchaseItemDTO> itemDtos = headItems.stream().map(item -> {
                 PurchaseTransactionDTO.PurchaseItemDTO itemDto = new PurchaseTransactionDTO.PurchaseItemDTO();
                 itemDto.setItemCode(item.getItemCode());
-                itemDto.setItemName(itemNames.getOrDefault(item.getItemCode(), ""));
+                Item masterItem = itemMaster.get(item.getItemCode());
+                itemDto.setItemName(masterItem != null ? masterItem.getItemName() : "");
                 itemDto.setSizeCode(item.getSizeCode());
-                itemDto.setSizeName(sizeNames.getOrDefault(item.getSizeCode(), ""));
+                Size size = sizes.get(item.getSizeCode());
+                itemDto.setSizeName(size != null && size.getName() != null ? size.getName() : "");
                 itemDto.setPrice(item.getPrice());
                 itemDto.setQuantity(item.getQuantity());
                 itemDto.setAmount(item.getAmount());
@@ -259,7 +256,8 @@ public class PurchaseService {
             List<PurchaseTransactionDTO.PurchaseLedgerDTO> ledgerDtos = headLedgers.stream().map(ledger -> {
                 PurchaseTransactionDTO.PurchaseLedgerDTO ledgerDto = new PurchaseTransactionDTO.PurchaseLedgerDTO();
                 ledgerDto.setLedgerCode(ledger.getLedgerCode());
-                ledgerDto.setLedgerName(ledgerNames.getOrDefault(ledger.getLedgerCode(), ""));
+                Ledger masterLedger = ledgerMaster.get(ledger.getLedgerCode());
+                ledgerDto.setLedgerName(masterLedger != null ? masterLedger.getName() : "");
                 ledgerDto.setAmount(ledger.getAmount());
                 ledgerDto.setType(ledger.getType());
                 return ledgerDto;
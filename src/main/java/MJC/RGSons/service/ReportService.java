@@ -2,128 +2,52 @@ package MJC.RGSons.service;
 
 import MJC.RGSons.dto.CategorySalesDTO;
 import MJC.RGSons.dto.StoreSalesDTO;
-import MJC.RGSons.model.Category;
-import MJC.RGSons.model.Item;
-import MJC.RGSons.model.Store;
-import MJC.RGSons.model.TranHead;
-import MJC.RGSons.model.TranItem;
-import MJC.RGSons.repository.CategoryRepository;
-import MJC.RGSons.repository.ItemRepository;
-import MJC.RGSons.repository.StoreRepository;
-import MJC.RGSons.repository.TranHeadRepository;
-import MJC.RGSons.repository.TranItemRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import java.sql.Date;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
-import java.util.stream.Collectors;
 
 @Service
 public class ReportService {
 
     @Autowired
-    private TranHeadRepository tranHeadRepository;
+    private JdbcTemplate jdbcTemplate;
 
-    @Autowired
-    private TranItemRepository tranItemRepository;
-
-    @Autowired
-    private StoreRepository storeRepository;
-
-    @Autowired
-    private ItemRepository itemRepository;
-
-    @Autowired
-    private CategoryRepository categoryRepository;
+    // Both reports are a single GROUP BY over daily_sales_summary (see DailySalesSummaryService),
+    // so they touch one row per store and day rather than every invoice. Drafts are not in it:
+    // unlike the per-invoice queries these replaced, store- and date-wise sales leave out DRAFT
+    // invoices, which move no stock and post no ledgers.
 
     public List<StoreSalesDTO> getStoreWiseSales(LocalDate startDate, LocalDate endDate) {
-        List<String> dateRange = new ArrayList<>();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
-
-        LocalDate current = startDate;
-        while (!current.isAfter(endDate)) {
-            dateRange.add(current.format(formatter));
-            current = current.plusDays(1);
-        }
-
-        List<TranHead> transactions = tranHeadRepository.findByInvoiceDateIn(dateRange);
-
-        Map<String, Double> salesByStore = transactions.stream()
-                .collect(Collectors.groupingBy(
-                        TranHead::getStoreCode,
-                        Collectors.summingDouble(t -> t.getTotalAmount() != null ? t.getTotalAmount() : 0.0)
-                ));
-
-        List<StoreSalesDTO> report = new ArrayList<>();
-        for (Map.Entry<String, Double> entry : salesByStore.entrySet()) {
-            String storeCode = entry.getKey();
-            Double totalSales = entry.getValue();
-            String storeName = "Unknown Store";
-
-            Optional<Store> storeOpt = storeRepository.findByStoreCode(storeCode);
-            if (storeOpt.isPresent()) {
-                storeName = storeOpt.get().getStoreName();
-            }
-
-            report.add(new StoreSalesDTO(storeCode, storeName, totalSales));
-        }
-
-        return report;
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT ds.store_code, ISNULL(MAX(s.store_name), 'Unknown Store') AS store_name, ");
+        sql.append("  SUM(ds.amount) AS total_sales ");
+        sql.append("FROM daily_sales_summary ds ");
+        sql.append("LEFT JOIN store s ON s.store_code = ds.store_code ");
+        sql.append("WHERE ds.line_type = 'INVOICE' AND ds.business_dt BETWEEN ? AND ? ");
+        sql.append("GROUP BY ds.store_code ");
+        sql.append("ORDER BY ds.store_code");
+
+        return jdbcTemplate.query(sql.toString(),
+                (rs, rowNum) -> new StoreSalesDTO(rs.getString("store_code"), rs.getString("store_name"), rs.getDouble("total_sales")),
+                Date.valueOf(startDate), Date.valueOf(endDate));
     }
 
     public List<CategorySalesDTO> getCategoryWiseSales(LocalDate startDate, LocalDate endDate) {
-        List<String> dateRange = new ArrayList<>();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
-
-        LocalDate current = startDate;
-        while (!current.isAfter(endDate)) {
-            dateRange.add(current.format(formatter));
-            current = current.plusDays(1);
-        }
-
-        // 1. Get Transactions for the date range
-        List<TranHead> transactions = tranHeadRepository.findByInvoiceDateIn(dateRange);
-        List<String> invoiceNos = transactions.stream()
-                .map(TranHead::getInvoiceNo)
-                .collect(Collectors.toList());
-
-        if (invoiceNos.isEmpty()) {
-            return new ArrayList<>();
-        }
-
-        // 2. Get Transaction Items
-        List<TranItem> tranItems = tranItemRepository.findByInvoiceNoIn(invoiceNos);
-
-        // 3. Prepare caches for Item -> Category Code and Category Code -> Category Name
-        Map<String, String> itemToCategoryMap = itemRepository.findAll().stream()
-                .collect(Collectors.toMap(Item::getItemCode, Item::getCategoryCode, (v1, v2) -> v1));
-        
-        Map<String, String> categoryToNameMap = categoryRepository.findAll().stream()
-                .collect(Collectors.toMap(Category::getCode, Category::getName, (v1, v2) -> v1));
-
-        // 4. Aggregate Sales by Category
-        Map<String, Double> salesByCategory = new HashMap<>();
-
-        for (TranItem item : tranItems) {
-            String itemCode = item.getItemCode();
-            String categoryCode = itemToCategoryMap.getOrDefault(itemCode, "UNKNOWN");
-            String categoryName = categoryToNameMap.getOrDefault(categoryCode, "Unknown Category");
-            
-            salesByCategory.put(categoryName, salesByCategory.getOrDefault(categoryName, 0.0) + item.getAmount());
-        }
-
-        // 5. Convert to DTO
-        List<CategorySalesDTO> report = new ArrayList<>();
-        for (Map.Entry<String, Double> entry : salesByCategory.entrySet()) {
-            report.add(new CategorySalesDTO(null, entry.getKey(), entry.getValue()));
-        }
-
-        return report;
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT c.code AS category_code, ISNULL(c.name, 'Unknown Category') AS category_name, ");
+        sql.append("  SUM(ds.amount) AS total_sales ");
+        sql.append("FROM daily_sales_summary ds ");
+        sql.append("LEFT JOIN category c ON c.code = ds.line_code ");
+        sql.append("WHERE ds.line_type = 'CATEGORY' AND ds.business_dt BETWEEN ? AND ? ");
+        sql.append("GROUP BY c.code, c.name ");
+        sql.append("ORDER BY category_name");
+
+        return jdbcTemplate.query(sql.toString(),
+                (rs, rowNum) -> new CategorySalesDTO(rs.getString("category_code"), rs.getString("category_name"), rs.getDouble("total_sales")),
+                Date.valueOf(startDate), Date.valueOf(endDate));
     }
 }
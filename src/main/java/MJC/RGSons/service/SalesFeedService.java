@@ -0,0 +1,258 @@
+package MJC.RGSons.service;
+
+import MJC.RGSons.dto.SalesTransactionDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incremental SalesData feed for the Tally import.
+ *
+ * Only SUBMITTED invoices that have not been acknowledged (tran_head.exported_at IS NULL)
+ * are served, in id order, one page at a time. Each page comes with a continuation token;
+ * posting that token to the ack endpoint marks exactly the invoices of that page as exported
+ * so they are never resent. An invoice re-saved after it was served is not acknowledged and
+ * goes out again with the next sync.
+ *
+ * Invoices submitted before the feed existed were already imported in full. On the first
+ * start the feed marks them all exported once ({@link #cutover}), recorded in
+ * sales_feed_cutover, so Tally is not sent the whole history again. Set
+ * {@code sales.feed.mark-existing-exported=false} before that first start to have them sent.
+ *
+ * Every invoice is sent with a stable voucher guid. Acknowledging stores it in
+ * tran_head.export_guid, and re-saving a submitted invoice clears exported_at but keeps the
+ * guid, so the corrected invoice is served again with action "Alter" instead of "Create".
+ */
+@Service
+public class SalesFeedService {
+
+    private static final Logger log = LoggerFactory.getLogger(SalesFeedService.class);
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    // Guid a voucher is sent under until one has been acknowledged
+    private static final String GUID_SQL = "'RGSONS-SALE-' + CAST(th.id AS VARCHAR(20))";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${sales.feed.mark-existing-exported:true}")
+    private boolean markExistingExported;
+
+    /**
+     * Marks every SUBMITTED invoice not yet acknowledged as exported, under the guid it would
+     * have been sent with, the first time the application starts with the feed. Later starts
+     * find the sales_feed_cutover row and leave the feed alone.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void cutover() {
+        jdbcTemplate.execute("IF OBJECT_ID('sales_feed_cutover', 'U') IS NULL "
+                + "CREATE TABLE sales_feed_cutover (id INT NOT NULL PRIMARY KEY, invoices INT NOT NULL, cutover_at DATETIME NOT NULL)");
+
+        Integer done = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM sales_feed_cutover WITH (UPDLOCK, HOLDLOCK)", Integer.class);
+        if (done != null && done > 0) {
+            return;
+        }
+        int marked = 0;
+        if (markExistingExported) {
+            marked = jdbcTemplate.update(
+                    "UPDATE th SET exported_at = GETDATE(), export_guid = ISNULL(th.export_guid, " + GUID_SQL + ") "
+                            + "FROM tran_head th WHERE status = 'SUBMITTED' AND exported_at IS NULL");
+        }
+        jdbcTemplate.update("INSERT INTO sales_feed_cutover (id, invoices, cutover_at) VALUES (1, ?, GETDATE())", marked);
+        log.info("Sales feed cutover: {} existing invoices marked as exported", marked);
+    }
+
+    public Map<String, Object> getPage(long since, int pageSize) {
+        int size = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+        long servedAt = System.currentTimeMillis();
+
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT TOP (?) th.id, th.invoice_no, th.invoice_date, th.party_code, p.name AS party_name, ");
+        sql.append("  th.sale_amount, th.total_amount, th.tender_type, th.store_code, s.store_name, s.Sale_Led, ");
+        sql.append("  th.User_name, th.other_sale, th.total_expenses, th.total_tender, ");
+        sql.append("  ISNULL(th.export_guid, ").append(GUID_SQL).append(") AS guid, ");
+        sql.append("  CASE WHEN th.export_guid IS NULL THEN 'Create' ELSE 'Alter' END AS voucher_action ");
+        sql.append("FROM tran_head th ");
+        sql.append("LEFT JOIN party p ON p.code = th.party_code ");
+        sql.append("LEFT JOIN store s ON s.store_code = th.store_code ");
+        sql.append("WHERE th.id > ? AND th.status = 'SUBMITTED' AND th.exported_at IS NULL ");
+        sql.append("ORDER BY th.id");
+
+        List<Long> ids = new ArrayList<>();
+        Map<Long, SalesTransactionDTO> byId = new LinkedHashMap<>();
+        jdbcTemplate.query(sql.toString(), rs -> {
+            SalesTransactionDTO dto = new SalesTransactionDTO();
+            dto.setInvoiceNo(rs.getString("invoice_no"));
+            dto.setInvoiceDate(rs.getString("invoice_date"));
+            dto.setPartyCode(rs.getString("party_code"));
+            dto.setPartyName(nvl(rs.getString("party_name")));
+            dto.setSaleAmount(getDouble(rs, "sale_amount"));
+            dto.setTotalAmount(getDouble(rs, "total_amount"));
+            dto.setTenderType(rs.getString("tender_type"));
+            dto.setStoreCode(rs.getString("store_code"));
+            dto.setStoreName(rs.getString("store_name"));
+            dto.setSaleLed(rs.getString("Sale_Led"));
+            dto.setUserId(rs.getString("User_name"));
+            dto.setOtherSale(getDouble(rs, "other_sale"));
+            dto.setTotalExpenses(getDouble(rs, "total_expenses"));
+            dto.setTotalTender(getDouble(rs, "total_tender"));
+            dto.setOtherSaleDetails(new ArrayList<>());
+            dto.setExpenseDetails(new ArrayList<>());
+            dto.setTenderDetails(new ArrayList<>());
+            dto.setItems(new ArrayList<>());
+            dto.setGuid(rs.getString("guid"));
+            dto.setAction(rs.getString("voucher_action"));
+            long id = rs.getLong("id");
+            ids.add(id);
+            byId.put(id, dto);
+        }, size, since);
+
+        if (!ids.isEmpty()) {
+            attachItems(byId);
+            attachLedgers(byId, ids);
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("Invoices", new ArrayList<>(byId.values()));
+        if (ids.isEmpty()) {
+            response.put("nextSince", since);
+            response.put("hasMore", false);
+            response.put("continuationToken", "");
+        } else {
+            long lastId = ids.get(ids.size() - 1);
+            response.put("nextSince", lastId);
+            response.put("hasMore", ids.size() == size);
+            response.put("continuationToken", ids.get(0) + "-" + lastId + "-" + servedAt);
+        }
+        return response;
+    }
+
+    /**
+     * Marks the invoices of a served page as exported. Rows re-saved after the page was served
+     * (updated_at later than the token's timestamp) are left pending.
+     *
+     * @return number of invoices acknowledged
+     */
+    @Transactional
+    public int acknowledge(String continuationToken) {
+        if (continuationToken == null || continuationToken.isEmpty()) {
+            return 0;
+        }
+        String[] parts = continuationToken.split("-");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Invalid continuation token: " + continuationToken);
+        }
+        long firstId;
+        long lastId;
+        long servedAt;
+        try {
+            firstId = Long.parseLong(parts[0]);
+            lastId = Long.parseLong(parts[1]);
+            servedAt = Long.parseLong(parts[2]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid continuation token: " + continuationToken);
+        }
+
+        return jdbcTemplate.update(
+                "UPDATE th SET exported_at = GETDATE(), export_guid = ISNULL(th.export_guid, " + GUID_SQL + ") "
+                        + "FROM tran_head th "
+                        + "WHERE id BETWEEN ? AND ? AND status = 'SUBMITTED' AND exported_at IS NULL "
+                        + "AND (updated_at IS NULL OR updated_at <= ?)",
+                firstId, lastId, new Timestamp(servedAt));
+    }
+
+    @Transactional
+    public int acknowledgeInvoices(List<String> invoiceNos) {
+        int count = 0;
+        for (int from = 0; from < invoiceNos.size(); from += 1000) {
+            List<String> chunk = invoiceNos.subList(from, Math.min(from + 1000, invoiceNos.size()));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            count += jdbcTemplate.update(
+                    "UPDATE th SET exported_at = GETDATE(), export_guid = ISNULL(th.export_guid, " + GUID_SQL + ") "
+                            + "FROM tran_head th WHERE status = 'SUBMITTED' AND exported_at IS NULL "
+                            + "AND invoice_no IN (" + placeholders + ")",
+                    chunk.toArray());
+        }
+        return count;
+    }
+
+    private void attachItems(Map<Long, SalesTransactionDTO> byId) {
+        Map<String, SalesTransactionDTO> byInvoice = new HashMap<>();
+        byId.values().forEach(dto -> byInvoice.put(dto.getInvoiceNo(), dto));
+        List<String> invoiceNos = new ArrayList<>(byInvoice.keySet());
+
+        String sql = "SELECT ti.invoice_no, ti.item_code, i.item_name, ti.size_code, sz.name AS size_name, "
+                + "ti.mrp, ti.price, ti.quantity, ti.amount "
+                + "FROM tran_item ti "
+                + "LEFT JOIN items i ON i.item_code = ti.item_code "
+                + "LEFT JOIN size sz ON sz.code = ti.size_code "
+                + "WHERE ti.invoice_no IN (" + String.join(", ", Collections.nCopies(invoiceNos.size(), "?")) + ") "
+                + "ORDER BY ti.id";
+
+        jdbcTemplate.query(sql, rs -> {
+            SalesTransactionDTO dto = byInvoice.get(rs.getString("invoice_no"));
+            SalesTransactionDTO.SalesItemDTO itemDto = new SalesTransactionDTO.SalesItemDTO();
+            itemDto.setItemCode(rs.getString("item_code"));
+            itemDto.setItemName(nvl(rs.getString("item_name")));
+            itemDto.setSizeCode(rs.getString("size_code"));
+            itemDto.setSizeName(nvl(rs.getString("size_name")));
+            itemDto.setMrp(getDouble(rs, "mrp"));
+            itemDto.setPrice(getDouble(rs, "price"));
+            int qty = rs.getInt("quantity");
+            itemDto.setQuantity(rs.wasNull() ? null : qty);
+            itemDto.setAmount(getDouble(rs, "amount"));
+            dto.getItems().add(itemDto);
+        }, invoiceNos.toArray());
+    }
+
+    private void attachLedgers(Map<Long, SalesTransactionDTO> byId, List<Long> ids) {
+        String sql = "SELECT tl.tran_id, tl.ledger_code, l.name AS ledger_name, tl.amount, tl.type "
+                + "FROM tran_ledgers tl "
+                + "LEFT JOIN ledgers l ON l.code = tl.ledger_code "
+                + "WHERE tl.tran_id IN (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ") "
+                + "ORDER BY tl.id";
+
+        jdbcTemplate.query(sql, rs -> {
+            SalesTransactionDTO dto = byId.get(rs.getLong("tran_id"));
+            SalesTransactionDTO.LedgerEntryDTO entry = new SalesTransactionDTO.LedgerEntryDTO();
+            entry.setLedgerCode(rs.getString("ledger_code"));
+            entry.setLedgerName(nvl(rs.getString("ledger_name")));
+            entry.setAmount(getDouble(rs, "amount"));
+            String type = rs.getString("type");
+            if ("Other Sale".equals(type)) {
+                dto.getOtherSaleDetails().add(entry);
+            } else if ("Expense".equals(type)) {
+                dto.getExpenseDetails().add(entry);
+            } else if ("Tender".equals(type)) {
+                dto.getTenderDetails().add(entry);
+            }
+        }, ids.toArray());
+    }
+
+    private static Double getDouble(java.sql.ResultSet rs, String column) throws java.sql.SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static String nvl(String value) {
+        return value != null ? value : "";
+    }
+}
@@ -9,24 +9,25 @@ import MJC.RGSons.model.TranItem;
 import MJC.RGSons.model.TranLedger;
 import MJC.RGSons.model.Ledger;
 import MJC.RGSons.model.Size;
-import MJC.RGSons.model.InventoryMaster;
 import MJC.RGSons.model.DSR;
 import MJC.RGSons.repository.DSRRepository;
 import MJC.RGSons.repository.InventoryMasterRepository;
 import MJC.RGSons.repository.ItemRepository;
 import MJC.RGSons.repository.PartyRepository;
-import MJC.RGSons.repository.StoreRepository;
 import MJC.RGSons.repository.TranHeadRepository;
 import MJC.RGSons.repository.TranItemRepository;
 import MJC.RGSons.repository.TranLedgerRepository;
-import MJC.RGSons.repository.LedgerRepository;
-import MJC.RGSons.repository.SizeRepository;
+import MJC.RGSons.util.BusinessDates;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -49,32 +50,98 @@ public class SalesService {
     private TranLedgerRepository tranLedgerRepository;
 
     @Autowired
-    private LedgerRepository ledgerRepository;
+    private InventoryMasterRepository inventoryMasterRepository;
 
     @Autowired
-    private SizeRepository sizeRepository;
+    private DSRRepository dsrRepository;
 
     @Autowired
-    private InventoryMasterRepository inventoryMasterRepository;
+    private VoucherService voucherService;
 
     @Autowired
-    private StoreRepository storeRepository;
+    private JdbcTemplate jdbcTemplate;
 
     @Autowired
-    private DSRRepository dsrRepository;
+    private StockMovementService stockMovementService;
 
     @Autowired
-    private VoucherService voucherService;
+    private DailySalesSummaryService dailySalesSummaryService;
+
+    @Autowired
+    private MasterDataRegistry masterDataRegistry;
 
     public List<SalesTransactionDTO> getDrafts(String storeCode) {
-        List<TranHead> heads = tranHeadRepository.findByStoreCodeAndStatus(storeCode, "DRAFT");
-        List<SalesTransactionDTO> drafts = new ArrayList<>();
+        return getDrafts(storeCode, false);
+    }
 
+    /**
+     * Draft list for a store built from a fixed number of queries: heads, parties by code IN (...),
+     * and (unless summary) all lines by invoiceNo IN (...) with item/size names joined in.
+     * In summary mode the items are left out; the till loads them with {@link #getDraft(String, String)}
+     * when a draft is opened.
+     */
+    public List<SalesTransactionDTO> getDrafts(String storeCode, boolean summary) {
+        return buildDrafts(tranHeadRepository.findByStoreCodeAndStatus(storeCode, "DRAFT"), summary);
+    }
+
+    /**
+     * A single draft with its items; null unless the invoice is still a DRAFT (and, when
+     * {@code storeCode} is given, belongs to that store), so a submitted invoice can never be
+     * opened in the draft editor.
+     */
+    public SalesTransactionDTO getDraft(String invoiceNo, String storeCode) {
+        Optional<TranHead> head = tranHeadRepository.findByInvoiceNo(invoiceNo)
+                .filter(h -> "DRAFT".equals(h.getStatus()))
+                .filter(h -> storeCode == null || storeCode.equals(h.getStoreCode()));
+        if (head.isEmpty()) {
+            return null;
+        }
+        return buildDrafts(java.util.Collections.singletonList(head.get()), false).get(0);
+    }
+
+    private List<SalesTransactionDTO> buildDrafts(List<TranHead> heads, boolean summary) {
+        if (heads.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        java.util.Set<String> partyCodes = heads.stream()
+                .map(TranHead::getPartyCode)
+                .filter(java.util.Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<String, String> partyNames = partyCodes.isEmpty() ? java.util.Collections.emptyMap()
+                : partyRepository.findByCodeIn(partyCodes).stream()
+                        .filter(p -> p.getName() != null)
+                        .collect(Collectors.toMap(Party::getCode, Party::getName, (a, b) -> a));
+
+        Map<String, List<SalesTransactionDTO.SalesItemDTO>> itemsByInvoice = new java.util.HashMap<>();
+        if (!summary) {
+            List<String> invoiceNos = heads.stream().map(TranHead::getInvoiceNo).collect(Collectors.toList());
+            // Stay well under SQL Server's 2100 parameter limit
+            for (int from = 0; from < invoiceNos.size(); from += 1000) {
+                List<String> chunk = invoiceNos.subList(from, Math.min(from + 1000, invoiceNos.size()));
+                for (Object[] row : tranItemRepository.findWithNamesByInvoiceNoIn(chunk)) {
+                    TranItem item = (TranItem) row[0];
+                    SalesTransactionDTO.SalesItemDTO itemDTO = new SalesTransactionDTO.SalesItemDTO();
+                    itemDTO.setItemCode(item.getItemCode());
+                    itemDTO.setSizeCode(item.getSizeCode());
+                    itemDTO.setMrp(item.getMrp());
+                    itemDTO.setPrice(item.getPrice());
+                    itemDTO.setQuantity(item.getQuantity());
+                    itemDTO.setAmount(item.getAmount());
+                    itemDTO.setItemName((String) row[1]);
+                    itemDTO.setSizeName((String) row[2]);
+                    itemsByInvoice.computeIfAbsent(item.getInvoiceNo(), k -> new ArrayList<>()).add(itemDTO);
+                }
+            }
+        }
+
+        List<SalesTransactionDTO> drafts = new ArrayList<>(heads.size());
         for (TranHead head : heads) {
             SalesTransactionDTO dto = new SalesTransactionDTO();
             dto.setInvoiceNo(head.getInvoiceNo());
             dto.setInvoiceDate(head.getInvoiceDate());
             dto.setPartyCode(head.getPartyCode());
+            dto.setPartyName(partyNames.get(head.getPartyCode()));
             dto.setSaleAmount(head.getSaleAmount());
             dto.setTotalAmount(head.getTotalAmount());
             dto.setTenderType(head.getTenderType());
@@ -85,49 +152,17 @@ public class SalesService {
             dto.setTotalExpenses(head.getTotalExpenses());
             dto.setTotalTender(head.getTotalTender());
 
-            // Get Party Name
-            Party party = partyRepository.findByCode(head.getPartyCode());
-            if (party != null) {
-                dto.setPartyName(party.getName());
+            if (!summary) {
+                dto.setItems(itemsByInvoice.getOrDefault(head.getInvoiceNo(), new ArrayList<>()));
             }
 
-            // Get Items
-            List<TranItem> items = tranItemRepository.findByInvoiceNo(head.getInvoiceNo());
-            List<SalesTransactionDTO.SalesItemDTO> itemDTOs = new ArrayList<>();
-            for (TranItem item : items) {
-                SalesTransactionDTO.SalesItemDTO itemDTO = new SalesTransactionDTO.SalesItemDTO();
-                itemDTO.setItemCode(item.getItemCode());
-                itemDTO.setSizeCode(item.getSizeCode());
-                itemDTO.setMrp(item.getMrp());
-                itemDTO.setPrice(item.getPrice());
-                itemDTO.setQuantity(item.getQuantity());
-                itemDTO.setAmount(item.getAmount());
-                
-                // Fetch Item Name & Size Name
-                Optional<Item> itemObj = itemRepository.findByItemCode(item.getItemCode());
-                itemObj.ifPresent(i -> itemDTO.setItemName(i.getItemName()));
-                
-                Optional<Size> sizeObj = sizeRepository.findByCode(item.getSizeCode());
-                sizeObj.ifPresent(s -> itemDTO.setSizeName(s.getName()));
-                
-                itemDTOs.add(itemDTO);
-            }
-            dto.setItems(itemDTOs);
-
-            // Get Ledger Details (Other Sale, Expense, Tender)
-            // Note: For drafts, we might not have saved ledger details if they were skipped.
-            // But if we decide to save them even for drafts (without posting to actual ledgers), we can fetch them here.
-            // Currently, saveTransaction skips saving ledger details for drafts.
-            // So we might need to rely on TranHead fields (otherSale, totalExpenses, totalTender) 
-            // and maybe we need to store the breakdown somewhere if we want to restore it fully.
-            // However, the current requirement is just "draft list button".
-            // If the user wants to EDIT a draft, we might need those details.
-            // For now, let's just return what we have.
-            
+            // Ledger breakdowns are not saved for drafts (see saveTransaction), so the
+            // TranHead totals (otherSale, totalExpenses, totalTender) are all we have.
             drafts.add(dto);
         }
         return drafts;
     }
+
     @jakarta.annotation.PostConstruct
     public void initParties() {
         if (partyRepository.count() == 0) {
@@ -146,6 +181,7 @@ public class SalesService {
             p2.setPhone("8888888888");
             p2.setStatus(true);
             partyRepository.save(p2);
+            masterDataRegistry.changed(MasterDataRegistry.MasterType.PARTY);
         }
     }
 
@@ -166,15 +202,18 @@ public class SalesService {
     }
 
     public List<TranItem> getTranItemsByDate(String date) {
-        return tranItemRepository.findByInvoiceDate(date);
+        java.time.LocalDate day = BusinessDates.require(date);
+        return tranItemRepository.findByInvoiceDay(day, BusinessDates.storedForms(day));
     }
 
     public List<TranItem> getTranItemsByStoreAndDate(String date, String storeCode) {
-        return tranItemRepository.findByStoreCodeAndInvoiceDate(storeCode, date);
+        java.time.LocalDate day = BusinessDates.require(date);
+        return tranItemRepository.findByStoreCodeAndInvoiceDay(storeCode, day, BusinessDates.storedForms(day));
     }
 
     public List<TranLedger> getTranLedgersByStoreAndDate(String date, String storeCode) {
-        return tranLedgerRepository.findByStoreCodeAndInvoiceDate(storeCode, date);
+        java.time.LocalDate day = BusinessDates.require(date);
+        return tranLedgerRepository.findByStoreCodeAndInvoiceDay(storeCode, day, BusinessDates.storedForms(day));
     }
 
     @Transactional
@@ -190,8 +229,24 @@ public class SalesService {
         Optional<TranHead> existingHeadOpt = isNew ? Optional.empty() : tranHeadRepository.findByInvoiceNo(invoiceNo);
         TranHead head;
 
+        // Before any tran_* write: keeps this sale apart from a rollup rebuild of its store(s)
+        java.util.TreeSet<String> rollupStores = new java.util.TreeSet<>();
+        if (!"DRAFT".equalsIgnoreCase(status) && dto.getStoreCode() != null) {
+            rollupStores.add(dto.getStoreCode());
+        }
+        existingHeadOpt.filter(h -> !"DRAFT".equalsIgnoreCase(h.getStatus()) && h.getStoreCode() != null)
+                .ifPresent(h -> rollupStores.add(h.getStoreCode()));
+        rollupStores.forEach(dailySalesSummaryService::lockStore);
+
         if (existingHeadOpt.isPresent()) {
             head = existingHeadOpt.get();
+
+            if (!"DRAFT".equalsIgnoreCase(head.getStatus())) {
+                // Re-saving a submitted invoice: take the old version out of the daily rollup
+                // while its lines are still there, and drop its ledgers so they are not doubled
+                dailySalesSummaryService.applyInvoice(head.getId(), -1);
+                jdbcTemplate.update("DELETE FROM tran_ledgers WHERE tran_id = ?", head.getId());
+            }
             
             // Converting Draft -> Final
             if ("DRAFT".equalsIgnoreCase(head.getStatus()) && "SUBMITTED".equalsIgnoreCase(status)) {
@@ -245,15 +300,24 @@ public class SalesService {
         head.setOtherSale(dto.getOtherSale());
         head.setTotalExpenses(dto.getTotalExpenses());
         head.setTotalTender(dto.getTotalTender());
+        head.setUpdatedAt(java.time.LocalDateTime.now());
+        if (!"DRAFT".equalsIgnoreCase(status)) {
+            // Pending for the Tally feed again; a voucher it already took is sent as an alteration
+            head.setExportedAt(null);
+        }
         
-        tranHeadRepository.save(head);
+        // Flushed now so the JDBC statements below (the rollup MERGE in particular) see the new
+        // status, amounts and invoice_dt, which the entity only sets when it is flushed
+        tranHeadRepository.saveAndFlush(head);
 
-        // Save Items
+        // Save Items (single JDBC batch instead of one INSERT per line)
+        String invoiceDate = formatDate(dto.getInvoiceDate());
+        List<TranItem> tranItems = new ArrayList<>();
         if (dto.getItems() != null) {
             for (SalesTransactionDTO.SalesItemDTO itemDto : dto.getItems()) {
                 TranItem item = new TranItem();
                 item.setInvoiceNo(dto.getInvoiceNo());
-                item.setInvoiceDate(formatDate(dto.getInvoiceDate()));
+                item.setInvoiceDate(invoiceDate);
                 item.setItemCode(itemDto.getItemCode());
                 item.setSizeCode(itemDto.getSizeCode());
                 item.setMrp(itemDto.getMrp());
@@ -261,20 +325,27 @@ public class SalesService {
                 item.setQuantity(itemDto.getQuantity());
                 item.setAmount(itemDto.getAmount());
                 item.setStoreCode(dto.getStoreCode());
-                tranItemRepository.save(item);
-
-                // Update Inventory ONLY if status is NOT DRAFT
-                if (!"DRAFT".equalsIgnoreCase(status)) {
-                    updateInventory(item.getItemCode(), item.getSizeCode(), item.getQuantity(), dto.getStoreCode());
-                }
+                tranItems.add(item);
             }
         }
+        batchInsertTranItems(tranItems);
 
-        // Save Ledger Details ONLY if status is NOT DRAFT
+        // Update Inventory and save Ledger Details ONLY if status is NOT DRAFT
         if (!"DRAFT".equalsIgnoreCase(status)) {
-            saveLedgerDetails(head.getId(), dto.getOtherSaleDetails(), "Other Sale", dto);
-            saveLedgerDetails(head.getId(), dto.getExpenseDetails(), "Expense", dto);
-            saveLedgerDetails(head.getId(), dto.getTenderDetails(), "Tender", dto);
+            List<StockMovementService.Delta> deltas = new ArrayList<>(tranItems.size());
+            for (TranItem item : tranItems) {
+                deltas.add(new StockMovementService.Delta(item.getItemCode(), item.getSizeCode(), item.getQuantity()));
+            }
+            stockMovementService.apply(dto.getStoreCode(), StockMovementService.MovementType.OUTWARD, deltas,
+                    new StockMovementService.Source(StockMovementService.SourceType.SALE, dto.getInvoiceNo(), invoiceDate));
+
+            List<TranLedger> ledgers = new ArrayList<>();
+            collectLedgerDetails(ledgers, head.getId(), dto.getOtherSaleDetails(), "Other Sale", dto);
+            collectLedgerDetails(ledgers, head.getId(), dto.getExpenseDetails(), "Expense", dto);
+            collectLedgerDetails(ledgers, head.getId(), dto.getTenderDetails(), "Tender", dto);
+            batchInsertTranLedgers(ledgers);
+
+            dailySalesSummaryService.applyInvoice(head.getId(), 1);
         }
 
         return dto.getInvoiceNo();
@@ -308,40 +379,47 @@ public class SalesService {
         }
     }
 
-    private void updateInventory(String itemCode, String sizeCode, int quantity, String storeCode) {
-        Optional<InventoryMaster> invOpt = inventoryMasterRepository.findByStoreCodeAndItemCodeAndSizeCode(
-                storeCode, itemCode, sizeCode);
-
-        if (invOpt.isPresent()) {
-            InventoryMaster inv = invOpt.get();
-            int currentOutward = inv.getOutward() != null ? inv.getOutward() : 0;
-            inv.setOutward(currentOutward + quantity);
-
-            // Recalculate Closing: Closing = Opening + Purchase + Inward - Outward
-            int opening = inv.getOpening() != null ? inv.getOpening() : 0;
-            int purchase = inv.getPurchase() != null ? inv.getPurchase() : 0;
-            int inward = inv.getInward() != null ? inv.getInward() : 0;
-            int outward = inv.getOutward();
-            inv.setClosing(opening + purchase + inward - outward);
+    private void batchInsertTranItems(List<TranItem> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        String sql = "INSERT INTO tran_item (invoice_no, invoice_date, invoice_dt, item_code, size_code, mrp, price, quantity, amount, store_code, created_at, updated_at) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        int[] argTypes = {Types.VARCHAR, Types.VARCHAR, Types.DATE, Types.VARCHAR, Types.VARCHAR, Types.DOUBLE, Types.DOUBLE,
+                Types.INTEGER, Types.DOUBLE, Types.VARCHAR, Types.TIMESTAMP, Types.TIMESTAMP};
+
+        List<Object[]> batchArgs = new ArrayList<>(items.size());
+        for (TranItem item : items) {
+            batchArgs.add(new Object[] {
+                    item.getInvoiceNo(), item.getInvoiceDate(), BusinessDates.toSqlDate(item.getInvoiceDate()), item.getItemCode(), item.getSizeCode(),
+                    item.getMrp(), item.getPrice(), item.getQuantity(), item.getAmount(), item.getStoreCode(),
+                    Timestamp.valueOf(item.getCreatedAt()), Timestamp.valueOf(item.getUpdatedAt())
+            });
+        }
+        jdbcTemplate.batchUpdate(sql, batchArgs, argTypes);
+    }
 
-            inventoryMasterRepository.save(inv);
-        } else {
-            // Handle case where inventory record doesn't exist?
-            // For now, creating a new record with negative closing if allowed, or just tracking outward
-            InventoryMaster inv = new InventoryMaster();
-            inv.setStoreCode(storeCode);
-            inv.setItemCode(itemCode);
-            inv.setSizeCode(sizeCode);
-            inv.setOpening(0);
-            inv.setPurchase(0);
-            inv.setInward(0);
-            inv.setOutward(quantity);
-            inv.setClosing(0 + 0 + 0 - quantity);
-            inventoryMasterRepository.save(inv);
+    private void batchInsertTranLedgers(List<TranLedger> ledgers) {
+        if (ledgers.isEmpty()) {
+            return;
         }
+        String sql = "INSERT INTO tran_ledgers (tran_id, invoice_no, invoice_date, invoice_dt, store_code, ledger_code, amount, type, created_at, updated_at) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        int[] argTypes = {Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.DATE, Types.VARCHAR, Types.VARCHAR, Types.DOUBLE,
+                Types.VARCHAR, Types.TIMESTAMP, Types.TIMESTAMP};
+
+        List<Object[]> batchArgs = new ArrayList<>(ledgers.size());
+        for (TranLedger ledger : ledgers) {
+            batchArgs.add(new Object[] {
+                    ledger.getTranId(), ledger.getInvoiceNo(), ledger.getInvoiceDate(), BusinessDates.toSqlDate(ledger.getInvoiceDate()), ledger.getStoreCode(),
+                    ledger.getLedgerCode(), ledger.getAmount(), ledger.getType(),
+                    Timestamp.valueOf(ledger.getCreatedAt()), Timestamp.valueOf(ledger.getUpdatedAt())
+            });
+        }
+        jdbcTemplate.batchUpdate(sql, batchArgs, argTypes);
     }
 
-    private void saveLedgerDetails(Integer tranId, List<SalesTransactionDTO.LedgerEntryDTO> details, String type, SalesTransactionDTO headDto) {
+    private void collectLedgerDetails(List<TranLedger> target, Integer tranId, List<SalesTransactionDTO.LedgerEntryDTO> details, String type, SalesTransactionDTO headDto) {
         if (details != null) {
             for (SalesTransactionDTO.LedgerEntryDTO detail : details) {
                 if (detail.getAmount() != null && detail.getAmount() != 0) {
@@ -353,7 +431,7 @@ public class SalesService {
                     ledger.setLedgerCode(detail.getLedgerCode());
                     ledger.setAmount(detail.getAmount());
                     ledger.setType(type);
-                    tranLedgerRepository.save(ledger);
+                    target.add(ledger);
                 }
             }
         }
@@ -392,22 +470,12 @@ public class SalesService {
             .collect(java.util.stream.Collectors.toList());
         List<TranItem> items = tranItemRepository.findAll();
         
-        // Fetch all lookup data
-        java.util.Map<String, String> partyNames = partyRepository.findAll().stream()
-            .collect(Collectors.toMap(Party::getCode, Party::getName, (a, b) -> a));
-            
-        java.util.Map<String, String> itemNames = itemRepository.findAll().stream()
-            .collect(Collectors.toMap(Item::getItemCode, Item::getItemName, (a, b) -> a));
-            
-        java.util.Map<String, String> ledgerNames = ledgerRepository.findAll().stream()
-            .collect(Collectors.toMap(Ledger::getCode, Ledger::getName, (a, b) -> a));
-
-        java.util.Map<String, String> sizeNames = sizeRepository.findAll().stream()
-            .filter(s -> s.getCode() != null && s.getName() != null)
-            .collect(Collectors.toMap(Size::getCode, Size::getName, (a, b) -> a));
-
-        java.util.Map<String, Store> storeMap = storeRepository.findAll().stream()
-            .collect(Collectors.toMap(Store::getStoreCode, store -> store, (a, b) -> a));
+        // Lookup data comes from the master data registry, one snapshot per table for the whole listing
+        MasterDataRegistry.Snapshot<Party> parties = masterDataRegistry.parties();
+        MasterDataRegistry.Snapshot<Item> itemMaster = masterDataRegistry.items();
+        MasterDataRegistry.Snapshot<Ledger> ledgerMaster = masterDataRegistry.ledgers();
+        MasterDataRegistry.Snapshot<Size> sizes = masterDataRegistry.sizes();
+        MasterDataRegistry.Snapshot<Store> stores = masterDataRegistry.stores();
         
         // Group items by invoice number
         java.util.Map<String, List<TranItem>> itemsMap = items.stream()
@@ -418,12 +486,13 @@ public class SalesService {
             dto.setInvoiceNo(head.getInvoiceNo());
             dto.setInvoiceDate(head.getInvoiceDate());
             dto.setPartyCode(head.getPartyCode());
-            dto.setPartyName(partyNames.getOrDefault(head.getPartyCode(), ""));
+            Party party = parties.get(head.getPartyCode());
+            dto.setPartyName(party != null ? party.getName() : "");
             dto.setSaleAmount(head.getSaleAmount());
             dto.setTotalAmount(head.getTotalAmount());
             dto.setTenderType(head.getTenderType());
             dto.setStoreCode(head.getStoreCode());
-            Store store = storeMap.get(head.getStoreCode());
+            Store store = stores.get(head.getStoreCode());
             if (store != null) {
                 dto.setStoreName(store.getStoreName());
                 dto.setSaleLed(store.getSaleLed());
@@ -437,17 +506,19 @@ public class SalesService {
             // Populate Ledger Details (Fetching separately for now, could be optimized)
             List<TranLedger> ledgers = tranLedgerRepository.findByTranId(head.getId());
             
-            dto.setOtherSaleDetails(mapToLedgerDTO(ledgers, "Other Sale", ledgerNames));
-            dto.setExpenseDetails(mapToLedgerDTO(ledgers, "Expense", ledgerNames));
-            dto.setTenderDetails(mapToLedgerDTO(ledgers, "Tender", ledgerNames));
+            dto.setOtherSaleDetails(mapToLedgerDTO(ledgers, "Other Sale", ledgerMaster));
+            dto.setExpenseDetails(mapToLedgerDTO(ledgers, "Expense", ledgerMaster));
+            dto.setTenderDetails(mapToLedgerDTO(ledgers, "Tender", ledgerMaster));
 
             List<TranItem> headItems = itemsMap.getOrDefault(head.getInvoiceNo(), java.util.Collections.emptyList());
             List<SalesTransactionDTO.SalesItemDTO> itemDtos = headItems.stream().map(item -> {
                 SalesTransactionDTO.SalesItemDTO itemDto = new SalesTransactionDTO.SalesItemDTO();
                 itemDto.setItemCode(item.getItemCode());
-                itemDto.setItemName(itemNames.getOrDefault(item.getItemCode(), ""));
+                Item master = itemMaster.get(item.getItemCode());
+                itemDto.setItemName(master != null && master.getItemName() != null ? master.getItemName() : "");
                 itemDto.setSizeCode(item.getSizeCode());
-                itemDto.setSizeName(sizeNames.getOrDefault(item.getSizeCode(), ""));
+                Size size = sizes.get(item.getSizeCode());
+                itemDto.setSizeName(size != null && size.getName() != null ? size.getName() : "");
                 itemDto.setMrp(item.getMrp());
                 itemDto.setPrice(item.getPrice());
                 itemDto.setQuantity(item.getQuantity());
@@ -489,13 +560,14 @@ public class SalesService {
         }).collect(Collectors.toList());
     }
 
-    private List<SalesTransactionDTO.LedgerEntryDTO> mapToLedgerDTO(List<TranLedger> ledgers, String type, java.util.Map<String, String> ledgerNames) {
+    private List<SalesTransactionDTO.LedgerEntryDTO> mapToLedgerDTO(List<TranLedger> ledgers, String type, MasterDataRegistry.Snapshot<Ledger> ledgerMaster) {
         return ledgers.stream()
                 .filter(l -> l.getType().equals(type))
                 .map(l -> {
                     SalesTransactionDTO.LedgerEntryDTO entry = new SalesTransactionDTO.LedgerEntryDTO();
                     entry.setLedgerCode(l.getLedgerCode());
-                    entry.setLedgerName(ledgerNames.getOrDefault(l.getLedgerCode(), ""));
+                    Ledger ledger = ledgerMaster.get(l.getLedgerCode());
+                    entry.setLedgerName(ledger != null && ledger.getName() != null ? ledger.getName() : "");
                     entry.setAmount(l.getAmount());
                     return entry;
                 })
@@ -1,40 +1,178 @@
 package MJC.RGSons.service;
 
-import MJC.RGSons.model.Sequence;
-import MJC.RGSons.repository.SequenceRepository;
-import org.springframework.beans.factory.annotation.Autowired;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.PersistenceContext;
-import jakarta.persistence.Query;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Pooled sequence allocator for master codes.
+ *
+ * Ranges are pre-fetched from the database (sp_sequence_get_range for the native Master_SEQ,
+ * an atomic UPDATE ... OUTPUT on database_sequences for the rest) and values are handed out
+ * with a lock-free counter per sequence name. Because every range is reserved atomically by
+ * the database, several app instances can share the same sequence without duplicates.
+ * Values of a range that is not used up before a restart are skipped.
+ *
+ * Ranges are reserved auto-committed on a connection of the service's own, outside the pool
+ * and the caller's transaction, so a caller holding a pooled connection never waits for a
+ * second one while the other callers of the sequence wait on its refill.
+ */
 @Service
 public class SequenceGeneratorService {
 
-    @Autowired
-    private SequenceRepository sequenceRepository;
+    private static final Logger log = LoggerFactory.getLogger(SequenceGeneratorService.class);
 
-    @PersistenceContext
-    private EntityManager entityManager;
+    private static final class Range {
+        private final AtomicLong next;
+        private final long last;
+
+        Range(long first, long last) {
+            this.next = new AtomicLong(first);
+            this.last = last;
+        }
+    }
+
+    private static final class Pool {
+        private final AtomicReference<Range> range = new AtomicReference<>(new Range(1, 0));
+        private final AtomicLong issued = new AtomicLong();
+        private final AtomicLong rangesFetched = new AtomicLong();
+        private final AtomicLong refillNanos = new AtomicLong();
+        private volatile long lastRefillAt;
+    }
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${spring.datasource.username:}")
+    private String username;
+
+    @Value("${spring.datasource.password:}")
+    private String password;
+
+    // Range reservations only; opened on first use, guarded by rangeConnectionLock
+    private SingleConnectionDataSource rangeConnection;
+    private JdbcTemplate rangeJdbcTemplate;
+    private final Object rangeConnectionLock = new Object();
+
+    @Value("${sequence.allocation.range-size:20}")
+    private int rangeSize;
+
+    private final Map<String, Pool> pools = new ConcurrentHashMap<>();
+
+    @PreDestroy
+    public void shutdown() {
+        synchronized (rangeConnectionLock) {
+            if (rangeConnection != null) {
+                rangeConnection.destroy();
+            }
+        }
+    }
+
+    public String generateSequence(String seqName) {
+        Pool pool = pools.computeIfAbsent(seqName, k -> new Pool());
+        while (true) {
+            Range current = pool.range.get();
+            long value = current.next.getAndIncrement();
+            if (value <= current.last) {
+                pool.issued.incrementAndGet();
+                return String.valueOf(value);
+            }
+            // Range used up: only one thread per sequence goes to the database, the rest retry on the new range
+            synchronized (pool) {
+                if (pool.range.get() == current) {
+                    long start = System.nanoTime();
+                    pool.range.set(fetchRange(seqName));
+                    pool.refillNanos.addAndGet(System.nanoTime() - start);
+                    pool.rangesFetched.incrementAndGet();
+                    pool.lastRefillAt = System.currentTimeMillis();
+                }
+            }
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("rangeSize", rangeSize);
+        Map<String, Object> sequences = new LinkedHashMap<>();
+        pools.forEach((name, pool) -> {
+            Range current = pool.range.get();
+            long fetched = pool.rangesFetched.get();
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("issued", pool.issued.get());
+            m.put("rangesFetched", fetched);
+            m.put("remainingInRange", Math.max(0, current.last - current.next.get() + 1));
+            m.put("avgRefillMillis", fetched == 0 ? 0.0 : pool.refillNanos.get() / 1_000_000.0 / fetched);
+            m.put("lastRefillAt", pool.lastRefillAt);
+            sequences.put(name, m);
+        });
+        metrics.put("sequences", sequences);
+        return metrics;
+    }
+
+    // On the dedicated connection, auto-committed; reopened once if it has gone stale
+    private Range fetchRange(String seqName) {
+        synchronized (rangeConnectionLock) {
+            if (rangeConnection == null) {
+                rangeConnection = new SingleConnectionDataSource(url, username, password, true);
+                rangeConnection.setAutoCommit(true);
+                rangeJdbcTemplate = new JdbcTemplate(rangeConnection);
+            }
+            try {
+                return fetchRange(rangeJdbcTemplate, seqName);
+            } catch (RuntimeException e) {
+                log.warn("Sequence range connection failed, reopening: {}", e.getMessage());
+                rangeConnection.resetConnection();
+                return fetchRange(rangeJdbcTemplate, seqName);
+            }
+        }
+    }
+
+    private Range fetchRange(JdbcTemplate jdbcTemplate, String seqName) {
+        int size = Math.max(1, rangeSize);
 
-    @Transactional
-    public synchronized String generateSequence(String seqName) {
         // Use native SQL Sequence for Master_SEQ
         if ("Master_SEQ".equalsIgnoreCase(seqName)) {
-            Query query = entityManager.createNativeQuery("SELECT NEXT VALUE FOR dbo.Master_SEQ");
-            Object result = query.getSingleResult();
-            return String.valueOf(result);
+            Long first = jdbcTemplate.queryForObject(
+                    "SET NOCOUNT ON; DECLARE @first SQL_VARIANT; "
+                            + "EXEC sys.sp_sequence_get_range @sequence_name = N'dbo.Master_SEQ', @range_size = ?, @range_first_value = @first OUTPUT; "
+                            + "SELECT CAST(@first AS BIGINT);",
+                    Long.class, size);
+            return new Range(first, first + size - 1);
         }
 
         // Fallback to table-based sequence for others
-        Sequence sequence = sequenceRepository.findBySequenceName(seqName)
-                .orElse(new Sequence(seqName, 9999));
+        long high = reserveFromTable(jdbcTemplate, seqName, size);
+        return new Range(high - size + 1, high);
+    }
 
-        sequence.setSeq(sequence.getSeq() + 1);
-        sequenceRepository.save(sequence);
-        
-        return String.valueOf(sequence.getSeq());
+    private long reserveFromTable(JdbcTemplate jdbcTemplate, String seqName, int size) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            List<Long> high = jdbcTemplate.queryForList(
+                    "UPDATE database_sequences SET seq = seq + ? OUTPUT inserted.seq WHERE sequence_name = ?",
+                    Long.class, size, seqName);
+            if (!high.isEmpty()) {
+                return high.get(0);
+            }
+            try {
+                // New sequences start after 9999, as before
+                jdbcTemplate.update("INSERT INTO database_sequences (sequence_name, seq) VALUES (?, ?)", seqName, 9999L + size);
+                return 9999L + size;
+            } catch (DuplicateKeyException e) {
+                // Created by another instance in the meantime; increment it instead
+            }
+        }
+        throw new RuntimeException("Could not allocate sequence range for: " + seqName);
     }
 }
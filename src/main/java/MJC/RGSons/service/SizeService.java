@@ -16,6 +16,9 @@ public class SizeService {
     @Autowired
     private SizeRepository sizeRepository;
 
+    @Autowired
+    private MasterDataRegistry masterDataRegistry;
+
     @Autowired
     private PriceMasterRepository priceMasterRepository;
 
@@ -81,7 +84,9 @@ public class SizeService {
         size.setCreatedAt(LocalDateTime.now());
         size.setUpdateAt(LocalDateTime.now());
         
-        return sizeRepository.save(size);
+        Size saved = sizeRepository.save(size);
+        masterDataRegistry.changed(MasterDataRegistry.MasterType.SIZE);
+        return saved;
     }
     
     public Size updateSize(Integer id, Size sizeDetails) {
@@ -107,7 +112,9 @@ public class SizeService {
             }
             existingSize.setUpdateAt(LocalDateTime.now());
             
-            return sizeRepository.save(existingSize);
+            Size saved = sizeRepository.save(existingSize);
+            masterDataRegistry.changed(MasterDataRegistry.MasterType.SIZE);
+            return saved;
         } else {
             throw new RuntimeException("Size not found with id: " + id);
         }
@@ -125,15 +132,18 @@ public class SizeService {
                 size.setStatus(false);
                 size.setUpdateAt(LocalDateTime.now());
                 sizeRepository.save(size);
+                masterDataRegistry.changed(MasterDataRegistry.MasterType.SIZE);
             } else {
                 // Not used in Price Master -> Hard Delete
                 try {
                     sizeRepository.deleteById(id);
+                    masterDataRegistry.changed(MasterDataRegistry.MasterType.SIZE);
                 } catch (Exception e) {
                     // Fallback to soft delete if FK constraint exists
                     size.setStatus(false);
                     size.setUpdateAt(LocalDateTime.now());
                     sizeRepository.save(size);
+                    masterDataRegistry.changed(MasterDataRegistry.MasterType.SIZE);
                 }
             }
         } else {
@@ -144,6 +154,7 @@ public class SizeService {
     public void hardDeleteSizeById(Integer id) {
         if (sizeRepository.existsById(id)) {
             sizeRepository.deleteById(id);
+            masterDataRegistry.changed(MasterDataRegistry.MasterType.SIZE);
         } else {
             throw new RuntimeException("Size not found with id: " + id);
         }
@@ -171,7 +182,9 @@ public class SizeService {
             Size size = optionalSize.get();
             size.setStatus(!size.getStatus());
             size.setUpdateAt(LocalDateTime.now());
-            return sizeRepository.save(size);
+            Size saved = sizeRepository.save(size);
+            masterDataRegistry.changed(MasterDataRegistry.MasterType.SIZE);
+            return saved;
         } else {
             throw new RuntimeException("Size not found with id: " + id);
         }
@@ -196,5 +209,6 @@ public class SizeService {
                 sizeRepository.save(size);
             }
         }
+        masterDataRegistry.changed(MasterDataRegistry.MasterType.SIZE);
     }
 }
\ No newline at end of file
@@ -1,21 +1,20 @@
 package MJC.RGSons.service;
 
-import MJC.RGSons.model.InventoryMaster;
 import MJC.RGSons.model.StiHead;
 import MJC.RGSons.model.StiItem;
 import MJC.RGSons.model.StoHead;
 import MJC.RGSons.model.StoItem;
-import MJC.RGSons.repository.InventoryMasterRepository;
 import MJC.RGSons.repository.StiHeadRepository;
 import MJC.RGSons.repository.StiItemRepository;
 import MJC.RGSons.repository.StoHeadRepository;
 import MJC.RGSons.repository.StoItemRepository;
+import MJC.RGSons.util.BusinessDates;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 
 @Service
 public class StiService {
@@ -33,10 +32,10 @@ public class StiService {
     private StoItemRepository stoItemRepository;
 
     @Autowired
-    private InventoryMasterRepository inventoryMasterRepository;
+    private StockMovementService stockMovementService;
 
     @Autowired
-    private DSRService dsrService;
+    private DSRRefreshQueue dsrRefreshQueue;
 
     @Autowired
     private VoucherService voucherService;
@@ -50,13 +49,17 @@ public class StiService {
 
         StiHead savedHead = stiHeadRepository.save(stiHead);
         
+        List<StockMovementService.Delta> deltas = new ArrayList<>();
         for (StiItem item : stiItems) {
             item.setStiNumber(savedHead.getStiNumber());
             stiItemRepository.save(item);
-            
-            // Update Inventory (Inward to Receiving Store)
-            updateInventoryInward(item);
+            deltas.add(new StockMovementService.Delta(item.getItemCode(), item.getSizeCode(), item.getQuantity(),
+                    item.getItemName(), item.getSizeName()));
         }
+
+        // Update Inventory (Inward to Receiving Store)
+        stockMovementService.apply(stiHead.getToStore(), StockMovementService.MovementType.INWARD, deltas,
+                new StockMovementService.Source(StockMovementService.SourceType.STI, savedHead.getStiNumber(), stiHead.getDate()));
         
         // Update STO Status to RECEIVED
         List<StoHead> stoHeads = stoHeadRepository.findByStoNumber(stiHead.getStoNumber());
@@ -67,57 +70,15 @@ public class StiService {
             stoHeadRepository.save(stoHead);
         }
 
-        // Update DSR (Sync STI quantities to DSR Inward)
-        try {
-            System.out.println("Updating DSR after STI Save: " + stiHead.getToStore() + ", " + stiHead.getDate());
-            dsrService.populateDSR(stiHead.getToStore(), stiHead.getDate(), stiHead.getUserName());
-        } catch (Exception e) {
-            System.err.println("Error updating DSR from STI: " + e.getMessage());
-            e.printStackTrace();
-            // Don't fail the transaction just because DSR update failed, or do?
-            // Usually DSR is secondary, so logging is enough.
-        }
+        // Sync STI quantities to DSR Inward in the background, after this save commits
+        dsrRefreshQueue.request(stiHead.getToStore(), stiHead.getDate(), stiHead.getUserName());
 
         return savedHead;
     }
 
-    private void updateInventoryInward(StiItem item) {
-        Optional<InventoryMaster> invOpt = inventoryMasterRepository.findByStoreCodeAndItemCodeAndSizeCode(
-                item.getToStore(), item.getItemCode(), item.getSizeCode());
-
-        if (invOpt.isPresent()) {
-            InventoryMaster inv = invOpt.get();
-            int currentInward = inv.getInward() != null ? inv.getInward() : 0;
-            inv.setInward(currentInward + item.getQuantity());
-
-            // Recalculate Closing: Closing = Opening + Purchase + Inward - Outward
-            int opening = inv.getOpening() != null ? inv.getOpening() : 0;
-            int purchase = inv.getPurchase() != null ? inv.getPurchase() : 0;
-            int inward = inv.getInward();
-            int outward = inv.getOutward() != null ? inv.getOutward() : 0;
-            inv.setClosing(opening + purchase + inward - outward);
-
-            inventoryMasterRepository.save(inv);
-        } else {
-            // Create new inventory record if not exists
-            InventoryMaster inv = new InventoryMaster();
-            inv.setStoreCode(item.getToStore());
-            inv.setItemCode(item.getItemCode());
-            inv.setItemName(item.getItemName());
-            inv.setSizeCode(item.getSizeCode());
-            inv.setSizeName(item.getSizeName());
-            inv.setOpening(0);
-            inv.setPurchase(0);
-            inv.setInward(item.getQuantity());
-            inv.setOutward(0);
-            inv.setClosing(item.getQuantity());
-            inventoryMasterRepository.save(inv);
-        }
-    }
-
     public List<StoHead> getPendingStos(String toStore, String businessDate) {
         if (businessDate != null && !businessDate.isEmpty()) {
-            return stoHeadRepository.findPendingStosByDate(toStore, "PENDING", businessDate);
+            return stoHeadRepository.findPendingStosByDate(toStore, "PENDING", BusinessDates.require(businessDate));
         }
         return stoHeadRepository.findByToStoreAndReceivedStatusAndStatus(toStore, "PENDING", "SUBMITTED");
     }
@@ -1,18 +1,14 @@
 package MJC.RGSons.service;
 
-import MJC.RGSons.model.InventoryMaster;
 import MJC.RGSons.model.StoHead;
 import MJC.RGSons.model.StoItem;
-import MJC.RGSons.repository.InventoryMasterRepository;
 import MJC.RGSons.repository.StoHeadRepository;
 import MJC.RGSons.repository.StoItemRepository;
-import MJC.RGSons.repository.StoreRepository;
-import MJC.RGSons.repository.ItemRepository;
-import MJC.RGSons.repository.SizeRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,22 +22,16 @@ public class StoService {
     private StoItemRepository stoItemRepository;
 
     @Autowired
-    private InventoryMasterRepository inventoryMasterRepository;
+    private StockMovementService stockMovementService;
 
     @Autowired
-    private DSRService dsrService;
+    private DSRRefreshQueue dsrRefreshQueue;
 
     @Autowired
     private VoucherService voucherService;
 
     @Autowired
-    private StoreRepository storeRepository;
-
-    @Autowired
-    private ItemRepository itemRepository;
-
-    @Autowired
-    private SizeRepository sizeRepository;
+    private MasterDataRegistry masterDataRegistry;
 
     @Transactional
     public StoHead saveStockTransfer(StoHead stoHead, List<StoItem> stoItems, boolean isDraft) {
@@ -76,25 +66,23 @@ public class StoService {
         StoHead savedHead = stoHeadRepository.save(stoHead);
 
         // Save items
+        List<StockMovementService.Delta> deltas = new ArrayList<>();
         for (StoItem item : stoItems) {
             item.setStoNumber(savedHead.getStoNumber()); // Ensure link
             stoItemRepository.save(item);
+            deltas.add(new StockMovementService.Delta(item.getItemCode(), item.getSizeCode(), item.getQuantity(),
+                    item.getItemName(), item.getSizeName()));
+        }
 
-            if (!isDraft) {
-                // Update Inventory (Outward from Source Store) only if not draft
-                updateInventoryOutward(item);
-            }
+        if (!isDraft) {
+            // Update Inventory (Outward from Source Store) only if not draft
+            stockMovementService.apply(stoHead.getFromStore(), StockMovementService.MovementType.OUTWARD, deltas,
+                    new StockMovementService.Source(StockMovementService.SourceType.STO, savedHead.getStoNumber(), stoHead.getDate()));
         }
 
         if (!isDraft) {
-            // Update DSR (Sync STO quantities to DSR Outward) only if not draft
-            try {
-                System.out.println("Updating DSR after STO Save: " + stoHead.getFromStore() + ", " + stoHead.getDate());
-                dsrService.populateDSR(stoHead.getFromStore(), stoHead.getDate(), stoHead.getUserName());
-            } catch (Exception e) {
-                System.err.println("Error updating DSR from STO: " + e.getMessage());
-                e.printStackTrace();
-            }
+            // Sync STO quantities to DSR Outward in the background, after this save commits
+            dsrRefreshQueue.request(stoHead.getFromStore(), stoHead.getDate(), stoHead.getUserName());
         }
 
         savedHead.setItems(stoItems);
@@ -105,40 +93,6 @@ public class StoService {
         return stoHeadRepository.findByStatus("DRAFT");
     }
 
-    private void updateInventoryOutward(StoItem item) {
-        Optional<InventoryMaster> invOpt = inventoryMasterRepository.findByStoreCodeAndItemCodeAndSizeCode(
-                item.getFromStore(), item.getItemCode(), item.getSizeCode());
-
-        if (invOpt.isPresent()) {
-            InventoryMaster inv = invOpt.get();
-            int currentOutward = inv.getOutward() != null ? inv.getOutward() : 0;
-            inv.setOutward(currentOutward + item.getQuantity());
-
-            // Recalculate Closing: Closing = Opening + Purchase + Inward - Outward
-            int opening = inv.getOpening() != null ? inv.getOpening() : 0;
-            int purchase = inv.getPurchase() != null ? inv.getPurchase() : 0;
-            int inward = inv.getInward() != null ? inv.getInward() : 0;
-            int outward = inv.getOutward();
-            inv.setClosing(opening + purchase + inward - outward);
-
-            inventoryMasterRepository.save(inv);
-        } else {
-            // Create new inventory record if not exists (though unusual for outward)
-            InventoryMaster inv = new InventoryMaster();
-            inv.setStoreCode(item.getFromStore());
-            inv.setItemCode(item.getItemCode());
-            inv.setItemName(item.getItemName());
-            inv.setSizeCode(item.getSizeCode());
-            inv.setSizeName(item.getSizeName());
-            inv.setOpening(0);
-            inv.setPurchase(0);
-            inv.setInward(0);
-            inv.setOutward(item.getQuantity());
-            inv.setClosing(-item.getQuantity()); // Negative stock
-            inventoryMasterRepository.save(inv);
-        }
-    }
-
     public List<StoHead> getAllStockTransfers() {
         List<StoHead> heads = stoHeadRepository.findByStatus("SUBMITTED");
         heads.forEach(head -> {
@@ -162,9 +116,9 @@ public class StoService {
     private void populateStoreNames(StoHead head) {
         if (head.getFromStore() != null) {
             System.out.println("Populating FromStore: " + head.getFromStore());
-            Optional<MJC.RGSons.model.Store> fromStoreOpt = storeRepository.findByStoreCode(head.getFromStore());
-            if (fromStoreOpt.isPresent()) {
-                head.setFromStoreName(fromStoreOpt.get().getStoreName());
+            MJC.RGSons.model.Store fromStore = masterDataRegistry.store(head.getFromStore());
+            if (fromStore != null) {
+                head.setFromStoreName(fromStore.getStoreName());
             } else {
                 System.out.println("FromStore not found: " + head.getFromStore());
                 head.setFromStoreName(head.getFromStore()); // Fallback to code
@@ -172,9 +126,9 @@ public class StoService {
         }
         if (head.getToStore() != null) {
             System.out.println("Populating ToStore: " + head.getToStore());
-            Optional<MJC.RGSons.model.Store> toStoreOpt = storeRepository.findByStoreCode(head.getToStore());
-            if (toStoreOpt.isPresent()) {
-                head.setToStoreName(toStoreOpt.get().getStoreName());
+            MJC.RGSons.model.Store toStore = masterDataRegistry.store(head.getToStore());
+            if (toStore != null) {
+                head.setToStoreName(toStore.getStoreName());
             } else {
                 System.out.println("ToStore not found: " + head.getToStore());
                 head.setToStoreName(head.getToStore()); // Fallback to code
@@ -190,14 +144,16 @@ public class StoService {
 
     private void populateItemDetails(List<StoItem> items) {
         if (items == null) return;
+        MasterDataRegistry.Snapshot<MJC.RGSons.model.Item> itemMaster = masterDataRegistry.items();
+        MasterDataRegistry.Snapshot<MJC.RGSons.model.Size> sizeMaster = masterDataRegistry.sizes();
         items.forEach(item -> {
-            if (item.getItemCode() != null) {
-                itemRepository.findByItemCode(item.getItemCode())
-                    .ifPresent(masterItem -> item.setItemName(masterItem.getItemName()));
+            MJC.RGSons.model.Item masterItem = itemMaster.get(item.getItemCode());
+            if (masterItem != null) {
+                item.setItemName(masterItem.getItemName());
             }
-            if (item.getSizeCode() != null) {
-                sizeRepository.findByCode(item.getSizeCode())
-                    .ifPresent(masterSize -> item.setSizeName(masterSize.getName()));
+            MJC.RGSons.model.Size masterSize = sizeMaster.get(item.getSizeCode());
+            if (masterSize != null) {
+                item.setSizeName(masterSize.getName());
             }
         });
     }
@@ -0,0 +1,321 @@
+package MJC.RGSons.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The stock_movement journal: one append-only row per SKU per stock document, holding the
+ * Inventory_Master counter it was posted to, the signed change to Closing and the source
+ * document. Inventory_Master is a projection of it: summing a store's journal gives back its
+ * Opening, Purchase, Inward, Outward and Closing, which {@link #rebuild} writes back.
+ *
+ * Stock held before the journal existed is carried in by BASELINE rows, written once at
+ * startup as the difference between Inventory_Master and the journal. Closing that never
+ * matched Opening + Purchase + Inward - Outward is kept as an ADJUSTMENT row.
+ */
+@Service
+public class StockJournalService {
+
+    private static final Logger log = LoggerFactory.getLogger(StockJournalService.class);
+
+    public static final String SOURCE_BASELINE = "BASELINE";
+
+    // Business date a row counts on, persisted as effective_dt: baseline rows carry the stock held
+    // before the journal, so they count from the start; rows posted without a date count on their
+    // posting day. CONVERT with a style keeps it deterministic, as PERSISTED requires.
+    private static final String EFFECTIVE_DT = "COALESCE(business_dt, CASE WHEN source_type = '" + SOURCE_BASELINE
+            + "' THEN CONVERT(DATE, '19000101', 112) ELSE CONVERT(DATE, created_at) END)";
+
+    // Rows per multi-row INSERT: 3 parameters each, well below SQL Server's 2100
+    private static final int INSERT_CHUNK = 500;
+
+    // Per (item, size) of one store: the Inventory_Master counters as summed from the journal
+    private static final String PROJECTION = "SELECT item_code, size_code, "
+            + "SUM(CASE WHEN movement_type = 'OPENING' THEN quantity ELSE 0 END) AS opening, "
+            + "SUM(CASE WHEN movement_type = 'PURCHASE' THEN quantity ELSE 0 END) AS purchase, "
+            + "SUM(CASE WHEN movement_type = 'INWARD' THEN quantity ELSE 0 END) AS inward, "
+            + "SUM(CASE WHEN movement_type = 'OUTWARD' THEN -quantity ELSE 0 END) AS outward, "
+            + "SUM(quantity) AS closing "
+            + "FROM stock_movement WHERE store_code = ? GROUP BY item_code, size_code";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ClosingStockSnapshotService closingStockSnapshotService;
+
+    @Autowired
+    private ItemListService itemListService;
+
+    @Autowired
+    private AvailableStockIndex availableStockIndex;
+
+    @Value("${stock-journal.rebuild.max-concurrency:4}")
+    private int rebuildConcurrency;
+
+    @Value("${spring.datasource.hikari.maximum-pool-size:10}")
+    private int connectionPoolSize;
+
+    private final TransactionTemplate serializable;
+
+    public StockJournalService(PlatformTransactionManager transactionManager) {
+        this.serializable = new TransactionTemplate(transactionManager);
+        this.serializable.setIsolationLevel(TransactionDefinition.ISOLATION_SERIALIZABLE);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            StringBuilder ddl = new StringBuilder();
+            ddl.append("IF OBJECT_ID('stock_movement', 'U') IS NULL ");
+            ddl.append("BEGIN ");
+            ddl.append("CREATE TABLE stock_movement (");
+            ddl.append("  id BIGINT IDENTITY(1,1) PRIMARY KEY, ");
+            ddl.append("  store_code VARCHAR(255) NOT NULL, ");
+            ddl.append("  item_code VARCHAR(255) NOT NULL, ");
+            ddl.append("  size_code VARCHAR(255) NOT NULL, ");
+            ddl.append("  movement_type VARCHAR(20) NOT NULL, ");
+            ddl.append("  quantity INT NOT NULL, ");
+            ddl.append("  source_type VARCHAR(20) NOT NULL, ");
+            ddl.append("  source_no VARCHAR(255), ");
+            ddl.append("  business_dt DATE, ");
+            ddl.append("  created_at DATETIME2 NOT NULL DEFAULT SYSDATETIME(), ");
+            ddl.append("  effective_dt AS ").append(EFFECTIVE_DT).append(" PERSISTED); ");
+            ddl.append("CREATE INDEX IX_stock_movement_sku ON stock_movement (store_code, item_code, size_code) ");
+            ddl.append("  INCLUDE (movement_type, quantity); ");
+            ddl.append("END");
+            jdbcTemplate.execute(ddl.toString());
+            jdbcTemplate.execute("IF COL_LENGTH('stock_movement', 'effective_dt') IS NULL "
+                    + "ALTER TABLE stock_movement ADD effective_dt AS " + EFFECTIVE_DT + " PERSISTED");
+            jdbcTemplate.execute("IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'IX_stock_movement_effective_dt' "
+                    + "AND object_id = OBJECT_ID('stock_movement')) "
+                    + "CREATE INDEX IX_stock_movement_effective_dt ON stock_movement (effective_dt) "
+                    + "INCLUDE (store_code, item_code, size_code, quantity)");
+
+            Integer baseline = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM stock_movement WHERE source_type = ?", Integer.class, SOURCE_BASELINE);
+            if (baseline == null || baseline == 0) {
+                log.info("stock_movement baseline rows written: {}", writeBaseline());
+            }
+        } catch (Exception e) {
+            log.error("stock_movement setup failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Brings the journal level with Inventory_Master by appending the difference per SKU and
+     * counter. Inventory_Master is locked meanwhile, so no movement can slip in between.
+     */
+    private int writeBaseline() {
+        return serializable.execute(status -> {
+            jdbcTemplate.queryForObject("SELECT COUNT(*) FROM Inventory_Master WITH (TABLOCKX, HOLDLOCK)", Integer.class);
+
+            StringBuilder sql = new StringBuilder();
+            sql.append("INSERT INTO stock_movement (store_code, item_code, size_code, movement_type, quantity, source_type, source_no, business_dt) ");
+            sql.append("SELECT m.Store_code, m.Item_code, m.Size_code, v.movement_type, v.quantity, ?, NULL, NULL ");
+            sql.append("FROM (SELECT Store_code, Item_code, Size_code, ");
+            sql.append("    SUM(ISNULL(Opening, 0)) AS opening, SUM(ISNULL(Purchase, 0)) AS purchase, ");
+            sql.append("    SUM(ISNULL(Inward, 0)) AS inward, SUM(ISNULL(Outward, 0)) AS outward, SUM(ISNULL(Closing, 0)) AS closing ");
+            sql.append("  FROM Inventory_Master ");
+            sql.append("  WHERE Store_code IS NOT NULL AND Item_code IS NOT NULL AND Size_code IS NOT NULL ");
+            sql.append("  GROUP BY Store_code, Item_code, Size_code) m ");
+            sql.append("OUTER APPLY (SELECT ");
+            sql.append("    SUM(CASE WHEN sm.movement_type = 'OPENING' THEN sm.quantity ELSE 0 END) AS opening, ");
+            sql.append("    SUM(CASE WHEN sm.movement_type = 'PURCHASE' THEN sm.quantity ELSE 0 END) AS purchase, ");
+            sql.append("    SUM(CASE WHEN sm.movement_type = 'INWARD' THEN sm.quantity ELSE 0 END) AS inward, ");
+            sql.append("    SUM(CASE WHEN sm.movement_type = 'OUTWARD' THEN -sm.quantity ELSE 0 END) AS outward, ");
+            sql.append("    SUM(sm.quantity) AS closing ");
+            sql.append("  FROM stock_movement sm ");
+            sql.append("  WHERE sm.store_code = m.Store_code AND sm.item_code = m.Item_code AND sm.size_code = m.Size_code) j ");
+            sql.append("CROSS APPLY (SELECT o.opening, o.purchase, o.inward, o.outward, ");
+            sql.append("    (m.closing - ISNULL(j.closing, 0)) - (o.opening + o.purchase + o.inward - o.outward) AS adjustment ");
+            sql.append("  FROM (SELECT m.opening - ISNULL(j.opening, 0) AS opening, m.purchase - ISNULL(j.purchase, 0) AS purchase, ");
+            sql.append("    m.inward - ISNULL(j.inward, 0) AS inward, m.outward - ISNULL(j.outward, 0) AS outward) o) d ");
+            sql.append("CROSS APPLY (VALUES ('OPENING', d.opening), ('PURCHASE', d.purchase), ('INWARD', d.inward), ");
+            sql.append("    ('OUTWARD', -d.outward), ('").append(StockMovementService.MovementType.ADJUSTMENT.name()).append("', d.adjustment)) AS v (movement_type, quantity) ");
+            sql.append("WHERE v.quantity <> 0");
+            return jdbcTemplate.update(sql.toString(), SOURCE_BASELINE);
+        });
+    }
+
+    /**
+     * Appends one row per line of a movement already collapsed by SKU. Must run in the
+     * transaction that updates Inventory_Master.
+     *
+     * @param closingSign +1 when the movement raises Closing, -1 when it lowers it
+     */
+    public void append(String storeCode, String movementType, int closingSign, List<StockMovementService.Delta> rows,
+                       String sourceType, String sourceNo, java.sql.Date businessDt) {
+        for (int from = 0; from < rows.size(); from += INSERT_CHUNK) {
+            List<StockMovementService.Delta> chunk = rows.subList(from, Math.min(from + INSERT_CHUNK, rows.size()));
+
+            StringBuilder sql = new StringBuilder();
+            List<Object> params = new ArrayList<>();
+            sql.append("INSERT INTO stock_movement (store_code, item_code, size_code, movement_type, quantity, source_type, source_no, business_dt) ");
+            sql.append("SELECT ?, d.item_code, d.size_code, ?, d.qty, ?, ?, ? FROM (VALUES ");
+            params.add(storeCode);
+            params.add(movementType);
+            params.add(sourceType);
+            params.add(sourceNo);
+            params.add(businessDt);
+            int added = 0;
+            for (StockMovementService.Delta row : chunk) {
+                if (row.getQuantity() == 0) {
+                    continue;
+                }
+                sql.append(added++ == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+                params.add(row.getItemCode());
+                params.add(row.getSizeCode());
+                params.add(row.getQuantity() * closingSign);
+            }
+            if (added == 0) {
+                continue;
+            }
+            sql.append(") AS d (item_code, size_code, qty)");
+            jdbcTemplate.update(sql.toString(), params.toArray());
+        }
+    }
+
+    /** Journal rows of one SKU, newest first: which documents moved its stock and by how much. */
+    public List<Map<String, Object>> getMovements(String storeCode, String itemCode, String sizeCode, int limit) {
+        StringBuilder sql = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        sql.append("SELECT TOP (?) id, store_code, item_code, size_code, movement_type, quantity, source_type, source_no, business_dt, created_at ");
+        params.add(limit);
+        sql.append("FROM stock_movement WHERE store_code = ? AND item_code = ? ");
+        params.add(storeCode);
+        params.add(itemCode);
+        if (sizeCode != null && !sizeCode.isEmpty()) {
+            sql.append("AND size_code = ? ");
+            params.add(sizeCode);
+        }
+        sql.append("ORDER BY id DESC");
+        return jdbcTemplate.queryForList(sql.toString(), params.toArray());
+    }
+
+    /**
+     * Recomputes Inventory_Master from the journal, one store per task on a pool of
+     * at most {@code stock-journal.rebuild.max-concurrency} threads. Each holds a connection, so
+     * the pool never grows past the datasource pool size less one, left for everyone else.
+     *
+     * @param storeCode null for all stores
+     * @return rows corrected per store, plus failures
+     */
+    public Map<String, Object> rebuild(String storeCode) {
+        List<String> stores;
+        if (storeCode != null && !storeCode.isEmpty()) {
+            stores = List.of(storeCode);
+        } else {
+            stores = jdbcTemplate.queryForList("SELECT store_code FROM stock_movement GROUP BY store_code "
+                    + "UNION SELECT Store_code FROM Inventory_Master WHERE Store_code IS NOT NULL GROUP BY Store_code", String.class);
+        }
+
+        int threads = Math.min(rebuildConcurrency, connectionPoolSize - 1);
+        threads = Math.max(1, Math.min(threads, stores.size()));
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "stock-rebuild-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        Map<String, Future<Integer>> tasks = new LinkedHashMap<>();
+        try {
+            for (String store : stores) {
+                tasks.put(store, pool.submit(() -> rebuildStore(store)));
+            }
+
+            Map<String, Object> corrected = new LinkedHashMap<>();
+            Map<String, String> failed = new LinkedHashMap<>();
+            int total = 0;
+            for (Map.Entry<String, Future<Integer>> task : tasks.entrySet()) {
+                try {
+                    int rows = task.getValue().get();
+                    total += rows;
+                    if (rows > 0) {
+                        corrected.put(task.getKey(), rows);
+                    }
+                } catch (ExecutionException e) {
+                    failed.put(task.getKey(), e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failed.put(task.getKey(), "interrupted");
+                }
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("stores", stores.size());
+            result.put("threads", threads);
+            result.put("rowsCorrected", total);
+            result.put("correctedByStore", corrected);
+            result.put("failed", failed);
+            return result;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes the journal totals of one store over its Inventory_Master rows, in a serializable
+     * transaction so movements for the store wait until it is done. The store's Inventory_Master
+     * rows are locked before the journal is read: postings write Inventory_Master and then the
+     * journal, and taking the two in the same order keeps a rebuild from deadlocking with them.
+     *
+     * @return rows inserted or changed
+     */
+    private int rebuildStore(String storeCode) {
+        Integer changed = serializable.execute(status -> {
+            availableStockIndex.rewriting(storeCode);
+            jdbcTemplate.queryForObject("SELECT COUNT(*) FROM Inventory_Master WITH (UPDLOCK, HOLDLOCK) WHERE Store_code = ?",
+                    Integer.class, storeCode);
+
+            StringBuilder sql = new StringBuilder();
+            sql.append("WITH target AS (SELECT * FROM Inventory_Master WITH (HOLDLOCK) WHERE Store_code = ?) ");
+            sql.append("MERGE target AS im ");
+            sql.append("USING (").append(PROJECTION).append(") AS src ");
+            sql.append("ON im.Item_code = src.item_code AND im.Size_code = src.size_code ");
+            sql.append("WHEN MATCHED AND (ISNULL(im.Opening, 0) <> src.opening OR ISNULL(im.Purchase, 0) <> src.purchase ");
+            sql.append("    OR ISNULL(im.Inward, 0) <> src.inward OR ISNULL(im.Outward, 0) <> src.outward ");
+            sql.append("    OR ISNULL(im.Closing, 0) <> src.closing) THEN UPDATE SET ");
+            sql.append("  Opening = src.opening, Purchase = src.purchase, Inward = src.inward, Outward = src.outward, ");
+            sql.append("  Closing = src.closing, updated_at = GETDATE() ");
+            sql.append("WHEN NOT MATCHED BY TARGET THEN INSERT ");
+            sql.append("  (Store_code, Item_code, Item_Name, Size_code, Size_name, Opening, Purchase, Inward, Outward, Closing, created_at, updated_at) ");
+            sql.append("  VALUES (?, src.item_code, ");
+            sql.append("    COALESCE((SELECT TOP 1 it.item_name FROM items it WHERE it.item_code = src.item_code), ''), ");
+            sql.append("    src.size_code, ");
+            sql.append("    COALESCE((SELECT TOP 1 sz.name FROM size sz WHERE sz.code = src.size_code), ''), ");
+            sql.append("    src.opening, src.purchase, src.inward, src.outward, src.closing, GETDATE(), GETDATE()) ");
+            sql.append("WHEN NOT MATCHED BY SOURCE AND (ISNULL(im.Opening, 0) <> 0 OR ISNULL(im.Purchase, 0) <> 0 ");
+            sql.append("    OR ISNULL(im.Inward, 0) <> 0 OR ISNULL(im.Outward, 0) <> 0 OR ISNULL(im.Closing, 0) <> 0) THEN UPDATE SET ");
+            sql.append("  Opening = 0, Purchase = 0, Inward = 0, Outward = 0, Closing = 0, updated_at = GETDATE();");
+            return jdbcTemplate.update(sql.toString(), storeCode, storeCode, storeCode);
+        });
+
+        int rows = changed != null ? changed : 0;
+        if (rows > 0) {
+            closingStockSnapshotService.rebuild(storeCode);
+            itemListService.inventoryChanged();
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,211 @@
+package MJC.RGSons.service;
+
+import MJC.RGSons.util.BusinessDates;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single entry point for applying stock movements to Inventory_Master.
+ *
+ * Every movement is applied SQL-side with one MERGE per chunk of SKUs, so the
+ * counters are incremented atomically by the database instead of being read,
+ * recomputed in Java and written back. Concurrent tills selling the same SKU
+ * therefore never lose an update, and a missing row is created in the same
+ * statement (HOLDLOCK keeps two creators from racing).
+ *
+ * Each movement is also appended to the stock_movement journal with its source document
+ * ({@link StockJournalService}), in the same transaction, so every change of Closing can be
+ * traced back to the sale, transfer, purchase or import that made it.
+ */
+@Service
+public class StockMovementService {
+
+    /** Inventory_Master counter a movement is posted to, and its effect on Closing. */
+    public enum MovementType {
+        OPENING("Opening", 1),
+        PURCHASE("Purchase", 1),
+        INWARD("Inward", 1),
+        OUTWARD("Outward", -1),
+        // Corrects Closing alone, no counter
+        ADJUSTMENT(null, 1);
+
+        private final String column;
+        private final int closingSign;
+
+        MovementType(String column, int closingSign) {
+            this.column = column;
+            this.closingSign = closingSign;
+        }
+
+        public String getColumn() { return column; }
+        public int getClosingSign() { return closingSign; }
+    }
+
+    /** Kind of document a movement comes from, as recorded in the journal. */
+    public enum SourceType {
+        SALE, STO, STI, PURCHASE, OPENING_IMPORT, RECONCILIATION
+    }
+
+    /** The document behind a movement: its type, number and business date (both optional). */
+    public static class Source {
+        private final SourceType type;
+        private final String number;
+        private final String date;
+
+        public Source(SourceType type, String number, String date) {
+            this.type = type;
+            this.number = number;
+            this.date = date;
+        }
+
+        public SourceType getType() { return type; }
+        public String getNumber() { return number; }
+        public String getDate() { return date; }
+    }
+
+    /** One line of a stock movement. Names are optional and only used when the row has to be created. */
+    public static class Delta {
+        private final String itemCode;
+        private final String sizeCode;
+        private final int quantity;
+        private final String itemName;
+        private final String sizeName;
+
+        public Delta(String itemCode, String sizeCode, Integer quantity) {
+            this(itemCode, sizeCode, quantity, null, null);
+        }
+
+        public Delta(String itemCode, String sizeCode, Integer quantity, String itemName, String sizeName) {
+            this.itemCode = itemCode;
+            this.sizeCode = sizeCode;
+            this.quantity = quantity != null ? quantity : 0;
+            this.itemName = itemName;
+            this.sizeName = sizeName;
+        }
+
+        public String getItemCode() { return itemCode; }
+        public String getSizeCode() { return sizeCode; }
+        public int getQuantity() { return quantity; }
+        public String getItemName() { return itemName; }
+        public String getSizeName() { return sizeName; }
+    }
+
+    // SQL Server caps a statement at 2100 parameters; 5 per SKU row keeps each MERGE well below it
+    private static final int MERGE_CHUNK = 300;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ClosingStockSnapshotService closingStockSnapshotService;
+
+    @Autowired
+    private StockJournalService stockJournalService;
+
+    @Autowired
+    private ItemListService itemListService;
+
+    @Autowired
+    private AvailableStockIndex availableStockIndex;
+
+    public void apply(String storeCode, MovementType type, List<Delta> deltas, Source source) {
+        apply(storeCode, type, deltas, null, source);
+    }
+
+    /**
+     * Posts the given lines to one store. Lines for the same (item, size) are collapsed first,
+     * so the number of rows touched follows the distinct SKUs, not the document lines.
+     *
+     * @param businessDate when not null, stamped on every touched row (purchase keeps the latest invoice date there)
+     * @param source the document recorded with the journal rows
+     */
+    @Transactional
+    public void apply(String storeCode, MovementType type, List<Delta> deltas, String businessDate, Source source) {
+        if (storeCode == null || storeCode.isEmpty() || deltas == null || deltas.isEmpty()) {
+            return;
+        }
+
+        Map<String, Delta> collapsed = new LinkedHashMap<>();
+        for (Delta delta : deltas) {
+            String key = delta.getItemCode() + "|" + delta.getSizeCode();
+            collapsed.merge(key, delta, (a, b) -> new Delta(a.getItemCode(), a.getSizeCode(),
+                    a.getQuantity() + b.getQuantity(),
+                    a.getItemName() != null ? a.getItemName() : b.getItemName(),
+                    a.getSizeName() != null ? a.getSizeName() : b.getSizeName()));
+        }
+
+        List<Delta> rows = new ArrayList<>(collapsed.values());
+        closingStockSnapshotService.lockStore(storeCode);
+        availableStockIndex.posting(storeCode, type.getClosingSign(), rows);
+        for (int from = 0; from < rows.size(); from += MERGE_CHUNK) {
+            merge(storeCode, type, rows.subList(from, Math.min(from + MERGE_CHUNK, rows.size())), businessDate);
+        }
+
+        String sourceDate = source.getDate() != null ? source.getDate() : businessDate;
+        stockJournalService.append(storeCode, type.name(), type.getClosingSign(), rows,
+                source.getType().name(), source.getNumber(), BusinessDates.toSqlDate(sourceDate));
+        itemListService.stockMoved(storeCode, type, rows);
+    }
+
+    private void merge(String storeCode, MovementType type, List<Delta> rows, String businessDate) {
+        String column = type.getColumn();
+        String closingOp = type.getClosingSign() > 0 ? "+" : "-";
+        java.sql.Date businessDt = BusinessDates.toSqlDate(businessDate);
+
+        StringBuilder sql = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+
+        sql.append("MERGE Inventory_Master WITH (HOLDLOCK) AS im ");
+        sql.append("USING (VALUES ");
+        for (int i = 0; i < rows.size(); i++) {
+            Delta row = rows.get(i);
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?)");
+            params.add(row.getItemCode());
+            params.add(row.getSizeCode());
+            params.add(row.getQuantity());
+            params.add(row.getItemName());
+            params.add(row.getSizeName());
+        }
+        sql.append(") AS src (item_code, size_code, qty, item_name, size_name) ");
+        sql.append("ON im.Store_code = ? AND im.Item_code = src.item_code AND im.Size_code = src.size_code ");
+        params.add(storeCode);
+
+        sql.append("WHEN MATCHED THEN UPDATE SET ");
+        if (column != null) {
+            sql.append("  ").append(column).append(" = ISNULL(im.").append(column).append(", 0) + src.qty, ");
+        }
+        sql.append("  Closing = ISNULL(im.Closing, 0) ").append(closingOp).append(" src.qty, ");
+        sql.append("  business_date = COALESCE(?, im.business_date), ");
+        sql.append("  business_dt = COALESCE(?, im.business_dt), ");
+        sql.append("  updated_at = GETDATE() ");
+        params.add(businessDate);
+        params.add(businessDt);
+
+        sql.append("WHEN NOT MATCHED THEN INSERT ");
+        sql.append("  (Store_code, Item_code, Item_Name, Size_code, Size_name, business_date, business_dt, Opening, Purchase, Inward, Outward, Closing, created_at, updated_at) ");
+        sql.append("  VALUES (?, src.item_code, ");
+        sql.append("    COALESCE(src.item_name, (SELECT TOP 1 it.item_name FROM items it WHERE it.item_code = src.item_code), ''), ");
+        sql.append("    src.size_code, ");
+        sql.append("    COALESCE(src.size_name, (SELECT TOP 1 sz.name FROM size sz WHERE sz.code = src.size_code), ''), ");
+        sql.append("    ?, ?, ");
+        sql.append(type == MovementType.OPENING ? "src.qty, " : "0, ");
+        sql.append(type == MovementType.PURCHASE ? "src.qty, " : "0, ");
+        sql.append(type == MovementType.INWARD ? "src.qty, " : "0, ");
+        sql.append(type == MovementType.OUTWARD ? "src.qty, " : "0, ");
+        sql.append(closingOp).append("src.qty, GETDATE(), GETDATE());");
+        params.add(storeCode);
+        params.add(businessDate);
+        params.add(businessDt);
+
+        jdbcTemplate.update(sql.toString(), params.toArray());
+
+        closingStockSnapshotService.applyDeltas(storeCode, rows, type.getClosingSign());
+    }
+}
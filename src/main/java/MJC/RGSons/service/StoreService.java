@@ -23,6 +23,9 @@ public class StoreService {
     
     @Autowired
     private StoreRepository storeRepository;
+
+    @Autowired
+    private MasterDataRegistry masterDataRegistry;
     
     @Autowired
     private UserStoreMapRepository userStoreMapRepository;
@@ -61,7 +64,9 @@ public class StoreService {
         store.setCreatedAt(LocalDateTime.now());
         store.setUpdateAt(LocalDateTime.now());
         
-        return storeRepository.save(store);
+        Store saved = storeRepository.save(store);
+        masterDataRegistry.changed(MasterDataRegistry.MasterType.STORE);
+        return saved;
     }
     
     // Get all stores
@@ -187,7 +192,9 @@ public class StoreService {
             existingStore.setBusinessDate(storeDetails.getBusinessDate());
             existingStore.setUpdateAt(LocalDateTime.now());
             
-            return storeRepository.save(existingStore);
+            Store saved = storeRepository.save(existingStore);
+            masterDataRegistry.changed(MasterDataRegistry.MasterType.STORE);
+            return saved;
         } else {
             throw new RuntimeException("Store not found with id: " + id);
         }
@@ -216,15 +223,18 @@ public class StoreService {
                 store.setStatus(false);
                 store.setUpdateAt(LocalDateTime.now());
                 storeRepository.save(store);
+                masterDataRegistry.changed(MasterDataRegistry.MasterType.STORE);
             } else {
                 // Hard delete
                 try {
                     storeRepository.deleteById(id);
+                    masterDataRegistry.changed(MasterDataRegistry.MasterType.STORE);
                 } catch (Exception e) {
                     // Fallback to soft delete
                     store.setStatus(false);
                     store.setUpdateAt(LocalDateTime.now());
                     storeRepository.save(store);
+                    masterDataRegistry.changed(MasterDataRegistry.MasterType.STORE);
                 }
             }
         } else {
@@ -239,7 +249,9 @@ public class StoreService {
             Store store = optionalStore.get();
             store.setStatus(false);
             store.setUpdateAt(LocalDateTime.now());
-            return storeRepository.save(store);
+            Store saved = storeRepository.save(store);
+            masterDataRegistry.changed(MasterDataRegistry.MasterType.STORE);
+            return saved;
         } else {
             throw new RuntimeException("Store not found with id: " + id);
         }
@@ -252,7 +264,9 @@ public class StoreService {
             Store store = optionalStore.get();
             store.setStatus(true);
             store.setUpdateAt(LocalDateTime.now());
-            return storeRepository.save(store);
+            Store saved = storeRepository.save(store);
+            masterDataRegistry.changed(MasterDataRegistry.MasterType.STORE);
+            return saved;
         } else {
             throw new RuntimeException("Store not found with id: " + id);
         }
@@ -0,0 +1,279 @@
+package MJC.RGSons.service;
+
+import MJC.RGSons.dto.PurchaseTransactionDTO;
+import MJC.RGSons.dto.SalesTransactionDTO;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams the full SalesData / PurchaseData exports straight to the response.
+ *
+ * Each export is one forward-only query on one connection: every head row is followed by
+ * its ledger and item lines (head columns repeated), all ordered by the head id. Each
+ * invoice is written through a Jackson JsonGenerator as soon as its last line has been read,
+ * so only one invoice is held in memory however large the history is. The JSON has the same
+ * shape as the buffered endpoints: {"Invoices": [ ... ]}.
+ *
+ * A slow client keeps its connection for the whole response, so only a few exports run at a
+ * time; the rest wait for a slot before they take a connection.
+ */
+@Service
+public class TransactionExportService {
+
+    private static final int FETCH_SIZE = 500;
+    private static final int FLUSH_EVERY = 100;
+
+    // Line kinds of the export queries, in the order they follow their head
+    private static final int LEDGER_LINE = 1;
+    private static final int ITEM_LINE = 2;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final Semaphore slots;
+
+    private final long waitSeconds;
+
+    public TransactionExportService(@Value("${export.stream.max-concurrency:2}") int maxConcurrency,
+                                    @Value("${export.stream.wait-seconds:60}") long waitSeconds) {
+        this.slots = new Semaphore(Math.max(1, maxConcurrency), true);
+        this.waitSeconds = waitSeconds;
+    }
+
+    public void streamSalesData(OutputStream out) throws IOException, SQLException {
+        // Items belong to an invoice by invoice number, as in SalesService.getSalesData
+        String sql = "SELECT th.id AS head_id, th.invoice_no, th.invoice_date, th.party_code, p.name AS party_name, "
+                + "th.sale_amount, th.total_amount, th.tender_type, th.store_code, s.store_name, s.Sale_Led, "
+                + "th.User_name, th.other_sale, th.total_expenses, th.total_tender, "
+                + "x.kind, x.code, x.name, x.size_code, x.size_name, x.mrp, x.price, x.quantity, x.amount, x.type "
+                + "FROM tran_head th "
+                + "LEFT JOIN party p ON p.code = th.party_code "
+                + "LEFT JOIN store s ON s.store_code = th.store_code "
+                + "LEFT JOIN ("
+                + "  SELECT tl.tran_id AS head_id, " + LEDGER_LINE + " AS kind, tl.id AS line_id, tl.ledger_code AS code, l.name AS name, "
+                + "    CAST(NULL AS VARCHAR(255)) AS size_code, CAST(NULL AS VARCHAR(255)) AS size_name, "
+                + "    CAST(NULL AS FLOAT) AS mrp, CAST(NULL AS FLOAT) AS price, CAST(NULL AS INT) AS quantity, tl.amount, tl.type "
+                + "  FROM tran_ledgers tl "
+                + "  LEFT JOIN ledgers l ON l.code = tl.ledger_code "
+                + "  UNION ALL "
+                + "  SELECT h.id, " + ITEM_LINE + ", ti.id, ti.item_code, i.item_name, ti.size_code, sz.name, "
+                + "    ti.mrp, ti.price, ti.quantity, ti.amount, CAST(NULL AS VARCHAR(255)) "
+                + "  FROM tran_item ti "
+                + "  JOIN tran_head h ON h.invoice_no = ti.invoice_no AND h.status = 'SUBMITTED' "
+                + "  LEFT JOIN items i ON i.item_code = ti.item_code "
+                + "  LEFT JOIN size sz ON sz.code = ti.size_code "
+                + ") x ON x.head_id = th.id "
+                + "WHERE th.status = 'SUBMITTED' "
+                + "ORDER BY th.id, x.kind, x.line_id";
+
+        ObjectWriter writer = objectMapper.writerFor(SalesTransactionDTO.class);
+        stream(out, sql, (rs, dto) -> {
+            SalesTransactionDTO sale = (SalesTransactionDTO) dto;
+            if (sale == null) {
+                sale = new SalesTransactionDTO();
+                sale.setInvoiceNo(rs.getString("invoice_no"));
+                sale.setInvoiceDate(rs.getString("invoice_date"));
+                sale.setPartyCode(rs.getString("party_code"));
+                sale.setPartyName(nvl(rs.getString("party_name")));
+                sale.setSaleAmount(getDouble(rs, "sale_amount"));
+                sale.setTotalAmount(getDouble(rs, "total_amount"));
+                sale.setTenderType(rs.getString("tender_type"));
+                sale.setStoreCode(rs.getString("store_code"));
+                sale.setStoreName(rs.getString("store_name"));
+                sale.setSaleLed(rs.getString("Sale_Led"));
+                sale.setUserId(rs.getString("User_name"));
+                sale.setOtherSale(getDouble(rs, "other_sale"));
+                sale.setTotalExpenses(getDouble(rs, "total_expenses"));
+                sale.setTotalTender(getDouble(rs, "total_tender"));
+                sale.setOtherSaleDetails(new ArrayList<>());
+                sale.setExpenseDetails(new ArrayList<>());
+                sale.setTenderDetails(new ArrayList<>());
+                sale.setItems(new ArrayList<>());
+            }
+
+            Integer kind = getInteger(rs, "kind");
+            if (kind != null && kind == LEDGER_LINE) {
+                SalesTransactionDTO.LedgerEntryDTO entry = new SalesTransactionDTO.LedgerEntryDTO();
+                entry.setLedgerCode(rs.getString("code"));
+                entry.setLedgerName(nvl(rs.getString("name")));
+                entry.setAmount(getDouble(rs, "amount"));
+                String type = rs.getString("type");
+                if ("Other Sale".equals(type)) {
+                    sale.getOtherSaleDetails().add(entry);
+                } else if ("Expense".equals(type)) {
+                    sale.getExpenseDetails().add(entry);
+                } else if ("Tender".equals(type)) {
+                    sale.getTenderDetails().add(entry);
+                }
+            } else if (kind != null && kind == ITEM_LINE) {
+                SalesTransactionDTO.SalesItemDTO itemDto = new SalesTransactionDTO.SalesItemDTO();
+                itemDto.setItemCode(rs.getString("code"));
+                itemDto.setItemName(nvl(rs.getString("name")));
+                itemDto.setSizeCode(rs.getString("size_code"));
+                itemDto.setSizeName(nvl(rs.getString("size_name")));
+                itemDto.setMrp(getDouble(rs, "mrp"));
+                itemDto.setPrice(getDouble(rs, "price"));
+                itemDto.setQuantity(getInteger(rs, "quantity"));
+                itemDto.setAmount(getDouble(rs, "amount"));
+                sale.getItems().add(itemDto);
+            }
+            return sale;
+        }, writer);
+    }
+
+    public void streamPurchaseData(OutputStream out) throws IOException, SQLException {
+        // Items are matched on invoice number and store, as in PurchaseService.getPurchaseData
+        String sql = "SELECT ph.id AS head_id, ph.invoice_no, ph.invoice_date, ph.party_code, p.name AS party_name, "
+                + "ph.purchase_amount, ph.total_amount, ph.store_code, s.store_name, ph.narration, ph.User_NAME, "
+                + "ph.Pur_Led, pl.name AS pur_led_name, "
+                + "x.kind, x.code, x.name, x.size_code, x.size_name, x.price, x.quantity, x.amount, x.type "
+                + "FROM pur_head ph "
+                + "LEFT JOIN party p ON p.code = ph.party_code "
+                + "LEFT JOIN store s ON s.store_code = ph.store_code "
+                + "LEFT JOIN ledgers pl ON pl.code = ph.Pur_Led "
+                + "LEFT JOIN ("
+                + "  SELECT pld.Pur_id AS head_id, " + LEDGER_LINE + " AS kind, pld.id AS line_id, pld.ledger_code AS code, l.name AS name, "
+                + "    CAST(NULL AS VARCHAR(255)) AS size_code, CAST(NULL AS VARCHAR(255)) AS size_name, "
+                + "    CAST(NULL AS FLOAT) AS price, CAST(NULL AS INT) AS quantity, pld.amount, pld.type "
+                + "  FROM pur_ledgers pld "
+                + "  LEFT JOIN ledgers l ON l.code = pld.ledger_code "
+                + "  UNION ALL "
+                + "  SELECT h.id, " + ITEM_LINE + ", pi.id, pi.item_code, i.item_name, pi.size_code, sz.name, "
+                + "    pi.price, pi.quantity, pi.amount, CAST(NULL AS VARCHAR(255)) "
+                + "  FROM pur_item pi "
+                + "  JOIN pur_head h ON h.invoice_no = pi.invoice_no AND h.store_code = pi.store_code AND h.status = 'SUBMITTED' "
+                + "  LEFT JOIN items i ON i.item_code = pi.item_code "
+                + "  LEFT JOIN size sz ON sz.code = pi.size_code "
+                + ") x ON x.head_id = ph.id "
+                + "WHERE ph.status = 'SUBMITTED' "
+                + "ORDER BY ph.id, x.kind, x.line_id";
+
+        ObjectWriter writer = objectMapper.writerFor(PurchaseTransactionDTO.class);
+        stream(out, sql, (rs, dto) -> {
+            PurchaseTransactionDTO purchase = (PurchaseTransactionDTO) dto;
+            if (purchase == null) {
+                purchase = new PurchaseTransactionDTO();
+                purchase.setId(rs.getInt("head_id"));
+                purchase.setInvoiceNo(rs.getString("invoice_no"));
+                purchase.setInvoiceDate(rs.getString("invoice_date"));
+                purchase.setPartyCode(rs.getString("party_code"));
+                purchase.setPartyName(nvl(rs.getString("party_name")));
+                purchase.setPurchaseAmount(getDouble(rs, "purchase_amount"));
+                purchase.setTotalAmount(getDouble(rs, "total_amount"));
+                purchase.setStoreCode(rs.getString("store_code"));
+                purchase.setStoreName(rs.getString("store_name"));
+                purchase.setNarration(rs.getString("narration"));
+                purchase.setUserName(rs.getString("User_NAME"));
+                purchase.setPurLed(rs.getString("Pur_Led"));
+                purchase.setPurLedName(nvl(rs.getString("pur_led_name")));
+                purchase.setItems(new ArrayList<>());
+                purchase.setLedgerDetails(new ArrayList<>());
+            }
+
+            Integer kind = getInteger(rs, "kind");
+            if (kind != null && kind == ITEM_LINE) {
+                PurchaseTransactionDTO.PurchaseItemDTO itemDto = new PurchaseTransactionDTO.PurchaseItemDTO();
+                itemDto.setItemCode(rs.getString("code"));
+                itemDto.setItemName(nvl(rs.getString("name")));
+                itemDto.setSizeCode(rs.getString("size_code"));
+                itemDto.setSizeName(nvl(rs.getString("size_name")));
+                itemDto.setPrice(getDouble(rs, "price"));
+                itemDto.setQuantity(getInteger(rs, "quantity"));
+                itemDto.setAmount(getDouble(rs, "amount"));
+                purchase.getItems().add(itemDto);
+            } else if (kind != null && kind == LEDGER_LINE) {
+                PurchaseTransactionDTO.PurchaseLedgerDTO ledgerDto = new PurchaseTransactionDTO.PurchaseLedgerDTO();
+                ledgerDto.setLedgerCode(rs.getString("code"));
+                ledgerDto.setLedgerName(nvl(rs.getString("name")));
+                ledgerDto.setAmount(getDouble(rs, "amount"));
+                ledgerDto.setType(rs.getString("type"));
+                purchase.getLedgerDetails().add(ledgerDto);
+            }
+            return purchase;
+        }, writer);
+    }
+
+    /** Adds one row to the invoice being built (null on its head's first row) and returns it. */
+    private interface RowReader {
+        Object read(ResultSet rs, Object invoice) throws SQLException;
+    }
+
+    // Runs sql (first column the head id, rows grouped by it) and writes one invoice per head
+    private void stream(OutputStream out, String sql, RowReader reader, ObjectWriter writer) throws IOException, SQLException {
+        try {
+            if (!slots.tryAcquire(waitSeconds, TimeUnit.SECONDS)) {
+                throw new IOException("Too many exports running, try again later");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for an export slot", e);
+        }
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = statement.executeQuery();
+                 JsonGenerator gen = objectMapper.getFactory().createGenerator(out)) {
+
+                gen.writeStartObject();
+                gen.writeArrayFieldStart("Invoices");
+
+                int written = 0;
+                long headId = 0;
+                Object invoice = null;
+                while (rs.next()) {
+                    long rowHeadId = rs.getLong(1);
+                    if (invoice != null && rowHeadId != headId) {
+                        writer.writeValue(gen, invoice);
+                        if (++written % FLUSH_EVERY == 0) {
+                            gen.flush();
+                        }
+                        invoice = null;
+                    }
+                    headId = rowHeadId;
+                    invoice = reader.read(rs, invoice);
+                }
+                if (invoice != null) {
+                    writer.writeValue(gen, invoice);
+                }
+
+                gen.writeEndArray();
+                gen.writeEndObject();
+            }
+        } finally {
+            slots.release();
+        }
+    }
+
+    private static Double getDouble(ResultSet rs, String column) throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Integer getInteger(ResultSet rs, String column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static String nvl(String value) {
+        return value != null ? value : "";
+    }
+}
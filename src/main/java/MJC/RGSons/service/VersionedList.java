@@ -0,0 +1,152 @@
+package MJC.RGSons.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * The rows of a list endpoint, with a version that only moves when a row changes and the
+ * history to answer "what changed since version N".
+ *
+ * Each {@link #publish} is compared row by row with the previous one. When nothing differs
+ * the previous {@link View} is kept, so ETags stay valid across rebuilds. Versions start from
+ * the clock and keep increasing across restarts. A version older than this run's first
+ * publish gets the whole list back.
+ */
+public class VersionedList {
+
+    /** One published generation. Rows are shared between requests and must not be modified. */
+    public static final class View {
+        private final long version;
+        private final long lastModified;
+        private final List<Map<String, Object>> rows;
+        private final Map<String, List<Map<String, Object>>> rowsByKey;
+
+        private View(long version, long lastModified, List<Map<String, Object>> rows,
+                     Map<String, List<Map<String, Object>>> rowsByKey) {
+            this.version = version;
+            this.lastModified = lastModified;
+            this.rows = rows;
+            this.rowsByKey = rowsByKey;
+        }
+
+        public long getVersion() { return version; }
+        public long getLastModified() { return lastModified; }
+        public List<Map<String, Object>> getRows() { return rows; }
+
+        /** Strong ETag of this version; {@code variant} tells apart filtered views of it. */
+        public String etag(String variant) {
+            return "\"" + version + (variant != null && !variant.isEmpty() ? "-" + variant : "") + "\"";
+        }
+    }
+
+    private final Function<Map<String, Object>, String> keyOf;
+    private final Function<String, Map<String, Object>> removedRow;
+
+    private volatile View current;
+
+    private final Map<String, Long> changedAt = new HashMap<>();
+    private final Map<String, Long> removedAt = new HashMap<>();
+    private long firstVersion;
+
+    /**
+     * @param keyOf the key a row is tracked by; rows may share a key
+     * @param removedRow how a removed key is reported in {@link #changesSince}
+     */
+    public VersionedList(Function<Map<String, Object>, String> keyOf, Function<String, Map<String, Object>> removedRow) {
+        this.keyOf = keyOf;
+        this.removedRow = removedRow;
+    }
+
+    /** The last published view, or null before the first publish. */
+    public View current() {
+        return current;
+    }
+
+    /** Publishes a new build of the rows, returning the view to serve. */
+    public synchronized View publish(List<Map<String, Object>> rows) {
+        Map<String, List<Map<String, Object>>> rowsByKey = new LinkedHashMap<>();
+        for (Map<String, Object> row : rows) {
+            rowsByKey.computeIfAbsent(keyOf.apply(row), k -> new ArrayList<>()).add(row);
+        }
+
+        View previous = current;
+        long now = System.currentTimeMillis();
+        if (previous == null) {
+            firstVersion = now;
+            current = new View(now, now, Collections.unmodifiableList(new ArrayList<>(rows)), rowsByKey);
+            return current;
+        }
+
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, List<Map<String, Object>>> entry : rowsByKey.entrySet()) {
+            if (!entry.getValue().equals(previous.rowsByKey.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        List<String> removed = new ArrayList<>();
+        for (String key : previous.rowsByKey.keySet()) {
+            if (!rowsByKey.containsKey(key)) {
+                removed.add(key);
+            }
+        }
+        // A reorder alone changes no row but still changes the list
+        if (changed.isEmpty() && removed.isEmpty() && previous.rows.equals(rows)) {
+            return previous;
+        }
+
+        long version = Math.max(previous.version + 1, now);
+        for (String key : changed) {
+            changedAt.put(key, version);
+            removedAt.remove(key);
+        }
+        for (String key : removed) {
+            changedAt.remove(key);
+            removedAt.put(key, version);
+        }
+        current = new View(version, now, Collections.unmodifiableList(new ArrayList<>(rows)), rowsByKey);
+        return current;
+    }
+
+    /**
+     * The rows changed and the keys removed after version {@code since}, or the whole list
+     * under {@code listName} with {@code full = true} when {@code since} is outside this run's
+     * history.
+     *
+     * @param narrow applied to the rows returned, e.g. to filter them for one store
+     */
+    public synchronized Map<String, Object> changesSince(long since, String listName,
+                                                         UnaryOperator<List<Map<String, Object>>> narrow) {
+        View view = current;
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("version", view.version);
+        if (since < firstVersion || since > view.version) {
+            result.put("full", true);
+            result.put(listName, narrow.apply(view.rows));
+            return result;
+        }
+
+        List<Map<String, Object>> changed = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : changedAt.entrySet()) {
+            List<Map<String, Object>> rows = view.rowsByKey.get(entry.getKey());
+            if (entry.getValue() > since && rows != null) {
+                changed.addAll(rows);
+            }
+        }
+        List<Map<String, Object>> removed = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : removedAt.entrySet()) {
+            if (entry.getValue() > since) {
+                removed.add(removedRow.apply(entry.getKey()));
+            }
+        }
+        result.put("full", false);
+        result.put("changed", narrow.apply(changed));
+        result.put("removed", removed);
+        return result;
+    }
+}
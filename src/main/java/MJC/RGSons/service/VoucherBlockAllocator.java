@@ -0,0 +1,166 @@
+package MJC.RGSons.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out voucher numbers for a (voucher type, store, reset key) without making every
+ * caller queue on the same voucher_sequence row.
+ *
+ * With the ALLOW_GAPS policy a block of numbers is reserved in one auto-committed statement
+ * on a connection of the allocator's own, outside the pool and the caller's transaction, and
+ * the numbers are then served from memory. A till that already holds a pooled connection
+ * never waits for a second one. Numbers of a block that is not used up (restart, reset
+ * period rolls over, caller rolls back) are skipped, never reused.
+ * Each app instance reserves its own blocks, so numbers stay unique across instances.
+ *
+ * With the GAPLESS policy one number is reserved at a time inside the caller's
+ * transaction, which keeps the series gap-free at the cost of row contention.
+ */
+@Service
+public class VoucherBlockAllocator {
+
+    private static final Logger log = LoggerFactory.getLogger(VoucherBlockAllocator.class);
+
+    public enum GapPolicy { GAPLESS, ALLOW_GAPS }
+
+    private static final class Block {
+        private int next;
+        private final int last;
+
+        Block(int first, int last) {
+            this.next = first;
+            this.last = last;
+        }
+
+        boolean exhausted() {
+            return next > last;
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${spring.datasource.username:}")
+    private String username;
+
+    @Value("${spring.datasource.password:}")
+    private String password;
+
+    // Block reservations only; opened on first use, guarded by blockConnectionLock
+    private SingleConnectionDataSource blockConnection;
+    private JdbcTemplate blockJdbcTemplate;
+    private final Object blockConnectionLock = new Object();
+
+    @Value("${voucher.allocation.gap-policy:GAPLESS}")
+    private GapPolicy gapPolicy;
+
+    @Value("${voucher.allocation.block-size:20}")
+    private int blockSize;
+
+    private final Map<String, Block> blocks = new ConcurrentHashMap<>();
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    @PreDestroy
+    public void shutdown() {
+        synchronized (blockConnectionLock) {
+            if (blockConnection != null) {
+                blockConnection.destroy();
+            }
+        }
+    }
+
+    public int nextNumber(String voucherType, Integer storeId, String resetKey) {
+        if (gapPolicy == GapPolicy.GAPLESS || blockSize <= 1) {
+            // Joins the caller's transaction: a rollback gives the number back
+            return reserve(jdbcTemplate, voucherType, storeId, resetKey, 1);
+        }
+
+        String prefix = voucherType + "|" + storeId + "|";
+        String key = prefix + resetKey;
+        synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+            Block block = blocks.get(key);
+            if (block == null || block.exhausted()) {
+                int high = reserveBlock(voucherType, storeId, resetKey);
+                block = new Block(high - blockSize + 1, high);
+                blocks.put(key, block);
+                // Blocks of a previous day/month/year can never be used again
+                blocks.keySet().removeIf(k -> k.startsWith(prefix) && !k.equals(key));
+            }
+            return block.next++;
+        }
+    }
+
+    /**
+     * The number the next call would return, if this instance still holds numbers for the key;
+     * otherwise null and the caller should look at voucher_sequence.
+     */
+    public Integer peekNumber(String voucherType, Integer storeId, String resetKey) {
+        String key = voucherType + "|" + storeId + "|" + resetKey;
+        Block block = blocks.get(key);
+        if (block == null) {
+            return null;
+        }
+        synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+            return block.exhausted() ? null : block.next;
+        }
+    }
+
+    // On the dedicated connection, auto-committed; reopened once if it has gone stale
+    private int reserveBlock(String voucherType, Integer storeId, String resetKey) {
+        synchronized (blockConnectionLock) {
+            if (blockConnection == null) {
+                blockConnection = new SingleConnectionDataSource(url, username, password, true);
+                blockConnection.setAutoCommit(true);
+                blockJdbcTemplate = new JdbcTemplate(blockConnection);
+            }
+            try {
+                return reserve(blockJdbcTemplate, voucherType, storeId, resetKey, blockSize);
+            } catch (RuntimeException e) {
+                log.warn("Voucher block connection failed, reopening: {}", e.getMessage());
+                blockConnection.resetConnection();
+                return reserve(blockJdbcTemplate, voucherType, storeId, resetKey, blockSize);
+            }
+        }
+    }
+
+    /**
+     * Moves current_number forward by {@code count} in one atomic statement and returns the new value,
+     * i.e. the highest number of the reserved range. Creates the sequence row on first use.
+     */
+    private int reserve(JdbcTemplate jdbc, String voucherType, Integer storeId, String resetKey, int count) {
+        String update = "UPDATE voucher_sequence WITH (ROWLOCK) "
+                + "SET current_number = ISNULL(current_number, 0) + ?, last_generated_at = GETDATE(), updated_at = GETDATE() "
+                + "OUTPUT inserted.current_number "
+                + "WHERE voucher_type = ? AND reset_key = ? AND (store_id = ? OR (store_id IS NULL AND ? IS NULL))";
+
+        for (int attempt = 0; attempt < 2; attempt++) {
+            List<Integer> high = jdbc.queryForList(update, Integer.class, count, voucherType, resetKey, storeId, storeId);
+            if (!high.isEmpty()) {
+                return high.get(0);
+            }
+            try {
+                jdbc.update("INSERT INTO voucher_sequence (voucher_type, store_id, reset_key, current_number, last_generated_at, created_at, updated_at) "
+                        + "VALUES (?, ?, ?, ?, GETDATE(), GETDATE(), GETDATE())", voucherType, storeId, resetKey, count);
+                return count;
+            } catch (DuplicateKeyException e) {
+                // Another till or instance created the row first; go round and increment it instead
+            }
+        }
+        throw new RuntimeException("Could not reserve voucher numbers for type: " + voucherType);
+    }
+}
@@ -33,6 +33,9 @@ public class VoucherService {
     @Autowired
     private StoreRepository storeRepository;
 
+    @Autowired
+    private VoucherBlockAllocator voucherBlockAllocator;
+
     public VoucherConfig getVoucherConfig(String voucherType) {
         return voucherConfigRepository.findByVoucherType(voucherType).orElse(null);
     }
@@ -105,6 +108,12 @@ public class VoucherService {
         String resetKey = getResetKey(config.getResetFrequency(), now);
         Integer sequenceStoreId = "STORE_WISE".equalsIgnoreCase(config.getNumberingScope()) ? storeId : null;
 
+        // Numbers already reserved by this instance are handed out before the table moves on
+        Integer reserved = voucherBlockAllocator.peekNumber(voucherType, sequenceStoreId, resetKey);
+        if (reserved != null) {
+            return constructVoucherString(config, storeCode, now, reserved);
+        }
+
         VoucherSequence sequence = voucherSequenceRepository
                 .findByVoucherTypeAndStoreIdAndResetKey(voucherType, sequenceStoreId, resetKey)
                 .orElse(new VoucherSequence());
@@ -125,22 +134,7 @@ public class VoucherService {
         String resetKey = getResetKey(config.getResetFrequency(), now);
         Integer sequenceStoreId = "STORE_WISE".equalsIgnoreCase(config.getNumberingScope()) ? storeId : null;
 
-        VoucherSequence sequence = voucherSequenceRepository
-                .findByVoucherTypeAndStoreIdAndResetKey(voucherType, sequenceStoreId, resetKey)
-                .orElse(new VoucherSequence());
-
-        if (sequence.getSequenceId() == null) {
-            sequence.setVoucherType(voucherType);
-            sequence.setStoreId(sequenceStoreId);
-            sequence.setResetKey(resetKey);
-            sequence.setCurrentNumber(0);
-        }
-
-        int nextNumber = sequence.getCurrentNumber() + 1;
-        sequence.setCurrentNumber(nextNumber);
-        sequence.setLastGeneratedAt(java.time.LocalDateTime.now());
-        
-        voucherSequenceRepository.save(sequence);
+        int nextNumber = voucherBlockAllocator.nextNumber(voucherType, sequenceStoreId, resetKey);
 
         String voucherNumber = constructVoucherString(config, storeCode, now, nextNumber);
         
@@ -0,0 +1,81 @@
+package MJC.RGSons.util;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Parses the business dates stored as strings (invoice_date, business_date, STO date).
+ *
+ * Most rows hold dd-MM-yyyy, but yyyy-MM-dd (opening stock import, some clients)
+ * and a few Excel-style formats also occur. The parsed value is what goes into the
+ * real DATE columns (invoice_dt, business_dt, sto_dt) used for filtering.
+ */
+public final class BusinessDates {
+
+    private static final DateTimeFormatter[] FORMATS = {
+            DateTimeFormatter.ofPattern("dd-MM-yyyy"),
+            DateTimeFormatter.ISO_LOCAL_DATE,
+            DateTimeFormatter.ofPattern("d-M-yyyy"),
+            DateTimeFormatter.ofPattern("dd/MM/yyyy"),
+            DateTimeFormatter.ofPattern("d/M/yyyy"),
+            DateTimeFormatter.ofPattern("d-MMM-yy", Locale.ENGLISH),
+            DateTimeFormatter.ofPattern("d-MMM-yyyy", Locale.ENGLISH),
+            DateTimeFormatter.ofPattern("yyyy/MM/dd")
+    };
+
+    private BusinessDates() {
+    }
+
+    /** @return the date, or null when the value is empty or in none of the known formats */
+    public static LocalDate parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        for (DateTimeFormatter format : FORMATS) {
+            try {
+                return LocalDate.parse(trimmed, format);
+            } catch (DateTimeParseException e) {
+                // try the next format
+            }
+        }
+        return null;
+    }
+
+    /** Same as {@link #parse(String)} but throws for values that cannot be read, for request parameters. */
+    public static LocalDate require(String value) {
+        LocalDate date = parse(value);
+        if (date == null) {
+            throw new IllegalArgumentException("Invalid date: " + value);
+        }
+        return date;
+    }
+
+    /**
+     * The strings a day is stored as by the app (dd-MM-yyyy) and the opening import
+     * (yyyy-MM-dd), for matching rows whose DATE column is still NULL by their string date.
+     */
+    public static List<String> storedForms(LocalDate date) {
+        return List.of(date.format(FORMATS[0]), date.format(DateTimeFormatter.ISO_LOCAL_DATE));
+    }
+
+    /**
+     * SQL Server expression reading a string date column the way the date backfill does:
+     * dd-MM-yyyy (105), yyyy-MM-dd (23) or dd/MM/yyyy (103); NULL for anything else.
+     */
+    public static String sqlParse(String column) {
+        return "COALESCE(TRY_CONVERT(DATE, " + column + ", 105), TRY_CONVERT(DATE, " + column + ", 23), "
+                + "TRY_CONVERT(DATE, " + column + ", 103))";
+    }
+
+    public static java.sql.Date toSqlDate(String value) {
+        LocalDate date = parse(value);
+        return date != null ? java.sql.Date.valueOf(date) : null;
+    }
+}
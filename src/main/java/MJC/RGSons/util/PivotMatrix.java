@@ -0,0 +1,244 @@
+package MJC.RGSons.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Item x size grid of report metrics, as used by the DSR and closing-stock sheets.
+ *
+ * Row keys (item codes or names) and column keys (sizes) are interned to dense int indexes
+ * once; every cell then holds its metrics in flat int[] / double[] arrays instead of nested
+ * maps of boxed values. Each row may belong to a group (brand, category). {@link #computeTotals()}
+ * fills row, group and grand totals in a single pass over the cells; the "total" column of a
+ * group or of the grand total is {@link #columnCount()}.
+ */
+public final class PivotMatrix {
+
+    private final String[] columnKeys;
+    private final Map<String, Integer> columnIndex = new HashMap<>();
+    private final int cols;
+    private final int intMetrics;
+    private final int doubleMetrics;
+
+    private final Map<String, Integer> rowIndex = new HashMap<>();
+    private String[] rowKeys = new String[16];
+    private int[] rowGroups = new int[16];
+    private int rows;
+
+    private final Map<String, Integer> groupIndex = new HashMap<>();
+    private String[] groupKeys = new String[8];
+    private int groups;
+
+    private int[] ints;
+    private double[] doubles;
+
+    private int[] rowIntTotals;
+    private double[] rowDoubleTotals;
+    private int[] groupIntTotals;
+    private double[] groupDoubleTotals;
+    private int[] grandIntTotals;
+    private double[] grandDoubleTotals;
+
+    public PivotMatrix(List<String> columnKeys, int intMetrics, int doubleMetrics) {
+        this.columnKeys = columnKeys.toArray(new String[0]);
+        for (int i = 0; i < this.columnKeys.length; i++) {
+            columnIndex.putIfAbsent(this.columnKeys[i], i);
+        }
+        this.cols = this.columnKeys.length;
+        this.intMetrics = intMetrics;
+        this.doubleMetrics = doubleMetrics;
+        this.ints = new int[rowKeys.length * cols * intMetrics];
+        this.doubles = new double[rowKeys.length * cols * doubleMetrics];
+    }
+
+    /** Index of the row, adding it (in the given group, null for none) the first time the key is seen. */
+    public int row(String rowKey, String groupKey) {
+        Integer existing = rowIndex.get(rowKey);
+        if (existing != null) {
+            return existing;
+        }
+        if (rows == rowKeys.length) {
+            int capacity = rows * 2;
+            rowKeys = Arrays.copyOf(rowKeys, capacity);
+            rowGroups = Arrays.copyOf(rowGroups, capacity);
+            ints = Arrays.copyOf(ints, capacity * cols * intMetrics);
+            doubles = Arrays.copyOf(doubles, capacity * cols * doubleMetrics);
+        }
+        int r = rows++;
+        rowKeys[r] = rowKey;
+        rowGroups[r] = groupKey != null ? group(groupKey) : -1;
+        rowIndex.put(rowKey, r);
+        return r;
+    }
+
+    /** @return the row's index, or -1 if the key was never added */
+    public int rowOf(String rowKey) {
+        Integer r = rowIndex.get(rowKey);
+        return r != null ? r : -1;
+    }
+
+    /** @return the column's index, or -1 for a key that is not one of the columns */
+    public int column(String columnKey) {
+        Integer c = columnIndex.get(columnKey);
+        return c != null ? c : -1;
+    }
+
+    /** @return the group's index, or -1 if no row was added with that group */
+    public int groupOf(String groupKey) {
+        Integer g = groupIndex.get(groupKey);
+        return g != null ? g : -1;
+    }
+
+    private int group(String groupKey) {
+        Integer existing = groupIndex.get(groupKey);
+        if (existing != null) {
+            return existing;
+        }
+        if (groups == groupKeys.length) {
+            groupKeys = Arrays.copyOf(groupKeys, groups * 2);
+        }
+        groupKeys[groups] = groupKey;
+        groupIndex.put(groupKey, groups);
+        return groups++;
+    }
+
+    public int rowCount() {
+        return rows;
+    }
+
+    public int columnCount() {
+        return cols;
+    }
+
+    public int groupCount() {
+        return groups;
+    }
+
+    public String rowKey(int row) {
+        return rowKeys[row];
+    }
+
+    public String columnKey(int col) {
+        return columnKeys[col];
+    }
+
+    public String groupKey(int group) {
+        return groupKeys[group];
+    }
+
+    /** @return the row's group index, or -1 if it has none */
+    public int groupOf(int row) {
+        return rowGroups[row];
+    }
+
+    public void addInt(int row, int col, int metric, int value) {
+        ints[(row * cols + col) * intMetrics + metric] += value;
+    }
+
+    public void setInt(int row, int col, int metric, int value) {
+        ints[(row * cols + col) * intMetrics + metric] = value;
+    }
+
+    public int getInt(int row, int col, int metric) {
+        return ints[(row * cols + col) * intMetrics + metric];
+    }
+
+    public void addDouble(int row, int col, int metric, double value) {
+        doubles[(row * cols + col) * doubleMetrics + metric] += value;
+    }
+
+    public void setDouble(int row, int col, int metric, double value) {
+        doubles[(row * cols + col) * doubleMetrics + metric] = value;
+    }
+
+    public double getDouble(int row, int col, int metric) {
+        return doubles[(row * cols + col) * doubleMetrics + metric];
+    }
+
+    /** True if any metric of any cell in the row is non-zero. */
+    public boolean hasData(int row) {
+        int from = row * cols * intMetrics;
+        for (int i = from; i < from + cols * intMetrics; i++) {
+            if (ints[i] != 0) {
+                return true;
+            }
+        }
+        from = row * cols * doubleMetrics;
+        for (int i = from; i < from + cols * doubleMetrics; i++) {
+            if (doubles[i] != 0.0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Sums every metric into the row, group and grand totals. Call once all cells are filled. */
+    public void computeTotals() {
+        int width = cols + 1;
+        rowIntTotals = new int[rows * intMetrics];
+        rowDoubleTotals = new double[rows * doubleMetrics];
+        groupIntTotals = new int[groups * width * intMetrics];
+        groupDoubleTotals = new double[groups * width * doubleMetrics];
+        grandIntTotals = new int[width * intMetrics];
+        grandDoubleTotals = new double[width * doubleMetrics];
+
+        for (int r = 0; r < rows; r++) {
+            int g = rowGroups[r];
+            for (int c = 0; c < cols; c++) {
+                int cell = r * cols + c;
+                for (int m = 0; m < intMetrics; m++) {
+                    int v = ints[cell * intMetrics + m];
+                    if (v == 0) {
+                        continue;
+                    }
+                    rowIntTotals[r * intMetrics + m] += v;
+                    grandIntTotals[c * intMetrics + m] += v;
+                    grandIntTotals[cols * intMetrics + m] += v;
+                    if (g >= 0) {
+                        groupIntTotals[(g * width + c) * intMetrics + m] += v;
+                        groupIntTotals[(g * width + cols) * intMetrics + m] += v;
+                    }
+                }
+                for (int m = 0; m < doubleMetrics; m++) {
+                    double v = doubles[cell * doubleMetrics + m];
+                    if (v == 0.0) {
+                        continue;
+                    }
+                    rowDoubleTotals[r * doubleMetrics + m] += v;
+                    grandDoubleTotals[c * doubleMetrics + m] += v;
+                    grandDoubleTotals[cols * doubleMetrics + m] += v;
+                    if (g >= 0) {
+                        groupDoubleTotals[(g * width + c) * doubleMetrics + m] += v;
+                        groupDoubleTotals[(g * width + cols) * doubleMetrics + m] += v;
+                    }
+                }
+            }
+        }
+    }
+
+    public int rowIntTotal(int row, int metric) {
+        return rowIntTotals[row * intMetrics + metric];
+    }
+
+    public double rowDoubleTotal(int row, int metric) {
+        return rowDoubleTotals[row * doubleMetrics + metric];
+    }
+
+    public int groupIntTotal(int group, int col, int metric) {
+        return groupIntTotals[(group * (cols + 1) + col) * intMetrics + metric];
+    }
+
+    public double groupDoubleTotal(int group, int col, int metric) {
+        return groupDoubleTotals[(group * (cols + 1) + col) * doubleMetrics + metric];
+    }
+
+    public int grandIntTotal(int col, int metric) {
+        return grandIntTotals[col * intMetrics + metric];
+    }
+
+    public double grandDoubleTotal(int col, int metric) {
+        return grandDoubleTotals[col * doubleMetrics + metric];
+    }
+}
@@ -0,0 +1,35 @@
+package MJC.RGSons.util;
+
+import java.util.List;
+
+/**
+ * The head office is store "HO", but older Inventory_Master rows carry "Head Office".
+ * Code that reads stock by store resolves the alias here rather than in each query.
+ */
+public final class StoreCodes {
+
+    public static final String HEAD_OFFICE = "HO";
+
+    /** Store code of head office rows written before "HO" was used. */
+    public static final String HEAD_OFFICE_LEGACY = "Head Office";
+
+    private StoreCodes() {
+    }
+
+    /** @return the store code to key by: "HO" for either head office code, otherwise the code as given */
+    public static String normalize(String storeCode) {
+        if (storeCode != null && storeCode.trim().equalsIgnoreCase(HEAD_OFFICE_LEGACY)) {
+            return HEAD_OFFICE;
+        }
+        return storeCode;
+    }
+
+    public static boolean isHeadOffice(String storeCode) {
+        return HEAD_OFFICE.equals(normalize(storeCode));
+    }
+
+    /** @return the codes the store's rows may be stored under */
+    public static List<String> storedAs(String storeCode) {
+        return isHeadOffice(storeCode) ? List.of(HEAD_OFFICE, HEAD_OFFICE_LEGACY) : List.of(storeCode);
+    }
+}
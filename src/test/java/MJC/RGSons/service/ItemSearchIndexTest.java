@@ -0,0 +1,133 @@
+package MJC.RGSons.service;
+
+import MJC.RGSons.model.Item;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ItemSearchIndexTest {
+
+    private MasterDataRegistry registry;
+    private ItemSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        registry = mock(MasterDataRegistry.class);
+        index = new ItemSearchIndex();
+        ReflectionTestUtils.setField(index, "masterDataRegistry", registry);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void publish(long version, Item... items) {
+        MasterDataRegistry.Snapshot<Item> snapshot = mock(MasterDataRegistry.Snapshot.class);
+        when(snapshot.getVersion()).thenReturn(version);
+        when(snapshot.all()).thenReturn(List.of(items));
+        when(registry.getVersion(MasterDataRegistry.MasterType.ITEM)).thenReturn(version);
+        when(registry.items()).thenReturn(snapshot);
+    }
+
+    private static Item item(String code, String name) {
+        return new Item(code, name, 100.0);
+    }
+
+    private List<String> codes(String query, int limit) {
+        return index.search(query, limit).stream().map(Item::getItemCode).collect(Collectors.toList());
+    }
+
+    @Test
+    void matchesTheSameItemsAsLikeContains() {
+        List<Item> items = List.of(
+                item("KF01", "Kingfisher Strong 650ml"),
+                item("KF02", "Kingfisher Ultra"),
+                item("OM375", "Old Monk Rum"),
+                item("RS180", "Royal Stag Whisky"),
+                item("BW750", "Blenders Pride"),
+                item("MC01", "McDowell's No.1"),
+                item("X", "A"));
+        publish(1, items.toArray(new Item[0]));
+
+        Set<String> queries = new HashSet<>(List.of("", "zzz", "ng s", "KINGFISHER", "o.1", "1", "ml", "a"));
+        for (Item item : items) {
+            for (String text : List.of(item.getItemCode(), item.getItemName())) {
+                for (int n = 1; n <= 5; n++) {
+                    for (int i = 0; i + n <= text.length(); i++) {
+                        queries.add(text.substring(i, i + n));
+                    }
+                }
+            }
+        }
+
+        for (String query : queries) {
+            String q = query.toLowerCase(Locale.ROOT);
+            Set<String> expected = items.stream()
+                    .filter(it -> it.getItemCode().toLowerCase(Locale.ROOT).contains(q)
+                            || it.getItemName().toLowerCase(Locale.ROOT).contains(q))
+                    .map(Item::getItemCode)
+                    .collect(Collectors.toSet());
+            assertEquals(expected, new HashSet<>(codes(query, 0)), "query '" + query + "'");
+        }
+    }
+
+    @Test
+    void ranksExactCodeThenCodePrefixThenNamePrefixThenWordThenAnywhere() {
+        publish(1,
+                item("B4", "Smoking Barrel"),
+                item("B3", "Black Kingfisher"),
+                item("B1", "Kingfisher Strong"),
+                item("KING2", "Old Monk"),
+                item("B2", "Kingfisher"),
+                item("KING", "Royal Stag"));
+
+        assertEquals(List.of("KING", "KING2", "B2", "B1", "B3", "B4"), codes("King", 0));
+        assertEquals(List.of("KING", "KING2"), codes("king", 2));
+    }
+
+    @Test
+    void reindexesAnItemWhoseTextChanged() {
+        publish(1, item("OM375", "Old Monk Rum"), item("RS180", "Royal Stag"));
+        assertEquals(List.of("OM375"), codes("monk", 0));
+
+        publish(2, item("OM375", "Old Cask Rum"), item("RS180", "Royal Stag"));
+        assertTrue(codes("monk", 0).isEmpty());
+        assertEquals(List.of("OM375"), codes("cask", 0));
+        assertEquals(List.of("RS180"), codes("stag", 0));
+    }
+
+    @Test
+    void servesTheCurrentEntityWhenTheTextIsUnchanged() {
+        publish(1, item("OM375", "Old Monk Rum"));
+        codes("monk", 0);
+
+        Item reloaded = item("OM375", "Old Monk Rum");
+        publish(2, reloaded);
+        List<Item> found = index.search("monk", 0);
+        assertEquals(1, found.size());
+        assertSame(reloaded, found.get(0));
+    }
+
+    @Test
+    void dropsRemovedItemsAndTakesThemBackWhenReAdded() {
+        publish(1, item("OM375", "Old Monk Rum"), item("RS180", "Royal Stag"));
+        assertEquals(List.of("OM375"), codes("monk", 0));
+
+        publish(2, item("RS180", "Royal Stag"));
+        assertTrue(codes("monk", 0).isEmpty());
+        assertTrue(codes("om", 0).isEmpty());
+        assertEquals(List.of("RS180"), codes("", 0));
+
+        publish(3, item("RS180", "Royal Stag"), item("OM375", "Old Monk Rum"));
+        assertEquals(List.of("OM375"), codes("monk", 0));
+    }
+}
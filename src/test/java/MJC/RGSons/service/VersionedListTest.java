@@ -0,0 +1,112 @@
+package MJC.RGSons.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VersionedListTest {
+
+    private VersionedList list;
+
+    @BeforeEach
+    void setUp() {
+        list = new VersionedList(row -> (String) row.get("code"), code -> Map.of("code", code, "removed", true));
+    }
+
+    private static Map<String, Object> row(String code, String name) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("code", code);
+        row.put("name", name);
+        return row;
+    }
+
+    private Map<String, Object> changesSince(long since) {
+        return list.changesSince(since, "items", UnaryOperator.identity());
+    }
+
+    @Test
+    void keepsTheViewWhenNothingChanged() {
+        assertNull(list.current());
+        VersionedList.View first = list.publish(List.of(row("A", "Alpha"), row("B", "Beta")));
+        assertSame(first, list.current());
+
+        VersionedList.View again = list.publish(List.of(row("A", "Alpha"), row("B", "Beta")));
+        assertSame(first, again);
+        assertEquals(first.etag(null), again.etag(null));
+        assertEquals("\"" + first.getVersion() + "-S1\"", first.etag("S1"));
+    }
+
+    @Test
+    void movesTheVersionWhenARowChangesOrTheOrderDoes() {
+        VersionedList.View first = list.publish(List.of(row("A", "Alpha"), row("B", "Beta")));
+
+        VersionedList.View changed = list.publish(List.of(row("A", "Alpha"), row("B", "Beta 2")));
+        assertTrue(changed.getVersion() > first.getVersion());
+        assertNotEquals(first.etag(null), changed.etag(null));
+
+        VersionedList.View reordered = list.publish(List.of(row("B", "Beta 2"), row("A", "Alpha")));
+        assertTrue(reordered.getVersion() > changed.getVersion());
+    }
+
+    @Test
+    void returnsTheRowsChangedAndKeysRemovedSinceAVersion() {
+        long v1 = list.publish(List.of(row("A", "Alpha"), row("B", "Beta"), row("C", "Gamma"))).getVersion();
+        long v2 = list.publish(List.of(row("A", "Alpha"), row("B", "Beta 2"), row("C", "Gamma"))).getVersion();
+        long v3 = list.publish(List.of(row("A", "Alpha"), row("B", "Beta 2"), row("D", "Delta"))).getVersion();
+
+        Map<String, Object> sinceV1 = changesSince(v1);
+        assertEquals(v3, sinceV1.get("version"));
+        assertEquals(false, sinceV1.get("full"));
+        assertEquals(List.of(row("B", "Beta 2"), row("D", "Delta")), sortedByCode(sinceV1.get("changed")));
+        assertEquals(List.of(Map.of("code", "C", "removed", true)), sinceV1.get("removed"));
+
+        Map<String, Object> sinceV2 = changesSince(v2);
+        assertEquals(List.of(row("D", "Delta")), sinceV2.get("changed"));
+        assertEquals(List.of(Map.of("code", "C", "removed", true)), sinceV2.get("removed"));
+
+        Map<String, Object> sinceV3 = changesSince(v3);
+        assertEquals(List.of(), sinceV3.get("changed"));
+        assertEquals(List.of(), sinceV3.get("removed"));
+    }
+
+    @Test
+    void aReAddedKeyIsNoLongerReportedRemoved() {
+        long v1 = list.publish(List.of(row("A", "Alpha"), row("B", "Beta"))).getVersion();
+        list.publish(List.of(row("A", "Alpha")));
+        list.publish(List.of(row("A", "Alpha"), row("B", "Beta again")));
+
+        Map<String, Object> changes = changesSince(v1);
+        assertEquals(List.of(row("B", "Beta again")), changes.get("changed"));
+        assertEquals(List.of(), changes.get("removed"));
+    }
+
+    @Test
+    void sendsTheWholeListForAVersionOutsideThisRun() {
+        long v1 = list.publish(List.of(row("A", "Alpha"), row("B", "Beta"))).getVersion();
+
+        for (long since : new long[] { 0L, v1 - 1, v1 + 1 }) {
+            Map<String, Object> changes = list.changesSince(since, "items",
+                    rows -> rows.subList(0, 1));
+            assertEquals(true, changes.get("full"));
+            assertEquals(List.of(row("A", "Alpha")), changes.get("items"));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> sortedByCode(Object rows) {
+        List<Map<String, Object>> sorted = new ArrayList<>((List<Map<String, Object>>) rows);
+        sorted.sort((a, b) -> ((String) a.get("code")).compareTo((String) b.get("code")));
+        return sorted;
+    }
+}
@@ -0,0 +1,95 @@
+package MJC.RGSons.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PivotMatrixTest {
+
+    private static final int QTY = 0;
+    private static final int CASES = 1;
+    private static final int VALUE = 0;
+
+    @Test
+    void sumsRowGroupAndGrandTotals() {
+        PivotMatrix m = new PivotMatrix(List.of("180", "375", "750"), 2, 1);
+        int kf = m.row("KF", "BEER");
+        int tb = m.row("TB", "BEER");
+        int om = m.row("OM", "RUM");
+        int loose = m.row("LOOSE", null);
+
+        m.addInt(kf, m.column("180"), QTY, 5);
+        m.addInt(kf, m.column("750"), QTY, 2);
+        m.addInt(kf, m.column("750"), CASES, 1);
+        m.addInt(tb, m.column("180"), QTY, 3);
+        m.addInt(om, m.column("375"), QTY, 4);
+        m.addInt(loose, m.column("180"), QTY, 10);
+        m.addDouble(kf, m.column("180"), VALUE, 1.5);
+        m.addDouble(om, m.column("375"), VALUE, 2.25);
+        m.computeTotals();
+
+        int total = m.columnCount();
+        assertEquals(7, m.rowIntTotal(kf, QTY));
+        assertEquals(1, m.rowIntTotal(kf, CASES));
+        assertEquals(1.5, m.rowDoubleTotal(kf, VALUE));
+
+        int beer = m.groupOf("BEER");
+        int rum = m.groupOf("RUM");
+        assertEquals(beer, m.groupOf(kf));
+        assertEquals(-1, m.groupOf(loose));
+        assertEquals(8, m.groupIntTotal(beer, m.column("180"), QTY));
+        assertEquals(2, m.groupIntTotal(beer, m.column("750"), QTY));
+        assertEquals(10, m.groupIntTotal(beer, total, QTY));
+        assertEquals(4, m.groupIntTotal(rum, total, QTY));
+        assertEquals(2.25, m.groupDoubleTotal(rum, total, VALUE));
+
+        // Rows without a group only count in the grand total
+        assertEquals(18, m.grandIntTotal(m.column("180"), QTY));
+        assertEquals(24, m.grandIntTotal(total, QTY));
+        assertEquals(1, m.grandIntTotal(total, CASES));
+        assertEquals(3.75, m.grandDoubleTotal(total, VALUE));
+    }
+
+    @Test
+    void keepsCellsWhenGrowingPastTheInitialCapacity() {
+        PivotMatrix m = new PivotMatrix(List.of("180", "750"), 1, 1);
+        int rows = 40;
+        for (int i = 0; i < rows; i++) {
+            int r = m.row("I" + i, "G" + (i % 12));
+            m.setInt(r, 1, QTY, i + 1);
+            m.setDouble(r, 0, VALUE, i * 0.5);
+        }
+        m.computeTotals();
+
+        assertEquals(rows, m.rowCount());
+        assertEquals(12, m.groupCount());
+        for (int i = 0; i < rows; i++) {
+            int r = m.rowOf("I" + i);
+            assertEquals(i, r);
+            assertEquals(i + 1, m.getInt(r, 1, QTY));
+            assertEquals(i * 0.5, m.getDouble(r, 0, VALUE));
+            assertEquals("G" + (i % 12), m.groupKey(m.groupOf(r)));
+        }
+        assertEquals(rows * (rows + 1) / 2, m.grandIntTotal(m.columnCount(), QTY));
+        // G0 holds rows 0, 12, 24 and 36
+        assertEquals(1 + 13 + 25 + 37, m.groupIntTotal(m.groupOf("G0"), m.columnCount(), QTY));
+    }
+
+    @Test
+    void internsKeysAndReportsEmptyRows() {
+        PivotMatrix m = new PivotMatrix(List.of("180"), 1, 1);
+        int r = m.row("KF", "BEER");
+        assertEquals(r, m.row("KF", "RUM"));
+        assertEquals(1, m.groupCount());
+        assertEquals(-1, m.rowOf("OM"));
+        assertEquals(-1, m.column("1000"));
+
+        assertFalse(m.hasData(r));
+        m.addDouble(r, 0, VALUE, 0.5);
+        assertTrue(m.hasData(r));
+    }
+}